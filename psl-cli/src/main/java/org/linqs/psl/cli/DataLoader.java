@@ -19,7 +19,7 @@ package org.linqs.psl.cli;
 
 import org.linqs.psl.database.DataStore;
 import org.linqs.psl.database.Partition;
-import org.linqs.psl.database.loading.Inserter;
+import org.linqs.psl.database.loading.DelimitedDataFile;
 import org.linqs.psl.model.function.ExternalFunction;
 import org.linqs.psl.model.predicate.ExternalFunctionalPredicate;
 import org.linqs.psl.model.predicate.Predicate;
@@ -117,6 +117,8 @@ public class DataLoader {
             KEY_PARTITION_TRUTH
         };
 
+        List<DelimitedDataFile> files = new ArrayList<DelimitedDataFile>();
+
         for (String partition : partitions) {
             Iterator<String> keyIterator = yaml.getKeys(partition);
             while (keyIterator.hasNext()) {
@@ -126,7 +128,7 @@ public class DataLoader {
                 String predicate = key.replaceFirst("^" + partition + ".", "");
 
                 if (value instanceof String) {
-                    loadData(partition, predicate, dataStore, (String)value, relativeDir);
+                    files.add(getDataFile(partition, predicate, dataStore, (String)value, relativeDir));
                 } else if (value instanceof List) {
                     @SuppressWarnings("unchecked")
                     List<Object> listValues = (List<Object>)value;
@@ -135,16 +137,18 @@ public class DataLoader {
                             throw new IllegalArgumentException(String.format("Expected a string property to key, %s, found: '%s'.", key, listValue.getClass().getName()));
                         }
 
-                        loadData(partition, predicate, dataStore, (String)listValue, relativeDir);
+                        files.add(getDataFile(partition, predicate, dataStore, (String)listValue, relativeDir));
                     }
                 } else {
                     throw new IllegalArgumentException(String.format("Key, %s, has an unrecognized type: '%s'.", key, value.getClass().getName()));
                 }
             }
         }
+
+        dataStore.loadDelimitedData(files);
     }
 
-    private static void loadData(String partitionName, String predicateName, DataStore dataStore, String path, String relativeDir) {
+    private static DelimitedDataFile getDataFile(String partitionName, String predicateName, DataStore dataStore, String path, String relativeDir) {
         Predicate rawPredicate = Predicate.get(predicateName);
         if (rawPredicate == null) {
             throw new IllegalArgumentException(String.format("Non-existent predicate (%s) declared in the %s partition without first being defined in the 'predicates' section of the data file.", predicateName, partitionName));
@@ -157,9 +161,7 @@ public class DataLoader {
         Partition partition = dataStore.getPartition(partitionName);
         StandardPredicate predicate = StandardPredicate.get(predicateName);
 
-        log.debug("Loading data for {} ({} partition)", predicateName, partitionName);
-        Inserter insert = dataStore.getInserter(predicate, partition);
-        insert.loadDelimitedDataAutomatic(makePath(relativeDir, path));
+        return new DelimitedDataFile(predicate, partition, makePath(relativeDir, path));
     }
 
     private static Set<StandardPredicate> parsePredicates(YAMLConfiguration yaml, boolean useIntIds, DataStore dataStore) {
@@ -41,6 +41,7 @@ import org.linqs.psl.model.rule.WeightedGroundRule;
 import org.linqs.psl.model.term.Constant;
 import org.linqs.psl.parser.ModelLoader;
 import org.linqs.psl.parser.CommandLineLoader;
+import org.linqs.psl.reasoner.term.TermGeneratingGroundRuleStore;
 import org.linqs.psl.util.Reflection;
 import org.linqs.psl.util.StringUtils;
 import org.linqs.psl.util.Version;
@@ -194,6 +195,16 @@ public class Launcher {
         InferenceApplication inferenceApplication =
                 InferenceApplication.getInferenceApplication(inferenceName, model, database);
 
+        // Fused grounding turns ground rules into terms without keeping them, so there is nothing to output.
+        if ((parsedOptions.hasOption(CommandLineLoader.OPTION_OUTPUT_GROUND_RULES_LONG)
+                    || parsedOptions.hasOption(CommandLineLoader.OPTION_OUTPUT_SATISFACTION_LONG))
+                && inferenceApplication.getGroundRuleStore() instanceof TermGeneratingGroundRuleStore) {
+            throw new IllegalArgumentException(String.format(
+                    "Ground rules cannot be output (--%s or --%s) when grounding directly into terms (%s is true).",
+                    CommandLineLoader.OPTION_OUTPUT_GROUND_RULES_LONG, CommandLineLoader.OPTION_OUTPUT_SATISFACTION_LONG,
+                    InferenceApplication.FUSE_GROUNDING_KEY));
+        }
+
         if (parsedOptions.hasOption(CommandLineLoader.OPTION_OUTPUT_GROUND_RULES_LONG)) {
             String path = parsedOptions.getOptionValue(CommandLineLoader.OPTION_OUTPUT_GROUND_RULES_LONG);
             outputGroundRules(inferenceApplication.getGroundRuleStore(), path, false);
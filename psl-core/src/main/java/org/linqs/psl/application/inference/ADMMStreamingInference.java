@@ -0,0 +1,76 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2019 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.application.inference;
+
+import org.linqs.psl.database.Database;
+import org.linqs.psl.grounding.GroundRuleStore;
+import org.linqs.psl.model.Model;
+import org.linqs.psl.model.atom.RandomVariableAtom;
+import org.linqs.psl.reasoner.Reasoner;
+import org.linqs.psl.reasoner.admm.ADMMReasoner;
+import org.linqs.psl.reasoner.admm.term.ADMMStreamingObjectiveTerm;
+import org.linqs.psl.reasoner.admm.term.ADMMStreamingTermStore;
+import org.linqs.psl.reasoner.term.TermGenerator;
+import org.linqs.psl.reasoner.term.TermStore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * MPE inference with ADMM, but with the terms (and their local variables) paged to disk.
+ * Only the consensus values are kept in memory.
+ */
+public class ADMMStreamingInference extends InferenceApplication {
+    private static final Logger log = LoggerFactory.getLogger(ADMMStreamingInference.class);
+
+    public ADMMStreamingInference(Model model, Database db) {
+        super(model, db);
+    }
+
+    @Override
+    protected Reasoner createReasoner() {
+        return new ADMMReasoner();
+    }
+
+    @Override
+    protected TermStore<ADMMStreamingObjectiveTerm, RandomVariableAtom> createTermStore() {
+        return new ADMMStreamingTermStore(model.getRules(), atomManager);
+    }
+
+    @Override
+    protected GroundRuleStore createGroundRuleStore() {
+        return null;
+    }
+
+    @Override
+    protected TermGenerator<ADMMStreamingObjectiveTerm, RandomVariableAtom> createTermGenerator() {
+        return null;
+    }
+
+    @Override
+    public void close() {
+        termStore.close();
+        reasoner.close();
+
+        termStore = null;
+        reasoner = null;
+
+        model = null;
+        db = null;
+    }
+}
@@ -72,6 +72,20 @@ public abstract class InferenceApplication implements ModelApplication {
     public static final String TERM_GENERATOR_KEY = CONFIG_PREFIX + ".termgenerator";
     public static final String TERM_GENERATOR_DEFAULT = ADMMTermGenerator.class.getName();
 
+    /**
+     * Turn ground rules into terms as soon as they are grounded, instead of keeping all the ground rules
+     * in a GroundRuleStore and generating the terms afterwards.
+     * This lowers the peak memory (the ground rules and terms are never all held together),
+     * but the ground rules will not be available after grounding (see TermGeneratingGroundRuleStore),
+     * only their counts.
+     * So, this cannot be used with anything that reads the ground rules back,
+     * e.g. the CLI's --output-ground-rules and --output-satisfaction (which will fail fast).
+     * Only applies to inference methods that ground everything up front (e.g. MPEInference)
+     * and requires a HyperplaneTermGenerator.
+     */
+    public static final String FUSE_GROUNDING_KEY = CONFIG_PREFIX + ".fusegrounding";
+    public static final boolean FUSE_GROUNDING_DEFAULT = false;
+
     protected Model model;
     protected Database db;
     protected Reasoner reasoner;
@@ -99,8 +113,8 @@ public abstract class InferenceApplication implements ModelApplication {
 
         reasoner = createReasoner();
         termStore = createTermStore();
-        groundRuleStore = createGroundRuleStore();
         termGenerator = createTermGenerator();
+        groundRuleStore = createGroundRuleStore();
 
         termStore.ensureVariableCapacity(atomManager.getCachedRVACount());
 
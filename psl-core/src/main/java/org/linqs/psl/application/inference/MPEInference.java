@@ -17,6 +17,7 @@
  */
 package org.linqs.psl.application.inference;
 
+import org.linqs.psl.config.Config;
 import org.linqs.psl.database.Database;
 import org.linqs.psl.database.atom.PersistedAtomManager;
 import org.linqs.psl.grounding.GroundRuleStore;
@@ -24,6 +25,11 @@ import org.linqs.psl.grounding.GroundRules;
 import org.linqs.psl.grounding.Grounding;
 import org.linqs.psl.model.Model;
 import org.linqs.psl.reasoner.admm.term.ADMMTermStore;
+import org.linqs.psl.reasoner.term.HyperplaneTermGenerator;
+import org.linqs.psl.reasoner.term.ReasonerLocalVariable;
+import org.linqs.psl.reasoner.term.ReasonerTerm;
+import org.linqs.psl.reasoner.term.TermGeneratingGroundRuleStore;
+import org.linqs.psl.reasoner.term.TermStore;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,8 +49,50 @@ public class MPEInference extends InferenceApplication {
         super(model, db);
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    protected GroundRuleStore createGroundRuleStore() {
+        if (!Config.getBoolean(FUSE_GROUNDING_KEY, FUSE_GROUNDING_DEFAULT)) {
+            return super.createGroundRuleStore();
+        }
+
+        // Check everything that fused grounding cannot work with now, instead of failing partway through (or after) grounding.
+        if (Config.getString(GROUND_RULE_STORE_KEY, null) != null) {
+            throw new IllegalArgumentException(String.format(
+                    "Fused grounding (%s) does not keep ground rules, so a ground rule store cannot also be configured (%s = %s).",
+                    FUSE_GROUNDING_KEY, GROUND_RULE_STORE_KEY, Config.getString(GROUND_RULE_STORE_KEY, null)));
+        }
+
+        if (!(termGenerator instanceof HyperplaneTermGenerator)) {
+            throw new IllegalArgumentException(String.format(
+                    "Fused grounding (%s) requires a HyperplaneTermGenerator, found: %s.",
+                    FUSE_GROUNDING_KEY, termGenerator.getClass().getName()));
+        }
+
+        // Nothing else holds onto the ground rules, so do not let the terms keep them alive.
+        if (termStore instanceof ADMMTermStore) {
+            ((ADMMTermStore)termStore).setKeepGroundRules(false);
+        }
+
+        // The term generator and store are only typed as raw fields, so pin them to the base term and variable types.
+        HyperplaneTermGenerator<ReasonerTerm, ReasonerLocalVariable> hyperplaneTermGenerator =
+                (HyperplaneTermGenerator<ReasonerTerm, ReasonerLocalVariable>)termGenerator;
+        TermStore<ReasonerTerm, ReasonerLocalVariable> typedTermStore = (TermStore<ReasonerTerm, ReasonerLocalVariable>)termStore;
+
+        return new TermGeneratingGroundRuleStore<ReasonerTerm, ReasonerLocalVariable>(hyperplaneTermGenerator, typedTermStore);
+    }
+
     @Override
     protected void completeInitialize() {
+        if (groundRuleStore instanceof TermGeneratingGroundRuleStore) {
+            log.info("Grounding out model (directly into terms).");
+            int groundCount = Grounding.groundAll(model, atomManager, groundRuleStore);
+            log.info("Grounding complete.");
+
+            log.debug("Generated {} objective terms from {} ground rules.", termStore.size(), groundCount);
+            return;
+        }
+
         log.info("Grounding out model.");
         int groundCount = Grounding.groundAll(model, atomManager, groundRuleStore);
         log.info("Grounding complete.");
@@ -143,6 +143,14 @@ public abstract class WeightLearningApplication implements ModelApplication {
 
     private boolean groundModelInit;
 
+    /**
+     * The weights of the mutable rules that the terms in the (latent) term store currently reflect.
+     * Corresponds 1-1 with mutableRules.
+     * When the weights change, the terms will be updated in place if possible (instead of regenerated).
+     */
+    private double[] termWeights;
+    private double[] latentTermWeights;
+
     /**
      * Flags to track if the current variable configuration is an MPE state.
      * This will get set to true when computeMPEState is called,
@@ -216,7 +224,8 @@ public abstract class WeightLearningApplication implements ModelApplication {
             int iterations = (int)Math.ceil(maxIterations * budget);
             ((ADMMReasoner)reasoner).setMaxIter((int)Math.max(MIN_ADMM_STEPS, iterations));
 
-            if (termStore instanceof ADMMTermStore) {
+            // A warm starting reasoner wants to keep the previous local variables.
+            if (termStore instanceof ADMMTermStore && !((ADMMReasoner)reasoner).getWarmStart()) {
                 ((ADMMTermStore)termStore).resetLocalVairables();
             }
         }
@@ -313,6 +322,9 @@ public abstract class WeightLearningApplication implements ModelApplication {
         this.atomManager = atomManager;
         this.trainingMap = trainingMap;
 
+        // The terms were generated with the current weights.
+        termWeights = getCurrentWeights();
+
         if (Config.getBoolean(RANDOM_WEIGHTS_KEY, RANDOM_WEIGHTS_DEFAULT)) {
             initRandomWeights();
         }
@@ -360,6 +372,8 @@ public abstract class WeightLearningApplication implements ModelApplication {
         @SuppressWarnings("unchecked")
         int termCount = termGenerator.generateTerms(latentGroundRuleStore, latentTermStore);
         log.debug("Generated {} latent objective terms from {} ground rules.", termCount, groundCount);
+
+        latentTermWeights = getCurrentWeights();
     }
 
     @SuppressWarnings("unchecked")
@@ -368,9 +382,7 @@ public abstract class WeightLearningApplication implements ModelApplication {
             return;
         }
 
-        termStore.clear();
-        termStore.ensureVariableCapacity(atomManager.getCachedRVACount());
-        termGenerator.generateTerms(groundRuleStore, termStore);
+        updateTerms(groundRuleStore, termStore, termWeights);
 
         reasoner.optimize(termStore);
 
@@ -383,15 +395,68 @@ public abstract class WeightLearningApplication implements ModelApplication {
             return;
         }
 
-        termStore.clear();
-        termStore.ensureVariableCapacity(atomManager.getCachedRVACount());
-        termGenerator.generateTerms(groundRuleStore, termStore);
+        updateTerms(latentGroundRuleStore, latentTermStore, latentTermWeights);
 
         reasoner.optimize(latentTermStore);
 
         inLatentMPEState = true;
     }
 
+    /**
+     * Bring the terms in a term store up-to-date with the current weights of the mutable rules.
+     * Terms are updated in place when only the weights changed,
+     * and are only fully regenerated when the structure of the terms changed
+     * (or the term store does not support in-place updates).
+     *
+     * @param store the term store that was populated from |ruleStore|.
+     * @param generatedWeights the weights that the terms in |store| currently reflect.
+     *  Will be updated to the current weights.
+     */
+    @SuppressWarnings("unchecked")
+    private void updateTerms(GroundRuleStore ruleStore, TermStore<?, ?> store, double[] generatedWeights) {
+        List<WeightedRule> changedRules = new ArrayList<WeightedRule>();
+        double[] oldWeights = new double[mutableRules.size()];
+
+        for (int i = 0; i < mutableRules.size(); i++) {
+            WeightedRule rule = mutableRules.get(i);
+            if (rule.getWeight() == generatedWeights[i]) {
+                continue;
+            }
+
+            oldWeights[changedRules.size()] = generatedWeights[i];
+            changedRules.add(rule);
+        }
+
+        // All the changed rules are handed over at once so the store only needs a single pass over its terms.
+        boolean regenerate = false;
+        if (changedRules.size() > 0) {
+            regenerate = !termGenerator.updateWeights(changedRules, oldWeights, store);
+        }
+
+        if (regenerate) {
+            log.trace("Regenerating terms for weight change.");
+
+            store.clear();
+            store.ensureVariableCapacity(atomManager.getCachedRVACount());
+            termGenerator.generateTerms(ruleStore, store);
+        } else if (changedRules.size() > 0) {
+            log.trace("Updated terms in place for {} rule weight changes.", changedRules.size());
+        }
+
+        for (int i = 0; i < mutableRules.size(); i++) {
+            generatedWeights[i] = mutableRules.get(i).getWeight();
+        }
+    }
+
+    private double[] getCurrentWeights() {
+        double[] weights = new double[mutableRules.size()];
+        for (int i = 0; i < mutableRules.size(); i++) {
+            weights[i] = mutableRules.get(i).getWeight();
+        }
+
+        return weights;
+    }
+
     /**
      * Compute the incompatibility in the model using the labels (truth values) from the observed (truth) database.
      * This method is responsible for filling the observedIncompatibility member variable.
@@ -22,6 +22,7 @@ import org.linqs.psl.config.Config;
 import org.linqs.psl.database.Database;
 import org.linqs.psl.model.Model;
 import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.reasoner.admm.ADMMReasoner;
 import org.linqs.psl.reasoner.admm.term.ADMMTermStore;
 
 import org.slf4j.Logger;
@@ -153,7 +154,9 @@ public abstract class BaseGridSearch extends WeightLearningApplication {
         // Reset the RVAs to default values.
         setDefaultRandomVariables();
 
-        if (termStore instanceof ADMMTermStore) {
+        // A warm starting reasoner wants to keep the previous local variables.
+        boolean warmStart = (reasoner instanceof ADMMReasoner) && ((ADMMReasoner)reasoner).getWarmStart();
+        if (termStore instanceof ADMMTermStore && !warmStart) {
             ((ADMMTermStore)termStore).resetLocalVairables();
         }
 
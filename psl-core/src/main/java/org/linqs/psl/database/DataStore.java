@@ -18,10 +18,12 @@
 package org.linqs.psl.database;
 
 import org.linqs.psl.database.Partition;
+import org.linqs.psl.database.loading.DelimitedDataFile;
 import org.linqs.psl.database.loading.Inserter;
 import org.linqs.psl.model.atom.GroundAtom;
 import org.linqs.psl.model.predicate.StandardPredicate;
 
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -99,6 +101,14 @@ public interface DataStore {
      */
     public Inserter getInserter(StandardPredicate predicate, Partition partition);
 
+    /**
+     * Load several delimited data files (like Inserter.loadDelimitedDataAutomatic()).
+     * Files for different predicates may be loaded concurrently, but files for the same predicate are loaded in order.
+     *
+     * @throws IllegalArgumentException if any partition is in use or any predicate is not registered
+     */
+    public void loadDelimitedData(List<DelimitedDataFile> files);
+
     /**
      * Returns the set of StandardPredicates registered with this DataStore.
      */
@@ -143,6 +143,15 @@ public abstract class Database implements ReadableDatabase, WritableDatabase {
 
     public abstract GroundAtom getAtom(StandardPredicate predicate, boolean create, Constant... arguments);
 
+    /**
+     * Hint that getAtom() is about to be called for each of these arguments.
+     * Databases that can look up many atoms at once should do so here so that
+     * the following getAtom() calls do not each need a separate lookup.
+     * By default, nothing is done.
+     */
+    public void prefetchAtoms(StandardPredicate predicate, List<Constant[]> arguments) {
+    }
+
     public boolean hasAtom(StandardPredicate predicate, Constant... arguments) {
         return getAtom(predicate, false, arguments) != null;
     }
@@ -18,6 +18,7 @@
 package org.linqs.psl.database.atom;
 
 import org.linqs.psl.database.Database;
+import org.linqs.psl.model.atom.Atom;
 import org.linqs.psl.model.atom.GroundAtom;
 import org.linqs.psl.model.atom.ObservedAtom;
 import org.linqs.psl.model.atom.QueryAtom;
@@ -25,11 +26,16 @@ import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.predicate.Predicate;
 import org.linqs.psl.model.predicate.StandardPredicate;
 import org.linqs.psl.model.term.Constant;
+import org.linqs.psl.model.term.Term;
+import org.linqs.psl.model.term.UniqueIntID;
 import org.linqs.psl.util.IteratorUtils;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Storage for {@link GroundAtom GroundAtoms} so that a {@link Database}
@@ -37,19 +43,19 @@ import java.util.Map;
  *
  * Also serves as the factory for GroundAtoms for a Database.
  *
- * This class is not thread-safe, but does have some guarentees.
- * All write operations (remove and instantiation) are safe.
- * Read operations do not attempt any thread safety because of their heavy use.
- * However, any call to getCachedAtom() returning a null should be follwed up with an instantiation call.
- * These calls are thread-safe and will check the cache before creation.
+ * Atoms are kept in a concurrent map per predicate, so all operations are thread-safe
+ * and reads never block.
+ * Atoms whose arguments are one or two UniqueIntIDs are keyed by their ids packed into a single long.
+ * All other atoms are keyed by the GroundAtom itself (atoms are equal to QueryAtoms with the same predicate and arguments),
+ * so no extra key object is kept for them either.
  */
 public class AtomCache {
     protected final Database db;
 
-    protected final Map<QueryAtom, GroundAtom> cache;
+    protected final Map<Predicate, Map<Object, GroundAtom>> cache;
 
     // The number of random variable atoms that have been instantiated.
-    private int rvaCount;
+    private final AtomicInteger rvaCount;
 
     /**
      * Constructs a new AtomCache for a Database.
@@ -58,8 +64,8 @@ public class AtomCache {
      */
     public AtomCache(Database db) {
         this.db = db;
-        this.cache = new HashMap<QueryAtom, GroundAtom>();
-        this.rvaCount = 0;
+        this.cache = new ConcurrentHashMap<Predicate, Map<Object, GroundAtom>>();
+        this.rvaCount = new AtomicInteger(0);
     }
 
     /**
@@ -70,18 +76,28 @@ public class AtomCache {
      * @return the requested GroundAtom, or NULL if it is not cached
      */
     public GroundAtom getCachedAtom(QueryAtom atom) {
-        return cache.get(atom);
+        Map<Object, GroundAtom> atoms = cache.get(atom.getPredicate());
+        if (atoms == null) {
+            return null;
+        }
+
+        return atoms.get(getKey(atom));
     }
 
     /**
      * @return all GroundAtoms in this AtomCache
      */
     public Iterable<GroundAtom> getCachedAtoms() {
-        return cache.values();
+        List<Iterable<GroundAtom>> predicateAtoms = new ArrayList<Iterable<GroundAtom>>(cache.size());
+        for (Map<Object, GroundAtom> atoms : cache.values()) {
+            predicateAtoms.add(atoms.values());
+        }
+
+        return IteratorUtils.join(predicateAtoms);
     }
 
     public int getRVACount() {
-        return rvaCount;
+        return rvaCount.get();
     }
 
     /**
@@ -91,12 +107,12 @@ public class AtomCache {
      * @return the cached Atoms
      */
     public Iterable<GroundAtom> getCachedAtoms(final Predicate predicate) {
-        return IteratorUtils.filter(cache.values(), new IteratorUtils.FilterFunction<GroundAtom>() {
-            @Override
-            public boolean keep(GroundAtom atom) {
-                return atom.getPredicate().equals(predicate);
-            }
-        });
+        Map<Object, GroundAtom> atoms = cache.get(predicate);
+        if (atoms == null) {
+            return Collections.<GroundAtom>emptyList();
+        }
+
+        return atoms.values();
     }
 
     /**
@@ -104,32 +120,36 @@ public class AtomCache {
      * @param qAtom the Atom to remove
      * @return whether an atom was removed from the cache
      */
-    public synchronized boolean removeCachedAtom(QueryAtom qAtom) {
-        if (cache.containsKey(qAtom)) {
-            GroundAtom atom = cache.remove(qAtom);
+    public boolean removeCachedAtom(QueryAtom qAtom) {
+        Map<Object, GroundAtom> atoms = cache.get(qAtom.getPredicate());
+        if (atoms == null) {
+            return false;
+        }
 
-            if (atom instanceof RandomVariableAtom) {
-                rvaCount--;
-            }
+        GroundAtom atom = atoms.remove(getKey(qAtom));
+        if (atom == null) {
+            return false;
+        }
 
-            return true;
+        if (atom instanceof RandomVariableAtom) {
+            rvaCount.decrementAndGet();
         }
 
-        return false;
+        return true;
     }
 
     /**
      * @return all ObservedAtoms in this AtomCache
      */
     public Iterable<ObservedAtom> getCachedObservedAtoms() {
-        return IteratorUtils.filterClass(cache.values(), ObservedAtom.class);
+        return IteratorUtils.filterClass(getCachedAtoms(), ObservedAtom.class);
     }
 
     /**
      * @return all RandomVariableAtoms in this AtomCache
      */
     public Iterable<RandomVariableAtom> getCachedRandomVariableAtoms() {
-        return IteratorUtils.filterClass(cache.values(), RandomVariableAtom.class);
+        return IteratorUtils.filterClass(getCachedAtoms(), RandomVariableAtom.class);
     }
 
     /**
@@ -139,31 +159,28 @@ public class AtomCache {
      * To retrieve a GroundAtom, all others should use Database.getAtom()
      * or AtomManager.getAtom().
      *
-     * Further, this method should only be called after ensuring that the Atom
-     * is not already in this AtomCache using {@link #getCachedAtom(QueryAtom)}.
+     * If the atom is already in this AtomCache (e.g. another thread instantiated it first),
+     * then the cached atom is returned.
      *
      * @param predicate the Predicate of the Atom
      * @param args the arguments to this Atom
      * @param value the Atom's truth value
      * @return the new ObservedAtom
      */
-    public synchronized ObservedAtom instantiateObservedAtom(Predicate predicate, Constant[] args, float value) {
-        QueryAtom key = new QueryAtom(predicate, args);
-
-        // Always check the cache before making new atoms.
-        if (cache.containsKey(key)) {
-            if (!(cache.get(key) instanceof ObservedAtom)) {
-                throw new IllegalStateException("Asked to instantiate an observed" +
-                        " atom that already exists as a random variable atom (target): " + key);
-            }
+    public ObservedAtom instantiateObservedAtom(Predicate predicate, Constant[] args, float value) {
+        ObservedAtom atom = new ObservedAtom(predicate, args, value);
 
-            return (ObservedAtom)cache.get(key);
+        GroundAtom cachedAtom = getPredicateAtoms(predicate).putIfAbsent(getKey(atom), atom);
+        if (cachedAtom == null) {
+            return atom;
         }
 
-        ObservedAtom atom = new ObservedAtom(predicate, args, value);
-        cache.put(key, atom);
+        if (!(cachedAtom instanceof ObservedAtom)) {
+            throw new IllegalStateException("Asked to instantiate an observed" +
+                    " atom that already exists as a random variable atom (target): " + cachedAtom);
+        }
 
-        return atom;
+        return (ObservedAtom)cachedAtom;
     }
 
     /**
@@ -173,31 +190,66 @@ public class AtomCache {
      * To retrieve a GroundAtom, all others should use Database.getAtom()
      * or AtomManager.getAtom().
      *
-     * Further, this method should only be called after ensuring that the Atom
-     * is not already in this AtomCache using {@link #getCachedAtom(QueryAtom)}.
+     * If the atom is already in this AtomCache (e.g. another thread instantiated it first),
+     * then the cached atom is returned.
      *
      * @param predicate the Predicate of the Atom
      * @param args the arguments to this Atom
      * @param value the Atom's truth value
      * @return the new RandomVariableAtom
      */
-    public synchronized RandomVariableAtom instantiateRandomVariableAtom(StandardPredicate predicate, Constant[] args, float value) {
-        QueryAtom key = new QueryAtom(predicate, args);
-
-        // Always check the cache before making new atoms.
-        if (cache.containsKey(key)) {
-            if (!(cache.get(key) instanceof RandomVariableAtom)) {
-                throw new IllegalStateException("Asked to instantiate a random variable" +
-                        " atom (target) that already exists as an observed atom: " + key);
-            }
+    public RandomVariableAtom instantiateRandomVariableAtom(StandardPredicate predicate, Constant[] args, float value) {
+        RandomVariableAtom atom = new RandomVariableAtom(predicate, args, value);
 
-            return (RandomVariableAtom)cache.get(key);
+        GroundAtom cachedAtom = getPredicateAtoms(predicate).putIfAbsent(getKey(atom), atom);
+        if (cachedAtom == null) {
+            rvaCount.incrementAndGet();
+            return atom;
         }
 
-        RandomVariableAtom atom = new RandomVariableAtom(predicate, args, value);
-        cache.put(key, atom);
-        rvaCount++;
+        if (!(cachedAtom instanceof RandomVariableAtom)) {
+            throw new IllegalStateException("Asked to instantiate a random variable" +
+                    " atom (target) that already exists as an observed atom: " + cachedAtom);
+        }
+
+        return (RandomVariableAtom)cachedAtom;
+    }
+
+    private Map<Object, GroundAtom> getPredicateAtoms(Predicate predicate) {
+        Map<Object, GroundAtom> atoms = cache.get(predicate);
+        if (atoms != null) {
+            return atoms;
+        }
+
+        atoms = new ConcurrentHashMap<Object, GroundAtom>();
+        Map<Object, GroundAtom> existingAtoms = cache.putIfAbsent(predicate, atoms);
+        if (existingAtoms != null) {
+            return existingAtoms;
+        }
+
+        return atoms;
+    }
+
+    /**
+     * Get the key for an atom (within its predicate's map).
+     * If all the arguments are UniqueIntIDs (and there are at most two), then the ids are packed into a long.
+     * Otherwise, the atom itself is the key.
+     */
+    private static Object getKey(Atom atom) {
+        Term[] arguments = atom.getArguments();
+        if (arguments.length == 0 || arguments.length > 2) {
+            return atom;
+        }
+
+        long key = 0;
+        for (Term argument : arguments) {
+            if (!(argument instanceof UniqueIntID)) {
+                return atom;
+            }
+
+            key = (key << 32) | (((UniqueIntID)argument).getID() & 0xFFFFFFFFL);
+        }
 
-        return atom;
+        return Long.valueOf(key);
     }
 }
@@ -0,0 +1,64 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2019 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.database.loading;
+
+import org.linqs.psl.database.Partition;
+import org.linqs.psl.model.predicate.StandardPredicate;
+
+/**
+ * A delimited data file to be loaded into a predicate/partition
+ * (see Inserter.loadDelimitedDataAutomatic()).
+ */
+public class DelimitedDataFile {
+    private final StandardPredicate predicate;
+    private final Partition partition;
+    private final String path;
+    private final String delimiter;
+
+    public DelimitedDataFile(StandardPredicate predicate, Partition partition, String path) {
+        this(predicate, partition, path, Inserter.DEFAULT_DELIMITER);
+    }
+
+    public DelimitedDataFile(StandardPredicate predicate, Partition partition, String path, String delimiter) {
+        this.predicate = predicate;
+        this.partition = partition;
+        this.path = path;
+        this.delimiter = delimiter;
+    }
+
+    public StandardPredicate getPredicate() {
+        return predicate;
+    }
+
+    public Partition getPartition() {
+        return partition;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    @Override
+    public String toString() {
+        return predicate.getName() + " (" + partition + "): " + path;
+    }
+}
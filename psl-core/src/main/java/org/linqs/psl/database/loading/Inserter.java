@@ -81,7 +81,7 @@ public abstract class Inserter {
     }
 
     public void loadDelimitedData(String path, String delimiter) {
-        if (supportsBulkCopy()) {
+        if (supportsBulkCopy() && delimiter.length() == 1) {
             bulkCopy(path, delimiter, false);
             return;
         }
@@ -98,7 +98,7 @@ public abstract class Inserter {
     }
 
     public void loadDelimitedDataTruth(String path, String delimiter) {
-        if (supportsBulkCopy()) {
+        if (supportsBulkCopy() && delimiter.length() == 1) {
             bulkCopy(path, delimiter, true);
             return;
         }
@@ -197,6 +197,7 @@ public abstract class Inserter {
 
     /**
      * Import the file directly into the database.
+     * Bulk copies are only used for single character delimiters.
      */
     public abstract void bulkCopy(String path, String delimiter, boolean hasTruth);
 
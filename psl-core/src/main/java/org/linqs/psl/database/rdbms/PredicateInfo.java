@@ -26,6 +26,7 @@ import org.linqs.psl.util.ListUtils;
 import org.linqs.psl.util.StringUtils;
 
 import com.healthmarketscience.sqlbuilder.BinaryCondition;
+import com.healthmarketscience.sqlbuilder.ComboCondition;
 import com.healthmarketscience.sqlbuilder.CreateIndexQuery;
 import com.healthmarketscience.sqlbuilder.CreateTableQuery;
 import com.healthmarketscience.sqlbuilder.CustomSql;
@@ -43,6 +44,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -157,6 +159,15 @@ public class PredicateInfo {
         return prepareSQL(connection, buildQueryStatement(readPartitions));
     }
 
+    /**
+     * Create a statement that looks up atomCount atoms at once.
+     * Each atom's arguments are set in order, starting at parameter 1.
+     * Result columns are in the same order as createQueryAllStatement().
+     */
+    public PreparedStatement createPrefetchStatement(Connection connection, List<Integer> readPartitions, int atomCount) {
+        return prepareSQL(connection, buildPrefetchStatement(readPartitions, atomCount));
+    }
+
     /**
      * Create a prepared statement that upserts.
      * The variables left to set in the query are the partition, value, and predciate arguments.
@@ -165,6 +176,38 @@ public class PredicateInfo {
         return prepareSQL(connection, buildUpsertStatement(dbDriver));
     }
 
+    /**
+     * Get the columns used in upserts (in order): partition, value, arguments.
+     */
+    public List<String> upsertColumns() {
+        return Arrays.asList(getUpsertColumns());
+    }
+
+    /**
+     * Get the SQL to create an empty temporary table with the same columns used in upserts.
+     * Temporary tables are only visible to the connection that creates them.
+     */
+    public String getCreateStagingTableSQL(String stagingTableName) {
+        return String.format("CREATE LOCAL TEMPORARY TABLE %s AS SELECT %s FROM %s WHERE 1 = 0",
+                stagingTableName, StringUtils.join(", ", (Object[])getUpsertColumns()), tableName);
+    }
+
+    /**
+     * Create a prepared statement that inserts into a staging table (see getCreateStagingTableSQL()).
+     * The variables left to set in the query are the partition, value, and predciate arguments.
+     */
+    public PreparedStatement createStagingInsertStatement(Connection connection, String stagingTableName) {
+        return prepareSQL(connection, buildStagingInsertStatement(stagingTableName));
+    }
+
+    /**
+     * Create a prepared statement that upserts all the rows in a staging table (see getCreateStagingTableSQL()).
+     * No query parameters need filling.
+     */
+    public PreparedStatement createStagedUpsertStatement(Connection connection, DatabaseDriver dbDriver, String stagingTableName) {
+        return prepareSQL(connection, buildStagedUpsertStatement(dbDriver, stagingTableName));
+    }
+
     /**
      * Create a prepared statement that deletes ground atoms that match all the arguments.
      * Note that we will only delete from the write partition.
@@ -209,6 +252,9 @@ public class PredicateInfo {
         createTable.addCustomColumns(PARTITION_COLUMN_NAME + " INT NOT NULL");
         createTable.addCustomColumns(VALUE_COLUMN_NAME + " " + dbDriver.getDoubleTypeName() + " NOT NULL DEFAULT 1.0");
 
+        // The usual insert paths check truth values, but bulk copies go straight into the table.
+        createTable.addCustomConstraints(String.format("CHECK(%s >= 0.0 AND %s <= 1.0)", VALUE_COLUMN_NAME, VALUE_COLUMN_NAME));
+
         // Now add the variable columns.
         List<String> uniqueColumns = new ArrayList<String>();
 
@@ -257,6 +303,40 @@ public class PredicateInfo {
         }
     }
 
+    /**
+     * Forget any cached count and stats (e.g. after data has been loaded).
+     */
+    public synchronized void clearStats() {
+        count = -1;
+        tableStats = null;
+    }
+
+    /**
+     * Drop the indexes created by index() (if they exist).
+     * Uniqueness constraints are part of the table and will remain.
+     */
+    public synchronized void dropIndexes(Connection connection) {
+        if (!indexed) {
+            return;
+        }
+        indexed = false;
+
+        List<String> indexNames = new ArrayList<String>();
+        indexNames.add(getIndexName("GROUNDING"));
+        for (String colName : argCols) {
+            indexNames.add(getIndexName(colName));
+        }
+        indexNames.add(getIndexName(PARTITION_COLUMN_NAME));
+
+        try (Statement statement = connection.createStatement()) {
+            for (String indexName : indexNames) {
+                statement.executeUpdate("DROP INDEX IF EXISTS " + indexName);
+            }
+        } catch(SQLException ex) {
+            throw new RuntimeException("Error dropping indexes on table for predicate: " + predicate.getName(), ex);
+        }
+    }
+
     public synchronized void index(Connection connection, DatabaseDriver dbDriver) {
         if (indexed) {
             return;
@@ -266,7 +346,7 @@ public class PredicateInfo {
         List<String> indexes = new ArrayList<String>();
 
         // The primary index used for grounding.
-        CreateIndexQuery createIndex = new CreateIndexQuery(tableName, "IX_" + tableName + "_GROUNDING");
+        CreateIndexQuery createIndex = new CreateIndexQuery(tableName, getIndexName("GROUNDING"));
 
         // The column order is very important: data columns, then partition.
         for (String colName : argCols) {
@@ -278,13 +358,13 @@ public class PredicateInfo {
         // Create simple index on each column.
         // Often the query planner will choose a small index over the full one for specific parts of the query.
         for (String colName : argCols) {
-            createIndex = new CreateIndexQuery(tableName, "IX_" + tableName + "_" + colName);
+            createIndex = new CreateIndexQuery(tableName, getIndexName(colName));
             createIndex.addCustomColumns(colName);
             indexes.add(createIndex.validate().toString());
         }
 
         // Include the partition.
-        createIndex = new CreateIndexQuery(tableName, "IX_" + tableName + "_" + PARTITION_COLUMN_NAME);
+        createIndex = new CreateIndexQuery(tableName, getIndexName(PARTITION_COLUMN_NAME));
         createIndex.addCustomColumns(PARTITION_COLUMN_NAME);
         indexes.add(createIndex.validate().toString());
 
@@ -297,6 +377,10 @@ public class PredicateInfo {
         }
     }
 
+    private String getIndexName(String suffix) {
+        return "IX_" + tableName + "_" + suffix;
+    }
+
     private synchronized String buildCountAllStatement(List<Integer> partitions) {
         String key = "countAll_" + partitions.toString();
         if (cachedSQL.containsKey(key)) {
@@ -380,31 +464,109 @@ public class PredicateInfo {
         return sql;
     }
 
+    private synchronized String buildPrefetchStatement(List<Integer> readPartitions, int atomCount) {
+        String key = "prefetch_" + readPartitions.toString() + "_" + atomCount;
+        if (cachedSQL.containsKey(key)) {
+            return cachedSQL.get(key);
+        }
+
+        SelectQuery query = new SelectQuery();
+        QueryPreparer.MultiPlaceHolder placeHolder = (new QueryPreparer()).getNewMultiPlaceHolder();
+
+        query.addCustomColumns(new CustomSql(PARTITION_COLUMN_NAME));
+        query.addCustomColumns(new CustomSql(VALUE_COLUMN_NAME));
+        for (String colName : argCols) {
+            query.addCustomColumns(new CustomSql(colName));
+        }
+
+        query.addCustomFromTable(tableName);
+        query.addCondition(new InCondition(new CustomSql(PARTITION_COLUMN_NAME), readPartitions));
+
+        ComboCondition atomConditions = ComboCondition.or();
+        for (int i = 0; i < atomCount; i++) {
+            ComboCondition argumentConditions = ComboCondition.and();
+            for (String colName : argCols) {
+                argumentConditions.addCondition(BinaryCondition.equalTo(new CustomSql(colName), placeHolder));
+            }
+            atomConditions.addCondition(argumentConditions);
+        }
+        query.addCondition(atomConditions);
+
+        String sql = query.validate().toString();
+        cachedSQL.put(key, sql);
+        return sql;
+    }
+
     private synchronized String buildUpsertStatement(DatabaseDriver dbDriver) {
         String key = "upsert";
         if (cachedSQL.containsKey(key)) {
             return cachedSQL.get(key);
         }
 
-        // Columns with data in them: partition, value, argument.
-        String[] columns = new String[2 + argCols.size()];
+        String sql = dbDriver.getUpsert(tableName, getUpsertColumns(), getUpsertKeyColumns());
+        cachedSQL.put(key, sql);
+        return sql;
+    }
 
-        // Columns to treat as a key: partition, arguments.
-        String[] keyColumns = new String[1 + argCols.size()];
+    private synchronized String buildStagedUpsertStatement(DatabaseDriver dbDriver, String stagingTableName) {
+        String key = "stagedUpsert_" + stagingTableName;
+        if (cachedSQL.containsKey(key)) {
+            return cachedSQL.get(key);
+        }
+
+        String sql = dbDriver.getUpsertFromTable(tableName, stagingTableName, getUpsertColumns(), getUpsertKeyColumns());
+        cachedSQL.put(key, sql);
+        return sql;
+    }
+
+    private synchronized String buildStagingInsertStatement(String stagingTableName) {
+        String key = "stagingInsert_" + stagingTableName;
+        if (cachedSQL.containsKey(key)) {
+            return cachedSQL.get(key);
+        }
+
+        String[] columns = getUpsertColumns();
+
+        List<String> sql = new ArrayList<String>();
+        sql.add("INSERT INTO " + stagingTableName);
+        sql.add("    (" + StringUtils.join(", ", (Object[])columns) + ")");
+        sql.add("VALUES");
+        sql.add("    (" + StringUtils.repeat("?", ", ", columns.length) + ")");
+
+        String insert = ListUtils.join("\n", sql);
+        cachedSQL.put(key, insert);
+        return insert;
+    }
+
+    /**
+     * Columns with data in them: partition, value, arguments.
+     */
+    private String[] getUpsertColumns() {
+        String[] columns = new String[2 + argCols.size()];
 
         columns[0] = PredicateInfo.PARTITION_COLUMN_NAME;
         columns[1] = PredicateInfo.VALUE_COLUMN_NAME;
 
+        for (int i = 0; i < argCols.size(); i++) {
+            columns[2 + i] = argCols.get(i);
+        }
+
+        return columns;
+    }
+
+    /**
+     * Columns to treat as a key: partition, arguments.
+     */
+    private String[] getUpsertKeyColumns() {
+        String[] keyColumns = new String[1 + argCols.size()];
+
         keyColumns[0] = PredicateInfo.PARTITION_COLUMN_NAME;
 
         for (int i = 0; i < argCols.size(); i++) {
-            columns[2 + i] = argCols.get(i);
             keyColumns[1 + i] = argCols.get(i);
         }
 
-        String sql = dbDriver.getUpsert(tableName, columns, keyColumns);
-        cachedSQL.put(key, sql);
-        return sql;
+        return keyColumns;
     }
 
     private synchronized String buildDeleteStatement(int writePartition) {
@@ -20,6 +20,7 @@ package org.linqs.psl.database.rdbms;
 import org.linqs.psl.database.DataStore;
 import org.linqs.psl.database.Database;
 import org.linqs.psl.database.Partition;
+import org.linqs.psl.database.loading.DelimitedDataFile;
 import org.linqs.psl.database.loading.Inserter;
 import org.linqs.psl.database.rdbms.driver.DatabaseDriver;
 import org.linqs.psl.model.predicate.Predicate;
@@ -36,6 +37,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -251,6 +253,72 @@ public class RDBMSDataStore implements DataStore {
         return new RDBMSInserter(this, predicates.get(predicate), partition);
     }
 
+    /**
+     * Load several delimited data files.
+     * The indexes on all the involved predicates are dropped during loading,
+     * and then rebuilt (along with the table stats) once all the data has been loaded.
+     * Different predicates are loaded in parallel (each on its own connection),
+     * while the files for a single predicate are loaded in order.
+     */
+    @Override
+    public void loadDelimitedData(List<DelimitedDataFile> files) {
+        // Get all the inserters first, so any bad predicates/partitions are reported before we change anything.
+        final Map<PredicateInfo, List<DelimitedDataFile>> predicateFiles = new LinkedHashMap<PredicateInfo, List<DelimitedDataFile>>();
+        final Map<DelimitedDataFile, Inserter> inserters = new HashMap<DelimitedDataFile, Inserter>();
+
+        for (DelimitedDataFile file : files) {
+            inserters.put(file, getInserter(file.getPredicate(), file.getPartition()));
+
+            PredicateInfo predicateInfo = predicates.get(file.getPredicate());
+            if (!predicateFiles.containsKey(predicateInfo)) {
+                predicateFiles.put(predicateInfo, new ArrayList<DelimitedDataFile>());
+            }
+            predicateFiles.get(predicateInfo).add(file);
+        }
+
+        if (predicateFiles.size() == 0) {
+            return;
+        }
+
+        log.debug("Loading {} data files for {} predicates.", files.size(), predicateFiles.size());
+        long startTime = System.currentTimeMillis();
+
+        // Drop any existing indexes, they will be rebuilt after loading.
+        try (Connection connection = getConnection()) {
+            for (PredicateInfo predicateInfo : predicateFiles.keySet()) {
+                predicateInfo.dropIndexes(connection);
+            }
+        } catch (SQLException ex) {
+            throw new RuntimeException("Unable to drop indexes for loading.", ex);
+        }
+        predicatesIndexed = false;
+
+        Parallel.foreach(predicateFiles.keySet(), new Parallel.Worker<PredicateInfo>() {
+            @Override
+            public void work(int index, PredicateInfo predicateInfo) {
+                long predicateStartTime = System.currentTimeMillis();
+
+                for (DelimitedDataFile file : predicateFiles.get(predicateInfo)) {
+                    log.trace("Loading {}", file);
+                    inserters.get(file).loadDelimitedDataAutomatic(file.getPath(), file.getDelimiter());
+                }
+
+                predicateInfo.clearStats();
+
+                log.debug("Loaded {} data files for {} in {} ms.",
+                        predicateFiles.get(predicateInfo).size(), predicateInfo.predicate(),
+                        System.currentTimeMillis() - predicateStartTime);
+            }
+        });
+
+        log.debug("Data loading complete in {} ms.", System.currentTimeMillis() - startTime);
+
+        // Rebuild the indexes and stats.
+        startTime = System.currentTimeMillis();
+        indexPredicates();
+        log.debug("Indexing after loading complete in {} ms.", System.currentTimeMillis() - startTime);
+    }
+
     @Override
     public Set<StandardPredicate> getRegisteredPredicates() {
         Set<StandardPredicate> standardPredicates = new HashSet<StandardPredicate>();
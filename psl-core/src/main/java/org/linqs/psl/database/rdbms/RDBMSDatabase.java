@@ -25,6 +25,7 @@ import org.linqs.psl.database.Partition;
 import org.linqs.psl.database.ResultList;
 import org.linqs.psl.database.QueryResultIterable;
 import org.linqs.psl.database.atom.AtomCache;
+import org.linqs.psl.database.rdbms.driver.DatabaseDriver;
 import org.linqs.psl.model.atom.GroundAtom;
 import org.linqs.psl.model.atom.ObservedAtom;
 import org.linqs.psl.model.atom.QueryAtom;
@@ -45,6 +46,7 @@ import org.linqs.psl.model.term.UniqueIntID;
 import org.linqs.psl.model.term.UniqueStringID;
 import org.linqs.psl.model.term.Variable;
 import org.linqs.psl.model.term.VariableTypeMap;
+import org.linqs.psl.util.IteratorUtils;
 import org.linqs.psl.util.Parallel;
 
 import com.healthmarketscience.sqlbuilder.BinaryCondition;
@@ -68,10 +70,12 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A view on the datastore with specific partitions activated.
@@ -86,8 +90,39 @@ public class RDBMSDatabase extends Database {
     public static final String FETCH_SIZE_KEY = CONFIG_PREFIX + ".fetchsize";
     public static final int FETCH_SIZE_DEFAULT = 500;
 
+    /**
+     * On the first cache miss for a standard predicate with at most this many atoms (in this database's partitions),
+     * load all of that predicate's atoms into the atom cache with a single query.
+     * Once a predicate has been fully loaded, any further cache miss is known to be an atom
+     * that is not in the database, so no query is issued at all.
+     * Larger predicates are left to prefetchAtoms() and single atom queries.
+     * Zero disables preloading.
+     * This assumes that the database's partitions are not modified (outside of this database) while it is open.
+     */
+    public static final String PRELOAD_MAX_SIZE_KEY = CONFIG_PREFIX + ".preloadmaxsize";
+    public static final int PRELOAD_MAX_SIZE_DEFAULT = 10000;
+
+    /**
+     * The maximum number of atoms that prefetchAtoms() will look up with a single query.
+     */
+    public static final String PREFETCH_QUERY_SIZE_KEY = CONFIG_PREFIX + ".prefetchquerysize";
+    public static final int PREFETCH_QUERY_SIZE_DEFAULT = 256;
+
+    /**
+     * When committing, any predicate with at least this many atoms will be committed by
+     * first copying all the atoms into a temporary table (using the database's bulk copy if it has one)
+     * and then upserting them all with a single statement.
+     * Smaller commits upsert each atom in JDBC batches.
+     * Zero disables staged commits.
+     */
+    public static final String BULK_COMMIT_SIZE_KEY = CONFIG_PREFIX + ".bulkcommitsize";
+    public static final int BULK_COMMIT_SIZE_DEFAULT = 10000;
+
     private static final float DEFAULT_UNOBSERVED_VALUE = 0.0f;
 
+    // Temporary tables are per-connection, so every staged commit can use the same name.
+    private static final String STAGING_TABLE_NAME = "PSL_COMMIT_STAGING";
+
     private static final String THREAD_QUERY_ATOM_KEY = RDBMSDatabase.class.getName() + "::" + QueryAtom.class.getName();
 
     /**
@@ -95,7 +130,32 @@ public class RDBMSDatabase extends Database {
      */
     private final Set<Predicate> closedPredicates;
 
+    /**
+     * Predicates that have had all their atoms (from all of this database's partitions) loaded into the cache.
+     */
+    private final Set<StandardPredicate> loadedPredicates;
+
+    /**
+     * Predicates that have already been considered for preloading (whether or not they were small enough to load).
+     */
+    private final Set<StandardPredicate> preloadCheckedPredicates;
+
+    /**
+     * A lock per predicate so that a preload only blocks the threads that need that predicate.
+     */
+    private final ConcurrentHashMap<StandardPredicate, Object> preloadLocks;
+
+    /**
+     * Atoms that prefetchAtoms() found to not be in the database, by predicate.
+     * Predicates that are fully loaded do not need any (the cache already has everything for them),
+     * and a predicate's atoms are dropped whenever its rows in the database may have changed.
+     */
+    private final ConcurrentHashMap<StandardPredicate, Set<QueryAtom>> absentAtoms;
+
     private int fetchSize;
+    private int preloadMaxSize;
+    private int prefetchQuerySize;
+    private int bulkCommitSize;
 
     public RDBMSDatabase(RDBMSDataStore parent,
             Partition write, Partition[] read,
@@ -103,6 +163,18 @@ public class RDBMSDatabase extends Database {
         super(parent, write, read);
 
         fetchSize = Config.getInt(FETCH_SIZE_KEY, FETCH_SIZE_DEFAULT);
+        preloadMaxSize = Config.getInt(PRELOAD_MAX_SIZE_KEY, PRELOAD_MAX_SIZE_DEFAULT);
+        prefetchQuerySize = Config.getInt(PREFETCH_QUERY_SIZE_KEY, PREFETCH_QUERY_SIZE_DEFAULT);
+        bulkCommitSize = Config.getInt(BULK_COMMIT_SIZE_KEY, BULK_COMMIT_SIZE_DEFAULT);
+
+        if (prefetchQuerySize < 1) {
+            throw new IllegalArgumentException("Prefetch query size must be positive, got: " + prefetchQuerySize);
+        }
+
+        loadedPredicates = Collections.newSetFromMap(new ConcurrentHashMap<StandardPredicate, Boolean>());
+        preloadCheckedPredicates = Collections.newSetFromMap(new ConcurrentHashMap<StandardPredicate, Boolean>());
+        preloadLocks = new ConcurrentHashMap<StandardPredicate, Object>();
+        absentAtoms = new ConcurrentHashMap<StandardPredicate, Set<QueryAtom>>();
 
         this.closedPredicates = new HashSet<Predicate>();
         if (closed != null) {
@@ -157,6 +229,8 @@ public class RDBMSDatabase extends Database {
             cache.removeCachedAtom(queryAtom);
         }
 
+        absentAtoms.remove(atom.getPredicate());
+
         try (
             Connection connection = getConnection();
             PreparedStatement statement = getAtomDelete(connection, ((RDBMSDataStore)parentDataStore).getPredicateInfo(atom.getPredicate()), atom.getArguments());
@@ -177,13 +251,13 @@ public class RDBMSDatabase extends Database {
     }
 
     @Override
-    public void commit(Iterable<RandomVariableAtom> atoms, int partitionId) {
+    public void commit(Iterable<RandomVariableAtom> atoms, final int partitionId) {
         if (closed) {
             throw new IllegalStateException("Cannot commit on a closed database.");
         }
 
         // Split the atoms up by predicate.
-        Map<Predicate, List<RandomVariableAtom>> atomsByPredicate = new HashMap<Predicate, List<RandomVariableAtom>>();
+        final Map<Predicate, List<RandomVariableAtom>> atomsByPredicate = new HashMap<Predicate, List<RandomVariableAtom>>();
 
         for (RandomVariableAtom atom : atoms) {
             if (!atomsByPredicate.containsKey(atom.getPredicate())) {
@@ -193,47 +267,151 @@ public class RDBMSDatabase extends Database {
             atomsByPredicate.get(atom.getPredicate()).add(atom);
         }
 
+        if (atomsByPredicate.size() == 0) {
+            return;
+        }
+
+        // Each predicate is committed on its own connection, so different predicates can go in parallel.
+        if (atomsByPredicate.size() == 1) {
+            Map.Entry<Predicate, List<RandomVariableAtom>> entry = atomsByPredicate.entrySet().iterator().next();
+            commitPredicate(entry.getKey(), entry.getValue(), partitionId);
+            return;
+        }
+
+        Parallel.foreach(atomsByPredicate.keySet(), new Parallel.Worker<Predicate>() {
+            @Override
+            public void work(int index, Predicate predicate) {
+                commitPredicate(predicate, atomsByPredicate.get(predicate), partitionId);
+            }
+        });
+    }
+
+    private void commitPredicate(Predicate predicate, List<RandomVariableAtom> atoms, int partitionId) {
+        PredicateInfo predicateInfo = ((RDBMSDataStore)parentDataStore).getPredicateInfo(predicate);
+
         try (Connection connection = getConnection()) {
-            // Upsert each predicate batch.
-            for (Map.Entry<Predicate, List<RandomVariableAtom>> entry : atomsByPredicate.entrySet()) {
-                try (PreparedStatement statement = getAtomUpsert(connection, ((RDBMSDataStore)parentDataStore).getPredicateInfo(entry.getKey()))) {
-                    int batchSize = 0;
+            if (bulkCommitSize > 0 && atoms.size() >= bulkCommitSize) {
+                stagedCommit(connection, predicateInfo, atoms, partitionId);
+            } else {
+                batchCommit(connection, predicateInfo, atoms, partitionId);
+            }
+        } catch (SQLException ex) {
+            throw new RuntimeException("Error doing commit for: " + predicate, ex);
+        }
+
+        // The committed atoms are in the database now.
+        absentAtoms.remove(predicate);
+    }
+
+    /**
+     * Upsert each atom (in JDBC batches).
+     */
+    private void batchCommit(Connection connection, PredicateInfo predicateInfo, List<RandomVariableAtom> atoms, int partitionId) {
+        try (PreparedStatement statement = getAtomUpsert(connection, predicateInfo)) {
+            int batchSize = 0;
 
-                    // Set all the upsert params.
-                    for (RandomVariableAtom atom : entry.getValue()) {
-                        // Partition
-                        statement.setInt(1, partitionId);
+            // Set all the upsert params.
+            for (RandomVariableAtom atom : atoms) {
+                setCommitParameters(statement, atom, partitionId);
 
-                        // Value
-                        statement.setDouble(2, atom.getValue());
+                statement.addBatch();
+                batchSize++;
 
-                        // Args
+                if (batchSize >= RDBMSInserter.DEFAULT_PAGE_SIZE) {
+                    statement.executeBatch();
+                    statement.clearBatch();
+                    batchSize = 0;
+                }
+            }
+
+            if (batchSize > 0) {
+                statement.executeBatch();
+                statement.clearBatch();
+            }
+            statement.clearParameters();
+        } catch (SQLException ex) {
+            throw new RuntimeException("Error doing batch commit for: " + predicateInfo.predicate(), ex);
+        }
+    }
+
+    /**
+     * Put all the atoms into a temporary staging table (using the driver's row copy if available),
+     * and then upsert all of them with a single statement.
+     */
+    private void stagedCommit(Connection connection, final PredicateInfo predicateInfo, List<RandomVariableAtom> atoms, final int partitionId) {
+        DatabaseDriver driver = ((RDBMSDataStore)parentDataStore).getDriver();
+
+        try (Statement statement = connection.createStatement()) {
+            // The connection may have been used for a staged commit that failed part way through.
+            statement.executeUpdate("DROP TABLE IF EXISTS " + STAGING_TABLE_NAME);
+            statement.executeUpdate(predicateInfo.getCreateStagingTableSQL(STAGING_TABLE_NAME));
+
+            if (driver.supportsCopyRows()) {
+                Iterable<Object[]> rows = IteratorUtils.map(atoms, new IteratorUtils.MapFunction<RandomVariableAtom, Object[]>() {
+                    @Override
+                    public Object[] map(RandomVariableAtom atom) {
                         Term[] arguments = atom.getArguments();
+
+                        Object[] row = new Object[2 + arguments.length];
+                        row[0] = Integer.valueOf(partitionId);
+                        row[1] = Double.valueOf(atom.getValue());
                         for (int i = 0; i < arguments.length; i++) {
-                            setAtomArgument(statement, arguments[i], i + 3);
+                            row[2 + i] = getAtomArgumentValue(arguments[i]);
                         }
 
-                        statement.addBatch();
+                        return row;
+                    }
+                });
+
+                driver.copyRows(connection, STAGING_TABLE_NAME, predicateInfo.upsertColumns(), rows);
+            } else {
+                try (PreparedStatement insert = predicateInfo.createStagingInsertStatement(connection, STAGING_TABLE_NAME)) {
+                    int batchSize = 0;
+
+                    for (RandomVariableAtom atom : atoms) {
+                        setCommitParameters(insert, atom, partitionId);
+
+                        insert.addBatch();
                         batchSize++;
 
                         if (batchSize >= RDBMSInserter.DEFAULT_PAGE_SIZE) {
-                            statement.executeBatch();
-                            statement.clearBatch();
+                            insert.executeBatch();
+                            insert.clearBatch();
                             batchSize = 0;
                         }
                     }
 
                     if (batchSize > 0) {
-                        statement.executeBatch();
-                        statement.clearBatch();
+                        insert.executeBatch();
+                        insert.clearBatch();
                     }
-                    statement.clearParameters();
-                } catch (SQLException ex) {
-                    throw new RuntimeException("Error doing batch commit for: " + entry.getKey(), ex);
                 }
             }
+
+            try (PreparedStatement upsert = predicateInfo.createStagedUpsertStatement(connection, driver, STAGING_TABLE_NAME)) {
+                upsert.executeUpdate();
+            }
+
+            statement.executeUpdate("DROP TABLE " + STAGING_TABLE_NAME);
         } catch (SQLException ex) {
-            throw new RuntimeException("Error doing batch commit.", ex);
+            throw new RuntimeException("Error doing staged commit for: " + predicateInfo.predicate(), ex);
+        }
+    }
+
+    /**
+     * Set the parameters for an atom in an upsert (or staging insert): partition, value, and arguments.
+     */
+    private void setCommitParameters(PreparedStatement statement, RandomVariableAtom atom, int partitionId) throws SQLException {
+        // Partition
+        statement.setInt(1, partitionId);
+
+        // Value
+        statement.setDouble(2, atom.getValue());
+
+        // Args
+        Term[] arguments = atom.getArguments();
+        for (int i = 0; i < arguments.length; i++) {
+            setAtomArgument(statement, arguments[i], i + 3);
         }
     }
 
@@ -249,6 +427,11 @@ public class RDBMSDatabase extends Database {
         } catch (SQLException ex) {
             throw new RuntimeException("Error moving partitions for: " + predicate, ex);
         }
+
+        // Any atoms loaded from the old partition are now stale.
+        loadedPredicates.remove(predicate);
+        preloadCheckedPredicates.remove(predicate);
+        absentAtoms.remove(predicate);
     }
 
     @Override
@@ -494,17 +677,133 @@ public class RDBMSDatabase extends Database {
             return result;
         }
 
-        return fetchAtom(predicate, create, arguments);
+        return fetchAtom(queryAtom, predicate, create, arguments);
+    }
+
+    @Override
+    public void prefetchAtoms(StandardPredicate predicate, List<Constant[]> arguments) {
+        PredicateInfo predicateInfo = ((RDBMSDataStore)parentDataStore).getPredicateInfo(predicate);
+
+        if (preloadMaxSize > 0 && !preloadCheckedPredicates.contains(predicate)) {
+            preloadPredicate(predicate);
+        }
+
+        if (loadedPredicates.contains(predicate)) {
+            return;
+        }
+
+        // Only look up atoms that have not already been resolved.
+        Set<QueryAtom> missingAtoms = new HashSet<QueryAtom>();
+        for (Constant[] atomArguments : arguments) {
+            QueryAtom queryAtom = new QueryAtom(predicate, atomArguments);
+            if (!isAbsent(queryAtom) && cache.getCachedAtom(queryAtom) == null) {
+                missingAtoms.add(queryAtom);
+            }
+        }
+
+        List<QueryAtom> batch = new ArrayList<QueryAtom>(Math.min(prefetchQuerySize, missingAtoms.size()));
+        for (QueryAtom queryAtom : missingAtoms) {
+            batch.add(queryAtom);
+
+            if (batch.size() == prefetchQuerySize) {
+                prefetchBatch(predicateInfo, batch);
+                batch.clear();
+            }
+        }
+
+        if (batch.size() > 0) {
+            prefetchBatch(predicateInfo, batch);
+        }
+    }
+
+    /**
+     * Look up a batch of atoms with a single query.
+     * Found atoms are put into the cache, and the rest are remembered as absent.
+     */
+    private void prefetchBatch(PredicateInfo predicateInfo, List<QueryAtom> queryAtoms) {
+        StandardPredicate predicate = (StandardPredicate)predicateInfo.predicate();
+
+        // Round the size up to a power of two (repeating the last atom) so that only a few distinct statements get prepared.
+        int atomCount = Integer.highestOneBit(queryAtoms.size());
+        if (atomCount < queryAtoms.size()) {
+            atomCount <<= 1;
+        }
+
+        Set<QueryAtom> foundAtoms = new HashSet<QueryAtom>(queryAtoms.size());
+
+        try (
+            Connection connection = getConnection();
+            PreparedStatement statement = predicateInfo.createPrefetchStatement(connection, allPartitionIDs, atomCount);
+        ) {
+            int paramIndex = 1;
+            for (int i = 0; i < atomCount; i++) {
+                for (Term argument : queryAtoms.get(Math.min(i, queryAtoms.size() - 1)).getArguments()) {
+                    setAtomArgument(statement, argument, paramIndex);
+                    paramIndex++;
+                }
+            }
+
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    Constant[] arguments = new Constant[predicate.getArity()];
+                    for (int i = 0; i < arguments.length; i++) {
+                        // As per PredicateInfo.createPrefetchStatement, the data columns are offset by two.
+                        arguments[i] = extractConstantFromResult(results, i + 2, predicate.getArgumentType(i));
+                    }
+
+                    if (!foundAtoms.add(new QueryAtom(predicate, arguments))) {
+                        throw new IllegalStateException("Cannot have duplicate atoms, or atoms in multiple partitions in a single database");
+                    }
+
+                    extractGroundAtomFromResult(results, predicate, arguments);
+                }
+            }
+        } catch (SQLException ex) {
+            throw new RuntimeException("Error prefetching atoms for: " + predicate, ex);
+        }
+
+        // If the predicate got loaded in the meantime, then the cache already covers these atoms.
+        if (loadedPredicates.contains(predicate)) {
+            return;
+        }
+
+        Set<QueryAtom> predicateAbsentAtoms = absentAtoms.get(predicate);
+        if (predicateAbsentAtoms == null) {
+            absentAtoms.putIfAbsent(predicate, Collections.newSetFromMap(new ConcurrentHashMap<QueryAtom, Boolean>()));
+            predicateAbsentAtoms = absentAtoms.get(predicate);
+        }
+
+        for (QueryAtom queryAtom : queryAtoms) {
+            if (!foundAtoms.contains(queryAtom)) {
+                predicateAbsentAtoms.add(queryAtom);
+            }
+        }
+    }
+
+    private boolean isAbsent(QueryAtom queryAtom) {
+        Set<QueryAtom> predicateAbsentAtoms = absentAtoms.get(queryAtom.getPredicate());
+        return predicateAbsentAtoms != null && predicateAbsentAtoms.contains(queryAtom);
     }
 
     /**
      * Get an atom from the database and put it in the cache.
      */
-    private GroundAtom fetchAtom(StandardPredicate predicate, boolean create, Constant... arguments) {
+    private GroundAtom fetchAtom(QueryAtom queryAtom, StandardPredicate predicate, boolean create, Constant... arguments) {
         // Ensure this database has this predicate.
         ((RDBMSDataStore)parentDataStore).getPredicateInfo(predicate);
 
-        GroundAtom result = queryDBForAtom(predicate, arguments);
+        GroundAtom result = null;
+        if (preloadMaxSize > 0 && !preloadCheckedPredicates.contains(predicate)) {
+            preloadPredicate(predicate);
+        }
+
+        if (loadedPredicates.contains(predicate)) {
+            // Everything in the database for this predicate is already cached
+            // (possibly by another thread after this one checked the cache).
+            result = cache.getCachedAtom(queryAtom);
+        } else if (!isAbsent(queryAtom)) {
+            result = queryDBForAtom(predicate, arguments);
+        }
 
         if (result != null || !create) {
             return result;
@@ -519,6 +818,39 @@ public class RDBMSDatabase extends Database {
         return result;
     }
 
+    /**
+     * If a predicate is small enough, load all of its atoms into the cache with a single query.
+     * Other threads that need the same predicate while it is being checked will wait for it to finish.
+     */
+    private void preloadPredicate(StandardPredicate predicate) {
+        Object lock = preloadLocks.get(predicate);
+        if (lock == null) {
+            preloadLocks.putIfAbsent(predicate, new Object());
+            lock = preloadLocks.get(predicate);
+        }
+
+        synchronized (lock) {
+            if (preloadCheckedPredicates.contains(predicate)) {
+                return;
+            }
+
+            if (countAllGroundAtoms(predicate, allPartitionIDs) <= preloadMaxSize) {
+                log.trace("Preloading atoms for {}.", predicate);
+                List<GroundAtom> atoms = getAllGroundAtoms(predicate, allPartitionIDs);
+
+                // The same atom appearing in more than one partition will map to a single cached atom.
+                Set<GroundAtom> uniqueAtoms = Collections.newSetFromMap(new IdentityHashMap<GroundAtom, Boolean>(atoms.size()));
+                uniqueAtoms.addAll(atoms);
+                if (uniqueAtoms.size() != atoms.size()) {
+                    loadedPredicates.remove(predicate);
+                    throw new IllegalStateException("Cannot have duplicate atoms, or atoms in multiple partitions in a single database");
+                }
+            }
+
+            preloadCheckedPredicates.add(predicate);
+        }
+    }
+
     /**
      * Get a ground atom from the database.
      * Return null if one is not found.
@@ -571,6 +903,11 @@ public class RDBMSDatabase extends Database {
             throw new RuntimeException("Error fetching all ground atoms for: " + predicate, ex);
         }
 
+        if (partitions.containsAll(allPartitionIDs)) {
+            loadedPredicates.add(predicate);
+            absentAtoms.remove(predicate);
+        }
+
         return atoms;
     }
 
@@ -625,6 +962,27 @@ public class RDBMSDatabase extends Database {
         }
     }
 
+    /**
+     * Get the value of an argument in the same type that setAtomArgument() would set it as.
+     */
+    private Object getAtomArgumentValue(Term argument) {
+        if (argument instanceof IntegerAttribute) {
+            return ((IntegerAttribute)argument).getValue();
+        } else if (argument instanceof DoubleAttribute) {
+            return ((DoubleAttribute)argument).getValue();
+        } else if (argument instanceof StringAttribute) {
+            return ((StringAttribute)argument).getValue();
+        } else if (argument instanceof LongAttribute) {
+            return ((LongAttribute)argument).getValue();
+        } else if (argument instanceof UniqueIntID) {
+            return Integer.valueOf(((UniqueIntID)argument).getID());
+        } else if (argument instanceof UniqueStringID) {
+            return ((UniqueStringID)argument).getID();
+        } else {
+            throw new IllegalArgumentException("Unknown argument type: " + argument.getClass());
+        }
+    }
+
     private class RDBMSQueryResultIterable implements QueryResultIterable {
         private Map<Variable, Integer> projectionMap;
         private RDBMSQueryResultIterator iterator;
@@ -26,6 +26,7 @@ import com.healthmarketscience.sqlbuilder.CreateTableQuery;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.util.List;
 
 /**
  * An interface to a specific RDBMS backend.
@@ -59,6 +60,19 @@ public interface DatabaseDriver {
     public void bulkCopy(String path, String delimiter, boolean hasTruth,
             PredicateInfo predicateInfo, Partition partition);
 
+    /**
+     * Returns whether the database can stream rows directly into a table (see copyRows()).
+     */
+    public boolean supportsCopyRows();
+
+    /**
+     * Stream rows directly into a table.
+     * The given connection is used so that temporary tables (which are only visible to a single connection) can be the target.
+     * Each row must have a value for each column (in order) as an Integer, Long, Double, or String.
+     * May not be supported by all backends.
+     */
+    public void copyRows(Connection connection, String tableName, List<String> columns, Iterable<Object[]> rows);
+
     /**
      * Get the type name for each argument type.
      */
@@ -84,6 +98,13 @@ public interface DatabaseDriver {
      */
     public String getUpsert(String tableName, String[] columns, String[] keyColumns);
 
+    /**
+     * Get the SQL for an upsert (see getUpsert()) that takes all its rows from another table.
+     * The source table must have all the specified columns.
+     * The statement will not have any parameters.
+     */
+    public String getUpsertFromTable(String tableName, String sourceTableName, String[] columns, String[] keyColumns);
+
     /**
      * Gives the driver a chance to perform any final
      * manipulations to the CREATE TABLE statement.
@@ -45,6 +45,9 @@ public class H2DatabaseDriver implements DatabaseDriver {
         Disk, Memory
     }
 
+    // The SQL state H2 uses for a check constraint violation.
+    private static final String CHECK_VIOLATION_STATE = "23513";
+
     private static final Logger log = LoggerFactory.getLogger(H2DatabaseDriver.class);
 
     private final HikariDataSource dataSource;
@@ -121,12 +124,85 @@ public class H2DatabaseDriver implements DatabaseDriver {
 
     @Override
     public boolean supportsBulkCopy() {
-        return false;
+        return true;
     }
 
+    /**
+     * Bulk load using H2's CSVREAD.
+     * The file is read directly by the database and inserted with a single INSERT ... SELECT,
+     * so no rows pass through JDBC.
+     * Quoting is disabled (like PostgreSQL's text COPY format), and each field is trimmed.
+     */
+    @Override
     public void bulkCopy(String path, String delimiter, boolean hasTruth,
             PredicateInfo predicateInfo, Partition partition) {
-        throw new UnsupportedOperationException("H2 does not support bulk copy.");
+        if (delimiter.length() != 1) {
+            throw new IllegalArgumentException("H2 bulk copy requires a single character delimiter, got: [" + delimiter + "].");
+        }
+
+        List<String> argumentColumns = predicateInfo.argumentColumns();
+
+        List<String> csvColumns = new ArrayList<String>();
+        List<String> insertColumns = new ArrayList<String>();
+        List<String> selectColumns = new ArrayList<String>();
+
+        insertColumns.add(PredicateInfo.PARTITION_COLUMN_NAME);
+        selectColumns.add("" + partition.getID());
+
+        for (int i = 0; i < argumentColumns.size(); i++) {
+            csvColumns.add("C" + i);
+            insertColumns.add(argumentColumns.get(i));
+            selectColumns.add("TRIM(C" + i + ")");
+        }
+
+        if (hasTruth) {
+            csvColumns.add("C_VALUE");
+            insertColumns.add(PredicateInfo.VALUE_COLUMN_NAME);
+            selectColumns.add("TRIM(C_VALUE)");
+        }
+
+        List<String> sql = new ArrayList<String>();
+        sql.add("INSERT INTO " + predicateInfo.tableName());
+        sql.add("    (" + ListUtils.join(", ", insertColumns) + ")");
+        sql.add("SELECT");
+        sql.add("    " + ListUtils.join(", ", selectColumns));
+
+        // Options are separated by spaces (so the separator is escaped), and an empty field delimiter disables quoting.
+        String options = "charset=UTF-8 fieldSeparator=\\" + delimiter + " fieldDelimiter=";
+
+        // H2 reads the CSV header when the statement is prepared, so the arguments cannot be parameters.
+        sql.add(String.format("FROM CSVREAD(%s, %s, %s)",
+                quoteString(path), quoteString(ListUtils.join(delimiter, csvColumns)), quoteString(options)));
+
+        try (
+            Connection connection = getConnection();
+            Statement statement = connection.createStatement();
+        ) {
+            int count = statement.executeUpdate(ListUtils.join("\n", sql));
+            log.trace("Bulk copied {} rows into {}.", count, predicateInfo.predicate());
+        } catch (SQLException ex) {
+            // The table's check constraint rejects truth values outside of [0, 1] (and the whole insert with them).
+            if (CHECK_VIOLATION_STATE.equals(ex.getSQLState())) {
+                throw new IllegalArgumentException(
+                        "Found an illegal truth value (must be between 0 and 1 inclusive) -- " + path, ex);
+            }
+
+            throw new RuntimeException("Could not perform bulk insert on " + predicateInfo.predicate() + " from file: " + path, ex);
+        }
+    }
+
+    @Override
+    public boolean supportsCopyRows() {
+        return false;
+    }
+
+    @Override
+    public void copyRows(Connection connection, String tableName, List<String> columns, Iterable<Object[]> rows) {
+        throw new UnsupportedOperationException("H2 does not support copying rows.");
+    }
+
+    private static String quoteString(String value) {
+        return "'" + value.replace("'", "''") + "'";
     }
 
     @Override
@@ -173,6 +249,20 @@ public class H2DatabaseDriver implements DatabaseDriver {
         return ListUtils.join("\n", sql);
     }
 
+    @Override
+    public String getUpsertFromTable(String tableName, String sourceTableName, String[] columns, String[] keyColumns) {
+        List<String> sql = new ArrayList<String>();
+        sql.add("MERGE INTO " + tableName + "");
+        sql.add("    (" + StringUtils.join(", ", (Object[])columns) + ")");
+        sql.add("KEY");
+        sql.add("    (" + StringUtils.join(", ", (Object[])keyColumns) + ")");
+        sql.add("SELECT");
+        sql.add("    " + StringUtils.join(", ", (Object[])columns));
+        sql.add("FROM " + sourceTableName);
+
+        return ListUtils.join("\n", sql);
+    }
+
     @Override
     public String finalizeCreateTable(CreateTableQuery createTable) {
         return createTable.validate().toString();
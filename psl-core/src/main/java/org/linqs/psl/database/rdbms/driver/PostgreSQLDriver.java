@@ -33,11 +33,13 @@ import com.zaxxer.hikari.HikariDataSource;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONValue;
 import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -64,6 +66,12 @@ public class PostgreSQLDriver implements DatabaseDriver {
 
     private static final int MAX_STATS = 10000;
 
+    // The number of rows to send to the server at a time when copying rows.
+    private static final int COPY_ROWS_CHUNK_SIZE = 10000;
+
+    // The SQL state for a check constraint violation.
+    private static final String CHECK_VIOLATION_STATE = "23514";
+
     private static final Logger log = LoggerFactory.getLogger(PostgreSQLDriver.class);
 
     private final HikariDataSource dataSource;
@@ -138,6 +146,12 @@ public class PostgreSQLDriver implements DatabaseDriver {
             PGConnection pgConnection = connection.unwrap(PGConnection.class);
             pgConnection.getCopyAPI().copyIn(sql, inFile);
         } catch (SQLException ex) {
+            // The table's check constraint rejects truth values outside of [0, 1] (and the whole copy with them).
+            if (CHECK_VIOLATION_STATE.equals(ex.getSQLState())) {
+                throw new IllegalArgumentException(
+                        "Found an illegal truth value (must be between 0 and 1 inclusive) -- " + path, ex);
+            }
+
             throw new RuntimeException("Could not perform bulk insert on " + predicateInfo.predicate(), ex);
         } catch (IOException ex) {
             throw new RuntimeException("Error bulk copying file: " + path, ex);
@@ -147,6 +161,101 @@ public class PostgreSQLDriver implements DatabaseDriver {
         }
     }
 
+    @Override
+    public boolean supportsCopyRows() {
+        return true;
+    }
+
+    /**
+     * Copy the rows using COPY FROM STDIN (in the text format).
+     * Rows are sent in chunks, so the full text is never held in memory.
+     */
+    @Override
+    public void copyRows(Connection connection, String tableName, List<String> columns, Iterable<Object[]> rows) {
+        String sql = String.format("COPY %s(%s) FROM STDIN", tableName, ListUtils.join(", ", columns));
+
+        CopyIn copyIn = null;
+        try {
+            copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+
+            StringBuilder buffer = new StringBuilder();
+            int bufferedRows = 0;
+
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    if (i != 0) {
+                        buffer.append('\t');
+                    }
+                    appendCopyValue(buffer, row[i]);
+                }
+                buffer.append('\n');
+                bufferedRows++;
+
+                if (bufferedRows >= COPY_ROWS_CHUNK_SIZE) {
+                    writeCopyChunk(copyIn, buffer);
+                    bufferedRows = 0;
+                }
+            }
+
+            writeCopyChunk(copyIn, buffer);
+            copyIn.endCopy();
+            copyIn = null;
+        } catch (SQLException ex) {
+            throw new RuntimeException("Could not copy rows into " + tableName, ex);
+        } finally {
+            if (copyIn != null && copyIn.isActive()) {
+                try {
+                    copyIn.cancelCopy();
+                } catch (SQLException ex) {
+                    log.warn("Failed to cancel copy into " + tableName, ex);
+                }
+            }
+        }
+    }
+
+    private void writeCopyChunk(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        if (buffer.length() == 0) {
+            return;
+        }
+
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
+    /**
+     * Append a value in COPY's text format.
+     * Backslashes and the characters used as delimiters must be escaped.
+     */
+    private void appendCopyValue(StringBuilder buffer, Object value) {
+        if (!(value instanceof String)) {
+            buffer.append(value);
+            return;
+        }
+
+        String stringValue = (String)value;
+        for (int i = 0; i < stringValue.length(); i++) {
+            char character = stringValue.charAt(i);
+            switch (character) {
+                case '\\':
+                    buffer.append("\\\\");
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                default:
+                    buffer.append(character);
+                    break;
+            }
+        }
+    }
+
     /**
      * Set a default value for a column.
      * The passed in default should already be prepped to be put in the query
@@ -230,6 +339,27 @@ public class PostgreSQLDriver implements DatabaseDriver {
         return ListUtils.join("\n", sql);
     }
 
+    @Override
+    public String getUpsertFromTable(String tableName, String sourceTableName, String[] columns, String[] keyColumns) {
+        List<String> updateValues = new ArrayList<String>();
+        for (String column : columns) {
+            updateValues.add(String.format("%s = EXCLUDED.%s", column, column));
+        }
+
+        List<String> sql = new ArrayList<String>();
+        sql.add("INSERT INTO " + tableName + "");
+        sql.add("    (" + StringUtils.join(", ", (Object[])columns) + ")");
+        sql.add("SELECT");
+        sql.add("    " + StringUtils.join(", ", (Object[])columns));
+        sql.add("FROM " + sourceTableName);
+        sql.add("ON CONFLICT");
+        sql.add("    (" + StringUtils.join(", ", (Object[])keyColumns) + ")");
+        sql.add("DO UPDATE SET");
+        sql.add("    " + ListUtils.join(", ", updateValues));
+
+        return ListUtils.join("\n", sql);
+    }
+
     private void executeUpdate(String sql) {
         try (
             Connection connection = getConnection();
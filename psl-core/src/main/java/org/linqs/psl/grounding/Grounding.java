@@ -24,11 +24,15 @@ import org.linqs.psl.database.atom.AtomManager;
 import org.linqs.psl.database.rdbms.QueryRewriter;
 import org.linqs.psl.database.rdbms.RDBMSDataStore;
 import org.linqs.psl.model.Model;
+import org.linqs.psl.model.atom.Atom;
 import org.linqs.psl.model.formula.Formula;
+import org.linqs.psl.model.predicate.StandardPredicate;
 import org.linqs.psl.model.rule.GroundRule;
 import org.linqs.psl.model.rule.Rule;
 import org.linqs.psl.model.term.Constant;
+import org.linqs.psl.model.term.Term;
 import org.linqs.psl.model.term.Variable;
+import org.linqs.psl.util.IteratorUtils;
 import org.linqs.psl.util.Parallel;
 
 import org.slf4j.Logger;
@@ -59,6 +63,14 @@ public class Grounding {
     public static final String SERIAL_KEY = CONFIG_PREFIX + ".serial";
     public static final boolean SERIAL_DEFAULT = false;
 
+    /**
+     * Grounding query results are handed to the grounding threads in batches of this size.
+     * Before grounding a batch, the atoms that the batch's ground rules will need are
+     * looked up together (see Database.prefetchAtoms()) instead of one at a time.
+     */
+    public static final String PREFETCH_BATCH_SIZE_KEY = CONFIG_PREFIX + ".prefetchbatchsize";
+    public static final int PREFETCH_BATCH_SIZE_DEFAULT = 500;
+
     // Static only.
     private Grounding() {}
 
@@ -159,18 +171,21 @@ public class Grounding {
         boolean oldAccessExceptionState = atomManager.enableAccessExceptions(false);
 
         int initialCount = groundRuleStore.size();
+        int batchSize = Config.getInt(PREFETCH_BATCH_SIZE_KEY, PREFETCH_BATCH_SIZE_DEFAULT);
+
         QueryResultIterable queryResults = atomManager.executeGroundingQuery(query);
-        Parallel.RunTimings timings = Parallel.foreach(queryResults, new GroundWorker(atomManager, groundRuleStore, queryResults.getVariableMap(), rules));
+        Parallel.RunTimings timings = Parallel.foreach(IteratorUtils.batch(queryResults, batchSize),
+                new GroundWorker(atomManager, groundRuleStore, queryResults.getVariableMap(), rules));
         int groundCount = groundRuleStore.size() - initialCount;
 
         atomManager.enableAccessExceptions(oldAccessExceptionState);
 
-        log.trace("Got {} results from query [{}].", timings.iterations, query);
+        log.trace("Got {} batches of results from query [{}].", timings.iterations, query);
         log.debug("Generated {} ground rules with query: [{}].", groundCount, query);
         return groundCount;
     }
 
-    private static class GroundWorker extends Parallel.Worker<Constant[]> {
+    private static class GroundWorker extends Parallel.Worker<List<Constant[]>> {
         private AtomManager atomManager;
         private GroundRuleStore groundRuleStore;
         private Map<Variable, Integer> variableMap;
@@ -192,17 +207,74 @@ public class Grounding {
         }
 
         @Override
-        public void work(int index, Constant[] row) {
+        public void work(int index, List<Constant[]> rows) {
+            prefetch(rows);
+
+            for (Constant[] row : rows) {
+                for (Rule rule : rules) {
+                    rule.ground(row, variableMap, atomManager, groundRules);
+
+                    for (GroundRule groundRule : groundRules) {
+                        if (groundRule != null) {
+                            groundRuleStore.addGroundRule(groundRule);
+                        }
+                    }
+
+                    groundRules.clear();
+                }
+            }
+        }
+
+        /**
+         * Look up all the atoms that grounding these rows will need, one request per predicate.
+         */
+        private void prefetch(List<Constant[]> rows) {
+            Map<StandardPredicate, List<Constant[]>> arguments = new HashMap<StandardPredicate, List<Constant[]>>();
+
             for (Rule rule : rules) {
-                rule.ground(row, variableMap, atomManager, groundRules);
+                for (Atom atom : rule.getGroundingAtoms()) {
+                    if (!(atom.getPredicate() instanceof StandardPredicate)) {
+                        continue;
+                    }
+
+                    Term[] atomArguments = atom.getArguments();
+
+                    // The query may not bind every variable (e.g. with rewritten queries).
+                    boolean allBound = true;
+                    for (Term argument : atomArguments) {
+                        if (argument instanceof Variable && !variableMap.containsKey((Variable)argument)) {
+                            allBound = false;
+                            break;
+                        }
+                    }
+
+                    if (!allBound) {
+                        continue;
+                    }
 
-                for (GroundRule groundRule : groundRules) {
-                    if (groundRule != null) {
-                        groundRuleStore.addGroundRule(groundRule);
+                    StandardPredicate predicate = (StandardPredicate)atom.getPredicate();
+                    if (!arguments.containsKey(predicate)) {
+                        arguments.put(predicate, new ArrayList<Constant[]>());
+                    }
+                    List<Constant[]> predicateArguments = arguments.get(predicate);
+
+                    for (Constant[] row : rows) {
+                        Constant[] groundArguments = new Constant[atomArguments.length];
+                        for (int i = 0; i < atomArguments.length; i++) {
+                            if (atomArguments[i] instanceof Variable) {
+                                groundArguments[i] = row[variableMap.get((Variable)atomArguments[i]).intValue()];
+                            } else {
+                                groundArguments[i] = (Constant)atomArguments[i];
+                            }
+                        }
+
+                        predicateArguments.add(groundArguments);
                     }
                 }
+            }
 
-                groundRules.clear();
+            for (Map.Entry<StandardPredicate, List<Constant[]>> entry : arguments.entrySet()) {
+                atomManager.getDatabase().prefetchAtoms(entry.getKey(), entry.getValue());
             }
         }
     }
@@ -23,26 +23,34 @@ import org.linqs.psl.model.rule.UnweightedGroundRule;
 import org.linqs.psl.model.rule.WeightedGroundRule;
 import org.linqs.psl.util.IteratorUtils;
 
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A simple {@link GroundRuleStore} that just stores each {@link GroundRule}
  * in memory.
- * addGroundRule() is thread-safe and will silently ignore already added rules.
+ * addGroundRule() is thread-safe (and lock-free) and will not check for already added rules.
  * Other methods are not guaranteed safe.
  */
 public class MemoryGroundRuleStore implements GroundRuleStore {
-    protected List<GroundRule> groundRules;
+    protected Queue<GroundRule> groundRules;
+
+    /**
+     * Kept alongside the rules since ConcurrentLinkedQueue.size() is O(n).
+     */
+    private AtomicInteger numGroundRules;
 
     public MemoryGroundRuleStore() {
-        groundRules = new ArrayList<GroundRule>();
+        groundRules = new ConcurrentLinkedQueue<GroundRule>();
+        numGroundRules = new AtomicInteger(0);
     }
 
     @Override
-    public synchronized void addGroundRule(GroundRule groundRule) {
+    public void addGroundRule(GroundRule groundRule) {
         groundRules.add(groundRule);
+        numGroundRules.incrementAndGet();
     }
 
     /**
@@ -85,7 +93,9 @@ public class MemoryGroundRuleStore implements GroundRuleStore {
      */
     @Override
     public void removeGroundRule(GroundRule groundRule) {
-        groundRules.remove(groundRule);
+        if (groundRules.remove(groundRule)) {
+            numGroundRules.decrementAndGet();
+        }
     }
 
     /**
@@ -99,13 +109,14 @@ public class MemoryGroundRuleStore implements GroundRuleStore {
             // Note that order is very important because not all GroundRules have a parent.
             if (rule.equals(groundRule.getRule())) {
                 iterator.remove();
+                numGroundRules.decrementAndGet();
             }
         }
     }
 
     @Override
     public int size() {
-        return groundRules.size();
+        return numGroundRules.get();
     }
 
     /**
@@ -129,5 +140,7 @@ public class MemoryGroundRuleStore implements GroundRuleStore {
             groundRules.clear();
             groundRules = null;
         }
+
+        numGroundRules.set(0);
     }
 }
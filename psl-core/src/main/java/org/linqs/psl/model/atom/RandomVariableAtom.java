@@ -45,6 +45,13 @@ public class RandomVariableAtom extends GroundAtom implements ReasonerLocalVaria
      */
     private boolean isAccessException;
 
+    /**
+     * The index of this atom in the last VariableIndexMap that it was added to
+     * (along with an identifier for that map in the high bits).
+     * See VariableIndexMap.
+     */
+    private volatile long variableIndexCache;
+
     /**
      * Instantiation of GrondAtoms should typically be left to the Database so it can maintain a cache.
      */
@@ -52,6 +59,7 @@ public class RandomVariableAtom extends GroundAtom implements ReasonerLocalVaria
         super(p, args, value);
         isPersisted = false;
         isAccessException = false;
+        variableIndexCache = 0L;
     }
 
     @Override
@@ -86,4 +94,12 @@ public class RandomVariableAtom extends GroundAtom implements ReasonerLocalVaria
     public boolean getAccessException() {
         return isAccessException;
     }
+
+    public long getVariableIndexCache() {
+        return variableIndexCache;
+    }
+
+    public void setVariableIndexCache(long variableIndexCache) {
+        this.variableIndexCache = variableIndexCache;
+    }
 }
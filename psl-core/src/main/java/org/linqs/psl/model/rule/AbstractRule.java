@@ -17,6 +17,9 @@
  */
 package org.linqs.psl.model.rule;
 
+import org.linqs.psl.model.atom.Atom;
+
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -33,6 +36,11 @@ public abstract class AbstractRule implements Rule {
         return this.name;
     }
 
+    @Override
+    public List<Atom> getGroundingAtoms() {
+        return Collections.emptyList();
+    }
+
     @Override
     public boolean requiresSplit() {
         return false;
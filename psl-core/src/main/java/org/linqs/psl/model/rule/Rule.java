@@ -20,6 +20,7 @@ package org.linqs.psl.model.rule;
 import org.linqs.psl.database.atom.AtomManager;
 import org.linqs.psl.database.rdbms.RawQuery;
 import org.linqs.psl.grounding.GroundRuleStore;
+import org.linqs.psl.model.atom.Atom;
 import org.linqs.psl.model.formula.Formula;
 import org.linqs.psl.model.term.Constant;
 import org.linqs.psl.model.term.Variable;
@@ -81,6 +82,13 @@ public interface Rule {
      */
     public void ground(Constant[] constants, Map<Variable, Integer> variableMap, AtomManager atomManager, List<GroundRule> results);
 
+    /**
+     * Get the atoms (with variables) that ground() will look up for each query result.
+     * Callers may use these to fetch the ground atoms for many results at once before grounding them.
+     * Rules that cannot tell ahead of time which atoms they will need return an empty list.
+     */
+    public List<Atom> getGroundingAtoms();
+
     /**
      * Check if this rule needs to be broken up into multiple rules.
      * This may be because of language semantics or performance.
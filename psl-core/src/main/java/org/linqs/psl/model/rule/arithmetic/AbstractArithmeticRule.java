@@ -282,6 +282,23 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
         }
     }
 
+    @Override
+    public List<Atom> getGroundingAtoms() {
+        // Summation atoms are resolved with their own queries.
+        if (hasSummation()) {
+            return Collections.emptyList();
+        }
+
+        List<Atom> atoms = new ArrayList<Atom>();
+        for (SummationAtomOrAtom atom : expression.getAtoms()) {
+            if (atom instanceof Atom) {
+                atoms.add((Atom)atom);
+            }
+        }
+
+        return atoms;
+    }
+
     private void groundForNonSummation(Constant[] constants, Map<Variable, Integer> variableMap, AtomManager atomManager,
             List<GroundRule> results) {
         GroundingResources resources = getGroundingResources(expression);
@@ -157,6 +157,13 @@ public abstract class AbstractLogicalRule extends AbstractRule {
         results.add(ground(constants, variableMap, atomManager));
     }
 
+    @Override
+    public List<Atom> getGroundingAtoms() {
+        List<Atom> atoms = new ArrayList<Atom>(negatedDNF.getPosLiterals());
+        atoms.addAll(negatedDNF.getNegLiterals());
+        return atoms;
+    }
+
     private GroundRule ground(Constant[] constants, Map<Variable, Integer> variableMap, AtomManager atomManager) {
         // Get the grounding resources for this thread,
         if (!Parallel.hasThreadObject(groundingResourcesKey)) {
@@ -18,13 +18,15 @@
 package org.linqs.psl.reasoner.admm;
 
 import org.linqs.psl.config.Config;
+import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.rule.GroundRule;
 import org.linqs.psl.model.rule.WeightedGroundRule;
 import org.linqs.psl.reasoner.Reasoner;
 import org.linqs.psl.reasoner.admm.term.ADMMObjectiveTerm;
+import org.linqs.psl.reasoner.admm.term.ADMMStreamingObjectiveTerm;
+import org.linqs.psl.reasoner.admm.term.ADMMStreamingTermStore;
 import org.linqs.psl.reasoner.admm.term.ADMMTermStore;
 import org.linqs.psl.reasoner.admm.term.LinearConstraintTerm;
-import org.linqs.psl.reasoner.admm.term.LocalVariable;
 import org.linqs.psl.reasoner.term.TermGenerator;
 import org.linqs.psl.reasoner.term.TermStore;
 import org.linqs.psl.util.MathUtils;
@@ -34,8 +36,19 @@ import org.linqs.psl.util.RandUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
 /**
  * Uses an ADMM optimization method to optimize its GroundRules.
+ *
+ * Terms may either be kept in memory (ADMMTermStore)
+ * or paged to disk along with their local variables (ADMMStreamingTermStore).
  */
 public class ADMMReasoner implements Reasoner {
     private static final Logger log = LoggerFactory.getLogger(ADMMReasoner.class);
@@ -53,7 +66,8 @@ public class ADMMReasoner implements Reasoner {
 
     /**
      * Compute some stats about the optimization and log them to TRACE once for each period.
-     * Note that gathering the information takes about an iteration's worth of time.
+     * When OBJECTIVE_BREAK_KEY is on, this is also how often the objective is checked.
+     * The objective is computed as part of the term minimization pass, so it is cheap to check it often.
      */
     public static final String COMPUTE_PERIOD_KEY = CONFIG_PREFIX + ".computeperiod";
     public static final int COMPUTE_PERIOD_DEFAULT = 50;
@@ -108,6 +122,48 @@ public class ADMMReasoner implements Reasoner {
     public static final String INITIAL_LOCAL_VALUE_KEY = CONFIG_PREFIX + ".initiallocalvalue";
     public static final String INITIAL_LOCAL_VALUE_DEFAULT = InitialValue.RANDOM.toString();
 
+    /**
+     * Start optimization from the consensus values, local values, and Lagrange multipliers
+     * left over from the last call to optimize() on the same term store (if the store has not changed since).
+     * This is useful when the same model is optimized many times with small changes in weights (e.g. weight learning).
+     * When a warm start is not possible, the initial values will be used instead.
+     */
+    public static final String WARM_START_KEY = CONFIG_PREFIX + ".warmstart";
+    public static final boolean WARM_START_DEFAULT = false;
+
+    /**
+     * Adjust the step size during optimization to keep the primal and dual residuals within
+     * a factor (see STEP_SIZE_BALANCE_KEY) of each other (residual balancing).
+     * This usually reduces the number of iterations on poorly-scaled models.
+     * The step size will start at STEP_SIZE_KEY.
+     */
+    public static final String ADAPTIVE_STEP_SIZE_KEY = CONFIG_PREFIX + ".adaptivestepsize";
+    public static final boolean ADAPTIVE_STEP_SIZE_DEFAULT = false;
+
+    /**
+     * When adapting the step size, the maximum allowed ratio between the primal and dual residuals
+     * before the step size is changed.
+     * Should be greater than 1.
+     */
+    public static final String STEP_SIZE_BALANCE_KEY = CONFIG_PREFIX + ".stepsizebalance";
+    public static final float STEP_SIZE_BALANCE_DEFAULT = 10.0f;
+
+    /**
+     * When adapting the step size, the factor to multiply (or divide) the step size by.
+     * Should be greater than 1.
+     */
+    public static final String STEP_SIZE_SCALE_KEY = CONFIG_PREFIX + ".stepsizescale";
+    public static final float STEP_SIZE_SCALE_DEFAULT = 2.0f;
+
+    /**
+     * The over-relaxation parameter (alpha).
+     * The consensus and Lagrange updates will use (alpha * x + (1 - alpha) * z) in place of the local values x.
+     * 1.0 disables relaxation, values in [1.5, 1.8] typically speed up convergence.
+     * Must be in (0, 2).
+     */
+    public static final String OVER_RELAXATION_KEY = CONFIG_PREFIX + ".overrelaxation";
+    public static final float OVER_RELAXATION_DEFAULT = 1.0f;
+
     private static final float LOWER_BOUND = 0.0f;
     private static final float UPPER_BOUND = 1.0f;
 
@@ -115,8 +171,15 @@ public class ADMMReasoner implements Reasoner {
 
     /**
      * Sometimes called eta or rho,
+     * May change during optimization if adaptiveStepSize is on.
      */
-    private final float stepSize;
+    private float stepSize;
+    private final float initialStepSize;
+
+    private boolean adaptiveStepSize;
+    private float stepSizeBalance;
+    private float stepSizeScale;
+    private float overRelaxation;
 
     private float epsilonRel;
     private float epsilonAbs;
@@ -138,15 +201,59 @@ public class ADMMReasoner implements Reasoner {
     // Only populated after inference.
     private float[] consensusValues;
 
-    private int termBlockSize;
-    private int variableBlockSize;
     private boolean objectiveBreak;
 
+    // State for the iteration currently in progress.
+    // Only touched by the parent thread or inside the iteration barrier.
+    private int iteration;
+    private float epsilonAbsTerm;
+    private ObjectiveResult objective;
+    private ObjectiveResult oldObjective;
+
+    // Whether the next iteration should also compute the objective during its term pass.
+    private boolean evaluateObjective;
+
+    private volatile boolean stopIterating;
+    private volatile boolean iterationFailed;
+
+    private boolean warmStart;
+
+    // The term store (and its version) that |consensusValues| came from.
+    private ADMMTermStore lastTermStore;
+    private int lastTermStoreVersion;
+
+    // The streaming term store that was last optimized,
+    // and the number of local copies of each of its consensus variables.
+    private ADMMStreamingTermStore lastStreamingTermStore;
+    private int[] streamingLocalCounts;
+
     public ADMMReasoner() {
         maxIter = Config.getInt(MAX_ITER_KEY, MAX_ITER_DEFAULT);
-        stepSize = Config.getFloat(STEP_SIZE_KEY, STEP_SIZE_DEFAULT);
+        initialStepSize = Config.getFloat(STEP_SIZE_KEY, STEP_SIZE_DEFAULT);
+        if (initialStepSize <= 0) {
+            throw new IllegalArgumentException("Property " + STEP_SIZE_KEY + " must be positive.");
+        }
+        stepSize = initialStepSize;
+
+        adaptiveStepSize = Config.getBoolean(ADAPTIVE_STEP_SIZE_KEY, ADAPTIVE_STEP_SIZE_DEFAULT);
+
+        stepSizeBalance = Config.getFloat(STEP_SIZE_BALANCE_KEY, STEP_SIZE_BALANCE_DEFAULT);
+        if (stepSizeBalance <= 1.0f) {
+            throw new IllegalArgumentException("Property " + STEP_SIZE_BALANCE_KEY + " must be greater than 1.");
+        }
+
+        stepSizeScale = Config.getFloat(STEP_SIZE_SCALE_KEY, STEP_SIZE_SCALE_DEFAULT);
+        if (stepSizeScale <= 1.0f) {
+            throw new IllegalArgumentException("Property " + STEP_SIZE_SCALE_KEY + " must be greater than 1.");
+        }
+
+        overRelaxation = Config.getFloat(OVER_RELAXATION_KEY, OVER_RELAXATION_DEFAULT);
+        if (overRelaxation <= 0.0f || overRelaxation >= 2.0f) {
+            throw new IllegalArgumentException("Property " + OVER_RELAXATION_KEY + " must be in (0, 2).");
+        }
         computePeriod = Config.getInt(COMPUTE_PERIOD_KEY, COMPUTE_PERIOD_DEFAULT);
         objectiveBreak = Config.getBoolean(OBJECTIVE_BREAK_KEY, OBJECTIVE_BREAK_DEFAULT);
+        warmStart = Config.getBoolean(WARM_START_KEY, WARM_START_DEFAULT);
 
         epsilonAbs = Config.getFloat(EPSILON_ABS_KEY, EPSILON_ABS_DEFAULT);
         if (epsilonAbs <= 0) {
@@ -183,6 +290,45 @@ public class ADMMReasoner implements Reasoner {
         this.epsilonAbs = epsilonAbs;
     }
 
+    public float getStepSize() {
+        return stepSize;
+    }
+
+    public boolean getAdaptiveStepSize() {
+        return adaptiveStepSize;
+    }
+
+    public void setAdaptiveStepSize(boolean adaptiveStepSize) {
+        this.adaptiveStepSize = adaptiveStepSize;
+    }
+
+    public float getOverRelaxation() {
+        return overRelaxation;
+    }
+
+    public void setOverRelaxation(float overRelaxation) {
+        if (overRelaxation <= 0.0f || overRelaxation >= 2.0f) {
+            throw new IllegalArgumentException("Over-relaxation must be in (0, 2), got: " + overRelaxation);
+        }
+
+        this.overRelaxation = overRelaxation;
+    }
+
+    public boolean getWarmStart() {
+        return warmStart;
+    }
+
+    public void setWarmStart(boolean warmStart) {
+        this.warmStart = warmStart;
+    }
+
+    /**
+     * Get the number of iterations that the last call to optimize() ran for.
+     */
+    public int getLastIterationCount() {
+        return Math.max(0, iteration - 1);
+    }
+
     public float getLagrangianPenalty() {
         return this.lagrangePenalty;
     }
@@ -202,31 +348,37 @@ public class ADMMReasoner implements Reasoner {
     }
 
     public void optimize(TermStore baseTermStore, InitialValue initialConsensus, InitialValue initialLocal) {
+        if (baseTermStore instanceof ADMMStreamingTermStore) {
+            optimizeStreaming((ADMMStreamingTermStore)baseTermStore, initialConsensus, initialLocal);
+            return;
+        }
+
         if (!(baseTermStore instanceof ADMMTermStore)) {
-            throw new IllegalArgumentException("ADMMReasoner requires an ADMMTermStore (found " + baseTermStore.getClass().getName() + ").");
+            throw new IllegalArgumentException("ADMMReasoner requires an ADMMTermStore or ADMMStreamingTermStore (found " + baseTermStore.getClass().getName() + ").");
         }
         ADMMTermStore termStore = (ADMMTermStore)baseTermStore;
 
-        termStore.resetLocalVairables(initialLocal);
-
         int numTerms = termStore.size();
         int numVariables = termStore.getNumGlobalVariables();
 
         log.debug("Performing optimization with {} variables and {} terms.", numVariables, numTerms);
 
-        initConsensusValues(termStore, initialConsensus);
-
-        termBlockSize = numTerms / (Parallel.getNumThreads() * 4) + 1;
-        variableBlockSize = numVariables / (Parallel.getNumThreads() * 4) + 1;
+        if (warmStart && canWarmStart(termStore)) {
+            // The Lagrange multipliers are not scaled by the step size, so an adapted step size can be kept.
+            log.debug("Warm starting from the previous optimization.");
+        } else {
+            stepSize = initialStepSize;
+            termStore.resetLocalVairables(initialLocal);
+            initConsensusValues(termStore, initialConsensus);
+        }
 
-        int numTermBlocks = (int)Math.ceil(numTerms / (float)termBlockSize);
-        int numVariableBlocks = (int)Math.ceil(numVariables / (float)variableBlockSize);
+        ADMMTermPartition partition = new ADMMTermPartition(termStore, Parallel.getNumThreads());
 
         // Performs inference.
-        float epsilonAbsTerm = (float)(Math.sqrt(termStore.getNumLocalVariables()) * epsilonAbs);
+        epsilonAbsTerm = (float)(Math.sqrt(termStore.getNumLocalVariables()) * epsilonAbs);
 
-        ObjectiveResult objective = null;
-        ObjectiveResult oldObjective = null;
+        objective = null;
+        oldObjective = null;
 
         if (log.isTraceEnabled()) {
             objective = computeObjective(termStore);
@@ -235,49 +387,9 @@ public class ADMMReasoner implements Reasoner {
                     0, objective.objective, (objective.violatedConstraints == 0));
         }
 
-        int iteration = 1;
-        while (
-                (iteration == 1 || primalRes > epsilonPrimal || dualRes > epsilonDual)
-                && (!objectiveBreak || (oldObjective == null || !MathUtils.equals(objective.objective, oldObjective.objective)))
-                && iteration <= maxIter) {
-            // Zero out the iteration variables.
-            primalRes = 0.0f;
-            dualRes = 0.0f;
-            AxNorm = 0.0f;
-            AyNorm = 0.0f;
-            BzNorm = 0.0f;
-            lagrangePenalty = 0.0f;
-            augmentedLagrangePenalty = 0.0f;
-
-            // Minimize all the terms.
-            Parallel.count(numTermBlocks, new TermWorker(termStore, termBlockSize));
-
-            // Compute new consensus values and residuals.
-            Parallel.count(numVariableBlocks, new VariableWorker(termStore, variableBlockSize));
-
-            primalRes = (float)Math.sqrt(primalRes);
-            dualRes = (float)(stepSize * Math.sqrt(dualRes));
-
-            epsilonPrimal = (float)(epsilonAbsTerm + epsilonRel * Math.max(Math.sqrt(AxNorm), Math.sqrt(BzNorm)));
-            epsilonDual = (float)(epsilonAbsTerm + epsilonRel * Math.sqrt(AyNorm));
-
-            if (iteration % computePeriod == 0) {
-                if (!objectiveBreak) {
-                    log.trace(
-                            "Iteration {} -- Primal: {}, Dual: {}, Epsilon Primal: {}, Epsilon Dual: {}.",
-                            iteration, primalRes, dualRes, epsilonPrimal, epsilonDual);
-                } else {
-                    oldObjective = objective;
-                    objective = computeObjective(termStore);
-
-                    log.trace(
-                            "Iteration {} -- Objective: {}, Feasible: {}, Primal: {}, Dual: {}, Epsilon Primal: {}, Epsilon Dual: {}.",
-                            iteration, objective.objective, (objective.violatedConstraints == 0),
-                            primalRes, dualRes, epsilonPrimal, epsilonDual);
-                }
-            }
-
-            iteration++;
+        iteration = 1;
+        if (continueIterating()) {
+            iterate(termStore, partition);
         }
 
         objective = computeObjective(termStore);
@@ -291,10 +403,16 @@ public class ADMMReasoner implements Reasoner {
 
         // Updates variables
         termStore.updateVariables(consensusValues);
+
+        lastTermStore = termStore;
+        lastTermStoreVersion = termStore.getVersion();
     }
 
     @Override
     public void close() {
+        lastTermStore = null;
+        lastStreamingTermStore = null;
+        streamingLocalCounts = null;
     }
 
     /**
@@ -310,10 +428,13 @@ public class ADMMReasoner implements Reasoner {
 
         assert(consensusBuffer.length == consensusValues.length);
 
+        float[] localValues = termStore.getLocalValues();
+        int[] localGlobalIds = termStore.getLocalGlobalIds();
+
         // Set the global variables to the value of the local variables for this rule.
         for (ADMMObjectiveTerm term : termStore.getTerms(groundRule)) {
-            for (LocalVariable localVariable : term.getVariables()) {
-                consensusBuffer[localVariable.getGlobalId()] = localVariable.getValue();
+            for (int localId = term.getLocalOffset(); localId < term.getLocalOffset() + term.size(); localId++) {
+                consensusBuffer[localGlobalIds[localId]] = localValues[localId];
             }
         }
 
@@ -327,6 +448,16 @@ public class ADMMReasoner implements Reasoner {
         return incompatibility;
     }
 
+    /**
+     * Check if the state left over from the last optimization still lines up with this term store.
+     */
+    private boolean canWarmStart(ADMMTermStore termStore) {
+        return termStore == lastTermStore
+                && termStore.getVersion() == lastTermStoreVersion
+                && consensusValues != null
+                && consensusValues.length == termStore.getNumGlobalVariables();
+    }
+
     private void initConsensusValues(ADMMTermStore termStore, InitialValue initialConsensus) {
         consensusValues = new float[termStore.getNumGlobalVariables()];
 
@@ -345,140 +476,633 @@ public class ADMMReasoner implements Reasoner {
         }
     }
 
-    private ObjectiveResult computeObjective(ADMMTermStore termStore) {
-        float objective = 0.0f;
-        int violatedConstraints = 0;
+    /**
+     * Run iterations until convergence (or the iteration limit).
+     * Each thread owns one partition of the variables and terms and runs all the iterations for it.
+     * Within an iteration, a thread minimizes its terms, waits only on the threads that own terms touching its variables,
+     * updates its consensus values, and then meets all the other threads at a single barrier
+     * (where the residuals are reduced and the stopping criteria are checked).
+     */
+    private void iterate(final ADMMTermStore termStore, ADMMTermPartition partition) {
+        int numThreads = partition.getNumPartitions();
 
-        for (ADMMObjectiveTerm term : termStore) {
-            if (term instanceof LinearConstraintTerm) {
-                if (term.evaluate(consensusValues) > 0.0f) {
-                    violatedConstraints++;
-                }
+        // The last iteration that each partition finished minimizing its terms for.
+        AtomicIntegerArray termEpochs = new AtomicIntegerArray(numThreads);
+
+        final List<IterationWorker> workers = new ArrayList<IterationWorker>(numThreads);
+
+        CyclicBarrier barrier = new CyclicBarrier(numThreads, new Runnable() {
+            @Override
+            public void run() {
+                completeIteration(termStore, workers);
+            }
+        });
+
+        for (int i = 0; i < numThreads; i++) {
+            workers.add(new IterationWorker(termStore, partition, termEpochs, barrier));
+        }
+
+        evaluateObjective = shouldEvaluateObjective();
+        stopIterating = false;
+        iterationFailed = false;
+
+        Parallel.count(numThreads, workers);
+    }
+
+    /**
+     * Called once all threads have finished an iteration (and before any start the next one).
+     */
+    private void completeIteration(ADMMTermStore termStore, List<IterationWorker> workers) {
+        if (iterationFailed) {
+            stopIterating = true;
+            return;
+        }
+
+        collectIterationVariables(workers);
+        completeIteration(evaluateObjective ? collectObjective(workers) : null);
+    }
+
+    /**
+     * Finish an iteration once the (squared) residuals and norms have been collected.
+     * |iterationObjective| is only used (and must only be non-null) when the objective was evaluated this iteration.
+     */
+    private void completeIteration(ObjectiveResult iterationObjective) {
+        primalRes = (float)Math.sqrt(primalRes);
+        dualRes = (float)(stepSize * Math.sqrt(dualRes));
+
+        epsilonPrimal = (float)(epsilonAbsTerm + epsilonRel * Math.max(Math.sqrt(AxNorm), Math.sqrt(BzNorm)));
+        epsilonDual = (float)(epsilonAbsTerm + epsilonRel * Math.sqrt(AyNorm));
+
+        if (adaptiveStepSize) {
+            adaptStepSize();
+        }
+
+        if (iteration % computePeriod == 0) {
+            if (!objectiveBreak) {
+                log.trace(
+                        "Iteration {} -- Primal: {}, Dual: {}, Epsilon Primal: {}, Epsilon Dual: {}.",
+                        iteration, primalRes, dualRes, epsilonPrimal, epsilonDual);
             } else {
-                objective += term.evaluate(consensusValues);
+                // Note that this is the objective of the consensus values that this iteration started with.
+                oldObjective = objective;
+                objective = iterationObjective;
+
+                log.trace(
+                        "Iteration {} -- Objective: {}, Feasible: {}, Primal: {}, Dual: {}, Epsilon Primal: {}, Epsilon Dual: {}.",
+                        iteration, objective.objective, (objective.violatedConstraints == 0),
+                        primalRes, dualRes, epsilonPrimal, epsilonDual);
             }
         }
 
+        iteration++;
+        evaluateObjective = shouldEvaluateObjective();
+        stopIterating = !continueIterating();
+    }
+
+    private boolean shouldEvaluateObjective() {
+        return objectiveBreak && (iteration % computePeriod == 0);
+    }
+
+    private ObjectiveResult collectObjective(List<IterationWorker> workers) {
+        float objective = 0.0f;
+        int violatedConstraints = 0;
+
+        for (IterationWorker worker : workers) {
+            objective += worker.objective;
+            violatedConstraints += worker.violatedConstraints;
+
+            worker.objective = 0.0f;
+            worker.violatedConstraints = 0;
+        }
+
         return new ObjectiveResult(objective, violatedConstraints);
     }
 
-    private synchronized void updateIterationVariables(
-            float primalRes, float dualRes,
-            float AxNorm, float BzNorm, float AyNorm,
-            float lagrangePenalty, float augmentedLagrangePenalty) {
-        this.primalRes += primalRes;
-        this.dualRes += dualRes;
-        this.AxNorm += AxNorm;
-        this.AyNorm += AyNorm;
-        this.BzNorm += BzNorm;
-        this.lagrangePenalty += lagrangePenalty;
-        this.augmentedLagrangePenalty += augmentedLagrangePenalty;
+    /**
+     * Residual balancing: grow the step size when the primal residual dominates (pushing the local copies together),
+     * and shrink it when the dual residual dominates.
+     * Since the Lagrange multipliers are kept unscaled, they do not need to be adjusted.
+     */
+    private void adaptStepSize() {
+        float oldStepSize = stepSize;
+
+        if (primalRes > stepSizeBalance * dualRes) {
+            stepSize *= stepSizeScale;
+        } else if (dualRes > stepSizeBalance * primalRes) {
+            stepSize /= stepSizeScale;
+        }
+
+        if (stepSize != oldStepSize) {
+            log.trace("Iteration {} -- Step size changed from {} to {}.", iteration, oldStepSize, stepSize);
+        }
     }
 
-    private class TermWorker extends Parallel.Worker<Integer> {
-        private ADMMTermStore termStore;
-        private int blockSize;
+    private boolean continueIterating() {
+        return (iteration == 1 || primalRes > epsilonPrimal || dualRes > epsilonDual)
+                && (!objectiveBreak || (oldObjective == null || !MathUtils.equals(objective.objective, oldObjective.objective)))
+                && iteration <= maxIter;
+    }
 
-        public TermWorker(ADMMTermStore termStore, int blockSize) {
-            super();
-            this.termStore = termStore;
-            this.blockSize = blockSize;
+    /**
+     * Optimize terms that are paged to disk (along with their local variables).
+     * Only the consensus values (the term store's variable values) and a few per-variable arrays are kept in memory.
+     *
+     * Each iteration is a single pass over the terms: a term's Lagrange multipliers are updated
+     * (with the consensus values from the last iteration), its local variables are minimized,
+     * and its part of the consensus update is accumulated.
+     * The consensus values are updated once the pass is done.
+     * This is the same sequence of updates as the in-memory iterations, except that the primal residual
+     * (and Lagrangian penalties) are measured when the Lagrange multipliers are updated,
+     * so they always lag one iteration behind.
+     * With over-relaxation, the relaxed local values are kept for the next Lagrange update (like the in-memory iterations),
+     * so the primal residual is measured with the relaxed values.
+     */
+    private void optimizeStreaming(ADMMStreamingTermStore termStore, InitialValue initialConsensus, InitialValue initialLocal) {
+        boolean loaded = termStore.isLoaded();
+        termStore.ensureLoaded();
+
+        int numVariables = termStore.getNumVariables();
+
+        log.debug("Performing optimization with {} variables and {} terms.", numVariables, termStore.size());
+
+        if (warmStart && loaded && termStore == lastStreamingTermStore
+                && streamingLocalCounts != null && streamingLocalCounts.length == numVariables) {
+            log.debug("Warm starting from the previous optimization.");
+        } else {
+            stepSize = initialStepSize;
+            initStreamingValues(termStore, initialConsensus, initialLocal);
         }
 
-        public Object clone() {
-            return new TermWorker(termStore, blockSize);
+        // A new variable may have caused a reallocation, so this needs to be fetched after grounding.
+        consensusValues = termStore.getVariableValues();
+
+        long numLocalVariables = 0;
+        for (int i = 0; i < numVariables; i++) {
+            numLocalVariables += streamingLocalCounts[i];
         }
+        epsilonAbsTerm = (float)(Math.sqrt(numLocalVariables) * epsilonAbs);
 
-        @Override
-        public void work(int blockIndex, Integer ignore) {
-            int numTerms = termStore.size();
+        objective = null;
+        oldObjective = null;
 
-            // Minimize each local function (wrt the local variable copies).
-            for (int innerBlockIndex = 0; innerBlockIndex < blockSize; innerBlockIndex++) {
-                int termIndex = blockIndex * blockSize + innerBlockIndex;
+        if (log.isTraceEnabled()) {
+            objective = computeStreamingObjective(termStore);
+            log.trace(
+                    "Iteration {} -- Objective: {}, Feasible: {}.",
+                    0, objective.objective, (objective.violatedConstraints == 0));
+        }
 
-                if (termIndex >= numTerms) {
-                    break;
+        float[] consensusTotals = new float[numVariables];
+
+        iteration = 1;
+        evaluateObjective = shouldEvaluateObjective();
+        stopIterating = !continueIterating();
+
+        while (!stopIterating) {
+            primalRes = 0.0f;
+            dualRes = 0.0f;
+            AxNorm = 0.0f;
+            AyNorm = 0.0f;
+            BzNorm = 0.0f;
+            lagrangePenalty = 0.0f;
+            augmentedLagrangePenalty = 0.0f;
+
+            float iterationObjective = 0.0f;
+            int violatedConstraints = 0;
+
+            Arrays.fill(consensusTotals, 0.0f);
+
+            for (ADMMStreamingObjectiveTerm term : termStore) {
+                if (evaluateObjective) {
+                    if (term.isConstraint()) {
+                        if (term.evaluate(consensusValues) > 0.0f) {
+                            violatedConstraints++;
+                        }
+                    } else {
+                        iterationObjective += term.evaluate(consensusValues);
+                    }
+                }
+
+                int size = term.size();
+                int[] variableIndexes = term.getVariableIndexes();
+                float[] localValues = term.getLocalValues();
+                float[] localLagranges = term.getLocalLagranges();
+
+                // Update the Lagrange multipliers with the local values and consensus values from the last iteration.
+                for (int i = 0; i < size; i++) {
+                    float diff = localValues[i] - consensusValues[variableIndexes[i]];
+
+                    primalRes += diff * diff;
+                    lagrangePenalty += localLagranges[i] * diff;
+                    augmentedLagrangePenalty += 0.5 * stepSize * diff * diff;
+
+                    localLagranges[i] += stepSize * diff;
                 }
 
-                termStore.get(termIndex).updateLagrange(stepSize, consensusValues);
-                termStore.get(termIndex).minimize(stepSize, consensusValues);
+                term.minimize(stepSize, consensusValues);
+
+                for (int i = 0; i < size; i++) {
+                    AxNorm += localValues[i] * localValues[i];
+                    AyNorm += localLagranges[i] * localLagranges[i];
+
+                    // The consensus values are not updated until the pass is done, so these are still the old ones.
+                    // The term minimizations do not read the old local values, so it is safe to replace them.
+                    if (overRelaxation != 1.0f) {
+                        localValues[i] = overRelaxation * localValues[i] + (1.0f - overRelaxation) * consensusValues[variableIndexes[i]];
+                    }
+
+                    consensusTotals[variableIndexes[i]] += localValues[i] + localLagranges[i] / stepSize;
+                }
             }
+
+            for (int variableIndex = 0; variableIndex < numVariables; variableIndex++) {
+                int numLocalCopies = streamingLocalCounts[variableIndex];
+
+                // A global variable that only appeared in trivial terms will have no local copies.
+                if (numLocalCopies == 0) {
+                    continue;
+                }
+
+                float newConsensusValue = consensusTotals[variableIndex] / numLocalCopies;
+                newConsensusValue = Math.max(Math.min(newConsensusValue, UPPER_BOUND), LOWER_BOUND);
+
+                float diff = consensusValues[variableIndex] - newConsensusValue;
+                dualRes += diff * diff * numLocalCopies;
+                BzNorm += newConsensusValue * newConsensusValue * numLocalCopies;
+
+                consensusValues[variableIndex] = newConsensusValue;
+            }
+
+            completeIteration(evaluateObjective ? new ObjectiveResult(iterationObjective, violatedConstraints) : null);
         }
+
+        objective = computeStreamingObjective(termStore);
+
+        if (objective.violatedConstraints > 0) {
+            log.warn("No feasible solution found. {} constraints violated.", objective.violatedConstraints);
+        }
+
+        log.info("Optimization completed in {} iterations. Objective: {}, Feasible: {}, Primal res.: {}, Dual res.: {}",
+                iteration - 1, objective.objective, (objective.violatedConstraints == 0), primalRes, dualRes);
+
+        termStore.syncAtoms();
+
+        lastStreamingTermStore = termStore;
     }
 
-    private class VariableWorker extends Parallel.Worker<Integer> {
-        private ADMMTermStore termStore;
-        private int blockSize;
+    /**
+     * Set the initial consensus values and (with a pass over the terms) the initial local variables.
+     * The number of local copies of each consensus variable is also counted during the pass.
+     */
+    private void initStreamingValues(ADMMStreamingTermStore termStore, InitialValue initialConsensus, InitialValue initialLocal) {
+        int numVariables = termStore.getNumVariables();
+        float[] variableValues = termStore.getVariableValues();
+
+        float[] atomValues = null;
+        if (initialConsensus == InitialValue.ATOM || initialLocal == InitialValue.ATOM) {
+            atomValues = new float[numVariables];
+
+            int variableIndex = 0;
+            for (RandomVariableAtom atom : termStore.getVariables()) {
+                atomValues[variableIndex] = atom.getValue();
+                variableIndex++;
+            }
+        }
+
+        for (int i = 0; i < numVariables; i++) {
+            if (initialConsensus == InitialValue.ZERO) {
+                variableValues[i] = 0.0f;
+            } else if (initialConsensus == InitialValue.RANDOM) {
+                variableValues[i] = RandUtils.nextFloat();
+            } else if (initialConsensus == InitialValue.ATOM) {
+                variableValues[i] = atomValues[i];
+            } else {
+                throw new IllegalStateException("Unknown initial consensus value: " + initialConsensus);
+            }
+        }
+
+        // Null initial values mean random local values.
+        float[] initialLocalValues = null;
+        if (initialLocal == InitialValue.ZERO) {
+            initialLocalValues = new float[numVariables];
+        } else if (initialLocal == InitialValue.ATOM) {
+            initialLocalValues = atomValues;
+        } else if (initialLocal != InitialValue.RANDOM) {
+            throw new IllegalStateException("Unknown initial local value: " + initialLocal);
+        }
+
+        streamingLocalCounts = new int[numVariables];
+
+        for (ADMMStreamingObjectiveTerm term : termStore) {
+            term.resetLocalVariables(initialLocalValues);
+
+            int[] variableIndexes = term.getVariableIndexes();
+            for (int i = 0; i < term.size(); i++) {
+                streamingLocalCounts[variableIndexes[i]]++;
+            }
+        }
+    }
+
+    /**
+     * Compute the objective of the current consensus values with a read-only pass over the (streaming) terms.
+     */
+    private ObjectiveResult computeStreamingObjective(ADMMStreamingTermStore termStore) {
+        float objective = 0.0f;
+        int violatedConstraints = 0;
+
+        Iterator<ADMMStreamingObjectiveTerm> termIterator = termStore.noWriteIterator();
+        while (termIterator.hasNext()) {
+            ADMMStreamingObjectiveTerm term = termIterator.next();
+
+            if (term.isConstraint()) {
+                if (term.evaluate(consensusValues) > 0.0f) {
+                    violatedConstraints++;
+                }
+            } else {
+                objective += term.evaluate(consensusValues);
+            }
+        }
+
+        return new ObjectiveResult(objective, violatedConstraints);
+    }
+
+    /**
+     * Compute the objective of the current consensus values with a full (parallel) pass over the terms.
+     * During iterations, the objective is instead computed alongside the term minimizations.
+     * Must not be called from inside an iteration.
+     */
+    private ObjectiveResult computeObjective(ADMMTermStore termStore) {
+        int numTerms = termStore.size();
+        int blockSize = numTerms / (Parallel.getNumThreads() * 4) + 1;
+        int numBlocks = (int)Math.ceil(numTerms / (float)blockSize);
+
+        List<ObjectiveWorker> workers = new ArrayList<ObjectiveWorker>(Parallel.getNumThreads());
+        for (int i = 0; i < Parallel.getNumThreads(); i++) {
+            workers.add(new ObjectiveWorker(termStore, blockSize));
+        }
+
+        Parallel.count(numBlocks, workers);
+
+        float objective = 0.0f;
+        int violatedConstraints = 0;
+        for (ObjectiveWorker worker : workers) {
+            objective += worker.objective;
+            violatedConstraints += worker.violatedConstraints;
+        }
+
+        return new ObjectiveResult(objective, violatedConstraints);
+    }
+
+    /**
+     * Reduce the per-worker residuals and norms into the iteration variables.
+     * Must only be called once all the variable workers are done for the iteration.
+     * The workers' accumulators are reset so they are ready for the next iteration.
+     */
+    private void collectIterationVariables(List<IterationWorker> workers) {
+        primalRes = 0.0f;
+        dualRes = 0.0f;
+        AxNorm = 0.0f;
+        AyNorm = 0.0f;
+        BzNorm = 0.0f;
+        lagrangePenalty = 0.0f;
+        augmentedLagrangePenalty = 0.0f;
+
+        for (IterationWorker worker : workers) {
+            primalRes += worker.primalRes;
+            dualRes += worker.dualRes;
+            AxNorm += worker.AxNorm;
+            AyNorm += worker.AyNorm;
+            BzNorm += worker.BzNorm;
+            lagrangePenalty += worker.lagrangePenalty;
+            augmentedLagrangePenalty += worker.augmentedLagrangePenalty;
+
+            worker.resetAccumulators();
+        }
+    }
 
-        public VariableWorker(ADMMTermStore termStore, int blockSize) {
+    /**
+     * Runs all the iterations for a single partition (the index given to work()).
+     * Each worker accumulates its own residuals and norms for an iteration.
+     * These are only read (and reset) inside the iteration barrier.
+     */
+    private class IterationWorker extends Parallel.Worker<Integer> {
+        private ADMMTermStore termStore;
+        private ADMMTermPartition partition;
+        private AtomicIntegerArray termEpochs;
+        private CyclicBarrier barrier;
+
+        private float[] localValues;
+        private float[] localLagranges;
+        private int[] consensusOffsets;
+        private int[] consensusLocalIndexes;
+
+        private float primalRes;
+        private float dualRes;
+        private float AxNorm;
+        private float AyNorm;
+        private float BzNorm;
+        private float lagrangePenalty;
+        private float augmentedLagrangePenalty;
+
+        private float objective;
+        private int violatedConstraints;
+
+        public IterationWorker(ADMMTermStore termStore, ADMMTermPartition partition,
+                AtomicIntegerArray termEpochs, CyclicBarrier barrier) {
             super();
             this.termStore = termStore;
-            this.blockSize = blockSize;
+            this.partition = partition;
+            this.termEpochs = termEpochs;
+            this.barrier = barrier;
+
+            resetAccumulators();
         }
 
-        public Object clone() {
-            return new VariableWorker(termStore, blockSize);
+        public void resetAccumulators() {
+            primalRes = 0.0f;
+            dualRes = 0.0f;
+            AxNorm = 0.0f;
+            AyNorm = 0.0f;
+            BzNorm = 0.0f;
+            lagrangePenalty = 0.0f;
+            augmentedLagrangePenalty = 0.0f;
         }
 
         @Override
-        public void work(int blockIndex, Integer ignore) {
-            int numVariables = termStore.getNumGlobalVariables();
-
-            float primalResInc = 0.0f;
-            float dualResInc = 0.0f;
-            float AxNormInc = 0.0f;
-            float BzNormInc = 0.0f;
-            float AyNormInc = 0.0f;
-            float lagrangePenaltyInc = 0.0f;
-            float augmentedLagrangePenaltyInc = 0.0f;
-
-            // Instead of dividing up the work ahead of time,
-            // get one job at a time so the threads will have more even workloads.
-            for (int innerBlockIndex = 0; innerBlockIndex < blockSize; innerBlockIndex++) {
-                int variableIndex = blockIndex * blockSize + innerBlockIndex;
+        public void work(int partitionIndex, Integer ignore) {
+            int[] terms = partition.getTerms(partitionIndex);
+            int[] dependencies = partition.getDependencies(partitionIndex);
+            int[] variables = partition.getVariables(partitionIndex);
+
+            localValues = termStore.getLocalValues();
+            localLagranges = termStore.getLocalLagranges();
+            consensusOffsets = termStore.getConsensusOffsets();
+            consensusLocalIndexes = termStore.getConsensusLocalIndexes();
+
+            int epoch = 0;
+
+            try {
+                while (!stopIterating) {
+                    epoch++;
+
+                    boolean evaluate = evaluateObjective;
+
+                    // Minimize each local function (wrt the local variable copies).
+                    for (int termIndex : terms) {
+                        ADMMObjectiveTerm term = termStore.get(termIndex);
+
+                        // The consensus values are not touched during the term pass,
+                        // so evaluating here is the same as evaluating at the end of the last iteration.
+                        if (evaluate) {
+                            if (term instanceof LinearConstraintTerm) {
+                                if (term.evaluate(termStore, consensusValues) > 0.0f) {
+                                    violatedConstraints++;
+                                }
+                            } else {
+                                objective += term.evaluate(termStore, consensusValues);
+                            }
+                        }
+
+                        term.updateLagrange(termStore, stepSize, consensusValues);
+                        term.minimize(termStore, stepSize, consensusValues);
+                    }
+                    termEpochs.set(partitionIndex, epoch);
+
+                    // Wait for anyone else that has local copies of our variables.
+                    for (int dependency : dependencies) {
+                        while (termEpochs.get(dependency) < epoch) {
+                            if (iterationFailed) {
+                                throw new IllegalStateException("Another ADMM worker failed.");
+                            }
+
+                            Thread.yield();
+                        }
+                    }
+
+                    updateVariables(variables);
+
+                    barrier.await();
+                }
+            } catch (InterruptedException ex) {
+                throw new RuntimeException("Interrupted during ADMM iteration.", ex);
+            } catch (BrokenBarrierException ex) {
+                throw new RuntimeException("ADMM iteration aborted.", ex);
+            } catch (RuntimeException ex) {
+                // Make sure no one is waiting on us, and let the barrier stop the iterations.
+                iterationFailed = true;
+                termEpochs.set(partitionIndex, Integer.MAX_VALUE);
+
+                try {
+                    barrier.await();
+                } catch (InterruptedException | BrokenBarrierException barrierEx) {
+                    // The original exception is more important.
+                }
 
-                if (variableIndex >= numVariables) {
-                    break;
+                throw ex;
+            }
+        }
+
+        /**
+         * Compute new consensus values and residuals for the given variables.
+         */
+        private void updateVariables(int[] variables) {
+            for (int variableIndex : variables) {
+                int start = consensusOffsets[variableIndex];
+                int end = consensusOffsets[variableIndex + 1];
+                int numLocalVariables = end - start;
+
+                // A global variable that only appeared in trivial terms will have no local copies.
+                if (numLocalVariables == 0) {
+                    continue;
                 }
 
                 float total = 0.0f;
-                int numLocalVariables = termStore.getLocalVariables(variableIndex).size();
+                float oldConsensusValue = consensusValues[variableIndex];
 
                 // First pass computes newConsensusValue and dual residual fom all local copies.
-                for (int localVarIndex = 0; localVarIndex < numLocalVariables; localVarIndex++) {
-                    LocalVariable localVariable = termStore.getLocalVariables(variableIndex).get(localVarIndex);
-                    total += localVariable.getValue() + localVariable.getLagrange() / stepSize;
+                for (int i = start; i < end; i++) {
+                    int localId = consensusLocalIndexes[i];
+                    float value = localValues[localId];
+                    float lagrange = localLagranges[localId];
+
+                    AxNorm += value * value;
+                    AyNorm += lagrange * lagrange;
+
+                    if (overRelaxation != 1.0f) {
+                        value = overRelaxation * value + (1.0f - overRelaxation) * oldConsensusValue;
+                    }
 
-                    AxNormInc += localVariable.getValue() * localVariable.getValue();
-                    AyNormInc += localVariable.getLagrange() * localVariable.getLagrange();
+                    total += value + lagrange / stepSize;
                 }
 
                 float newConsensusValue = total / numLocalVariables;
                 newConsensusValue = Math.max(Math.min(newConsensusValue, UPPER_BOUND), LOWER_BOUND);
 
-                float diff = consensusValues[variableIndex] - newConsensusValue;
+                float diff = oldConsensusValue - newConsensusValue;
                 // Residual is diff^2 * number of local variables mapped to consensusValues element.
-                dualResInc += diff * diff * numLocalVariables;
-                BzNormInc += newConsensusValue * newConsensusValue * numLocalVariables;
+                dualRes += diff * diff * numLocalVariables;
+                BzNorm += newConsensusValue * newConsensusValue * numLocalVariables;
 
                 consensusValues[variableIndex] = newConsensusValue;
 
                 // Second pass computes primal residuals.
 
-                for (int localVarIndex = 0; localVarIndex < numLocalVariables; localVarIndex++) {
-                    LocalVariable localVariable = termStore.getLocalVariables(variableIndex).get(localVarIndex);
+                for (int i = start; i < end; i++) {
+                    int localId = consensusLocalIndexes[i];
 
-                    diff = localVariable.getValue() - newConsensusValue;
-                    primalResInc += diff * diff;
+                    diff = localValues[localId] - newConsensusValue;
+                    primalRes += diff * diff;
 
                     // compute Lagrangian penalties
-                    lagrangePenaltyInc += localVariable.getLagrange() * (localVariable.getValue() - consensusValues[variableIndex]);
-                    augmentedLagrangePenaltyInc += 0.5 * stepSize * Math.pow(localVariable.getValue() - consensusValues[variableIndex], 2);
+                    lagrangePenalty += localLagranges[localId] * diff;
+                    augmentedLagrangePenalty += 0.5 * stepSize * diff * diff;
+
+                    // The next Lagrange update should use the relaxed value.
+                    // The term minimizations do not read the old local values, so it is safe to replace them.
+                    if (overRelaxation != 1.0f) {
+                        localValues[localId] = overRelaxation * localValues[localId] + (1.0f - overRelaxation) * oldConsensusValue;
+                    }
                 }
             }
+        }
+    }
 
-            updateIterationVariables(primalResInc, dualResInc, AxNormInc, BzNormInc, AyNormInc, lagrangePenaltyInc, augmentedLagrangePenaltyInc);
+    private class ObjectiveWorker extends Parallel.Worker<Integer> {
+        private ADMMTermStore termStore;
+        private int blockSize;
+
+        private float objective;
+        private int violatedConstraints;
+
+        public ObjectiveWorker(ADMMTermStore termStore, int blockSize) {
+            super();
+            this.termStore = termStore;
+            this.blockSize = blockSize;
+
+            objective = 0.0f;
+            violatedConstraints = 0;
+        }
+
+        @Override
+        public void work(int blockIndex, Integer ignore) {
+            int numTerms = termStore.size();
+
+            for (int innerBlockIndex = 0; innerBlockIndex < blockSize; innerBlockIndex++) {
+                int termIndex = blockIndex * blockSize + innerBlockIndex;
+
+                if (termIndex >= numTerms) {
+                    break;
+                }
+
+                ADMMObjectiveTerm term = termStore.get(termIndex);
+                if (term instanceof LinearConstraintTerm) {
+                    if (term.evaluate(termStore, consensusValues) > 0.0f) {
+                        violatedConstraints++;
+                    }
+                } else {
+                    objective += term.evaluate(termStore, consensusValues);
+                }
+            }
         }
     }
 
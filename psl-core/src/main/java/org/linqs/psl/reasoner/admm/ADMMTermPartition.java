@@ -0,0 +1,254 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2019 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import org.linqs.psl.reasoner.admm.term.ADMMObjectiveTerm;
+import org.linqs.psl.reasoner.admm.term.ADMMTermStore;
+
+import java.util.Arrays;
+
+/**
+ * Splits the global variables and terms of an ADMMTermStore among a fixed number of owners (threads).
+ *
+ * Variables are assigned by growing each partition breadth-first over the variable/term graph
+ * (two variables are adjacent if they share a term) until it holds its share of the local copies.
+ * So, variables that share terms tend to land in the same partition.
+ * Each term is owned by the owner of its first variable.
+ * An owner depends on another owner if the other owns a term that touches one of its variables,
+ * i.e. it must wait for the other to finish minimizing its terms before it can update its consensus values.
+ */
+public class ADMMTermPartition {
+    private final int numPartitions;
+
+    // The partition that owns each global variable.
+    private final int[] variableOwners;
+
+    // The (ascending) indexes of the global variables owned by each partition.
+    private final int[][] variables;
+
+    // The indexes (in the term store) of the terms owned by each partition.
+    private final int[][] terms;
+
+    // The other partitions that each partition depends on.
+    private final int[][] dependencies;
+
+    public ADMMTermPartition(ADMMTermStore termStore, int numPartitions) {
+        if (numPartitions <= 0) {
+            throw new IllegalArgumentException("Number of partitions must be positive, got: " + numPartitions);
+        }
+
+        this.numPartitions = numPartitions;
+
+        int numVariables = termStore.getNumGlobalVariables();
+        int numTerms = termStore.size();
+        int[] consensusOffsets = termStore.getConsensusOffsets();
+        int[] localGlobalIds = termStore.getLocalGlobalIds();
+
+        variableOwners = assignVariables(termStore, numVariables, numTerms, consensusOffsets, localGlobalIds);
+
+        int[] variableCounts = new int[numPartitions];
+        for (int variableIndex = 0; variableIndex < numVariables; variableIndex++) {
+            variableCounts[variableOwners[variableIndex]]++;
+        }
+
+        variables = new int[numPartitions][];
+        for (int partition = 0; partition < numPartitions; partition++) {
+            variables[partition] = new int[variableCounts[partition]];
+            variableCounts[partition] = 0;
+        }
+
+        for (int variableIndex = 0; variableIndex < numVariables; variableIndex++) {
+            int owner = variableOwners[variableIndex];
+            variables[owner][variableCounts[owner]] = variableIndex;
+            variableCounts[owner]++;
+        }
+
+        // Assign terms and collect dependencies.
+        int[] termOwners = new int[numTerms];
+        int[] termCounts = new int[numPartitions];
+        boolean[][] dependsOn = new boolean[numPartitions][numPartitions];
+
+        for (int termIndex = 0; termIndex < numTerms; termIndex++) {
+            ADMMObjectiveTerm term = termStore.get(termIndex);
+
+            int owner = termIndex % numPartitions;
+            if (term.size() > 0) {
+                owner = variableOwners[localGlobalIds[term.getLocalOffset()]];
+            }
+
+            for (int i = 0; i < term.size(); i++) {
+                int variableOwner = variableOwners[localGlobalIds[term.getLocalOffset() + i]];
+                if (variableOwner != owner) {
+                    dependsOn[variableOwner][owner] = true;
+                }
+            }
+
+            termOwners[termIndex] = owner;
+            termCounts[owner]++;
+        }
+        terms = new int[numPartitions][];
+        for (int partition = 0; partition < numPartitions; partition++) {
+            terms[partition] = new int[termCounts[partition]];
+            termCounts[partition] = 0;
+        }
+
+        for (int termIndex = 0; termIndex < numTerms; termIndex++) {
+            int owner = termOwners[termIndex];
+            terms[owner][termCounts[owner]] = termIndex;
+            termCounts[owner]++;
+        }
+
+        dependencies = new int[numPartitions][];
+        for (int partition = 0; partition < numPartitions; partition++) {
+            int count = 0;
+            for (int other = 0; other < numPartitions; other++) {
+                if (dependsOn[partition][other]) {
+                    count++;
+                }
+            }
+
+            dependencies[partition] = new int[count];
+            count = 0;
+            for (int other = 0; other < numPartitions; other++) {
+                if (dependsOn[partition][other]) {
+                    dependencies[partition][count] = other;
+                    count++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Grow each partition breadth-first (over shared terms) until it holds its share of the local variables.
+     * When a partition fills up, the next one keeps growing from the same frontier.
+     * When the frontier empties (a new connected component), growth restarts from the lowest unassigned variable.
+     */
+    private int[] assignVariables(ADMMTermStore termStore, int numVariables, int numTerms,
+            int[] consensusOffsets, int[] localGlobalIds) {
+        int[] consensusLocalIndexes = termStore.getConsensusLocalIndexes();
+
+        // The term that each local variable belongs to.
+        int[] localTerms = new int[termStore.getNumLocalVariables()];
+        for (int termIndex = 0; termIndex < numTerms; termIndex++) {
+            ADMMObjectiveTerm term = termStore.get(termIndex);
+            for (int i = 0; i < term.size(); i++) {
+                localTerms[term.getLocalOffset() + i] = termIndex;
+            }
+        }
+
+        int[] owners = new int[numVariables];
+        Arrays.fill(owners, -1);
+
+        boolean[] visitedTerms = new boolean[numTerms];
+        int[] queue = new int[numVariables];
+        int queueHead = 0;
+        int queueTail = 0;
+
+        long numLocals = consensusOffsets[numVariables];
+        int partition = 0;
+        long partitionTarget = numLocals / numPartitions;
+        long assignedLocals = 0;
+        int nextSeed = 0;
+
+        for (int assigned = 0; assigned < numVariables; ) {
+            if (queueHead == queueTail) {
+                while (owners[nextSeed] != -1) {
+                    nextSeed++;
+                }
+
+                queue[queueTail] = nextSeed;
+                queueTail++;
+                owners[nextSeed] = partition;
+                assigned++;
+
+                assignedLocals += consensusOffsets[nextSeed + 1] - consensusOffsets[nextSeed];
+                while (partition < numPartitions - 1 && assignedLocals >= partitionTarget) {
+                    partition++;
+                    partitionTarget = numLocals * (partition + 1) / numPartitions;
+                }
+            }
+
+            int variableIndex = queue[queueHead];
+            queueHead++;
+
+            for (int i = consensusOffsets[variableIndex]; i < consensusOffsets[variableIndex + 1]; i++) {
+                int termIndex = localTerms[consensusLocalIndexes[i]];
+                if (visitedTerms[termIndex]) {
+                    continue;
+                }
+                visitedTerms[termIndex] = true;
+
+                ADMMObjectiveTerm term = termStore.get(termIndex);
+                for (int j = 0; j < term.size(); j++) {
+                    int neighbor = localGlobalIds[term.getLocalOffset() + j];
+                    if (owners[neighbor] != -1) {
+                        continue;
+                    }
+
+                    queue[queueTail] = neighbor;
+                    queueTail++;
+                    owners[neighbor] = partition;
+                    assigned++;
+
+                    assignedLocals += consensusOffsets[neighbor + 1] - consensusOffsets[neighbor];
+                    while (partition < numPartitions - 1 && assignedLocals >= partitionTarget) {
+                        partition++;
+                        partitionTarget = numLocals * (partition + 1) / numPartitions;
+                    }
+                }
+            }
+        }
+
+        return owners;
+    }
+
+    public int getNumPartitions() {
+        return numPartitions;
+    }
+
+    /**
+     * Get the partition that owns the global variable.
+     */
+    public int getOwner(int variableIndex) {
+        return variableOwners[variableIndex];
+    }
+
+    /**
+     * The (ascending) indexes of the global variables owned by the partition.
+     * Callers should not modify the returned array.
+     */
+    public int[] getVariables(int partition) {
+        return variables[partition];
+    }
+    /**
+     * The indexes of the terms owned by the partition.
+     * Callers should not modify the returned array.
+     */
+    public int[] getTerms(int partition) {
+        return terms[partition];
+    }
+
+    /**
+     * The other partitions that must finish minimizing their terms
+     * before this partition can update its consensus values.
+     * Callers should not modify the returned array.
+     */
+    public int[] getDependencies(int partition) {
+        return dependencies[partition];
+    }
+}
@@ -18,32 +18,54 @@
 package org.linqs.psl.reasoner.admm.term;
 
 import org.linqs.psl.model.rule.GroundRule;
+import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.model.rule.WeightedGroundRule;
 import org.linqs.psl.reasoner.term.Hyperplane;
 import org.linqs.psl.reasoner.term.ReasonerTerm;
 
 /**
  * A term in the objective to be optimized by an ADMMReasoner.
+ *
+ * Terms do not hold their local variables directly.
+ * Instead, each term owns a contiguous range of local variables inside of its ADMMTermStore
+ * (starting at getLocalOffset() and running for size() variables).
+ *
+ * The weight is copied out of the ground rule when the term is created (see ADMMTermStore.updateWeights()).
+ * The ground rule itself is only kept if the term store is keeping ground rules.
  */
 public abstract class ADMMObjectiveTerm implements ReasonerTerm {
+    protected final Rule rule;
     protected final GroundRule groundRule;
-    protected final LocalVariable[] variables;
     protected final int size;
+    protected final int localOffset;
+
+    // Zero for constraints.
+    protected float weight;
 
     /**
      * Caller releases control of the hyperplane and all members of it.
+     * The local variables for this term will be allocated in the term store.
      */
-    public ADMMObjectiveTerm(Hyperplane<LocalVariable> hyperplane, GroundRule groundRule) {
-        this.variables = hyperplane.getVariables();
+    public ADMMObjectiveTerm(ADMMTermStore termStore, Hyperplane<LocalVariable> hyperplane, GroundRule groundRule) {
         this.size = hyperplane.size();
-        this.groundRule = groundRule;
+        this.rule = (groundRule == null) ? null : groundRule.getRule();
+        this.groundRule = termStore.getKeepGroundRules() ? groundRule : null;
+        this.localOffset = termStore.allocateLocalVariables(hyperplane);
+
+        if (groundRule instanceof WeightedGroundRule) {
+            weight = (float)((WeightedGroundRule)groundRule).getWeight();
+        } else {
+            weight = 0.0f;
+        }
     }
 
-    public void updateLagrange(float stepSize, float[] consensusValues) {
-        // Use index instead of iterator here so we can see clear results in the profiler.
-        // http://psy-lob-saw.blogspot.co.uk/2014/12/the-escape-of-arraylistiterator.html
-        for (int i = 0; i < size; i++) {
-            LocalVariable variable = variables[i];
-            variable.setLagrange(variable.getLagrange() + stepSize * (variable.getValue() - consensusValues[variable.getGlobalId()]));
+    public void updateLagrange(ADMMTermStore termStore, float stepSize, float[] consensusValues) {
+        float[] localValues = termStore.getLocalValues();
+        float[] localLagranges = termStore.getLocalLagranges();
+        int[] localGlobalIds = termStore.getLocalGlobalIds();
+
+        for (int i = localOffset; i < localOffset + size; i++) {
+            localLagranges[i] += stepSize * (localValues[i] - consensusValues[localGlobalIds[i]]);
         }
     }
 
@@ -52,24 +74,19 @@ public abstract class ADMMObjectiveTerm implements ReasonerTerm {
      * argmin f(x) + stepSize / 2 * \|x - z + y / stepSize \|_2^2 <br />
      * for the objective term f(x)
      */
-    public abstract void minimize(float stepSize, float[] consensusValues);
-
-    /**
-     * Evaluate this potential using the local variables.
-     */
-    public abstract float evaluate();
+    public abstract void minimize(ADMMTermStore termStore, float stepSize, float[] consensusValues);
 
     /**
      * Evaluate this potential using the given consensus values.
      */
-    public abstract float evaluate(float[] consensusValues);
+    public abstract float evaluate(ADMMTermStore termStore, float[] consensusValues);
 
     /**
-     * Get the variables used in this term.
-     * The caller should not modify the returned array, and should check size() for a reliable length.
+     * Get the local id of the first local variable used in this term.
+     * The local variables for this term are [getLocalOffset(), getLocalOffset() + size()).
      */
-    public LocalVariable[] getVariables() {
-        return variables;
+    public int getLocalOffset() {
+        return localOffset;
     }
 
     /**
@@ -80,7 +97,26 @@ public abstract class ADMMObjectiveTerm implements ReasonerTerm {
         return size;
     }
 
+    /**
+     * Get the ground rule this term was created from.
+     * Will be null if the term store was not keeping ground rules when this term was created.
+     */
     public GroundRule getGroundRule() {
         return groundRule;
     }
+
+    /**
+     * Get the (first order) rule this term was created from.
+     */
+    public Rule getRule() {
+        return rule;
+    }
+
+    public float getWeight() {
+        return weight;
+    }
+
+    void setWeight(float weight) {
+        this.weight = weight;
+    }
 }
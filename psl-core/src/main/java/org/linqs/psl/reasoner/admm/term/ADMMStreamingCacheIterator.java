@@ -0,0 +1,77 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2019 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm.term;
+
+import org.linqs.psl.reasoner.term.streaming.StreamingCacheIterator;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ADMMStreamingCacheIterator extends StreamingCacheIterator<ADMMStreamingObjectiveTerm> {
+    public ADMMStreamingCacheIterator(
+            ADMMStreamingTermStore parentStore, boolean readonly,
+            List<ADMMStreamingObjectiveTerm> termCache, List<ADMMStreamingObjectiveTerm> termPool,
+            ByteBuffer termBuffer, ByteBuffer volatileBuffer,
+            boolean shufflePage, int[] shuffleMap, boolean randomizePageAccess,
+            int numPages) {
+        super(parentStore, readonly, termCache, termPool, termBuffer,
+                volatileBuffer, shufflePage, shuffleMap, randomizePageAccess, numPages);
+    }
+
+    public ADMMStreamingCacheIterator(
+            ADMMStreamingTermStore parentStore, boolean readonly,
+            List<ADMMStreamingObjectiveTerm> termCache, List<ADMMStreamingObjectiveTerm> termPool,
+            ByteBuffer termBuffer, ByteBuffer volatileBuffer,
+            boolean shufflePage, int[] shuffleMap,
+            List<Integer> pageAccessOrder, AtomicInteger nextPage) {
+        super(parentStore, readonly, termCache, termPool, termBuffer,
+                volatileBuffer, shufflePage, shuffleMap, pageAccessOrder, nextPage);
+    }
+
+    @Override
+    protected int getVolatileByteSize(int pageIndex, int numTerms) {
+        // The local values and Lagrange multipliers of every term.
+        return ((ADMMStreamingTermStore)parentStore).getVolatilePageSize(pageIndex);
+    }
+
+    @Override
+    protected void readTerms(int numTerms, ByteBuffer termBuffer, ByteBuffer volatileBuffer) {
+        // Convert all the terms from binary to objects.
+        // Use the terms from the pool.
+
+        for (int i = 0; i < numTerms; i++) {
+            ADMMStreamingObjectiveTerm term = termPool.get(i);
+            if (pageCodec != null) {
+                term.readCompact(termBuffer, volatileBuffer, pageCodec);
+            } else {
+                term.read(termBuffer, volatileBuffer);
+            }
+            termCache.add(term);
+        }
+    }
+
+    @Override
+    protected void writeVolatileValues(ByteBuffer volatileBuffer) {
+        // Each term remembers where its local variables were read from,
+        // so the shuffle map is not needed to put them back in page order.
+        for (ADMMStreamingObjectiveTerm term : termCache) {
+            term.writeVolatileValues(volatileBuffer);
+        }
+    }
+}
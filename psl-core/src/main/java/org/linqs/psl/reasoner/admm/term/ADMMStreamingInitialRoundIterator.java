@@ -0,0 +1,104 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2019 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm.term;
+
+import org.linqs.psl.database.atom.AtomManager;
+import org.linqs.psl.model.atom.RandomVariableAtom;
+import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.reasoner.term.HyperplaneTermGenerator;
+import org.linqs.psl.reasoner.term.streaming.StreamingInitialRoundIterator;
+import org.linqs.psl.util.RuntimeStats;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Iterate over all the terms that come up from grounding.
+ * On this first iteration, we will build the term cache up from ground rules
+ * and flush the terms (and their local variables) to disk.
+ */
+public class ADMMStreamingInitialRoundIterator extends StreamingInitialRoundIterator<ADMMStreamingObjectiveTerm> {
+    public ADMMStreamingInitialRoundIterator(
+            ADMMStreamingTermStore parentStore, List<Rule> rules,
+            AtomManager atomManager, HyperplaneTermGenerator<ADMMStreamingObjectiveTerm, RandomVariableAtom> termGenerator,
+            List<ADMMStreamingObjectiveTerm> termCache, List<ADMMStreamingObjectiveTerm> termPool,
+            ByteBuffer termBuffer, ByteBuffer volatileBuffer,
+            int pageSize) {
+        super(parentStore, rules, atomManager, termGenerator, termCache, termPool, termBuffer, volatileBuffer, pageSize);
+    }
+
+    @Override
+    protected void writeFullPage(String termPagePath, String volatilePagePath) {
+        flushTermCache(termPagePath);
+        flushVolatileCache(volatilePagePath);
+
+        termCache.clear();
+    }
+
+    private void flushTermCache(String termPagePath) {
+        boolean compact = parentStore.isCompactPages();
+
+        // Count the size we will need to write (only an upper bound for compact pages).
+        int termsSize = 0;
+        for (ADMMStreamingObjectiveTerm term : termCache) {
+            termsSize += compact ? term.compactByteSizeBound() : term.fixedByteSize();
+        }
+
+        prepareTermBuffer(termsSize);
+
+        for (ADMMStreamingObjectiveTerm term : termCache) {
+            if (compact) {
+                term.writeCompactValues(termBuffer, pageCodec);
+            } else {
+                term.writeFixedValues(termBuffer);
+            }
+        }
+
+        writeTermPage(termPagePath, termCache.size());
+    }
+
+    private void flushVolatileCache(String volatilePagePath) {
+        int volatileBufferSize = 0;
+        for (ADMMStreamingObjectiveTerm term : termCache) {
+            volatileBufferSize += term.volatileByteSize();
+        }
+
+        if (volatileBuffer == null || volatileBuffer.capacity() < volatileBufferSize) {
+            volatileBuffer = ByteBuffer.allocate((int)(volatileBufferSize * OVERALLOCATION_RATIO));
+        }
+        volatileBuffer.clear();
+
+        // Put in all the local variables.
+        for (ADMMStreamingObjectiveTerm term : termCache) {
+            term.appendVolatileValues(volatileBuffer);
+        }
+
+        try (FileOutputStream stream = new FileOutputStream(volatilePagePath)) {
+            stream.write(volatileBuffer.array(), 0, volatileBufferSize);
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to write volatile cache page: " + volatilePagePath, ex);
+        }
+
+        ((ADMMStreamingTermStore)parentStore).setVolatilePageSize(numPages, volatileBufferSize);
+
+        // Log io.
+        RuntimeStats.logDiskWrite(volatileBufferSize);
+    }
+}
@@ -0,0 +1,508 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2019 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm.term;
+
+import org.linqs.psl.model.atom.RandomVariableAtom;
+import org.linqs.psl.reasoner.term.Hyperplane;
+import org.linqs.psl.reasoner.term.ReasonerTerm;
+import org.linqs.psl.reasoner.term.VariableTermStore;
+import org.linqs.psl.reasoner.term.streaming.TermPageCodec;
+import org.linqs.psl.util.MathUtils;
+import org.linqs.psl.util.RandUtils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A term in the objective to be optimized by an ADMMReasoner using an ADMMStreamingTermStore.
+ *
+ * Unlike ADMMObjectiveTerm, these terms hold everything they need themselves
+ * (so they can be written to and read from term pages).
+ * The weight is copied out of the ground rule when the term is created.
+ * The local variables (values and Lagrange multipliers) are the volatile values of the term.
+ * Only the consensus values (the term store's variable values) are shared between terms.
+ *
+ * All coefficients must be non-zero.
+ */
+public class ADMMStreamingObjectiveTerm implements ReasonerTerm {
+    /**
+     * The kinds of potentials a term can represent.
+     * See the matching ADMMObjectiveTerm child for the form of each potential.
+     */
+    public static enum TermType {
+        LINEAR_LOSS,
+        HINGE_LOSS,
+        SQUARED_LINEAR_LOSS,
+        SQUARED_HINGE_LOSS,
+        CONSTRAINT_EQ,
+        CONSTRAINT_LTE,
+        CONSTRAINT_GTE
+    }
+
+    private static final TermType[] TERM_TYPES = TermType.values();
+
+    private TermType type;
+    private float weight;
+    private float constant;
+
+    private short size;
+    private float[] coefficients;
+    private int[] variableIndexes;
+
+    private float[] localValues;
+    private float[] localLagranges;
+
+    // Where this term's volatile values start in the page it was last read from.
+    // This is not written out.
+    private int volatileOffset;
+
+    /**
+     * Construct a blank term that will be filled with read().
+     */
+    public ADMMStreamingObjectiveTerm() {
+        size = 0;
+        coefficients = new float[0];
+        variableIndexes = new int[0];
+        localValues = new float[0];
+        localLagranges = new float[0];
+        volatileOffset = 0;
+    }
+
+    /**
+     * The local variables will start at zero.
+     * Constraints should pass a zero weight.
+     */
+    public ADMMStreamingObjectiveTerm(VariableTermStore<ADMMStreamingObjectiveTerm, RandomVariableAtom> termStore,
+            TermType type, Hyperplane<RandomVariableAtom> hyperplane, float weight) {
+        this.type = type;
+        this.weight = weight;
+
+        size = (short)hyperplane.size();
+        coefficients = hyperplane.getCoefficients();
+        constant = hyperplane.getConstant();
+
+        variableIndexes = new int[size];
+        RandomVariableAtom[] variables = hyperplane.getVariables();
+        for (int i = 0; i < size; i++) {
+            variableIndexes[i] = termStore.getVariableIndex(variables[i]);
+        }
+
+        localValues = new float[size];
+        localLagranges = new float[size];
+        volatileOffset = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public boolean isConstraint() {
+        return type == TermType.CONSTRAINT_EQ || type == TermType.CONSTRAINT_LTE || type == TermType.CONSTRAINT_GTE;
+    }
+
+    /**
+     * The consensus (term store) indexes of this term's variables.
+     * Only the first size() entries are valid.
+     */
+    public int[] getVariableIndexes() {
+        return variableIndexes;
+    }
+
+    /**
+     * Only the first size() entries are valid.
+     */
+    public float[] getLocalValues() {
+        return localValues;
+    }
+
+    /**
+     * Only the first size() entries are valid.
+     * The reasoner updates these directly.
+     */
+    public float[] getLocalLagranges() {
+        return localLagranges;
+    }
+
+    /**
+     * Evaluate this potential using the given consensus values.
+     * Constraints evaluate to zero when satisfied and infinity otherwise.
+     */
+    public float evaluate(float[] consensusValues) {
+        float dot = 0.0f;
+        for (int i = 0; i < size; i++) {
+            dot += coefficients[i] * consensusValues[variableIndexes[i]];
+        }
+        float value = dot - constant;
+
+        switch (type) {
+            case LINEAR_LOSS:
+                return weight * dot;
+            case HINGE_LOSS:
+                return weight * Math.max(value, 0.0f);
+            case SQUARED_LINEAR_LOSS:
+                return weight * value * value;
+            case SQUARED_HINGE_LOSS:
+                return weight * (float)Math.pow(Math.max(0.0f, value), 2);
+            case CONSTRAINT_EQ:
+                return MathUtils.isZero(value, MathUtils.RELAXED_EPSILON) ? 0.0f : Float.POSITIVE_INFINITY;
+            case CONSTRAINT_LTE:
+                return (value <= 0.0f) ? 0.0f : Float.POSITIVE_INFINITY;
+            case CONSTRAINT_GTE:
+                return (value >= 0.0f) ? 0.0f : Float.POSITIVE_INFINITY;
+            default:
+                throw new IllegalStateException("Unknown term type: " + type);
+        }
+    }
+
+    /**
+     * Updates x to the solution of <br />
+     * argmin f(x) + stepSize / 2 * \|x - z + y / stepSize \|_2^2 <br />
+     * for the objective term f(x)
+     */
+    public void minimize(float stepSize, float[] consensusValues) {
+        // Start with the minimization without the potential, i.e., solve
+        // argmin stepSize/2 * \|x - z + y / stepSize \|_2^2
+        float total = 0.0f;
+        for (int i = 0; i < size; i++) {
+            localValues[i] = consensusValues[variableIndexes[i]] - localLagranges[i] / stepSize;
+            total += coefficients[i] * localValues[i];
+        }
+
+        switch (type) {
+            case LINEAR_LOSS:
+                for (int i = 0; i < size; i++) {
+                    localValues[i] -= weight * coefficients[i] / stepSize;
+                }
+                return;
+
+            case HINGE_LOSS:
+                // If the linear loss is NOT active at the computed point, it is the solution.
+                if (total <= constant) {
+                    return;
+                }
+
+                total = 0.0f;
+                for (int i = 0; i < size; i++) {
+                    localValues[i] -= weight * coefficients[i] / stepSize;
+                    total += coefficients[i] * localValues[i];
+                }
+
+                // If the linear loss IS active at the computed point, it is the solution.
+                if (total >= constant) {
+                    return;
+                }
+
+                // Else, the solution is on the hinge.
+                project(stepSize, consensusValues);
+                return;
+
+            case SQUARED_LINEAR_LOSS:
+                minWeightedSquaredHyperplane(stepSize);
+                return;
+
+            case SQUARED_HINGE_LOSS:
+                // If the quadratic loss is NOT active at the computed point, it is the solution.
+                if (total <= constant) {
+                    return;
+                }
+
+                minWeightedSquaredHyperplane(stepSize);
+                return;
+
+            case CONSTRAINT_LTE:
+                if (total <= constant) {
+                    return;
+                }
+
+                project(stepSize, consensusValues);
+                return;
+
+            case CONSTRAINT_GTE:
+                if (total >= constant) {
+                    return;
+                }
+
+                project(stepSize, consensusValues);
+                return;
+
+            case CONSTRAINT_EQ:
+                project(stepSize, consensusValues);
+                return;
+
+            default:
+                throw new IllegalStateException("Unknown term type: " + type);
+        }
+    }
+
+    /**
+     * Set the local values (and zero the Lagrange multipliers).
+     * If |initialValues| is null, then random values will be used.
+     * Otherwise the local values will be copied from the consensus indexes of |initialValues|.
+     */
+    public void resetLocalVariables(float[] initialValues) {
+        for (int i = 0; i < size; i++) {
+            if (initialValues == null) {
+                localValues[i] = RandUtils.nextFloat();
+            } else {
+                localValues[i] = initialValues[variableIndexes[i]];
+            }
+
+            localLagranges[i] = 0.0f;
+        }
+    }
+
+    /**
+     * Finds the orthogonal projection onto the hyperplane <br />
+     * argmin stepSize/2 * \|x - z + y / stepSize \|_2^2 <br />
+     * such that coefficients^T * x = constant.
+     */
+    private void project(float stepSize, float[] consensusValues) {
+        float dot = 0.0f;
+        float norm = 0.0f;
+
+        for (int i = 0; i < size; i++) {
+            localValues[i] = consensusValues[variableIndexes[i]] - localLagranges[i] / stepSize;
+
+            dot += coefficients[i] * localValues[i];
+            norm += coefficients[i] * coefficients[i];
+        }
+
+        float multiplier = (dot - constant) / norm;
+        for (int i = 0; i < size; i++) {
+            localValues[i] -= multiplier * coefficients[i];
+        }
+    }
+
+    /**
+     * Minimizes the weighted, squared hyperplane <br />
+     * argmin weight * (coefficients^T * x - constant)^2 + stepSize/2 * \|x - z + y / stepSize \|_2^2
+     * <p>
+     * Assumes that the local values already hold (z - y / stepSize).
+     * The system (stepSize * I + 2 * weight * coefficients * coefficients^T) x = b
+     * is a rank one update of a diagonal matrix, so it is solved directly (Sherman-Morrison).
+     */
+    private void minWeightedSquaredHyperplane(float stepSize) {
+        float dot = 0.0f;
+        float norm = 0.0f;
+
+        // b = stepSize * (z - y / stepSize) + 2 * weight * constant * coefficients
+        for (int i = 0; i < size; i++) {
+            localValues[i] = stepSize * localValues[i] + 2.0f * weight * constant * coefficients[i];
+
+            dot += coefficients[i] * localValues[i];
+            norm += coefficients[i] * coefficients[i];
+        }
+
+        float multiplier = 2.0f * weight * dot / (stepSize + 2.0f * weight * norm);
+        for (int i = 0; i < size; i++) {
+            localValues[i] = (localValues[i] - multiplier * coefficients[i]) / stepSize;
+        }
+    }
+
+    /**
+     * The number of bytes that writeFixedValues() will need to represent this term.
+     * This is all the member datum minus the local variables.
+     */
+    public int fixedByteSize() {
+        int bitSize =
+            Byte.SIZE  // type
+            + Float.SIZE  // weight
+            + Float.SIZE  // constant
+            + Short.SIZE  // size
+            + size * (Float.SIZE + Integer.SIZE);  // coefficients + variableIndexes
+
+        return bitSize / 8;
+    }
+
+    /**
+     * The number of bytes that writeVolatileValues() will need to represent this term.
+     */
+    public int volatileByteSize() {
+        return 2 * size * (Float.SIZE / 8);  // localValues + localLagranges
+    }
+
+    /**
+     * Write a binary representation of the fixed values of this term to a buffer.
+     * Note that the variableIndexes are written using the term store indexing.
+     */
+    public void writeFixedValues(ByteBuffer fixedBuffer) {
+        fixedBuffer.put((byte)type.ordinal());
+        fixedBuffer.putFloat(weight);
+        fixedBuffer.putFloat(constant);
+        fixedBuffer.putShort(size);
+
+        for (int i = 0; i < size; i++) {
+            fixedBuffer.putFloat(coefficients[i]);
+            fixedBuffer.putInt(variableIndexes[i]);
+        }
+    }
+
+    /**
+     * An upper bound on the number of bytes that writeCompactValues() will need to represent this term.
+     */
+    public int compactByteSizeBound() {
+        return 1  // type
+            + 2 * TermPageCodec.MAX_FLOAT_SIZE  // weight, constant
+            + TermPageCodec.MAX_INT_SIZE  // size
+            + size * (TermPageCodec.MAX_FLOAT_SIZE + TermPageCodec.MAX_INT_SIZE);  // coefficients + variableIndexes
+    }
+
+    /**
+     * Write a compact representation of the fixed values of this term to a buffer.
+     * See DCDObjectiveTerm.writeCompactValues().
+     */
+    public void writeCompactValues(ByteBuffer fixedBuffer, TermPageCodec codec) {
+        fixedBuffer.put((byte)type.ordinal());
+        codec.putFloat(fixedBuffer, weight);
+        codec.putFloat(fixedBuffer, constant);
+        TermPageCodec.putInt(fixedBuffer, size);
+
+        int previousIndex = 0;
+        for (int i = 0; i < size; i++) {
+            codec.putFloat(fixedBuffer, coefficients[i]);
+            TermPageCodec.putSignedInt(fixedBuffer, variableIndexes[i] - previousIndex);
+            previousIndex = variableIndexes[i];
+        }
+    }
+
+    /**
+     * Write the local variables to a buffer at the position this term was last read from.
+     * This way terms can be written back in any order (e.g. after a page was shuffled).
+     */
+    public void writeVolatileValues(ByteBuffer volatileBuffer) {
+        int position = volatileOffset;
+
+        for (int i = 0; i < size; i++) {
+            volatileBuffer.putFloat(position, localValues[i]);
+            position += Float.SIZE / 8;
+        }
+
+        for (int i = 0; i < size; i++) {
+            volatileBuffer.putFloat(position, localLagranges[i]);
+            position += Float.SIZE / 8;
+        }
+    }
+
+    /**
+     * Write the local variables to the next position in a buffer.
+     * Used when a page is first written (and its terms are in page order).
+     */
+    public void appendVolatileValues(ByteBuffer volatileBuffer) {
+        volatileOffset = volatileBuffer.position();
+
+        for (int i = 0; i < size; i++) {
+            volatileBuffer.putFloat(localValues[i]);
+        }
+
+        for (int i = 0; i < size; i++) {
+            volatileBuffer.putFloat(localLagranges[i]);
+        }
+    }
+
+    /**
+     * Same as read(), but for terms written with writeCompactValues().
+     */
+    public void readCompact(ByteBuffer fixedBuffer, ByteBuffer volatileBuffer, TermPageCodec codec) {
+        type = TERM_TYPES[fixedBuffer.get()];
+        weight = codec.getFloat(fixedBuffer);
+        constant = codec.getFloat(fixedBuffer);
+        size = (short)TermPageCodec.getInt(fixedBuffer);
+
+        ensureSize();
+
+        int previousIndex = 0;
+        for (int i = 0; i < size; i++) {
+            coefficients[i] = codec.getFloat(fixedBuffer);
+            variableIndexes[i] = previousIndex + TermPageCodec.getSignedInt(fixedBuffer);
+            previousIndex = variableIndexes[i];
+        }
+
+        readVolatileValues(volatileBuffer);
+    }
+
+    /**
+     * Assume the term that will be next read from the buffers.
+     */
+    public void read(ByteBuffer fixedBuffer, ByteBuffer volatileBuffer) {
+        type = TERM_TYPES[fixedBuffer.get()];
+        weight = fixedBuffer.getFloat();
+        constant = fixedBuffer.getFloat();
+        size = fixedBuffer.getShort();
+
+        ensureSize();
+
+        for (int i = 0; i < size; i++) {
+            coefficients[i] = fixedBuffer.getFloat();
+            variableIndexes[i] = fixedBuffer.getInt();
+        }
+
+        readVolatileValues(volatileBuffer);
+    }
+
+    private void readVolatileValues(ByteBuffer volatileBuffer) {
+        volatileOffset = volatileBuffer.position();
+
+        for (int i = 0; i < size; i++) {
+            localValues[i] = volatileBuffer.getFloat();
+        }
+
+        for (int i = 0; i < size; i++) {
+            localLagranges[i] = volatileBuffer.getFloat();
+        }
+    }
+
+    /**
+     * Make sure that there is enough room for all the per-variable values.
+     */
+    private void ensureSize() {
+        if (coefficients.length < size) {
+            coefficients = new float[size];
+            variableIndexes = new int[size];
+            localValues = new float[size];
+            localLagranges = new float[size];
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+
+        builder.append(type);
+        builder.append("(");
+        builder.append(weight);
+        builder.append(", ");
+
+        for (int i = 0; i < size; i++) {
+            builder.append("(");
+            builder.append(coefficients[i]);
+            builder.append(" * ");
+            builder.append(variableIndexes[i]);
+            builder.append(")");
+
+            if (i != size - 1) {
+                builder.append(" + ");
+            }
+        }
+
+        builder.append(" - ");
+        builder.append(constant);
+        builder.append(")");
+
+        return builder.toString();
+    }
+}
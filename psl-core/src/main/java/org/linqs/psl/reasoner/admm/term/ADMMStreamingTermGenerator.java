@@ -0,0 +1,79 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2019 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm.term;
+
+import org.linqs.psl.model.atom.RandomVariableAtom;
+import org.linqs.psl.model.rule.GroundRule;
+import org.linqs.psl.model.rule.WeightedGroundRule;
+import org.linqs.psl.reasoner.function.FunctionComparator;
+import org.linqs.psl.reasoner.term.Hyperplane;
+import org.linqs.psl.reasoner.term.HyperplaneTermGenerator;
+import org.linqs.psl.reasoner.term.TermStore;
+import org.linqs.psl.reasoner.term.VariableTermStore;
+
+/**
+ * A TermGenerator for ADMM objective terms that are kept in an ADMMStreamingTermStore.
+ */
+public class ADMMStreamingTermGenerator extends HyperplaneTermGenerator<ADMMStreamingObjectiveTerm, RandomVariableAtom> {
+    public ADMMStreamingTermGenerator() {
+        super();
+    }
+
+    @Override
+    public Class<RandomVariableAtom> getLocalVariableType() {
+        return RandomVariableAtom.class;
+    }
+
+    @Override
+    public ADMMStreamingObjectiveTerm createLossTerm(TermStore<ADMMStreamingObjectiveTerm, RandomVariableAtom> baseTermStore,
+            boolean isHinge, boolean isSquared, GroundRule groundRule, Hyperplane<RandomVariableAtom> hyperplane) {
+        VariableTermStore<ADMMStreamingObjectiveTerm, RandomVariableAtom> termStore = (VariableTermStore<ADMMStreamingObjectiveTerm, RandomVariableAtom>)baseTermStore;
+        float weight = (float)((WeightedGroundRule)groundRule).getWeight();
+
+        if (isHinge && isSquared) {
+            return new ADMMStreamingObjectiveTerm(termStore, ADMMStreamingObjectiveTerm.TermType.SQUARED_HINGE_LOSS, hyperplane, weight);
+        } else if (isHinge && !isSquared) {
+            return new ADMMStreamingObjectiveTerm(termStore, ADMMStreamingObjectiveTerm.TermType.HINGE_LOSS, hyperplane, weight);
+        } else if (!isHinge && isSquared) {
+            // Same as ADMMTermGenerator.
+            hyperplane.setConstant(0.0f);
+            return new ADMMStreamingObjectiveTerm(termStore, ADMMStreamingObjectiveTerm.TermType.SQUARED_LINEAR_LOSS, hyperplane, weight);
+        } else {
+            return new ADMMStreamingObjectiveTerm(termStore, ADMMStreamingObjectiveTerm.TermType.LINEAR_LOSS, hyperplane, weight);
+        }
+    }
+
+    @Override
+    public ADMMStreamingObjectiveTerm createLinearConstraintTerm(TermStore<ADMMStreamingObjectiveTerm, RandomVariableAtom> baseTermStore,
+            GroundRule groundRule, Hyperplane<RandomVariableAtom> hyperplane, FunctionComparator comparator) {
+        VariableTermStore<ADMMStreamingObjectiveTerm, RandomVariableAtom> termStore = (VariableTermStore<ADMMStreamingObjectiveTerm, RandomVariableAtom>)baseTermStore;
+
+        ADMMStreamingObjectiveTerm.TermType type = null;
+        if (comparator.equals(FunctionComparator.EQ)) {
+            type = ADMMStreamingObjectiveTerm.TermType.CONSTRAINT_EQ;
+        } else if (comparator.equals(FunctionComparator.LTE)) {
+            type = ADMMStreamingObjectiveTerm.TermType.CONSTRAINT_LTE;
+        } else if (comparator.equals(FunctionComparator.GTE)) {
+            type = ADMMStreamingObjectiveTerm.TermType.CONSTRAINT_GTE;
+        } else {
+            throw new IllegalStateException("Unknown comparison function.");
+        }
+
+        return new ADMMStreamingObjectiveTerm(termStore, type, hyperplane, 0.0f);
+    }
+}
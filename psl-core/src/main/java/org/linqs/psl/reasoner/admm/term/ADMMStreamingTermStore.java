@@ -0,0 +1,117 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2019 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm.term;
+
+import org.linqs.psl.database.atom.AtomManager;
+import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.reasoner.term.streaming.StreamingIterator;
+import org.linqs.psl.reasoner.term.streaming.StreamingTermStore;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A term store that iterates over ground queries directly (obviating the GroundRuleStore)
+ * and keeps ADMM terms (along with their local variables) in pages on disk.
+ * Only the consensus values (the variable values) are kept in memory.
+ *
+ * Since terms have a different number of local variables, each volatile page has its own size
+ * (which is recorded when the page is first written).
+ *
+ * Note that the iterators given by this class are meant to be exhaustd (at least the first time).
+ * Remember that this class will internally iterate over an unknown number of groundings.
+ * So interrupting the iteration can cause the term count to be incorrect.
+ */
+public class ADMMStreamingTermStore extends StreamingTermStore<ADMMStreamingObjectiveTerm> {
+    // The size (in bytes) of each volatile page.
+    private List<Integer> volatilePageSizes;
+
+    public ADMMStreamingTermStore(List<Rule> rules, AtomManager atomManager) {
+        super(rules, atomManager, new ADMMStreamingTermGenerator());
+
+        volatilePageSizes = new ArrayList<Integer>(INITIAL_PATH_CACHE_SIZE);
+    }
+
+    public int getVolatilePageSize(int pageIndex) {
+        return volatilePageSizes.get(pageIndex).intValue();
+    }
+
+    /**
+     * Called by the initial round iterator as it writes pages.
+     */
+    public void setVolatilePageSize(int pageIndex, int size) {
+        for (int i = volatilePageSizes.size(); i <= pageIndex; i++) {
+            volatilePageSizes.add(Integer.valueOf(0));
+        }
+
+        volatilePageSizes.set(pageIndex, Integer.valueOf(size));
+    }
+
+    @Override
+    protected boolean supportsRule(Rule rule) {
+        // No special requirements for rules.
+        return true;
+    }
+
+    @Override
+    protected StreamingIterator<ADMMStreamingObjectiveTerm> getInitialRoundIterator() {
+        return new ADMMStreamingInitialRoundIterator(
+                this, rules, atomManager, termGenerator,
+                termCache, termPool, termBuffer, volatileBuffer, pageSize);
+    }
+
+    @Override
+    protected StreamingIterator<ADMMStreamingObjectiveTerm> getCacheIterator() {
+        return new ADMMStreamingCacheIterator(
+                this, false, termCache, termPool,
+                termBuffer, volatileBuffer, shufflePage, shuffleMap, randomizePageAccess, numPages);
+    }
+
+    @Override
+    protected StreamingIterator<ADMMStreamingObjectiveTerm> getNoWriteIterator() {
+        return new ADMMStreamingCacheIterator(
+                this, true, termCache, termPool,
+                termBuffer, volatileBuffer, shufflePage, shuffleMap, randomizePageAccess, numPages);
+    }
+
+    @Override
+    protected ADMMStreamingObjectiveTerm createEmptyTerm() {
+        return new ADMMStreamingObjectiveTerm();
+    }
+
+    @Override
+    protected StreamingIterator<ADMMStreamingObjectiveTerm> getPageIterator(boolean readonly,
+            List<ADMMStreamingObjectiveTerm> termCache, List<ADMMStreamingObjectiveTerm> termPool,
+            ByteBuffer termBuffer, ByteBuffer volatileBuffer,
+            int[] shuffleMap, List<Integer> pageAccessOrder, AtomicInteger nextPage) {
+        return new ADMMStreamingCacheIterator(
+                this, readonly, termCache, termPool,
+                termBuffer, volatileBuffer, shufflePage, shuffleMap, pageAccessOrder, nextPage);
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+
+        if (volatilePageSizes != null) {
+            volatilePageSizes.clear();
+        }
+    }
+}
@@ -40,21 +40,23 @@ public class ADMMTermGenerator extends HyperplaneTermGenerator<ADMMObjectiveTerm
     @Override
     public ADMMObjectiveTerm createLossTerm(TermStore<ADMMObjectiveTerm, LocalVariable> termStore,
             boolean isHinge, boolean isSquared, GroundRule groundRule, Hyperplane<LocalVariable> hyperplane) {
+        ADMMTermStore admmTermStore = (ADMMTermStore)termStore;
+
         if (isHinge && isSquared) {
-            return new SquaredHingeLossTerm(groundRule, hyperplane);
+            return new SquaredHingeLossTerm(admmTermStore, groundRule, hyperplane);
         } else if (isHinge && !isSquared) {
-            return new HingeLossTerm(groundRule, hyperplane);
+            return new HingeLossTerm(admmTermStore, groundRule, hyperplane);
         } else if (!isHinge && isSquared) {
             hyperplane.setConstant(0.0f);
-            return new SquaredLinearLossTerm(groundRule, hyperplane);
+            return new SquaredLinearLossTerm(admmTermStore, groundRule, hyperplane);
         } else {
-            return new LinearLossTerm(groundRule, hyperplane);
+            return new LinearLossTerm(admmTermStore, groundRule, hyperplane);
         }
     }
 
     @Override
     public ADMMObjectiveTerm createLinearConstraintTerm(TermStore<ADMMObjectiveTerm, LocalVariable> termStore,
             GroundRule groundRule, Hyperplane<LocalVariable> hyperplane, FunctionComparator comparator) {
-        return new LinearConstraintTerm(groundRule, hyperplane, comparator);
+        return new LinearConstraintTerm((ADMMTermStore)termStore, groundRule, hyperplane, comparator);
     }
 }
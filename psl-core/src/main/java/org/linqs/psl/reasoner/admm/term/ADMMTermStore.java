@@ -20,24 +20,35 @@ package org.linqs.psl.reasoner.admm.term;
 import org.linqs.psl.config.Config;
 import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.rule.GroundRule;
+import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.model.rule.WeightedRule;
 import org.linqs.psl.reasoner.admm.ADMMReasoner;
+import org.linqs.psl.reasoner.term.Hyperplane;
 import org.linqs.psl.reasoner.term.MemoryTermStore;
-import org.linqs.psl.reasoner.term.ReasonerLocalVariable;
 import org.linqs.psl.reasoner.term.TermStore;
+import org.linqs.psl.reasoner.term.VariableIndexMap;
 import org.linqs.psl.util.IteratorUtils;
 import org.linqs.psl.util.RandUtils;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * A TermStore specifically for ADMM terms.
  * The actually terms will just be held in a standard TermStore (a MemoryTermStore if not specified).
  * This class will focus on keeping track of the variables in the terms.
+ *
+ * All local variables are kept in flat (structure-of-arrays) storage instead of as objects.
+ * Each term owns a contiguous range of local variables (starting at the term's local offset),
+ * and each local variable has a value, a Lagrange multiplier, and the id of the global variable it copies.
+ * For the consensus step, a CSR-style index (consensusOffsets/consensusLocalIndexes) maps each
+ * global variable to all of its local copies.
+ * This index is built lazily the first time it is requested after the terms change.
  */
 public class ADMMTermStore implements TermStore<ADMMObjectiveTerm, LocalVariable> {
     public static final String CONFIG_PREFIX = "admmmemorytermstore";
@@ -48,18 +59,51 @@ public class ADMMTermStore implements TermStore<ADMMObjectiveTerm, LocalVariable
     public static final String INTERNAL_STORE_KEY = CONFIG_PREFIX + ".internalstore";
     public static final String INTERNAL_STORE_DEFAULT = MemoryTermStore.class.getName();
 
+    /**
+     * The default size in terms of number of local variables.
+     */
+    public static final String DEFAULT_LOCAL_SIZE_KEY = CONFIG_PREFIX + ".defaultlocalsize";
+    public static final int DEFAULT_LOCAL_SIZE_DEFAULT = 1000;
+
     // Keep an internal store to hold the terms while this class focus on variables.
     private TermStore<ADMMObjectiveTerm, ?> store;
 
-    private Map<RandomVariableAtom, Integer> variableIndexes;
+    private VariableIndexMap<RandomVariableAtom> variableIndexes;
+
+    // Matching arrays for all local variables, indexed by local id.
+    private float[] localValues;
+    private float[] localLagranges;
+    private int[] localGlobalIds;
 
-    // Global variable index to local variables.
-    private List<List<LocalVariable>> localVariables;
+    /**
+     * Guards the local arrays against being reallocated while terms are writing into them.
+     * Terms hold the read lock while filling in their (disjoint) ranges, reallocation takes the write lock.
+     */
+    private final ReentrantReadWriteLock localVariablesLock;
 
     /**
-     * The total number of all local variables (the sum of the sizes of each listin |localVariables|.
+     * The total number of all local variables (the used portion of the local arrays).
+     * Terms reserve their range of local variables by bumping this.
      */
-    private int numLocalVariables;
+    private final AtomicInteger numLocalVariables;
+
+    // Global variable index to local variables (CSR-style).
+    // The local ids for global variable i are: consensusLocalIndexes[consensusOffsets[i] ... consensusOffsets[i + 1]).
+    private int[] consensusOffsets;
+    private int[] consensusLocalIndexes;
+    private volatile boolean consensusIndexValid;
+
+    /**
+     * Changes every time the local variables are added, removed, or reset.
+     * See getVersion().
+     */
+    private final AtomicInteger version;
+
+    /**
+     * Whether new terms should hold onto their ground rule.
+     * See setKeepGroundRules().
+     */
+    private boolean keepGroundRules;
 
     @SuppressWarnings("unchecked")
     public ADMMTermStore() {
@@ -68,9 +112,34 @@ public class ADMMTermStore implements TermStore<ADMMObjectiveTerm, LocalVariable
 
     public ADMMTermStore(TermStore<ADMMObjectiveTerm, ?> store) {
         this.store = store;
-        variableIndexes = new HashMap<RandomVariableAtom, Integer>();
-        localVariables = new ArrayList<List<LocalVariable>>();
-        numLocalVariables = 0;
+        variableIndexes = new VariableIndexMap<RandomVariableAtom>();
+
+        int localSize = Config.getInt(DEFAULT_LOCAL_SIZE_KEY, DEFAULT_LOCAL_SIZE_DEFAULT);
+        localValues = new float[localSize];
+        localLagranges = new float[localSize];
+        localGlobalIds = new int[localSize];
+        localVariablesLock = new ReentrantReadWriteLock();
+        numLocalVariables = new AtomicInteger(0);
+
+        consensusOffsets = null;
+        consensusLocalIndexes = null;
+        consensusIndexValid = false;
+        version = new AtomicInteger(0);
+        keepGroundRules = true;
+    }
+
+    /**
+     * Terms only need their ground rule for getTerms(GroundRule).
+     * A store that is fed directly from grounding (with no GroundRuleStore holding onto the ground rules)
+     * can turn this off so that each ground rule can be collected as soon as its terms are made.
+     * Only affects terms created after the call.
+     */
+    public void setKeepGroundRules(boolean keepGroundRules) {
+        this.keepGroundRules = keepGroundRules;
+    }
+
+    public boolean getKeepGroundRules() {
+        return keepGroundRules;
     }
 
     /**
@@ -81,55 +150,203 @@ public class ADMMTermStore implements TermStore<ADMMObjectiveTerm, LocalVariable
             return;
         }
 
-        ((ArrayList)localVariables).ensureCapacity(capacity);
-
         if (variableIndexes.size() == 0) {
             // If there are no variables, then re-allocate the variable storage.
-            // The default load factor for Java HashMaps is 0.75.
-            variableIndexes = new HashMap<RandomVariableAtom, Integer>((int)Math.ceil(capacity / 0.75));
+            variableIndexes = new VariableIndexMap<RandomVariableAtom>(capacity);
         }
     }
 
     /**
-     * Create a local variable and ensure that a global copy is registered.
+     * Make sure that there is room for at least |capacity| local variables.
      */
-    public synchronized LocalVariable createLocalVariable(RandomVariableAtom atom) {
-        numLocalVariables++;
+    public void ensureLocalVariableCapacity(int capacity) {
+        localVariablesLock.writeLock().lock();
+        try {
+            if (capacity <= localValues.length) {
+                return;
+            }
 
-        int globalId;
-        // Check if the global copy has already been registered.
-        if (variableIndexes.containsKey(atom)) {
-            globalId = variableIndexes.get(atom).intValue();
-        } else {
-            // If the global copy has not been registered, register it and prep its local copies.
-            globalId = variableIndexes.size();
-            variableIndexes.put(atom, globalId);
-            localVariables.add(new ArrayList<LocalVariable>());
+            // Don't bother with small reallocations, if we are reallocating make a lot of room.
+            if (capacity < localValues.length * 2) {
+                capacity = localValues.length * 2;
+            }
+
+            localValues = Arrays.copyOf(localValues, capacity);
+            localLagranges = Arrays.copyOf(localLagranges, capacity);
+            localGlobalIds = Arrays.copyOf(localGlobalIds, capacity);
+        } finally {
+            localVariablesLock.writeLock().unlock();
         }
+    }
+
+    /**
+     * Ensure that a global copy is registered and get a handle to a local copy of it.
+     * The local copy will not be allocated until a term that uses it is created
+     * (see allocateLocalVariables()).
+     */
+    public LocalVariable createLocalVariable(RandomVariableAtom atom) {
+        // Check (without locking) if the global copy has already been registered.
+        int globalId = variableIndexes.get(atom);
+        if (globalId == -1) {
+            // If the global copy has not been registered, register it.
+            synchronized (this) {
+                globalId = variableIndexes.add(atom);
+            }
+        }
+
+        return new LocalVariable(globalId, (float)atom.getValue());
+    }
+
+    /**
+     * Allocate a contiguous range of local variables for all the variables in a hyperplane.
+     * Local values will be initialized to the value in the local variable handle,
+     * and Lagrange multipliers will be initialized to zero.
+     * Safe to call from multiple threads: each call reserves its own range and only
+     * contends with other calls when the local arrays need to grow.
+     * @return the local id of the first allocated local variable.
+     */
+    public int allocateLocalVariables(Hyperplane<LocalVariable> hyperplane) {
+        int size = hyperplane.size();
+        LocalVariable[] variables = hyperplane.getVariables();
+
+        int offset = numLocalVariables.getAndAdd(size);
+
+        localVariablesLock.readLock().lock();
+        try {
+            // The read lock cannot be upgraded, so let go of it while growing.
+            while (offset + size > localValues.length) {
+                localVariablesLock.readLock().unlock();
+                try {
+                    ensureLocalVariableCapacity(offset + size);
+                } finally {
+                    localVariablesLock.readLock().lock();
+                }
+            }
 
-        LocalVariable localVariable = new LocalVariable(globalId, (float)atom.getValue());
-        localVariables.get(globalId).add(localVariable);
+            for (int i = 0; i < size; i++) {
+                localValues[offset + i] = variables[i].getValue();
+                localLagranges[offset + i] = 0.0f;
+                localGlobalIds[offset + i] = variables[i].getGlobalId();
+            }
+        } finally {
+            localVariablesLock.readLock().unlock();
+        }
 
-        return localVariable;
+        consensusIndexValid = false;
+        version.incrementAndGet();
+
+        return offset;
+    }
+
+    /**
+     * Get a counter that changes every time the local variables of this store are added, removed, or reset.
+     * A reasoner can use this to check if state it kept from a previous optimization of this store
+     * (like consensus values) still lines up with the local variables.
+     */
+    public int getVersion() {
+        return version.get();
     }
 
     public int getNumLocalVariables() {
-        return numLocalVariables;
+        return numLocalVariables.get();
     }
 
     public int getNumGlobalVariables() {
         return variableIndexes.size();
     }
 
-    public List<LocalVariable> getLocalVariables(int globalId) {
-        return localVariables.get(globalId);
+    /**
+     * Get the values for all local variables (indexed by local id).
+     * Only the first getNumLocalVariables() entries are valid.
+     * Callers should not hold onto this array while terms are still being added,
+     * since a reallocation can cause it to become out-of-date.
+     */
+    public float[] getLocalValues() {
+        return localValues;
+    }
+
+    /**
+     * Get the Lagrange multipliers for all local variables (indexed by local id).
+     * The same caveats as getLocalValues() apply.
+     */
+    public float[] getLocalLagranges() {
+        return localLagranges;
+    }
+
+    /**
+     * Get the global id for all local variables (indexed by local id).
+     * The same caveats as getLocalValues() apply.
+     */
+    public int[] getLocalGlobalIds() {
+        return localGlobalIds;
+    }
+
+    /**
+     * Get the offsets into getConsensusLocalIndexes() for each global variable.
+     * This array has one more entry than there are global variables.
+     */
+    public int[] getConsensusOffsets() {
+        ensureConsensusIndex();
+        return consensusOffsets;
+    }
+
+    /**
+     * Get the local ids for all global variables, grouped by global variable.
+     * Use getConsensusOffsets() to find the range for a specific global variable.
+     */
+    public int[] getConsensusLocalIndexes() {
+        ensureConsensusIndex();
+        return consensusLocalIndexes;
     }
 
     /**
-     * Get the RVAs managed by this term store.
+     * Build the global to local index (a counting sort on the local global ids).
+     */
+    private synchronized void ensureConsensusIndex() {
+        if (consensusIndexValid) {
+            return;
+        }
+
+        int numGlobalVariables = variableIndexes.size();
+        int numLocalVariables = this.numLocalVariables.get();
+
+        if (consensusOffsets == null || consensusOffsets.length < numGlobalVariables + 1) {
+            consensusOffsets = new int[numGlobalVariables + 1];
+        } else {
+            Arrays.fill(consensusOffsets, 0);
+        }
+
+        if (consensusLocalIndexes == null || consensusLocalIndexes.length < numLocalVariables) {
+            consensusLocalIndexes = new int[numLocalVariables];
+        }
+
+        // Count the local copies for each global variable (shifted by one).
+        for (int localId = 0; localId < numLocalVariables; localId++) {
+            consensusOffsets[localGlobalIds[localId] + 1]++;
+        }
+
+        // Prefix sum to get the offsets.
+        for (int i = 0; i < numGlobalVariables; i++) {
+            consensusOffsets[i + 1] += consensusOffsets[i];
+        }
+
+        // Place the local ids, using a scratch copy of the offsets as the insertion point.
+        int[] insertPoints = Arrays.copyOf(consensusOffsets, numGlobalVariables);
+        for (int localId = 0; localId < numLocalVariables; localId++) {
+            int globalId = localGlobalIds[localId];
+            consensusLocalIndexes[insertPoints[globalId]] = localId;
+            insertPoints[globalId]++;
+        }
+
+        consensusIndexValid = true;
+    }
+
+    /**
+     * Get the RVAs managed by this term store mapped to their global id.
+     * The map is read-only and iterates in global id order.
      */
     public Map<RandomVariableAtom, Integer> getGlobalVariables() {
-        return Collections.unmodifiableMap(variableIndexes);
+        return variableIndexes.asMap();
     }
 
     /**
@@ -137,8 +354,10 @@ public class ADMMTermStore implements TermStore<ADMMObjectiveTerm, LocalVariable
      * The passed in values in indexed according to global id.
      */
     public void updateVariables(float[] values) {
-        for (Map.Entry<RandomVariableAtom, Integer> entry : variableIndexes.entrySet()) {
-            entry.getKey().setValue(values[entry.getValue().intValue()]);
+        int globalId = 0;
+        for (RandomVariableAtom atom : variableIndexes) {
+            atom.setValue(values[globalId]);
+            globalId++;
         }
     }
 
@@ -147,8 +366,10 @@ public class ADMMTermStore implements TermStore<ADMMObjectiveTerm, LocalVariable
      * variables and put them in the output array.
      */
     public void getAtomValues(float[] values) {
-        for (Map.Entry<RandomVariableAtom, Integer> entry : variableIndexes.entrySet()) {
-            values[entry.getValue().intValue()] = (float)entry.getKey().getValue();
+        int globalId = 0;
+        for (RandomVariableAtom atom : variableIndexes) {
+            values[globalId] = (float)atom.getValue();
+            globalId++;
         }
     }
 
@@ -157,21 +378,28 @@ public class ADMMTermStore implements TermStore<ADMMObjectiveTerm, LocalVariable
     }
 
     public void resetLocalVairables(ADMMReasoner.InitialValue initialValue) {
-        for (Map.Entry<RandomVariableAtom, Integer> entry : variableIndexes.entrySet()) {
-            for (LocalVariable local : localVariables.get(entry.getValue().intValue())) {
-                if (initialValue == ADMMReasoner.InitialValue.ZERO) {
-                    local.setValue(0.0f);
-                } else if (initialValue == ADMMReasoner.InitialValue.RANDOM) {
-                    local.setValue(RandUtils.nextFloat());
-                } else if (initialValue == ADMMReasoner.InitialValue.ATOM) {
-                    local.setValue((float)(entry.getKey().getValue()));
-                } else {
-                    throw new IllegalStateException("Unknown initial consensus value: " + initialValue);
-                }
+        float[] atomValues = null;
+        if (initialValue == ADMMReasoner.InitialValue.ATOM) {
+            atomValues = new float[variableIndexes.size()];
+            getAtomValues(atomValues);
+        }
 
-                local.setLagrange(0.0f);
+        int numLocalVariables = this.numLocalVariables.get();
+        for (int localId = 0; localId < numLocalVariables; localId++) {
+            if (initialValue == ADMMReasoner.InitialValue.ZERO) {
+                localValues[localId] = 0.0f;
+            } else if (initialValue == ADMMReasoner.InitialValue.RANDOM) {
+                localValues[localId] = RandUtils.nextFloat();
+            } else if (initialValue == ADMMReasoner.InitialValue.ATOM) {
+                localValues[localId] = atomValues[localGlobalIds[localId]];
+            } else {
+                throw new IllegalStateException("Unknown initial consensus value: " + initialValue);
             }
+
+            localLagranges[localId] = 0.0f;
         }
+
+        version.incrementAndGet();
     }
 
     @Override
@@ -180,7 +408,7 @@ public class ADMMTermStore implements TermStore<ADMMObjectiveTerm, LocalVariable
     }
 
     @Override
-    public void clear() {
+    public synchronized void clear() {
         if (store != null) {
             store.clear();
         }
@@ -189,11 +417,9 @@ public class ADMMTermStore implements TermStore<ADMMObjectiveTerm, LocalVariable
             variableIndexes.clear();
         }
 
-        if (localVariables != null) {
-            localVariables.clear();
-        }
-
-        numLocalVariables = 0;
+        numLocalVariables.set(0);
+        consensusIndexValid = false;
+        version.incrementAndGet();
     }
 
     @Override
@@ -206,7 +432,13 @@ public class ADMMTermStore implements TermStore<ADMMObjectiveTerm, LocalVariable
         }
 
         variableIndexes = null;
-        localVariables = null;
+
+        localValues = null;
+        localLagranges = null;
+        localGlobalIds = null;
+
+        consensusOffsets = null;
+        consensusLocalIndexes = null;
     }
 
     @Override
@@ -222,6 +454,11 @@ public class ADMMTermStore implements TermStore<ADMMObjectiveTerm, LocalVariable
     @Override
     public void ensureCapacity(int capacity) {
         store.ensureCapacity(capacity);
+
+        // Every term has at least one local variable.
+        if (numLocalVariables.get() == 0) {
+            ensureLocalVariableCapacity(capacity);
+        }
     }
 
     @Override
@@ -234,7 +471,35 @@ public class ADMMTermStore implements TermStore<ADMMObjectiveTerm, LocalVariable
         return iterator();
     }
 
+    @Override
+    public boolean updateWeights(List<WeightedRule> rules) {
+        // Terms keep their own copy of the weight.
+        // Any cached weight-dependent state is refreshed by the terms themselves.
+        // Rules are matched by identity (the same as the terms reference them), not by equals().
+        Map<Rule, Float> weights = new IdentityHashMap<Rule, Float>(rules.size());
+        for (WeightedRule rule : rules) {
+            weights.put(rule, Float.valueOf((float)rule.getWeight()));
+        }
+
+        for (ADMMObjectiveTerm term : store) {
+            Float weight = weights.get(term.getRule());
+            if (weight != null) {
+                term.setWeight(weight.floatValue());
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Get all the terms created from a ground rule.
+     * Requires that the store was keeping ground rules when the terms were created.
+     */
     public Iterable<ADMMObjectiveTerm> getTerms(GroundRule groundRule) {
+        if (!keepGroundRules) {
+            throw new IllegalStateException("Cannot look up terms by ground rule when ground rules are not being kept.");
+        }
+
         final GroundRule finalGroundRule = groundRule;
 
         return IteratorUtils.filter(store, new IteratorUtils.FilterFunction<ADMMObjectiveTerm>() {
@@ -19,7 +19,6 @@ package org.linqs.psl.reasoner.admm.term;
 
 import org.linqs.psl.reasoner.term.Hyperplane;
 import org.linqs.psl.model.rule.GroundRule;
-import org.linqs.psl.model.rule.WeightedGroundRule;
 
 /**
  * ADMMReasoner objective term of the form <br />
@@ -28,21 +27,24 @@ import org.linqs.psl.model.rule.WeightedGroundRule;
  * All coefficients must be non-zero.
  */
 public class HingeLossTerm extends HyperplaneTerm {
-    public HingeLossTerm(GroundRule groundRule, Hyperplane<LocalVariable> hyperplane) {
-        super(groundRule, hyperplane);
+    public HingeLossTerm(ADMMTermStore termStore, GroundRule groundRule, Hyperplane<LocalVariable> hyperplane) {
+        super(termStore, groundRule, hyperplane);
     }
 
     @Override
-    public void minimize(float stepSize, float[] consensusValues) {
-        float weight = (float)((WeightedGroundRule)groundRule).getWeight();
+    public void minimize(ADMMTermStore termStore, float stepSize, float[] consensusValues) {
+        float[] localValues = termStore.getLocalValues();
+        float[] localLagranges = termStore.getLocalLagranges();
+        int[] localGlobalIds = termStore.getLocalGlobalIds();
+
         float total = 0.0f;
 
         // Minimizes without the linear loss, i.e., solves
         // argmin stepSize/2 * \|x - z + y / stepSize \|_2^2
         for (int i = 0; i < size; i++) {
-            LocalVariable variable = variables[i];
-            variable.setValue(consensusValues[variable.getGlobalId()] - variable.getLagrange() / stepSize);
-            total += (coefficients[i] * variable.getValue());
+            int localId = localOffset + i;
+            localValues[localId] = consensusValues[localGlobalIds[localId]] - localLagranges[localId] / stepSize;
+            total += (coefficients[i] * localValues[localId]);
         }
 
         // If the linear loss is NOT active at the computed point, it is the solution...
@@ -54,13 +56,12 @@ public class HingeLossTerm extends HyperplaneTerm {
         // argmin weight * coefficients^T * x + stepSize/2 * \|x - z + y / stepSize \|_2^2
         total = 0.0f;
         for (int i = 0; i < size; i++) {
-            LocalVariable variable = variables[i];
+            int localId = localOffset + i;
 
-            // TODO(eriq): We just took this step above. Is ADMM accidentally taking two steps?
-            variable.setValue(consensusValues[variable.getGlobalId()] - variable.getLagrange() / stepSize);
-            variable.setValue(variable.getValue() - weight * coefficients[i] / stepSize);
+            // The unconstrained step was already taken above, just add the linear loss.
+            localValues[localId] -= weight * coefficients[i] / stepSize;
 
-            total += coefficients[i] * variable.getValue();
+            total += coefficients[i] * localValues[localId];
         }
 
         // If the linear loss IS active at the computed point, it is the solution...
@@ -69,21 +70,14 @@ public class HingeLossTerm extends HyperplaneTerm {
         }
 
         // Else, the solution is on the hinge.
-        project(stepSize, consensusValues);
+        project(termStore, stepSize, consensusValues);
     }
 
     /**
      * weight * max(0.0, coefficients^T * x - constant)
      */
     @Override
-    public float evaluate() {
-        float weight = (float)((WeightedGroundRule)groundRule).getWeight();
-        return weight * Math.max(super.evaluate(), 0.0f);
-    }
-
-    @Override
-    public float evaluate(float[] consensusValues) {
-        float weight = (float)((WeightedGroundRule)groundRule).getWeight();
-        return weight * Math.max(super.evaluate(consensusValues), 0.0f);
+    public float evaluate(ADMMTermStore termStore, float[] consensusValues) {
+        return weight * Math.max(super.evaluate(termStore, consensusValues), 0.0f);
     }
 }
@@ -32,15 +32,12 @@ public abstract class HyperplaneTerm extends ADMMObjectiveTerm {
     protected final float[] coefficients;
     protected final float[] unitNormal;
     protected final float constant;
-    // Only allocate once.
-    protected final float[] point;
 
-    public HyperplaneTerm(GroundRule groundRule, Hyperplane<LocalVariable> hyperplane) {
-        super(hyperplane, groundRule);
+    public HyperplaneTerm(ADMMTermStore termStore, GroundRule groundRule, Hyperplane<LocalVariable> hyperplane) {
+        super(termStore, hyperplane, groundRule);
 
         this.coefficients = hyperplane.getCoefficients();
         this.constant = hyperplane.getConstant();
-        this.point = new float[size];
 
         if (size >= 3) {
             // Finds a unit vector normal to the hyperplane and a point in the hyperplane for future projections.
@@ -66,10 +63,14 @@ public abstract class HyperplaneTerm extends ADMMObjectiveTerm {
      * <p>
      * Stores the result in x.
      */
-    protected void project(float stepSize, float[] consensusValues) {
+    protected void project(ADMMTermStore termStore, float stepSize, float[] consensusValues) {
+        float[] localValues = termStore.getLocalValues();
+        float[] localLagranges = termStore.getLocalLagranges();
+        int[] localGlobalIds = termStore.getLocalGlobalIds();
+
         // Deal with short hyperplanes specially.
         if (size == 1) {
-            variables[0].setValue(constant / coefficients[0]);
+            localValues[localOffset] = constant / coefficients[0];
             return;
         }
 
@@ -80,31 +81,33 @@ public abstract class HyperplaneTerm extends ADMMObjectiveTerm {
             float coeff0 = coefficients[0];
             float coeff1 = coefficients[1];
 
-            x0 = stepSize * consensusValues[variables[0].getGlobalId()] - variables[0].getLagrange();
-            x0 -= stepSize * coeff0 / coeff1 * (-1.0 * constant / coeff1 + consensusValues[variables[1].getGlobalId()] - variables[1].getLagrange() / stepSize);
+            x0 = stepSize * consensusValues[localGlobalIds[localOffset]] - localLagranges[localOffset];
+            x0 -= stepSize * coeff0 / coeff1 * (-1.0 * constant / coeff1 + consensusValues[localGlobalIds[localOffset + 1]] - localLagranges[localOffset + 1] / stepSize);
             x0 /= stepSize * (1.0 + coeff0 * coeff0 / coeff1 / coeff1);
 
             x1 = (constant - coeff0 * x0) / coeff1;
 
-            variables[0].setValue(x0);
-            variables[1].setValue(x1);
+            localValues[localOffset] = x0;
+            localValues[localOffset + 1] = x1;
 
             return;
         }
 
+        // Use the local values as scratch space for the point being projected.
         for (int i = 0; i < size; i++) {
-            point[i] = consensusValues[variables[i].getGlobalId()] - variables[i].getLagrange() / stepSize;
+            int localId = localOffset + i;
+            localValues[localId] = consensusValues[localGlobalIds[localId]] - localLagranges[localId] / stepSize;
         }
 
         // For point (constant / coefficients[0], 0,...) in hyperplane dotted with unitNormal,
         float multiplier = -1.0f * constant / coefficients[0] * unitNormal[0];
 
         for (int i = 0; i < size; i++) {
-            multiplier += point[i] * unitNormal[i];
+            multiplier += localValues[localOffset + i] * unitNormal[i];
         }
 
         for (int i = 0; i < size; i++) {
-            variables[i].setValue(point[i] - multiplier * unitNormal[i]);
+            localValues[localOffset + i] -= multiplier * unitNormal[i];
         }
     }
 
@@ -112,20 +115,12 @@ public abstract class HyperplaneTerm extends ADMMObjectiveTerm {
      * coefficients^T * x - constant
      */
     @Override
-    public float evaluate() {
-        float value = 0.0f;
-        for (int i = 0; i < size; i++) {
-            value += coefficients[i] * variables[i].getValue();
-        }
+    public float evaluate(ADMMTermStore termStore, float[] consensusValues) {
+        int[] localGlobalIds = termStore.getLocalGlobalIds();
 
-        return value - constant;
-    }
-
-    @Override
-    public float evaluate(float[] consensusValues) {
         float value = 0.0f;
         for (int i = 0; i < size; i++) {
-            value += coefficients[i] * consensusValues[variables[i].getGlobalId()];
+            value += coefficients[i] * consensusValues[localGlobalIds[localOffset + i]];
         }
 
         return value - constant;
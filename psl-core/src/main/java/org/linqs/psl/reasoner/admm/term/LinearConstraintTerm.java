@@ -33,32 +33,18 @@ import org.linqs.psl.util.MathUtils;
 public class LinearConstraintTerm extends HyperplaneTerm {
     private final FunctionComparator comparator;
 
-    protected LinearConstraintTerm(GroundRule groundRule, Hyperplane<LocalVariable> hyperplane, FunctionComparator comparator) {
-        super(groundRule, hyperplane);
+    protected LinearConstraintTerm(ADMMTermStore termStore, GroundRule groundRule, Hyperplane<LocalVariable> hyperplane, FunctionComparator comparator) {
+        super(termStore, groundRule, hyperplane);
         this.comparator = comparator;
     }
 
-    @Override
-    public float evaluate() {
-        return evaluateInternal(null);
-    }
-
-    @Override
-    public float evaluate(float[] consensusValues) {
-        return evaluateInternal(consensusValues);
-    }
-
     /**
      * if (coefficients^T * x [comparator] constant) { return 0.0 }
      * else { return infinity }
      */
-    private float evaluateInternal(float[] consensusValues) {
-        float value = 0.0f;
-        if (consensusValues == null) {
-            value = super.evaluate();
-        } else {
-            value = super.evaluate(consensusValues);
-        }
+    @Override
+    public float evaluate(ADMMTermStore termStore, float[] consensusValues) {
+        float value = super.evaluate(termStore, consensusValues);
 
         if (comparator.equals(FunctionComparator.EQ)) {
             if (MathUtils.isZero(value, MathUtils.RELAXED_EPSILON)) {
@@ -81,9 +67,12 @@ public class LinearConstraintTerm extends HyperplaneTerm {
     }
 
     @Override
-    public void minimize(float stepSize, float[] consensusValues) {
+    public void minimize(ADMMTermStore termStore, float stepSize, float[] consensusValues) {
         // If it's not an equality constraint, first tries to minimize without the constraint.
         if (!comparator.equals(FunctionComparator.EQ)) {
+            float[] localValues = termStore.getLocalValues();
+            float[] localLagranges = termStore.getLocalLagranges();
+            int[] localGlobalIds = termStore.getLocalGlobalIds();
 
             // Initializes scratch data.
             float total = 0.0f;
@@ -91,10 +80,10 @@ public class LinearConstraintTerm extends HyperplaneTerm {
             // Minimizes without regard for the constraint, i.e., solves
             // argmin stepSize/2 * \|x - z + y / stepSize \|_2^2
             for (int i = 0; i < size; i++) {
-                LocalVariable variable = variables[i];
-                variable.setValue(consensusValues[variable.getGlobalId()] - variable.getLagrange() / stepSize);
+                int localId = localOffset + i;
+                localValues[localId] = consensusValues[localGlobalIds[localId]] - localLagranges[localId] / stepSize;
 
-                total += coefficients[i] * variable.getValue();
+                total += coefficients[i] * localValues[localId];
             }
 
             // Checks if the solution satisfies the constraint. If so, updates
@@ -109,6 +98,6 @@ public class LinearConstraintTerm extends HyperplaneTerm {
 
         // If the naive minimization didn't work, or if it's an equality constraint,
         // projects onto the hyperplane
-        project(stepSize, consensusValues);
+        project(termStore, stepSize, consensusValues);
     }
 }
@@ -18,7 +18,6 @@
 package org.linqs.psl.reasoner.admm.term;
 
 import org.linqs.psl.model.rule.GroundRule;
-import org.linqs.psl.model.rule.WeightedGroundRule;
 import org.linqs.psl.reasoner.term.Hyperplane;
 
 /**
@@ -31,22 +30,25 @@ public class LinearLossTerm extends ADMMObjectiveTerm {
     /**
      * Caller releases control of |variables| and |coefficients|.
      */
-    LinearLossTerm(GroundRule groundRule, Hyperplane<LocalVariable> hyperplane) {
-        super(hyperplane, groundRule);
+    LinearLossTerm(ADMMTermStore termStore, GroundRule groundRule, Hyperplane<LocalVariable> hyperplane) {
+        super(termStore, hyperplane, groundRule);
 
         this.coefficients = hyperplane.getCoefficients();
     }
 
     @Override
-    public void minimize(float stepSize, float[] consensusValues) {
-        float weight = (float)((WeightedGroundRule)groundRule).getWeight();
+    public void minimize(ADMMTermStore termStore, float stepSize, float[] consensusValues) {
+        float[] localValues = termStore.getLocalValues();
+        float[] localLagranges = termStore.getLocalLagranges();
+        int[] localGlobalIds = termStore.getLocalGlobalIds();
+
         for (int i = 0; i < size; i++) {
-            LocalVariable variable = variables[i];
+            int localId = localOffset + i;
 
-            float value = consensusValues[variable.getGlobalId()] - variable.getLagrange() / stepSize;
+            float value = consensusValues[localGlobalIds[localId]] - localLagranges[localId] / stepSize;
             value -= (weight * coefficients[i] / stepSize);
 
-            variable.setValue(value);
+            localValues[localId] = value;
         }
     }
 
@@ -54,24 +56,13 @@ public class LinearLossTerm extends ADMMObjectiveTerm {
      * weight * coefficients^T * x
      */
     @Override
-    public float evaluate() {
-        float weight = (float)((WeightedGroundRule)groundRule).getWeight();
-        float value = 0.0f;
-
-        for (int i = 0; i < size; i++) {
-            value += coefficients[i] * variables[i].getValue();
-        }
+    public float evaluate(ADMMTermStore termStore, float[] consensusValues) {
+        int[] localGlobalIds = termStore.getLocalGlobalIds();
 
-        return weight * value;
-    }
-
-    @Override
-    public float evaluate(float[] consensusValues) {
-        float weight = (float)((WeightedGroundRule)groundRule).getWeight();
         float value = 0.0f;
 
         for (int i = 0; i < size; i++) {
-            value += coefficients[i] * consensusValues[variables[i].getGlobalId()];
+            value += coefficients[i] * consensusValues[localGlobalIds[localOffset + i]];
         }
 
         return weight * value;
@@ -23,11 +23,14 @@ import org.linqs.psl.reasoner.term.ReasonerLocalVariable;
  * The local context of a variable.
  * A local variable keeps track of what global (consensus) variable it is associated with.
  * Note that local variables are hashed and equated by the global variable they track.
+ *
+ * Local variables are only handles used while building terms.
+ * Once a term is created, the actual values and Lagrange multipliers of its local copies
+ * are held in flat arrays inside of the ADMMTermStore.
  */
 public class LocalVariable implements ReasonerLocalVariable {
     private final int globalId;
-    private float value;
-    private float lagrange;
+    private final float value;
 
     /**
      * In the context of ADMM, local variables should be initialized with the initial value of the
@@ -36,29 +39,19 @@ public class LocalVariable implements ReasonerLocalVariable {
     public LocalVariable(int globalId, float value) {
         this.value = value;
         this.globalId = globalId;
-        lagrange = 0;
     }
 
     public int getGlobalId() {
         return globalId;
     }
 
-    public float getLagrange() {
-        return lagrange;
-    }
-
+    /**
+     * The value this local copy should start with.
+     */
     public float getValue() {
         return value;
     }
 
-    public void setLagrange(float lagrange) {
-        this.lagrange = lagrange;
-    }
-
-    public void setValue(float value) {
-        this.value = value;
-    }
-
     /**
      * Hash by global identifier.
      */
@@ -76,6 +69,6 @@ public class LocalVariable implements ReasonerLocalVariable {
     }
 
     public String toString() {
-        return String.format("(%f, %f)", value, lagrange);
+        return String.format("(%d, %f)", globalId, value);
     }
 }
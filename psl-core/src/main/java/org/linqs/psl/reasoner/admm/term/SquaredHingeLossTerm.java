@@ -18,7 +18,6 @@
 package org.linqs.psl.reasoner.admm.term;
 
 import org.linqs.psl.model.rule.GroundRule;
-import org.linqs.psl.model.rule.WeightedGroundRule;
 import org.linqs.psl.reasoner.term.Hyperplane;
 
 /**
@@ -26,36 +25,33 @@ import org.linqs.psl.reasoner.term.Hyperplane;
  * weight * [max(coefficients^T * x - constant, 0)]^2
  */
 public class SquaredHingeLossTerm extends SquaredHyperplaneTerm {
-    public SquaredHingeLossTerm(GroundRule groundRule, Hyperplane<LocalVariable> hyperplane) {
-        super(groundRule, hyperplane);
+    public SquaredHingeLossTerm(ADMMTermStore termStore, GroundRule groundRule, Hyperplane<LocalVariable> hyperplane) {
+        super(termStore, groundRule, hyperplane);
     }
 
     /**
      * weight * [max(coefficients^T * x - constant, 0.0)]^2
      */
     @Override
-    public float evaluate() {
-        float weight = (float)((WeightedGroundRule)groundRule).getWeight();
-        return weight * (float)Math.pow(Math.max(0.0f, super.evaluate()), 2);
+    public float evaluate(ADMMTermStore termStore, float[] consensusValues) {
+        return weight * (float)Math.pow(Math.max(0.0f, super.evaluate(termStore, consensusValues)), 2);
     }
 
     @Override
-    public float evaluate(float[] consensusValues) {
-        float weight = (float)((WeightedGroundRule)groundRule).getWeight();
-        return weight * (float)Math.pow(Math.max(0.0f, super.evaluate(consensusValues)), 2);
-    }
+    public void minimize(ADMMTermStore termStore, float stepSize, float[] consensusValues) {
+        float[] localValues = termStore.getLocalValues();
+        float[] localLagranges = termStore.getLocalLagranges();
+        int[] localGlobalIds = termStore.getLocalGlobalIds();
 
-    @Override
-    public void minimize(float stepSize, float[] consensusValues) {
         // Initializes scratch data.
         float total = 0.0f;
 
         // Minimizes without the quadratic loss, i.e., solves
         // argmin stepSize/2 * \|x - z + y / stepSize \|_2^2
         for (int i = 0; i < size; i++) {
-            LocalVariable variable = variables[i];
-            variable.setValue(consensusValues[variable.getGlobalId()] - variable.getLagrange() / stepSize);
-            total += coefficients[i] * variable.getValue();
+            int localId = localOffset + i;
+            localValues[localId] = consensusValues[localGlobalIds[localId]] - localLagranges[localId] / stepSize;
+            total += coefficients[i] * localValues[localId];
         }
 
         // If the quadratic loss is NOT active at the computed point, it is the solution...
@@ -65,6 +61,6 @@ public class SquaredHingeLossTerm extends SquaredHyperplaneTerm {
 
         // Else, minimizes with the quadratic loss, i.e., solves
         // argmin weight * (coefficients^T * x - constant)^2 + stepSize/2 * \|x - z + y / stepSize \|_2^2
-        minWeightedSquaredHyperplane(stepSize, consensusValues);
+        minWeightedSquaredHyperplane(termStore, stepSize, consensusValues);
     }
 }
@@ -18,13 +18,12 @@
 package org.linqs.psl.reasoner.admm.term;
 
 import org.linqs.psl.model.rule.GroundRule;
-import org.linqs.psl.model.rule.WeightedGroundRule;
 import org.linqs.psl.reasoner.term.Hyperplane;
 import org.linqs.psl.util.FloatMatrix;
 import org.linqs.psl.util.HashCode;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
 
 /**
@@ -44,26 +43,39 @@ public abstract class SquaredHyperplaneTerm extends ADMMObjectiveTerm {
      */
     private FloatMatrix lowerTriangle;
 
-    private static Map<Integer, FloatMatrix> lowerTriangleCache = new HashMap<Integer, FloatMatrix>();
+    /**
+     * The weight and step size that |lowerTriangle| was computed with.
+     * If either changes (e.g. the weight was updated in place), then the triangle needs to be fetched again.
+     */
+    private float lowerTriangleWeight;
+    private float lowerTriangleStepSize;
+
+    // Read by all the reasoner threads, and written whenever a new weight or step size is seen.
+    private static Map<Integer, FloatMatrix> lowerTriangleCache = new ConcurrentHashMap<Integer, FloatMatrix>();
 
     private static final Semaphore matrixSemaphore = new Semaphore(1);
 
     // TODO(eriq): All the matrix work is suspect.
     // The old code was using some cache that didn't seem too useful. Could it have been?
 
-    public SquaredHyperplaneTerm(GroundRule groundRule, Hyperplane<LocalVariable> hyperplane) {
-        super(hyperplane, groundRule);
+    public SquaredHyperplaneTerm(ADMMTermStore termStore, GroundRule groundRule, Hyperplane<LocalVariable> hyperplane) {
+        super(termStore, hyperplane, groundRule);
 
         this.coefficients = hyperplane.getCoefficients();
         this.constant = hyperplane.getConstant();
 
         lowerTriangle = null;
+        lowerTriangleWeight = 0.0f;
+        lowerTriangleStepSize = 0.0f;
     }
 
-    private void initLowerTriangle(float stepSize) {
-        // Note that this method will only be called once (and not for every term),
+    private void initLowerTriangle(float weight, float stepSize) {
+        lowerTriangleWeight = weight;
+        lowerTriangleStepSize = stepSize;
+
+        // Note that this method will only be called once per weight (and not every iteration),
         // so we will compute the hash here and not save it.
-        int hash = HashCode.build(((WeightedGroundRule)groundRule).getWeight());
+        int hash = HashCode.build(weight);
         hash = HashCode.build(hash, stepSize);
         for (int i = 0; i < size; i++) {
             hash = HashCode.build(hash, coefficients[i]);
@@ -76,7 +88,7 @@ public abstract class SquaredHyperplaneTerm extends ADMMObjectiveTerm {
             return;
         }
 
-        // If we didn't find it, then synchronize and compute on this thread.
+        // If we didn't find it, then compute it on this thread.
         lowerTriangle = computeLowerTriangle(stepSize, hash);
     }
 
@@ -84,14 +96,7 @@ public abstract class SquaredHyperplaneTerm extends ADMMObjectiveTerm {
      * Actually copute the lower triangle and store it in the cache.
      * There is one triangle per rule, so most ground rules will just pull off the same cache.
      */
-    private synchronized FloatMatrix computeLowerTriangle(float stepSize, int hash) {
-        // There is still a race condition in the map fetch before getting here,
-        // so we will check one more time while synchronized.
-        if (lowerTriangleCache.containsKey(hash)) {
-            return lowerTriangleCache.get(hash);
-        }
-
-        float weight = (float)((WeightedGroundRule)groundRule).getWeight();
+    private FloatMatrix computeLowerTriangle(float stepSize, int hash) {
         float coeff = 0.0f;
 
         FloatMatrix matrix = FloatMatrix.zeroes(size, size);
@@ -111,7 +116,12 @@ public abstract class SquaredHyperplaneTerm extends ADMMObjectiveTerm {
         }
 
         matrix.choleskyDecomposition(true);
-        lowerTriangleCache.put(hash, matrix);
+
+        // If another thread beat us to it, use theirs so that all terms share the same matrix.
+        FloatMatrix existing = lowerTriangleCache.putIfAbsent(hash, matrix);
+        if (existing != null) {
+            return existing;
+        }
 
         return matrix;
     }
@@ -120,20 +130,12 @@ public abstract class SquaredHyperplaneTerm extends ADMMObjectiveTerm {
      * coefficients^T * x - constant
      */
     @Override
-    public float evaluate() {
-        float value = 0.0f;
-        for (int i = 0; i < size; i++) {
-            value += coefficients[i] * variables[i].getValue();
-        }
-
-        return value - constant;
-    }
+    public float evaluate(ADMMTermStore termStore, float[] consensusValues) {
+        int[] localGlobalIds = termStore.getLocalGlobalIds();
 
-    @Override
-    public float evaluate(float[] consensusValues) {
         float value = 0.0f;
         for (int i = 0; i < size; i++) {
-            value += coefficients[i] * consensusValues[variables[i].getGlobalId()];
+            value += coefficients[i] * consensusValues[localGlobalIds[localOffset + i]];
         }
 
         return value - constant;
@@ -145,34 +147,36 @@ public abstract class SquaredHyperplaneTerm extends ADMMObjectiveTerm {
      * <p>
      * Stores the result in x.
      */
-    protected void minWeightedSquaredHyperplane(float stepSize, float[] consensusValues) {
-        float weight = (float)((WeightedGroundRule)groundRule).getWeight();
+    protected void minWeightedSquaredHyperplane(ADMMTermStore termStore, float stepSize, float[] consensusValues) {
+        float[] localValues = termStore.getLocalValues();
+        float[] localLagranges = termStore.getLocalLagranges();
+        int[] localGlobalIds = termStore.getLocalGlobalIds();
+
 
         // Construct constant term in the gradient (moved to right-hand side).
         for (int i = 0; i < size; i++) {
-            LocalVariable variable = variables[i];
+            int localId = localOffset + i;
 
-            float value = stepSize * (consensusValues[variable.getGlobalId()] - variable.getLagrange() / stepSize);
+            float value = stepSize * (consensusValues[localGlobalIds[localId]] - localLagranges[localId] / stepSize);
             value += 2 * weight * coefficients[i] * constant;
 
-            variable.setValue(value);
+            localValues[localId] = value;
         }
 
         // Solve for x
 
         // Handle very small hyperplanes specially.
         if (size == 1) {
-            LocalVariable variable = variables[0];
             float coeff = coefficients[0];
 
-            variable.setValue(variable.getValue() / (2 * weight * coeff * coeff + stepSize));
+            localValues[localOffset] = localValues[localOffset] / (2 * weight * coeff * coeff + stepSize);
             return;
         }
 
         // Handle small hyperplanes specially.
         if (size == 2) {
-            LocalVariable variable0 = variables[0];
-            LocalVariable variable1 = variables[1];
+            int localId0 = localOffset;
+            int localId1 = localOffset + 1;
             float coeff0 = coefficients[0];
             float coeff1 = coefficients[1];
 
@@ -180,37 +184,37 @@ public abstract class SquaredHyperplaneTerm extends ADMMObjectiveTerm {
             float b1 = 2 * weight * coeff1 * coeff1 + stepSize;
             float a1b0 = 2 * weight * coeff0 * coeff1;
 
-            variable1.setValue(variable1.getValue() - a1b0 * variable0.getValue() / a0);
-            variable1.setValue(variable1.getValue() / (b1 - a1b0 * a1b0 / a0));
+            localValues[localId1] = localValues[localId1] - a1b0 * localValues[localId0] / a0;
+            localValues[localId1] = localValues[localId1] / (b1 - a1b0 * a1b0 / a0);
 
-            variable0.setValue((variable0.getValue() - a1b0 * variable1.getValue()) / a0);
+            localValues[localId0] = (localValues[localId0] - a1b0 * localValues[localId1]) / a0;
 
             return;
         }
 
         // Fast system solve.
-        if (lowerTriangle == null) {
-            initLowerTriangle(stepSize);
+        if (lowerTriangle == null || lowerTriangleWeight != weight || lowerTriangleStepSize != stepSize) {
+            initLowerTriangle(weight, stepSize);
         }
 
         for (int i = 0; i < size; i++) {
-            float newValue = variables[i].getValue();
+            float newValue = localValues[localOffset + i];
 
             for (int j = 0; j < i; j++) {
-                newValue -= lowerTriangle.get(i, j) * variables[j].getValue();
+                newValue -= lowerTriangle.get(i, j) * localValues[localOffset + j];
             }
 
-            variables[i].setValue(newValue / lowerTriangle.get(i, i));
+            localValues[localOffset + i] = newValue / lowerTriangle.get(i, i);
         }
 
         for (int i = size - 1; i >= 0; i--) {
-            float newValue = variables[i].getValue();
+            float newValue = localValues[localOffset + i];
 
             for (int j = size - 1; j > i; j--) {
-                newValue -= lowerTriangle.get(j, i) * variables[j].getValue();
+                newValue -= lowerTriangle.get(j, i) * localValues[localOffset + j];
             }
 
-            variables[i].setValue(newValue / lowerTriangle.get(i, i));
+            localValues[localOffset + i] = newValue / lowerTriangle.get(i, i);
         }
     }
 }
@@ -18,7 +18,6 @@
 package org.linqs.psl.reasoner.admm.term;
 
 import org.linqs.psl.model.rule.GroundRule;
-import org.linqs.psl.model.rule.WeightedGroundRule;
 import org.linqs.psl.reasoner.term.Hyperplane;
 
 /**
@@ -26,27 +25,20 @@ import org.linqs.psl.reasoner.term.Hyperplane;
  * weight * (coeffs^T * x - constant)^2
  */
 public class SquaredLinearLossTerm extends SquaredHyperplaneTerm {
-    public SquaredLinearLossTerm(GroundRule groundRule, Hyperplane<LocalVariable> hyperplane) {
-        super(groundRule, hyperplane);
+    public SquaredLinearLossTerm(ADMMTermStore termStore, GroundRule groundRule, Hyperplane<LocalVariable> hyperplane) {
+        super(termStore, groundRule, hyperplane);
     }
 
     @Override
-    public void minimize(float stepSize, float[] consensusValues) {
-        minWeightedSquaredHyperplane(stepSize, consensusValues);
+    public void minimize(ADMMTermStore termStore, float stepSize, float[] consensusValues) {
+        minWeightedSquaredHyperplane(termStore, stepSize, consensusValues);
     }
 
     /**
      * weight * (coeffs^T * x - constant)^2
      */
     @Override
-    public float evaluate() {
-        float weight = (float)((WeightedGroundRule)groundRule).getWeight();
-        return weight * (float)Math.pow(super.evaluate(), 2);
-    }
-
-    @Override
-    public float evaluate(float[] consensusValues) {
-        float weight = (float)((WeightedGroundRule)groundRule).getWeight();
-        return weight * (float)Math.pow(super.evaluate(consensusValues), 2);
+    public float evaluate(ADMMTermStore termStore, float[] consensusValues) {
+        return weight * (float)Math.pow(super.evaluate(termStore, consensusValues), 2);
     }
 }
@@ -21,16 +21,16 @@ import org.linqs.psl.config.Config;
 import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.reasoner.Reasoner;
 import org.linqs.psl.reasoner.dcd.term.DCDObjectiveTerm;
+import org.linqs.psl.reasoner.term.TermPass;
 import org.linqs.psl.reasoner.term.TermStore;
 import org.linqs.psl.reasoner.term.VariableTermStore;
-import org.linqs.psl.util.IteratorUtils;
+import org.linqs.psl.reasoner.term.streaming.StreamingTermStore;
 import org.linqs.psl.util.MathUtils;
+import org.linqs.psl.util.Parallel;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Iterator;
-
 /**
  * Uses an SGD optimization method to optimize its GroundRules.
  */
@@ -63,6 +63,15 @@ public class DCDReasoner implements Reasoner {
     public static final String C_KEY = CONFIG_PREFIX + ".C";
     public static final float C_DEFAULT = 10.0f;
 
+    /**
+     * DCD cannot handle hard constraints directly.
+     * Instead, each inequality constraint becomes a squared hinge penalty with this weight.
+     * Equality constraints become two of these penalties, one for each side.
+     * Higher values enforce the constraints more strictly, but may make optimization less stable.
+     */
+    public static final String CONSTRAINT_WEIGHT_KEY = CONFIG_PREFIX + ".constraintweight";
+    public static final float CONSTRAINT_WEIGHT_DEFAULT = 100.0f;
+
     public static final String TRUNCATE_EVERY_STEP_KEY = CONFIG_PREFIX + ".truncateeverystep";
     public static final boolean TRUNCATE_EVERY_STEP_DEFAULT = false;
 
@@ -78,6 +87,30 @@ public class DCDReasoner implements Reasoner {
     public static final String PRINT_INITIAL_OBJECTIVE_KEY = CONFIG_PREFIX + ".printinitialobj";
     public static final boolean PRINT_INITIAL_OBJECTIVE_DEFAULT = false;
 
+    /**
+     * When the terms are in memory, minimize (and evaluate) them on all threads.
+     * Each thread takes blocks of terms (in a random order each iteration) and updates its terms' lagranges,
+     * while the shared variable values are updated without any locking (asynchronous, PASSCoDe style).
+     */
+    public static final String PARALLEL_KEY = CONFIG_PREFIX + ".parallel";
+    public static final boolean PARALLEL_DEFAULT = false;
+
+    /**
+     * Check the objective (and log it) once every this many iterations.
+     * When OBJECTIVE_BREAK_KEY is on, this is also how often convergence is checked.
+     */
+    public static final String COMPUTE_PERIOD_KEY = CONFIG_PREFIX + ".computeperiod";
+    public static final int COMPUTE_PERIOD_DEFAULT = 1;
+
+    /**
+     * Compute the objective with a separate pass over the terms after minimization.
+     * Otherwise, each term is evaluated (at the values before it is minimized) during the minimization pass.
+     * This lags slightly behind the true objective (and when not truncating every step, may see values outside [0, 1]),
+     * but saves a pass over the terms (all the pages for streaming term stores) every time the objective is checked.
+     */
+    public static final String EXACT_OBJECTIVE_KEY = CONFIG_PREFIX + ".exactobjective";
+    public static final boolean EXACT_OBJECTIVE_DEFAULT = false;
+
     private int maxIter;
 
     private float tolerance;
@@ -86,6 +119,9 @@ public class DCDReasoner implements Reasoner {
     private boolean objectiveBreak;
     private float c;
     private boolean truncateEveryStep;
+    private boolean parallel;
+    private int computePeriod;
+    private boolean exactObjective;
 
     public DCDReasoner() {
         maxIter = Config.getInt(MAX_ITER_KEY, MAX_ITER_DEFAULT);
@@ -95,6 +131,13 @@ public class DCDReasoner implements Reasoner {
         tolerance = Config.getFloat(OBJ_TOL_KEY, OBJ_TOL_DEFAULT);
         c = Config.getFloat(C_KEY, C_DEFAULT);
         truncateEveryStep = Config.getBoolean(TRUNCATE_EVERY_STEP_KEY, TRUNCATE_EVERY_STEP_DEFAULT);
+        parallel = Config.getBoolean(PARALLEL_KEY, PARALLEL_DEFAULT);
+        exactObjective = Config.getBoolean(EXACT_OBJECTIVE_KEY, EXACT_OBJECTIVE_DEFAULT);
+
+        computePeriod = Config.getInt(COMPUTE_PERIOD_KEY, COMPUTE_PERIOD_DEFAULT);
+        if (computePeriod < 1) {
+            throw new IllegalArgumentException("Compute period must be positive, got: " + computePeriod);
+        }
     }
 
     public int getMaxIter() {
@@ -136,9 +179,10 @@ public class DCDReasoner implements Reasoner {
                 && (!objectiveBreak || (iteration == 1 || !MathUtils.equals(objective, oldObjective, tolerance)))) {
             long start = System.currentTimeMillis();
 
-            for (DCDObjectiveTerm term : termStore) {
-                term.minimize(truncateEveryStep, variableValues);
-            }
+            // Always check on the last iteration so the final objective is recent.
+            boolean checkObjective = (iteration % computePeriod == 0) || (iteration == maxIter);
+
+            float passObjective = minimize(termStore, truncateEveryStep, variableValues, checkObjective && !exactObjective);
 
             // If we are truncating every step, then the variables are already in valid state.
             if (!truncateEveryStep) {
@@ -148,12 +192,19 @@ public class DCDReasoner implements Reasoner {
             }
 
             long end = System.currentTimeMillis();
-            oldObjective = objective;
-            objective = computeObjective(termStore, variableValues);
             time += end - start;
 
-            if (printObj) {
-                log.trace("objective:{},{},{}", iteration, time, objective);
+            if (checkObjective) {
+                oldObjective = objective;
+                if (exactObjective) {
+                    objective = computeObjective(termStore, variableValues);
+                } else {
+                    objective = passObjective / c / termStore.size();
+                }
+
+                if (printObj) {
+                    log.trace("objective:{},{},{}", iteration, time, objective);
+                }
             }
 
             iteration++;
@@ -165,21 +216,53 @@ public class DCDReasoner implements Reasoner {
         log.debug("Optimized with {} variables and {} terms.", termStore.getNumVariables(), termStore.size());
     }
 
-    private float computeObjective(VariableTermStore<DCDObjectiveTerm, RandomVariableAtom> termStore, float[] variableValues) {
-        float objective = 0.0f;
-        int termCount = 0;
+    /**
+     * Make a pass over the terms, minimizing each one.
+     * @return if |evaluate|, the (unnormalized, not divided by c) objective
+     *  with each term evaluated just before it was minimized.
+     */
+    private float minimize(VariableTermStore<DCDObjectiveTerm, RandomVariableAtom> termStore,
+            final boolean truncateEveryStep, final float[] variableValues, final boolean evaluate) {
+        final float[] threadObjectives = new float[Parallel.getNumThreads()];
+
+        // Terms are minimized without any locking on the variables.
+        // Each term is only visited by one thread in a pass, so its lagrange has a single writer.
+        TermPass.forEach(termStore, parallel, false, new StreamingTermStore.TermVisitor<DCDObjectiveTerm>() {
+            @Override
+            public void visit(int threadId, DCDObjectiveTerm term) {
+                if (evaluate) {
+                    threadObjectives[threadId] += term.evaluate(variableValues);
+                }
+
+                term.minimize(truncateEveryStep, variableValues);
+            }
+        });
 
-        // If possible, use a readonly iterator.
-        Iterator<DCDObjectiveTerm> termIterator = null;
-        if (termStore.isLoaded()) {
-            termIterator = termStore.noWriteIterator();
-        } else {
-            termIterator = termStore.iterator();
+        float objective = 0.0f;
+        for (float threadObjective : threadObjectives) {
+            objective += threadObjective;
         }
 
-        for (DCDObjectiveTerm term : IteratorUtils.newIterable(termIterator)) {
-            objective += term.evaluate(variableValues) / c;
-            termCount++;
+        return objective;
+    }
+
+    private float computeObjective(VariableTermStore<DCDObjectiveTerm, RandomVariableAtom> termStore, final float[] variableValues) {
+        final float[] threadObjectives = new float[Parallel.getNumThreads()];
+        final int[] threadTermCounts = new int[Parallel.getNumThreads()];
+
+        TermPass.forEach(termStore, parallel, true, new StreamingTermStore.TermVisitor<DCDObjectiveTerm>() {
+            @Override
+            public void visit(int threadId, DCDObjectiveTerm term) {
+                threadObjectives[threadId] += term.evaluate(variableValues) / c;
+                threadTermCounts[threadId]++;
+            }
+        });
+
+        float objective = 0.0f;
+        int termCount = 0;
+        for (int i = 0; i < threadObjectives.length; i++) {
+            objective += threadObjectives[i];
+            termCount += threadTermCounts[i];
         }
 
         return objective / termCount;
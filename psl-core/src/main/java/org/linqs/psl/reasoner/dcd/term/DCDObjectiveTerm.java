@@ -21,6 +21,7 @@ import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.reasoner.term.Hyperplane;
 import org.linqs.psl.reasoner.term.ReasonerTerm;
 import org.linqs.psl.reasoner.term.VariableTermStore;
+import org.linqs.psl.reasoner.term.streaming.TermPageCodec;
 import org.linqs.psl.util.MathUtils;
 
 import java.nio.ByteBuffer;
@@ -41,6 +42,15 @@ public class DCDObjectiveTerm implements ReasonerTerm  {
     private float[] coefficients;
     private int[] variableIndexes;
 
+    /**
+     * Construct a blank term that will be filled with read().
+     */
+    public DCDObjectiveTerm() {
+        size = 0;
+        coefficients = new float[0];
+        variableIndexes = new int[0];
+    }
+
     public DCDObjectiveTerm(VariableTermStore<DCDObjectiveTerm, RandomVariableAtom> termStore,
             boolean squared,
             Hyperplane<RandomVariableAtom> hyperplane,
@@ -174,6 +184,65 @@ public class DCDObjectiveTerm implements ReasonerTerm  {
         }
     }
 
+    /**
+     * An upper bound on the number of bytes that writeCompactValues() will need to represent this term.
+     */
+    public int compactByteSizeBound() {
+        return 1  // squared
+            + 2 * TermPageCodec.MAX_FLOAT_SIZE  // adjustedWeight, constant
+            + TermPageCodec.MAX_INT_SIZE  // size
+            + size * (TermPageCodec.MAX_FLOAT_SIZE + TermPageCodec.MAX_INT_SIZE);  // coefficients + variableIndexes
+    }
+
+    /**
+     * Write a compact representation of the fixed values of this term to a buffer.
+     * Floats are dictionary coded by the page's codec,
+     * and variable indexes are written as the (variable length) difference from the previous index.
+     * qii is not written, since it can be recomputed from the coefficients.
+     */
+    public void writeCompactValues(ByteBuffer fixedBuffer, TermPageCodec codec) {
+        fixedBuffer.put((byte)(squared ? 1 : 0));
+        codec.putFloat(fixedBuffer, adjustedWeight);
+        codec.putFloat(fixedBuffer, constant);
+        TermPageCodec.putInt(fixedBuffer, size);
+
+        int previousIndex = 0;
+        for (int i = 0; i < size; i++) {
+            codec.putFloat(fixedBuffer, coefficients[i]);
+            TermPageCodec.putSignedInt(fixedBuffer, variableIndexes[i] - previousIndex);
+            previousIndex = variableIndexes[i];
+        }
+    }
+
+    /**
+     * Same as read(), but for terms written with writeCompactValues().
+     */
+    public void readCompact(ByteBuffer fixedBuffer, ByteBuffer volatileBuffer, TermPageCodec codec) {
+        squared = (fixedBuffer.get() == 1);
+        adjustedWeight = codec.getFloat(fixedBuffer);
+        constant = codec.getFloat(fixedBuffer);
+        size = (short)TermPageCodec.getInt(fixedBuffer);
+
+        // Make sure that there is enough room for all these variableIndexes.
+        if (coefficients.length < size) {
+            coefficients = new float[size];
+            variableIndexes = new int[size];
+        }
+
+        int previousIndex = 0;
+        float tempQii = 0f;
+        for (int i = 0; i < size; i++) {
+            coefficients[i] = codec.getFloat(fixedBuffer);
+            variableIndexes[i] = previousIndex + TermPageCodec.getSignedInt(fixedBuffer);
+            previousIndex = variableIndexes[i];
+
+            tempQii += coefficients[i] * coefficients[i];
+        }
+        qii = tempQii;
+
+        lagrange = volatileBuffer.getFloat();
+    }
+
     /**
      * Assume the term that will be next read from the buffers.
      */
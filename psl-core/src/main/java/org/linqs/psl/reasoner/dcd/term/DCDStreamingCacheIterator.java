@@ -19,14 +19,11 @@ package org.linqs.psl.reasoner.dcd.term;
 
 import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.reasoner.term.streaming.StreamingCacheIterator;
-import org.linqs.psl.util.RuntimeStats;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DCDStreamingCacheIterator extends StreamingCacheIterator<DCDObjectiveTerm> {
     public DCDStreamingCacheIterator(
@@ -39,70 +36,47 @@ public class DCDStreamingCacheIterator extends StreamingCacheIterator<DCDObjecti
                 volatileBuffer, shufflePage, shuffleMap, randomizePageAccess, numPages);
     }
 
-    @Override
-    protected void readPage(String termPagePath, String volatilePagePath) {
-        int termsSize = 0;
-        int numTerms = 0;
-        int headerSize = (Integer.SIZE / 8) * 2;
-        int volatilesSize = 0;
-
-        try (
-                FileInputStream termStream = new FileInputStream(termPagePath);
-                FileInputStream volatileStream = new FileInputStream(volatilePagePath)) {
-            // First read the term size information.
-            termStream.read(termBuffer.array(), 0, headerSize);
-
-            termsSize = termBuffer.getInt();
-            numTerms = termBuffer.getInt();
-            volatilesSize = (Float.SIZE / 8) * numTerms;
-
-            // Now read in all the terms and volatile values.
-            termStream.read(termBuffer.array(), headerSize, termsSize);
-            volatileStream.read(volatileBuffer.array(), 0, volatilesSize);
-        } catch (IOException ex) {
-            throw new RuntimeException(String.format("Unable to read cache pages: [%s ; %s].", termPagePath, volatilePagePath), ex);
-        }
+    public DCDStreamingCacheIterator(
+            DCDStreamingTermStore parentStore, boolean readonly,
+            List<DCDObjectiveTerm> termCache, List<DCDObjectiveTerm> termPool,
+            ByteBuffer termBuffer, ByteBuffer volatileBuffer,
+            boolean shufflePage, int[] shuffleMap,
+            List<Integer> pageAccessOrder, AtomicInteger nextPage) {
+        super(parentStore, readonly, termCache, termPool, termBuffer,
+                volatileBuffer, shufflePage, shuffleMap, pageAccessOrder, nextPage);
+    }
 
-        // Log io.
-        RuntimeStats.logDiskRead(headerSize + termsSize);
-        RuntimeStats.logDiskRead(volatilesSize);
+    @Override
+    protected int getVolatileByteSize(int pageIndex, int numTerms) {
+        // Just the lagrange.
+        return (Float.SIZE / 8) * numTerms;
+    }
 
+    @Override
+    protected void readTerms(int numTerms, ByteBuffer termBuffer, ByteBuffer volatileBuffer) {
         // Convert all the terms from binary to objects.
         // Use the terms from the pool.
 
         for (int i = 0; i < numTerms; i++) {
             DCDObjectiveTerm term = termPool.get(i);
-            term.read(termBuffer, volatileBuffer);
+            if (pageCodec != null) {
+                term.readCompact(termBuffer, volatileBuffer, pageCodec);
+            } else {
+                term.read(termBuffer, volatileBuffer);
+            }
             termCache.add(term);
         }
     }
 
     @Override
-    protected void writeVolatilePage(String volatilePagePath) {
-        int volatileBufferSize = (Float.SIZE / 8) * termCache.size();
-
+    protected void writeVolatileValues(ByteBuffer volatileBuffer) {
         // If this page was picked up from the cache (and not from grounding) and shuffled,
         // then we will need to use the shuffle map to write the volatile values back in
         // the same order as the terms.
-        if (shufflePage) {
-            for (int shuffledIndex = 0; shuffledIndex < termCache.size(); shuffledIndex++) {
-                int writeIndex = shuffleMap[shuffledIndex];
-                DCDObjectiveTerm term = termCache.get(shuffledIndex);
-                volatileBuffer.putFloat(writeIndex * (Float.SIZE / 8), term.getLagrange());
-            }
-        } else {
-            for (DCDObjectiveTerm term : termCache) {
-                volatileBuffer.putFloat(term.getLagrange());
-            }
+        for (int shuffledIndex = 0; shuffledIndex < termCache.size(); shuffledIndex++) {
+            int writeIndex = shufflePage ? shuffleMap[shuffledIndex] : shuffledIndex;
+            DCDObjectiveTerm term = termCache.get(shuffledIndex);
+            volatileBuffer.putFloat(writeIndex * (Float.SIZE / 8), term.getLagrange());
         }
-
-        try (FileOutputStream stream = new FileOutputStream(volatilePagePath)) {
-            stream.write(volatileBuffer.array(), 0, volatileBufferSize);
-        } catch (IOException ex) {
-            throw new RuntimeException("Unable to write volatile cache page: " + volatilePagePath, ex);
-        }
-
-        // Log io.
-        RuntimeStats.logDiskWrite(volatileBufferSize);
     }
 }
@@ -26,9 +26,11 @@ import org.linqs.psl.model.rule.logical.WeightedLogicalRule;
 import org.linqs.psl.reasoner.term.streaming.StreamingIterator;
 import org.linqs.psl.reasoner.term.streaming.StreamingTermStore;
 
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A term store that iterates over ground queries directly (obviating the GroundRuleStore).
@@ -79,4 +81,18 @@ public class DCDStreamingTermStore extends StreamingTermStore<DCDObjectiveTerm>
                 this, true, termCache, termPool,
                 termBuffer, volatileBuffer, shufflePage, shuffleMap, randomizePageAccess, numPages);
     }
+
+    @Override
+    protected DCDObjectiveTerm createEmptyTerm() {
+        return new DCDObjectiveTerm();
+    }
+
+    @Override
+    protected StreamingIterator<DCDObjectiveTerm> getPageIterator(boolean readonly,
+            List<DCDObjectiveTerm> termCache, List<DCDObjectiveTerm> termPool, ByteBuffer termBuffer, ByteBuffer volatileBuffer,
+            int[] shuffleMap, List<Integer> pageAccessOrder, AtomicInteger nextPage) {
+        return new DCDStreamingCacheIterator(
+                this, readonly, termCache, termPool,
+                termBuffer, volatileBuffer, shufflePage, shuffleMap, pageAccessOrder, nextPage);
+    }
 }
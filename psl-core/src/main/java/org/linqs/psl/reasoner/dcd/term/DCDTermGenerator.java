@@ -31,6 +31,8 @@ import org.linqs.psl.reasoner.term.VariableTermStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+
 /**
  * A TermGenerator for DCD objective terms.
  */
@@ -38,9 +40,11 @@ public class DCDTermGenerator extends HyperplaneTermGenerator<DCDObjectiveTerm,
     private static final Logger log = LoggerFactory.getLogger(DCDTermGenerator.class);
 
     private float c;
+    private float constraintWeight;
 
     public DCDTermGenerator() {
         c = Config.getFloat(DCDReasoner.C_KEY, DCDReasoner.C_DEFAULT);
+        constraintWeight = Config.getFloat(DCDReasoner.CONSTRAINT_WEIGHT_KEY, DCDReasoner.CONSTRAINT_WEIGHT_DEFAULT);
     }
 
     @Override
@@ -67,10 +71,44 @@ public class DCDTermGenerator extends HyperplaneTermGenerator<DCDObjectiveTerm,
         }
     }
 
+    /**
+     * Inequality constraints are turned into squared hinge penalties (see DCDReasoner.CONSTRAINT_WEIGHT_KEY).
+     * Equality constraints are handled by createLinearConstraintTerms().
+     */
     @Override
-    public DCDObjectiveTerm createLinearConstraintTerm(TermStore<DCDObjectiveTerm, RandomVariableAtom> termStore,
+    public DCDObjectiveTerm createLinearConstraintTerm(TermStore<DCDObjectiveTerm, RandomVariableAtom> baseTermStore,
             GroundRule groundRule, Hyperplane<RandomVariableAtom> hyperplane, FunctionComparator comparator) {
-        log.warn("DCD does not support hard constraints, i.e. " + groundRule);
-        return null;
+        if (comparator.equals(FunctionComparator.EQ)) {
+            throw new IllegalArgumentException("DCD needs two terms for an equality constraint: " + groundRule);
+        }
+
+        VariableTermStore<DCDObjectiveTerm, RandomVariableAtom> termStore = (VariableTermStore<DCDObjectiveTerm, RandomVariableAtom>)baseTermStore;
+
+        if (comparator.equals(FunctionComparator.GTE)) {
+            hyperplane.negate();
+        }
+
+        return new DCDObjectiveTerm(termStore, true, hyperplane, constraintWeight, c);
+    }
+
+    /**
+     * A single hinge can only penalize one side of a hyperplane,
+     * so an equality constraint becomes two squared hinge penalties:
+     * coefficients^T * x <= constant and -coefficients^T * x <= -constant.
+     */
+    @Override
+    public int createLinearConstraintTerms(TermStore<DCDObjectiveTerm, RandomVariableAtom> termStore, GroundRule groundRule,
+            Hyperplane<RandomVariableAtom> hyperplane, FunctionComparator comparator, List<DCDObjectiveTerm> terms) {
+        if (!comparator.equals(FunctionComparator.EQ)) {
+            return super.createLinearConstraintTerms(termStore, groundRule, hyperplane, comparator, terms);
+        }
+
+        // Terms take the hyperplane's arrays, so the negated side needs its own copy.
+        Hyperplane<RandomVariableAtom> negatedHyperplane = hyperplane.copy();
+
+        int count = addTerm(createLinearConstraintTerm(termStore, groundRule, hyperplane, FunctionComparator.LTE), terms);
+        count += addTerm(createLinearConstraintTerm(termStore, groundRule, negatedHyperplane, FunctionComparator.GTE), terms);
+
+        return count;
     }
 }
@@ -0,0 +1,93 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2019 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.sgd;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates the gradients of a mini-batch of terms so that each touched variable takes only a single step.
+ * The gradients of all the terms in the batch are summed per variable.
+ * A batch belongs to a single thread.
+ */
+public class GradientBatch {
+    private final int batchSize;
+
+    private float[] gradients;
+    private boolean[] touched;
+
+    private int[] touchedVariables;
+    private int numTouched;
+
+    private int numTerms;
+
+    public GradientBatch(int numVariables, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive, got: " + batchSize);
+        }
+
+        this.batchSize = batchSize;
+
+        gradients = new float[numVariables];
+        touched = new boolean[numVariables];
+        touchedVariables = new int[Math.max(1, Math.min(numVariables, 1024))];
+        numTouched = 0;
+        numTerms = 0;
+    }
+
+    public void add(int variableIndex, float gradient) {
+        gradients[variableIndex] += gradient;
+
+        if (!touched[variableIndex]) {
+            touched[variableIndex] = true;
+
+            if (numTouched == touchedVariables.length) {
+                touchedVariables = Arrays.copyOf(touchedVariables, touchedVariables.length * 2);
+            }
+
+            touchedVariables[numTouched] = variableIndex;
+            numTouched++;
+        }
+    }
+
+    /**
+     * Note that another term has been added to the batch.
+     * @return true if the batch is now full (and should be applied).
+     */
+    public boolean termAdded() {
+        numTerms++;
+        return numTerms >= batchSize;
+    }
+
+    /**
+     * Take a step for every variable touched by the batch and clear the batch.
+     */
+    public void apply(float[] variableValues, LearningSchedule schedule) {
+        for (int i = 0; i < numTouched; i++) {
+            int variableIndex = touchedVariables[i];
+
+            float step = schedule.getStep(variableIndex, gradients[variableIndex]);
+            variableValues[variableIndex] = Math.max(0.0f, Math.min(1.0f, variableValues[variableIndex] - step));
+
+            gradients[variableIndex] = 0.0f;
+            touched[variableIndex] = false;
+        }
+
+        numTouched = 0;
+        numTerms = 0;
+    }
+}
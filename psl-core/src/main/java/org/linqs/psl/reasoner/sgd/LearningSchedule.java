@@ -0,0 +1,219 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2019 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.sgd;
+
+import org.linqs.psl.config.Config;
+
+/**
+ * Decides how large of a step SGD takes for a variable given its gradient.
+ *
+ * Any per-variable state is kept in arrays indexed the same as the term store's variable values.
+ * Schedules may be used from multiple threads at once (Hogwild style),
+ * so updates to the per-variable state are not synchronized.
+ */
+public abstract class LearningSchedule {
+    /**
+     * The available schedules.
+     *  - INVERSE_TIME - learningRate / iteration.
+     *  - CONSTANT - learningRate * decay^(iteration - 1).
+     *  - ADAGRAD - learningRate / sqrt(sum of all squared gradients for the variable).
+     *  - ADAM - learningRate with per-variable (bias corrected) first and second moment estimates of the gradient.
+     */
+    public static enum Type { INVERSE_TIME, CONSTANT, ADAGRAD, ADAM }
+
+    protected final float learningRate;
+
+    protected int iteration;
+
+    public LearningSchedule(float learningRate) {
+        if (learningRate <= 0.0f) {
+            throw new IllegalArgumentException("Learning rate must be positive, got: " + learningRate);
+        }
+
+        this.learningRate = learningRate;
+        iteration = 1;
+    }
+
+    public static LearningSchedule create(Type type, float learningRate) {
+        switch (type) {
+            case INVERSE_TIME:
+                return new InverseTimeSchedule(learningRate);
+            case CONSTANT:
+                return new ConstantSchedule(learningRate,
+                        Config.getFloat(SGDReasoner.LEARNING_RATE_DECAY_KEY, SGDReasoner.LEARNING_RATE_DECAY_DEFAULT));
+            case ADAGRAD:
+                return new AdaGradSchedule(learningRate,
+                        Config.getFloat(SGDReasoner.ADAPTIVE_EPSILON_KEY, SGDReasoner.ADAPTIVE_EPSILON_DEFAULT));
+            case ADAM:
+                return new AdamSchedule(learningRate,
+                        Config.getFloat(SGDReasoner.ADAPTIVE_EPSILON_KEY, SGDReasoner.ADAPTIVE_EPSILON_DEFAULT),
+                        Config.getFloat(SGDReasoner.ADAM_BETA1_KEY, SGDReasoner.ADAM_BETA1_DEFAULT),
+                        Config.getFloat(SGDReasoner.ADAM_BETA2_KEY, SGDReasoner.ADAM_BETA2_DEFAULT));
+            default:
+                throw new IllegalStateException("Unknown learning schedule: " + type);
+        }
+    }
+
+    /**
+     * Get ready for a round of optimization over variables indexed in [0, numVariables).
+     * Any per-variable state is reset.
+     */
+    public void init(int numVariables) {
+        iteration = 1;
+    }
+
+    /**
+     * Called before every pass over the terms (iterations start at 1).
+     */
+    public void startIteration(int iteration) {
+        this.iteration = iteration;
+    }
+
+    /**
+     * Get the amount to subtract from a variable given its gradient.
+     */
+    public abstract float getStep(int variableIndex, float gradient);
+
+    private static class InverseTimeSchedule extends LearningSchedule {
+        private float rate;
+
+        public InverseTimeSchedule(float learningRate) {
+            super(learningRate);
+            rate = learningRate;
+        }
+
+        @Override
+        public void startIteration(int iteration) {
+            super.startIteration(iteration);
+            rate = learningRate / iteration;
+        }
+
+        @Override
+        public float getStep(int variableIndex, float gradient) {
+            return rate * gradient;
+        }
+    }
+
+    private static class ConstantSchedule extends LearningSchedule {
+        private final float decay;
+        private float rate;
+
+        public ConstantSchedule(float learningRate, float decay) {
+            super(learningRate);
+
+            if (decay <= 0.0f || decay > 1.0f) {
+                throw new IllegalArgumentException("Learning rate decay must be in (0, 1], got: " + decay);
+            }
+
+            this.decay = decay;
+            rate = learningRate;
+        }
+
+        @Override
+        public void startIteration(int iteration) {
+            super.startIteration(iteration);
+            rate = learningRate * (float)Math.pow(decay, iteration - 1);
+        }
+
+        @Override
+        public float getStep(int variableIndex, float gradient) {
+            return rate * gradient;
+        }
+    }
+
+    private static class AdaGradSchedule extends LearningSchedule {
+        private final float epsilon;
+        private float[] squaredGradients;
+
+        public AdaGradSchedule(float learningRate, float epsilon) {
+            super(learningRate);
+            this.epsilon = epsilon;
+            squaredGradients = new float[0];
+        }
+
+        @Override
+        public void init(int numVariables) {
+            super.init(numVariables);
+            squaredGradients = new float[numVariables];
+        }
+
+        @Override
+        public float getStep(int variableIndex, float gradient) {
+            squaredGradients[variableIndex] += gradient * gradient;
+            return learningRate * gradient / ((float)Math.sqrt(squaredGradients[variableIndex]) + epsilon);
+        }
+    }
+
+    private static class AdamSchedule extends LearningSchedule {
+        private final float epsilon;
+        private final float beta1;
+        private final float beta2;
+
+        private float[] firstMoments;
+        private float[] secondMoments;
+
+        // The bias corrections for the current iteration.
+        private float firstCorrection;
+        private float secondCorrection;
+
+        public AdamSchedule(float learningRate, float epsilon, float beta1, float beta2) {
+            super(learningRate);
+
+            if (beta1 < 0.0f || beta1 >= 1.0f || beta2 < 0.0f || beta2 >= 1.0f) {
+                throw new IllegalArgumentException(String.format(
+                        "Adam betas must be in [0, 1), got: %f, %f.", beta1, beta2));
+            }
+
+            this.epsilon = epsilon;
+            this.beta1 = beta1;
+            this.beta2 = beta2;
+
+            firstMoments = new float[0];
+            secondMoments = new float[0];
+
+            startIteration(1);
+        }
+
+        @Override
+        public void init(int numVariables) {
+            super.init(numVariables);
+            firstMoments = new float[numVariables];
+            secondMoments = new float[numVariables];
+            startIteration(1);
+        }
+
+        @Override
+        public void startIteration(int iteration) {
+            super.startIteration(iteration);
+            firstCorrection = 1.0f - (float)Math.pow(beta1, iteration);
+            secondCorrection = 1.0f - (float)Math.pow(beta2, iteration);
+        }
+
+        @Override
+        public float getStep(int variableIndex, float gradient) {
+            float firstMoment = beta1 * firstMoments[variableIndex] + (1.0f - beta1) * gradient;
+            float secondMoment = beta2 * secondMoments[variableIndex] + (1.0f - beta2) * gradient * gradient;
+
+            firstMoments[variableIndex] = firstMoment;
+            secondMoments[variableIndex] = secondMoment;
+
+            return learningRate * (firstMoment / firstCorrection)
+                    / ((float)Math.sqrt(secondMoment / secondCorrection) + epsilon);
+        }
+    }
+}
@@ -21,15 +21,18 @@ import org.linqs.psl.config.Config;
 import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.reasoner.Reasoner;
 import org.linqs.psl.reasoner.sgd.term.SGDObjectiveTerm;
+import org.linqs.psl.reasoner.term.TermPass;
 import org.linqs.psl.reasoner.term.TermStore;
 import org.linqs.psl.reasoner.term.VariableTermStore;
-import org.linqs.psl.util.IteratorUtils;
+import org.linqs.psl.reasoner.term.streaming.StreamingTermStore;
 import org.linqs.psl.util.MathUtils;
+import org.linqs.psl.util.Parallel;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Uses an SGD optimization method to optimize its GroundRules.
@@ -60,10 +63,60 @@ public class SGDReasoner implements Reasoner {
     public static final String OBJ_TOL_KEY = CONFIG_PREFIX + ".tolerance";
     public static final float OBJ_TOL_DEFAULT = 0.00001f;
 
+    /**
+     * SGD cannot handle hard constraints directly.
+     * Instead, each hard constraint becomes a squared penalty with this weight:
+     * a squared hinge for inequalities, and a squared linear loss for equalities.
+     * Higher values enforce the constraints more strictly, but may make optimization less stable.
+     */
+    public static final String CONSTRAINT_WEIGHT_KEY = CONFIG_PREFIX + ".constraintweight";
+    public static final float CONSTRAINT_WEIGHT_DEFAULT = 100.0f;
 
+    /**
+     * The base learning rate, see LEARNING_SCHEDULE_KEY for how it is used.
+     */
     public static final String LEARNING_RATE_KEY = CONFIG_PREFIX + ".learningrate";
     public static final float LEARNING_RATE_DEFAULT = 1.0f;
 
+    /**
+     * How the step size for each variable is chosen.
+     * Values should come from the LearningSchedule.Type enum.
+     */
+    public static final String LEARNING_SCHEDULE_KEY = CONFIG_PREFIX + ".learningschedule";
+    public static final String LEARNING_SCHEDULE_DEFAULT = LearningSchedule.Type.INVERSE_TIME.toString();
+
+    /**
+     * The decay (per iteration) of the learning rate for the CONSTANT learning schedule.
+     * 1.0 means no decay.
+     */
+    public static final String LEARNING_RATE_DECAY_KEY = CONFIG_PREFIX + ".learningratedecay";
+    public static final float LEARNING_RATE_DECAY_DEFAULT = 1.0f;
+
+    /**
+     * Added to the denominator of the ADAGRAD and ADAM step sizes to avoid dividing by zero.
+     */
+    public static final String ADAPTIVE_EPSILON_KEY = CONFIG_PREFIX + ".adaptiveepsilon";
+    public static final float ADAPTIVE_EPSILON_DEFAULT = 1e-8f;
+
+    /**
+     * The decay rate of the first moment estimates for the ADAM learning schedule.
+     */
+    public static final String ADAM_BETA1_KEY = CONFIG_PREFIX + ".adambeta1";
+    public static final float ADAM_BETA1_DEFAULT = 0.9f;
+
+    /**
+     * The decay rate of the second moment estimates for the ADAM learning schedule.
+     */
+    public static final String ADAM_BETA2_KEY = CONFIG_PREFIX + ".adambeta2";
+    public static final float ADAM_BETA2_DEFAULT = 0.999f;
+
+    /**
+     * The number of terms whose gradients are summed before taking a step.
+     * 1 means that a step is taken for every term.
+     */
+    public static final String MINI_BATCH_SIZE_KEY = CONFIG_PREFIX + ".minibatchsize";
+    public static final int MINI_BATCH_SIZE_DEFAULT = 1;
+
     public static final String PRINT_OBJECTIVE = CONFIG_PREFIX + ".printobj";
     public static final boolean PRINT_OBJECTIVE_DEFAULT = true;
 
@@ -76,12 +129,45 @@ public class SGDReasoner implements Reasoner {
     public static final String PRINT_INITIAL_OBJECTIVE_KEY = CONFIG_PREFIX + ".printinitialobj";
     public static final boolean PRINT_INITIAL_OBJECTIVE_DEFAULT = false;
 
+    /**
+     * When the terms are in memory, minimize (and evaluate) them on all threads.
+     * Each thread takes blocks of terms (in a random order each iteration)
+     * and updates the shared variable values without any locking (Hogwild style).
+     */
+    public static final String PARALLEL_KEY = CONFIG_PREFIX + ".parallel";
+    public static final boolean PARALLEL_DEFAULT = false;
+
+    /**
+     * Check the objective (and log it) once every this many iterations.
+     * When OBJECTIVE_BREAK_KEY is on, this is also how often convergence is checked.
+     */
+    public static final String COMPUTE_PERIOD_KEY = CONFIG_PREFIX + ".computeperiod";
+    public static final int COMPUTE_PERIOD_DEFAULT = 1;
+
+    /**
+     * Compute the objective with a separate pass over the terms after minimization.
+     * Otherwise, each term is evaluated (at the values before it is minimized) during the minimization pass.
+     * This is a slightly lagged estimate of the objective, but does not require another pass over the terms
+     * (which is an extra pass over all the pages for streaming term stores).
+     */
+    public static final String EXACT_OBJECTIVE_KEY = CONFIG_PREFIX + ".exactobjective";
+    public static final boolean EXACT_OBJECTIVE_DEFAULT = false;
+
     private int maxIter;
 
     private float tolerance;
     private boolean printObj;
     private boolean printInitialObj;
     private boolean objectiveBreak;
+    private boolean parallel;
+    private int computePeriod;
+    private boolean exactObjective;
+
+    private LearningSchedule schedule;
+    private int miniBatchSize;
+
+    // One per thread, null if not using mini-batches.
+    private List<GradientBatch> batches;
 
     public SGDReasoner() {
         maxIter = Config.getInt(MAX_ITER_KEY, MAX_ITER_DEFAULT);
@@ -89,6 +175,24 @@ public class SGDReasoner implements Reasoner {
         printObj = Config.getBoolean(PRINT_OBJECTIVE, PRINT_OBJECTIVE_DEFAULT);
         printInitialObj = Config.getBoolean(PRINT_INITIAL_OBJECTIVE_KEY, PRINT_INITIAL_OBJECTIVE_DEFAULT);
         tolerance = Config.getFloat(OBJ_TOL_KEY, OBJ_TOL_DEFAULT);
+        parallel = Config.getBoolean(PARALLEL_KEY, PARALLEL_DEFAULT);
+        exactObjective = Config.getBoolean(EXACT_OBJECTIVE_KEY, EXACT_OBJECTIVE_DEFAULT);
+
+        computePeriod = Config.getInt(COMPUTE_PERIOD_KEY, COMPUTE_PERIOD_DEFAULT);
+        if (computePeriod < 1) {
+            throw new IllegalArgumentException("Compute period must be positive, got: " + computePeriod);
+        }
+
+        schedule = LearningSchedule.create(
+                LearningSchedule.Type.valueOf(Config.getString(LEARNING_SCHEDULE_KEY, LEARNING_SCHEDULE_DEFAULT).toUpperCase()),
+                Config.getFloat(LEARNING_RATE_KEY, LEARNING_RATE_DEFAULT));
+
+        miniBatchSize = Config.getInt(MINI_BATCH_SIZE_KEY, MINI_BATCH_SIZE_DEFAULT);
+        if (miniBatchSize < 1) {
+            throw new IllegalArgumentException("Mini-batch size must be positive, got: " + miniBatchSize);
+        }
+
+        batches = null;
     }
 
     public int getMaxIter() {
@@ -112,6 +216,16 @@ public class SGDReasoner implements Reasoner {
         // A reallocation can cause this array to become out-of-date.
         float[] variableValues = termStore.getVariableValues();
 
+        schedule.init(variableValues.length);
+
+        batches = null;
+        if (miniBatchSize > 1) {
+            batches = new ArrayList<GradientBatch>(Parallel.getNumThreads());
+            for (int i = 0; i < Parallel.getNumThreads(); i++) {
+                batches.add(new GradientBatch(variableValues.length, miniBatchSize));
+            }
+        }
+
         float objective = -1.0f;
         float oldObjective = Float.POSITIVE_INFINITY;
 
@@ -130,41 +244,113 @@ public class SGDReasoner implements Reasoner {
                 && (!objectiveBreak || (iteration == 1 || !MathUtils.equals(objective, oldObjective, tolerance)))) {
             long start = System.currentTimeMillis();
 
-            for (SGDObjectiveTerm term : termStore) {
-                term.minimize(iteration, variableValues);
-            }
+            // Always check on the last iteration so the final objective is recent.
+            boolean checkObjective = (iteration % computePeriod == 0) || (iteration == maxIter);
+
+            schedule.startIteration(iteration);
+            float passObjective = minimize(termStore, variableValues, checkObjective && !exactObjective);
 
             long end = System.currentTimeMillis();
-            oldObjective = objective;
-            objective = computeObjective(termStore, variableValues);
             time += end - start;
 
-            if (printObj) {
-                log.info("objective:{},{},{}", iteration, time, objective);
+            if (checkObjective) {
+                oldObjective = objective;
+                if (exactObjective) {
+                    objective = computeObjective(termStore, variableValues);
+                } else {
+                    objective = passObjective / termStore.size();
+                }
+
+                if (printObj) {
+                    log.info("objective:{},{},{}", iteration, time, objective);
+                }
             }
 
             iteration++;
         }
 
         termStore.syncAtoms();
+        batches = null;
 
         log.info("Optimization completed in {} iterations. Objective.: {}", iteration - 1, objective);
         log.debug("Optimized with {} variables and {} terms.", termStore.getNumVariables(), termStore.size());
     }
 
-    public float computeObjective(VariableTermStore<SGDObjectiveTerm, RandomVariableAtom> termStore, float[] variableValues) {
+    /**
+     * Make a pass over the terms, minimizing each one.
+     * @return if |evaluate|, the (unnormalized) objective with each term evaluated just before it was minimized.
+     */
+    private float minimize(VariableTermStore<SGDObjectiveTerm, RandomVariableAtom> termStore,
+            final float[] variableValues, final boolean evaluate) {
+        final float[] threadObjectives = new float[Parallel.getNumThreads()];
+
+        // Terms are minimized without any locking on the variables.
+        TermPass.forEach(termStore, parallel, false, new StreamingTermStore.TermVisitor<SGDObjectiveTerm>() {
+            @Override
+            public void visit(int threadId, SGDObjectiveTerm term) {
+                if (evaluate) {
+                    threadObjectives[threadId] += term.evaluate(variableValues);
+                }
+
+                minimizeTerm(term, variableValues, getBatch(threadId));
+            }
+        });
+
+        // Any partial batches can be applied once all the threads are done.
+        for (int i = 0; i < Parallel.getNumThreads(); i++) {
+            flushBatch(getBatch(i), variableValues);
+        }
+
         float objective = 0.0f;
+        for (float threadObjective : threadObjectives) {
+            objective += threadObjective;
+        }
 
-        // If possible, use a readonly iterator.
-        Iterator<SGDObjectiveTerm> termIterator = null;
-        if (termStore.isLoaded()) {
-            termIterator = termStore.noWriteIterator();
-        } else {
-            termIterator = termStore.iterator();
+        return objective;
+    }
+
+    /**
+     * Either take a step for the term right away, or add it to the batch (and step if the batch is full).
+     */
+    private void minimizeTerm(SGDObjectiveTerm term, float[] variableValues, GradientBatch batch) {
+        if (batch == null) {
+            term.minimize(variableValues, schedule);
+            return;
+        }
+
+        term.addGradient(variableValues, batch);
+        if (batch.termAdded()) {
+            batch.apply(variableValues, schedule);
         }
+    }
+
+    private void flushBatch(GradientBatch batch, float[] variableValues) {
+        if (batch != null) {
+            batch.apply(variableValues, schedule);
+        }
+    }
 
-        for (SGDObjectiveTerm term : IteratorUtils.newIterable(termIterator)) {
-            objective += term.evaluate(variableValues);
+    private GradientBatch getBatch(int threadId) {
+        if (batches == null) {
+            return null;
+        }
+
+        return batches.get(threadId);
+    }
+
+    public float computeObjective(VariableTermStore<SGDObjectiveTerm, RandomVariableAtom> termStore, final float[] variableValues) {
+        final float[] threadObjectives = new float[Parallel.getNumThreads()];
+
+        TermPass.forEach(termStore, parallel, true, new StreamingTermStore.TermVisitor<SGDObjectiveTerm>() {
+            @Override
+            public void visit(int threadId, SGDObjectiveTerm term) {
+                threadObjectives[threadId] += term.evaluate(variableValues);
+            }
+        });
+
+        float objective = 0.0f;
+        for (float threadObjective : threadObjectives) {
+            objective += threadObjective;
         }
 
         return objective / termStore.size();
@@ -18,9 +18,12 @@
 package org.linqs.psl.reasoner.sgd.term;
 
 import org.linqs.psl.model.atom.RandomVariableAtom;
+import org.linqs.psl.reasoner.sgd.GradientBatch;
+import org.linqs.psl.reasoner.sgd.LearningSchedule;
 import org.linqs.psl.reasoner.term.Hyperplane;
 import org.linqs.psl.reasoner.term.ReasonerTerm;
 import org.linqs.psl.reasoner.term.VariableTermStore;
+import org.linqs.psl.reasoner.term.streaming.TermPageCodec;
 
 import java.nio.ByteBuffer;
 import java.util.Map;
@@ -34,21 +37,28 @@ public class SGDObjectiveTerm implements ReasonerTerm  {
 
     private float weight;
     private float constant;
-    private float learningRate;
 
     private short size;
     private float[] coefficients;
     private int[] variableIndexes;
 
+    /**
+     * Construct a blank term that will be filled with read().
+     */
+    public SGDObjectiveTerm() {
+        size = 0;
+        coefficients = new float[0];
+        variableIndexes = new int[0];
+    }
+
     public SGDObjectiveTerm(VariableTermStore<SGDObjectiveTerm, RandomVariableAtom> termStore,
             boolean squared, boolean hinge,
             Hyperplane<RandomVariableAtom> hyperplane,
-            float weight, float learningRate) {
+            float weight) {
         this.squared = squared;
         this.hinge = hinge;
 
         this.weight = weight;
-        this.learningRate = learningRate;
 
         size = (short)hyperplane.size();
         coefficients = hyperplane.getCoefficients();
@@ -84,16 +94,37 @@ public class SGDObjectiveTerm implements ReasonerTerm  {
         }
     }
 
-    public void minimize(int iteration, float[] variableValues) {
+    /**
+     * Take a step for each variable in this term (one at a time).
+     * Instead of recomputing the dot product after every step, it is updated with the change in each variable.
+     */
+    public void minimize(float[] variableValues, LearningSchedule schedule) {
+        float dot = dot(variableValues);
+
         for (int i = 0 ; i < size; i++) {
-            float dot = dot(variableValues);
-            float gradient = computeGradient(iteration, i, dot) * (learningRate / iteration);
+            int variableIndex = variableIndexes[i];
+            float oldValue = variableValues[variableIndex];
+
+            float step = schedule.getStep(variableIndex, computeGradient(i, dot));
+            float newValue = Math.max(0.0f, Math.min(1.0f, oldValue - step));
 
-            variableValues[variableIndexes[i]] = Math.max(0.0f, Math.min(1.0f, variableValues[variableIndexes[i]] - gradient));
+            variableValues[variableIndex] = newValue;
+            dot += coefficients[i] * (newValue - oldValue);
         }
     }
 
-    private float computeGradient(int iteration, int varId, float dot) {
+    /**
+     * Add this term's gradient (at the current variable values) for each of its variables to a batch.
+     */
+    public void addGradient(float[] variableValues, GradientBatch batch) {
+        float dot = dot(variableValues);
+
+        for (int i = 0 ; i < size; i++) {
+            batch.add(variableIndexes[i], computeGradient(i, dot));
+        }
+    }
+
+    private float computeGradient(int varId, float dot) {
         if (hinge && dot <= 0.0f) {
             return 0.0f;
         }
@@ -125,7 +156,6 @@ public class SGDObjectiveTerm implements ReasonerTerm  {
             + Byte.SIZE  // hinge
             + Float.SIZE  // weight
             + Float.SIZE  // constant
-            + Float.SIZE  // learningRate
             + Short.SIZE  // size
             + size * (Float.SIZE + Integer.SIZE);  // coefficients + variableIndexes
 
@@ -141,7 +171,6 @@ public class SGDObjectiveTerm implements ReasonerTerm  {
         fixedBuffer.put((byte)(hinge ? 1 : 0));
         fixedBuffer.putFloat(weight);
         fixedBuffer.putFloat(constant);
-        fixedBuffer.putFloat(learningRate);
         fixedBuffer.putShort(size);
 
         for (int i = 0; i < size; i++) {
@@ -150,6 +179,60 @@ public class SGDObjectiveTerm implements ReasonerTerm  {
         }
     }
 
+    /**
+     * An upper bound on the number of bytes that writeCompactValues() will need to represent this term.
+     */
+    public int compactByteSizeBound() {
+        return 1  // flags
+            + 2 * TermPageCodec.MAX_FLOAT_SIZE  // weight, constant
+            + TermPageCodec.MAX_INT_SIZE  // size
+            + size * (TermPageCodec.MAX_FLOAT_SIZE + TermPageCodec.MAX_INT_SIZE);  // coefficients + variableIndexes
+    }
+
+    /**
+     * Write a compact representation of the fixed values of this term to a buffer.
+     * The flags are packed into a single byte, floats are dictionary coded by the page's codec,
+     * and variable indexes are written as the (variable length) difference from the previous index.
+     */
+    public void writeCompactValues(ByteBuffer fixedBuffer, TermPageCodec codec) {
+        fixedBuffer.put((byte)((squared ? 0x1 : 0) | (hinge ? 0x2 : 0)));
+        codec.putFloat(fixedBuffer, weight);
+        codec.putFloat(fixedBuffer, constant);
+        TermPageCodec.putInt(fixedBuffer, size);
+
+        int previousIndex = 0;
+        for (int i = 0; i < size; i++) {
+            codec.putFloat(fixedBuffer, coefficients[i]);
+            TermPageCodec.putSignedInt(fixedBuffer, variableIndexes[i] - previousIndex);
+            previousIndex = variableIndexes[i];
+        }
+    }
+
+    /**
+     * Same as read(), but for terms written with writeCompactValues().
+     */
+    public void readCompact(ByteBuffer fixedBuffer, ByteBuffer volatileBuffer, TermPageCodec codec) {
+        byte flags = fixedBuffer.get();
+        squared = ((flags & 0x1) != 0);
+        hinge = ((flags & 0x2) != 0);
+        weight = codec.getFloat(fixedBuffer);
+        constant = codec.getFloat(fixedBuffer);
+        size = (short)TermPageCodec.getInt(fixedBuffer);
+
+        // Make sure that there is enough room for all these variables.
+        if (coefficients.length < size) {
+            coefficients = new float[size];
+            variableIndexes = new int[size];
+        }
+
+        int previousIndex = 0;
+        for (int i = 0; i < size; i++) {
+            coefficients[i] = codec.getFloat(fixedBuffer);
+            variableIndexes[i] = previousIndex + TermPageCodec.getSignedInt(fixedBuffer);
+            previousIndex = variableIndexes[i];
+        }
+    }
+
     /**
      * Assume the term that will be next read from the buffers.
      */
@@ -158,7 +241,6 @@ public class SGDObjectiveTerm implements ReasonerTerm  {
         hinge = (fixedBuffer.get() == 1);
         weight = fixedBuffer.getFloat();
         constant = fixedBuffer.getFloat();
-        learningRate = fixedBuffer.getFloat();
         size = fixedBuffer.getShort();
 
         // Make sure that there is enough room for all these variables.
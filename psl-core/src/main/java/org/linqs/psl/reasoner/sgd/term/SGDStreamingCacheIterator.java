@@ -19,13 +19,11 @@ package org.linqs.psl.reasoner.sgd.term;
 
 import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.reasoner.term.streaming.StreamingCacheIterator;
-import org.linqs.psl.util.RuntimeStats;
 
-import java.io.FileInputStream;
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SGDStreamingCacheIterator extends StreamingCacheIterator<SGDObjectiveTerm> {
     public SGDStreamingCacheIterator(
@@ -38,40 +36,40 @@ public class SGDStreamingCacheIterator extends StreamingCacheIterator<SGDObjecti
                 volatileBuffer, shufflePage, shuffleMap, randomizePageAccess, numPages);
     }
 
-    @Override
-    protected void readPage(String termPagePath, String volatilePagePath) {
-        int termsSize = 0;
-        int numTerms = 0;
-        int headerSize = (Integer.SIZE / 8) * 2;
-
-        try (FileInputStream termStream = new FileInputStream(termPagePath)) {
-            // First read the term size information.
-            termStream.read(termBuffer.array(), 0, headerSize);
-
-            termsSize = termBuffer.getInt();
-            numTerms = termBuffer.getInt();
-
-            // Now read in all the terms.
-            termStream.read(termBuffer.array(), headerSize, termsSize);
-        } catch (IOException ex) {
-            throw new RuntimeException(String.format("Unable to read cache page: [%s].", termPagePath), ex);
-        }
+    public SGDStreamingCacheIterator(
+            SGDStreamingTermStore parentStore, boolean readonly,
+            List<SGDObjectiveTerm> termCache, List<SGDObjectiveTerm> termPool,
+            ByteBuffer termBuffer, ByteBuffer volatileBuffer,
+            boolean shufflePage, int[] shuffleMap,
+            List<Integer> pageAccessOrder, AtomicInteger nextPage) {
+        super(parentStore, readonly, termCache, termPool, termBuffer,
+                volatileBuffer, shufflePage, shuffleMap, pageAccessOrder, nextPage);
+    }
 
-        // Log io.
-        RuntimeStats.logDiskRead(headerSize + termsSize);
+    @Override
+    protected int getVolatileByteSize(int pageIndex, int numTerms) {
+        // SGD doesn't have volatile values.
+        return 0;
+    }
 
+    @Override
+    protected void readTerms(int numTerms, ByteBuffer termBuffer, ByteBuffer volatileBuffer) {
         // Convert all the terms from binary to objects.
         // Use the terms from the pool.
 
         for (int i = 0; i < numTerms; i++) {
             SGDObjectiveTerm term = termPool.get(i);
-            term.read(termBuffer, volatileBuffer);
+            if (pageCodec != null) {
+                term.readCompact(termBuffer, volatileBuffer, pageCodec);
+            } else {
+                term.read(termBuffer, volatileBuffer);
+            }
             termCache.add(term);
         }
     }
 
     @Override
-    protected void writeVolatilePage(String volatilePagePath) {
-        // SGD doesn't need write pages.
+    protected void writeVolatileValues(ByteBuffer volatileBuffer) {
+        // SGD doesn't have volatile values.
     }
 }
@@ -19,13 +19,10 @@ package org.linqs.psl.reasoner.sgd.term;
 
 import org.linqs.psl.database.atom.AtomManager;
 import org.linqs.psl.model.atom.RandomVariableAtom;
-import org.linqs.psl.model.rule.WeightedRule;
+import org.linqs.psl.model.rule.Rule;
 import org.linqs.psl.reasoner.term.HyperplaneTermGenerator;
 import org.linqs.psl.reasoner.term.streaming.StreamingInitialRoundIterator;
-import org.linqs.psl.util.RuntimeStats;
 
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
 
@@ -36,7 +33,7 @@ import java.util.List;
  */
 public class SGDStreamingInitialRoundIterator extends StreamingInitialRoundIterator<SGDObjectiveTerm> {
     public SGDStreamingInitialRoundIterator(
-            SGDStreamingTermStore parentStore, List<WeightedRule> rules,
+            SGDStreamingTermStore parentStore, List<Rule> rules,
             AtomManager atomManager, HyperplaneTermGenerator<SGDObjectiveTerm, RandomVariableAtom> termGenerator,
             List<SGDObjectiveTerm> termCache, List<SGDObjectiveTerm> termPool,
             ByteBuffer termBuffer, ByteBuffer volatileBuffer,
@@ -57,36 +54,24 @@ public class SGDStreamingInitialRoundIterator extends StreamingInitialRoundItera
     }
 
     private void flushTermCache(String termPagePath) {
-        // Count the exact size we will need to write.
+        boolean compact = parentStore.isCompactPages();
+
+        // Count the size we will need to write (only an upper bound for compact pages).
         int termsSize = 0;
         for (SGDObjectiveTerm term : termCache) {
-            termsSize += term.fixedByteSize();
-        }
-
-        // Allocate an extra two ints for the number of terms and size of terms in that page.
-        int termBufferSize = termsSize + (Integer.SIZE / 8) * 2;
-
-        if (termBuffer == null || termBuffer.capacity() < termBufferSize) {
-            termBuffer = ByteBuffer.allocate((int)(termBufferSize * OVERALLOCATION_RATIO));
+            termsSize += compact ? term.compactByteSizeBound() : term.fixedByteSize();
         }
-        termBuffer.clear();
 
-        // First put the size of the terms and number of terms.
-        termBuffer.putInt(termsSize);
-        termBuffer.putInt(termCache.size());
+        prepareTermBuffer(termsSize);
 
-        // Now put in all the terms.
         for (SGDObjectiveTerm term : termCache) {
-            term.writeFixedValues(termBuffer);
-        }
-
-        try (FileOutputStream stream = new FileOutputStream(termPagePath)) {
-            stream.write(termBuffer.array(), 0, termBufferSize);
-        } catch (IOException ex) {
-            throw new RuntimeException("Unable to write term cache page: " + termPagePath, ex);
+            if (compact) {
+                term.writeCompactValues(termBuffer, pageCodec);
+            } else {
+                term.writeFixedValues(termBuffer);
+            }
         }
 
-        // Log io.
-        RuntimeStats.logDiskWrite(termBufferSize);
+        writeTermPage(termPagePath, termCache.size());
     }
 }
@@ -26,9 +26,11 @@ import org.linqs.psl.model.rule.logical.WeightedLogicalRule;
 import org.linqs.psl.reasoner.term.streaming.StreamingIterator;
 import org.linqs.psl.reasoner.term.streaming.StreamingTermStore;
 
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A term store that iterates over ground queries directly (obviating the GroundRuleStore).
@@ -67,4 +69,18 @@ public class SGDStreamingTermStore extends StreamingTermStore<SGDObjectiveTerm>
                 this, true, termCache, termPool,
                 termBuffer, volatileBuffer, shufflePage, shuffleMap, randomizePageAccess, numPages);
     }
+
+    @Override
+    protected SGDObjectiveTerm createEmptyTerm() {
+        return new SGDObjectiveTerm();
+    }
+
+    @Override
+    protected StreamingIterator<SGDObjectiveTerm> getPageIterator(boolean readonly,
+            List<SGDObjectiveTerm> termCache, List<SGDObjectiveTerm> termPool, ByteBuffer termBuffer, ByteBuffer volatileBuffer,
+            int[] shuffleMap, List<Integer> pageAccessOrder, AtomicInteger nextPage) {
+        return new SGDStreamingCacheIterator(
+                this, readonly, termCache, termPool,
+                termBuffer, volatileBuffer, shufflePage, shuffleMap, pageAccessOrder, nextPage);
+    }
 }
@@ -37,10 +37,10 @@ import org.slf4j.LoggerFactory;
 public class SGDTermGenerator extends HyperplaneTermGenerator<SGDObjectiveTerm, RandomVariableAtom> {
     private static final Logger log = LoggerFactory.getLogger(SGDTermGenerator.class);
 
-    private float learningRate;
+    private float constraintWeight;
 
     public SGDTermGenerator() {
-        learningRate = Config.getFloat(SGDReasoner.LEARNING_RATE_KEY, SGDReasoner.LEARNING_RATE_DEFAULT);
+        constraintWeight = Config.getFloat(SGDReasoner.CONSTRAINT_WEIGHT_KEY, SGDReasoner.CONSTRAINT_WEIGHT_DEFAULT);
     }
 
     @Override
@@ -53,13 +53,25 @@ public class SGDTermGenerator extends HyperplaneTermGenerator<SGDObjectiveTerm,
             boolean isHinge, boolean isSquared, GroundRule groundRule, Hyperplane<RandomVariableAtom> hyperplane) {
         VariableTermStore<SGDObjectiveTerm, RandomVariableAtom> termStore = (VariableTermStore<SGDObjectiveTerm, RandomVariableAtom>)baseTermStore;
         float weight = (float)((WeightedGroundRule)groundRule).getWeight();
-        return new SGDObjectiveTerm(termStore, isSquared, isHinge, hyperplane, weight, learningRate);
+        return new SGDObjectiveTerm(termStore, isSquared, isHinge, hyperplane, weight);
     }
 
+    /**
+     * Hard constraints are turned into squared penalties (see SGDReasoner.CONSTRAINT_WEIGHT_KEY).
+     */
     @Override
-    public SGDObjectiveTerm createLinearConstraintTerm(TermStore<SGDObjectiveTerm, RandomVariableAtom> termStore,
+    public SGDObjectiveTerm createLinearConstraintTerm(TermStore<SGDObjectiveTerm, RandomVariableAtom> baseTermStore,
             GroundRule groundRule, Hyperplane<RandomVariableAtom> hyperplane, FunctionComparator comparator) {
-        log.warn("SGD does not support hard constraints, i.e. " + groundRule);
-        return null;
+        VariableTermStore<SGDObjectiveTerm, RandomVariableAtom> termStore = (VariableTermStore<SGDObjectiveTerm, RandomVariableAtom>)baseTermStore;
+
+        if (comparator.equals(FunctionComparator.EQ)) {
+            return new SGDObjectiveTerm(termStore, true, false, hyperplane, constraintWeight);
+        }
+
+        if (comparator.equals(FunctionComparator.GTE)) {
+            hyperplane.negate();
+        }
+
+        return new SGDObjectiveTerm(termStore, true, true, hyperplane, constraintWeight);
     }
 }
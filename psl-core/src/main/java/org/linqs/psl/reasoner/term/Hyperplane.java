@@ -20,6 +20,7 @@ package org.linqs.psl.reasoner.term;
 import org.linqs.psl.util.ArrayUtils;
 
 import java.lang.reflect.Array;
+import java.util.Arrays;
 
 /**
  * Information representing a raw hyperplane.
@@ -84,6 +85,28 @@ public class Hyperplane<E extends ReasonerLocalVariable> {
         this.constant = constant;
     }
 
+    /**
+     * Flip the sides of the hyperplane (negate all the coefficients and the constant).
+     * This turns coefficients^T * x >= constant into -coefficients^T * x <= -constant.
+     */
+    public void negate() {
+        for (int i = 0; i < size; i++) {
+            coefficients[i] = -coefficients[i];
+        }
+
+        constant = -constant;
+    }
+
+    /**
+     * Make a copy of this hyperplane that does not share any arrays with it
+     * (the variables themselves are not copied).
+     * Terms may hold onto the arrays of the hyperplane they were built from,
+     * so use a copy when more than one term is built from the same hyperplane.
+     */
+    public Hyperplane<E> copy() {
+        return new Hyperplane<E>(Arrays.copyOf(variables, size), Arrays.copyOf(coefficients, size), constant, size);
+    }
+
     public int indexOfVariable(E needle) {
         return ArrayUtils.indexOf(variables, size, needle);
     }
@@ -38,7 +38,10 @@ import org.linqs.psl.util.Parallel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -62,6 +65,13 @@ public abstract class HyperplaneTermGenerator<T extends ReasonerTerm, V extends
         invertNegativeWeight = Config.getBoolean(INVERT_NEGATIVE_WEIGHTS_KEY, INVERT_NEGATIVE_WEIGHTS_DEFAULT);
     }
 
+    /**
+     * Whether rules with negative weights are negated (true) or skipped (false).
+     */
+    public boolean getInvertNegativeWeights() {
+        return invertNegativeWeight;
+    }
+
     @Override
     public int generateTerms(GroundRuleStore ruleStore, final TermStore<T, V> termStore) {
         int initialSize = termStore.size();
@@ -80,63 +90,137 @@ public abstract class HyperplaneTermGenerator<T extends ReasonerTerm, V extends
             }
         }
 
+        // Each thread keeps its own terms and they are all added to the store once generation is done,
+        // so threads do not contend on the term store while generating.
+        final List<TermBuffer<T>> buffers = new ArrayList<TermBuffer<T>>(Parallel.getNumThreads());
+        for (int i = 0; i < Parallel.getNumThreads(); i++) {
+            buffers.add(new TermBuffer<T>());
+        }
+
         Parallel.foreach(ruleStore.getGroundRules(), new Parallel.Worker<GroundRule>() {
             @Override
             public void work(int index, GroundRule rule) {
-                boolean negativeWeight =
-                        rule instanceof WeightedGroundRule
-                        && ((WeightedGroundRule)rule).getWeight() < 0.0;
-
-                if (negativeWeight) {
-                    // Skip
-                    if (!invertNegativeWeight) {
-                        return;
-                    }
+                TermBuffer<T> buffer = buffers.get(id);
 
-                    // Negate (weight and expression) rules that have a negative weight.
-                    for (GroundRule negatedRule : rule.negate()) {
-                        T term = createTerm(negatedRule, termStore);
-                        if (term != null && term.size() > 0) {
-                            termStore.add(rule, term);
-                        }
-                    }
-                } else {
-                    T term = createTerm(rule, termStore);
-                    if (term != null && term.size() > 0) {
-                        termStore.add(rule, term);
-                    }
-                }
+                int numTerms = createTerms(rule, termStore, buffer.terms);
+                buffer.addRule(rule, numTerms);
             }
         });
 
+        for (TermBuffer<T> buffer : buffers) {
+            int termIndex = 0;
+            for (int i = 0; i < buffer.rules.size(); i++) {
+                GroundRule rule = buffer.rules.get(i);
+                for (int j = 0; j < buffer.termCounts[i]; j++) {
+                    termStore.add(rule, buffer.terms.get(termIndex));
+                    termIndex++;
+                }
+            }
+        }
+
         return termStore.size() - initialSize;
     }
 
+    @Override
+    public boolean updateWeights(List<WeightedRule> rules, double[] oldWeights, TermStore<T, V> termStore) {
+        List<WeightedRule> positiveRules = new ArrayList<WeightedRule>(rules.size());
+
+        for (int i = 0; i < rules.size(); i++) {
+            WeightedRule rule = rules.get(i);
+            boolean oldNegative = oldWeights[i] < 0.0;
+            boolean newNegative = rule.getWeight() < 0.0;
+
+            // Negative weight rules are either skipped or negated (which makes a copy of the rule with a fixed weight).
+            // Either way, a change into or out of a negative weight changes the structure of the terms.
+            if (oldNegative != newNegative) {
+                return false;
+            }
+
+            if (newNegative) {
+                // If the rule was skipped both times, then there is nothing to update.
+                // Negated copies hold a fixed weight, so those need to be regenerated.
+                if (invertNegativeWeight) {
+                    return false;
+                }
+
+                continue;
+            }
+
+            positiveRules.add(rule);
+        }
+
+        if (positiveRules.isEmpty()) {
+            return true;
+        }
+
+        return termStore.updateWeights(positiveRules);
+    }
+
+    /**
+     * Create all the (non-trivial) terms for a single ground rule and put them in |terms|.
+     * Rules with a negative weight are either skipped or negated (which can create several terms).
+     * Note that the terms will NOT be added to the term store.
+     * The store is just needed for creating variables.
+     * @return the number of terms put in |terms|.
+     */
+    public int createTerms(GroundRule rule, TermStore<T, V> termStore, List<T> terms) {
+        boolean negativeWeight =
+                rule instanceof WeightedGroundRule
+                && ((WeightedGroundRule)rule).getWeight() < 0.0;
+
+        if (!negativeWeight) {
+            return createRuleTerms(rule, termStore, terms);
+        }
+
+        // Skip
+        if (!invertNegativeWeight) {
+            return 0;
+        }
+
+        // Negate (weight and expression) rules that have a negative weight.
+        int count = 0;
+        for (GroundRule negatedRule : rule.negate()) {
+            count += createRuleTerms(negatedRule, termStore, terms);
+        }
+
+        return count;
+    }
+
+    protected int addTerm(T term, List<T> terms) {
+        if (term == null || term.size() == 0) {
+            return 0;
+        }
+
+        terms.add(term);
+        return 1;
+    }
+
     /**
-     * Create a ReasonerTerm from the ground rule.
-     * Note that the term will NOT be added to the term store.
+     * Create the ReasonerTerms for a (non-negated) ground rule and put them in |terms|.
+     * Note that the terms will NOT be added to the term store.
      * The store is just needed for creating variables.
+     * @return the number of terms put in |terms|.
      */
-    public T createTerm(GroundRule groundRule, TermStore<T, V> termStore) {
+    private int createRuleTerms(GroundRule groundRule, TermStore<T, V> termStore, List<T> terms) {
         if (groundRule instanceof WeightedGroundRule) {
             GeneralFunction function = ((WeightedGroundRule)groundRule).getFunctionDefinition();
             Hyperplane<V> hyperplane = processHyperplane(function, termStore);
             if (hyperplane == null) {
-                return null;
+                return 0;
             }
 
             // Non-negative functions have a hinge.
-            return createLossTerm(termStore, function.isNonNegative(), function.isSquared(), groundRule, hyperplane);
+            return addTerm(createLossTerm(termStore, function.isNonNegative(), function.isSquared(), groundRule, hyperplane), terms);
         } else if (groundRule instanceof UnweightedGroundRule) {
             ConstraintTerm constraint = ((UnweightedGroundRule)groundRule).getConstraintDefinition();
             GeneralFunction function = constraint.getFunction();
             Hyperplane<V> hyperplane = processHyperplane(function, termStore);
             if (hyperplane == null) {
-                return null;
+                return 0;
             }
 
             hyperplane.setConstant((float)(constraint.getValue() + hyperplane.getConstant()));
-            return createLinearConstraintTerm(termStore, groundRule, hyperplane, constraint.getComparator());
+            return createLinearConstraintTerms(termStore, groundRule, hyperplane, constraint.getComparator(), terms);
         } else {
             throw new IllegalArgumentException("Unsupported ground rule: " + groundRule);
         }
@@ -204,4 +288,44 @@ public abstract class HyperplaneTermGenerator<T extends ReasonerTerm, V extends
      * Create a hard constraint term,
      */
     public abstract T createLinearConstraintTerm(TermStore<T, V> termStore, GroundRule groundRule, Hyperplane<V> hyperplane, FunctionComparator comparator);
+
+    /**
+     * Create the terms for a hard constraint and put them in |terms|.
+     * By default, this is the single term from createLinearConstraintTerm().
+     * Generators that cannot represent a constraint with one term (e.g. an equality with hinges) can override this.
+     * @return the number of terms put in |terms|.
+     */
+    public int createLinearConstraintTerms(TermStore<T, V> termStore, GroundRule groundRule, Hyperplane<V> hyperplane,
+            FunctionComparator comparator, List<T> terms) {
+        return addTerm(createLinearConstraintTerm(termStore, groundRule, hyperplane, comparator), terms);
+    }
+
+    /**
+     * The terms (and the rules they came from) generated by a single thread.
+     * Each rule is stored once along with the number of (consecutive) terms it generated.
+     */
+    private static class TermBuffer<T> {
+        public final List<GroundRule> rules;
+        public final List<T> terms;
+        public int[] termCounts;
+
+        public TermBuffer() {
+            rules = new ArrayList<GroundRule>();
+            terms = new ArrayList<T>();
+            termCounts = new int[16];
+        }
+
+        public void addRule(GroundRule rule, int numTerms) {
+            if (numTerms == 0) {
+                return;
+            }
+
+            if (rules.size() == termCounts.length) {
+                termCounts = Arrays.copyOf(termCounts, termCounts.length * 2);
+            }
+
+            termCounts[rules.size()] = numTerms;
+            rules.add(rule);
+        }
+    }
 }
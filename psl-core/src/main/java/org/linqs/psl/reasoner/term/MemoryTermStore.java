@@ -20,10 +20,12 @@ package org.linqs.psl.reasoner.term;
 import org.linqs.psl.config.Config;
 import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.rule.GroundRule;
+import org.linqs.psl.model.rule.WeightedRule;
 import org.linqs.psl.util.RandUtils;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 public class MemoryTermStore<T extends ReasonerTerm> implements TermStore<T, RandomVariableAtom> {
     public static final String CONFIG_PREFIX = "memorytermstore";
@@ -94,6 +96,12 @@ public class MemoryTermStore<T extends ReasonerTerm> implements TermStore<T, Ran
         return iterator();
     }
 
+    @Override
+    public boolean updateWeights(List<WeightedRule> rules) {
+        // This store does not know how its terms use weights.
+        return false;
+    }
+
     @Override
     public RandomVariableAtom createLocalVariable(RandomVariableAtom atom) {
         return atom;
@@ -19,6 +19,7 @@ package org.linqs.psl.reasoner.term;
 
 import org.linqs.psl.config.Config;
 import org.linqs.psl.model.rule.GroundRule;
+import org.linqs.psl.model.rule.WeightedRule;
 import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.reasoner.term.MemoryTermStore;
 import org.linqs.psl.reasoner.term.VariableTermStore;
@@ -26,9 +27,8 @@ import org.linqs.psl.util.RandUtils;
 
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
 
 /**
  * A general TermStore that handles terms and variables all in memory.
@@ -56,7 +56,7 @@ public abstract class MemoryVariableTermStore<T extends ReasonerTerm, V extends
     private MemoryTermStore<T> store;
 
     // Keep track of variable indexes.
-    private Map<V, Integer> variables;
+    private VariableIndexMap<V> variables;
 
     // Matching arrays for variables values and atoms.
     private float[] variableValues;
@@ -75,7 +75,7 @@ public abstract class MemoryVariableTermStore<T extends ReasonerTerm, V extends
 
     @Override
     public int getVariableIndex(V variable) {
-        return variables.get(variable).intValue();
+        return variables.get(variable);
     }
 
     @Override
@@ -101,24 +101,29 @@ public abstract class MemoryVariableTermStore<T extends ReasonerTerm, V extends
     }
 
     @Override
-    public synchronized V createLocalVariable(RandomVariableAtom atom) {
+    public V createLocalVariable(RandomVariableAtom atom) {
         V variable = convertAtomToVariable(atom);
 
+        // Most variables appear in many terms, so first check (without locking) if this one is already known.
         if (variables.containsKey(variable)) {
             return variable;
         }
 
-        // Got a new variable.
+        synchronized (this) {
+            if (variables.containsKey(variable)) {
+                return variable;
+            }
 
-        if (variables.size() >= variableAtoms.length) {
-            ensureVariableCapacity(variables.size() * 2);
-        }
+            // Got a new variable.
 
-        int index = variables.size();
+            if (variables.size() >= variableAtoms.length) {
+                ensureVariableCapacity(variables.size() * 2);
+            }
 
-        variables.put(variable, index);
-        variableValues[index] = RandUtils.nextFloat();
-        variableAtoms[index] = atom;
+            int index = variables.add(variable);
+            variableValues[index] = RandUtils.nextFloat();
+            variableAtoms[index] = atom;
+        }
 
         return variable;
     }
@@ -134,8 +139,7 @@ public abstract class MemoryVariableTermStore<T extends ReasonerTerm, V extends
 
         if (variables == null || variables.size() == 0) {
             // If there are no variables, then (re-)allocate the variable storage.
-            // The default load factor for Java HashSets is 0.75.
-            variables = new HashMap<V, Integer>((int)Math.ceil(capacity / 0.75));
+            variables = new VariableIndexMap<V>(capacity);
 
             variableValues = new float[capacity];
             variableAtoms = new RandomVariableAtom[capacity];
@@ -145,10 +149,8 @@ public abstract class MemoryVariableTermStore<T extends ReasonerTerm, V extends
                 capacity = variables.size() * 2;
             }
 
-            // Reallocate and copy over variables.
-            Map<V, Integer> newVariables = new HashMap<V, Integer>((int)Math.ceil(capacity / 0.75));
-            newVariables.putAll(variables);
-            variables = newVariables;
+            // Reallocate variables.
+            variables.ensureCapacity(capacity);
 
             variableValues = Arrays.copyOf(variableValues, capacity);
             variableAtoms = Arrays.copyOf(variableAtoms, capacity);
@@ -157,7 +159,7 @@ public abstract class MemoryVariableTermStore<T extends ReasonerTerm, V extends
 
     @Override
     public Iterable<V> getVariables() {
-        return variables.keySet();
+        return variables;
     }
 
     @Override
@@ -217,5 +219,11 @@ public abstract class MemoryVariableTermStore<T extends ReasonerTerm, V extends
         return iterator();
     }
 
+    @Override
+    public boolean updateWeights(List<WeightedRule> rules) {
+        // Terms keep their own copy of the weight and do not remember what rule they came from.
+        return false;
+    }
+
     protected abstract V convertAtomToVariable(RandomVariableAtom atom);
 }
@@ -0,0 +1,145 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2019 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.term;
+
+import org.linqs.psl.grounding.GroundRuleStore;
+import org.linqs.psl.model.rule.GroundRule;
+import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.model.rule.UnweightedGroundRule;
+import org.linqs.psl.model.rule.WeightedGroundRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A GroundRuleStore that does not keep any ground rules.
+ * Instead, each ground rule is turned into terms (and added to the term store) as soon as it is added.
+ * This lets grounding feed the term store directly, so the ground rules and the terms are never all in memory together.
+ *
+ * addGroundRule() is thread-safe (as long as the term store's add() and createLocalVariable() are).
+ * Since no ground rules are kept, only size() and count() are supported out of the methods that look at the ground rules.
+ */
+public class TermGeneratingGroundRuleStore<T extends ReasonerTerm, V extends ReasonerLocalVariable> implements GroundRuleStore {
+    private HyperplaneTermGenerator<T, V> termGenerator;
+    private TermStore<T, V> termStore;
+
+    private AtomicInteger groundRuleCount;
+    private ConcurrentHashMap<Rule, AtomicInteger> ruleCounts;
+
+    public TermGeneratingGroundRuleStore(HyperplaneTermGenerator<T, V> termGenerator, TermStore<T, V> termStore) {
+        this.termGenerator = termGenerator;
+        this.termStore = termStore;
+
+        groundRuleCount = new AtomicInteger(0);
+        ruleCounts = new ConcurrentHashMap<Rule, AtomicInteger>();
+    }
+
+    @Override
+    public void addGroundRule(GroundRule groundRule) {
+        groundRuleCount.incrementAndGet();
+
+        Rule rule = groundRule.getRule();
+        AtomicInteger ruleCount = ruleCounts.get(rule);
+        if (ruleCount == null) {
+            AtomicInteger newCount = new AtomicInteger(0);
+            ruleCount = ruleCounts.putIfAbsent(rule, newCount);
+            if (ruleCount == null) {
+                ruleCount = newCount;
+            }
+        }
+
+        ruleCount.incrementAndGet();
+
+        List<T> terms = new ArrayList<T>(1);
+        termGenerator.createTerms(groundRule, termStore, terms);
+
+        for (T term : terms) {
+            termStore.add(groundRule, term);
+        }
+    }
+
+    /**
+     * The number of ground rules that have been added (and turned into terms).
+     */
+    @Override
+    public int size() {
+        return groundRuleCount.get();
+    }
+
+    @Override
+    public void close() {
+        termGenerator = null;
+        termStore = null;
+    }
+
+    @Override
+    public void removeGroundRule(GroundRule rule) {
+        throw notKept("removeGroundRule()");
+    }
+
+    @Override
+    public void removeGroundRules(Rule rule) {
+        throw notKept("removeGroundRules()");
+    }
+
+    @Override
+    public boolean containsGroundRule(GroundRule rule) {
+        throw notKept("containsGroundRule()");
+    }
+
+    @Override
+    public Iterable<GroundRule> getGroundRules() {
+        throw notKept("getGroundRules()");
+    }
+
+    @Override
+    public Iterable<WeightedGroundRule> getCompatibilityRules() {
+        throw notKept("getCompatibilityRules()");
+    }
+
+    @Override
+    public Iterable<UnweightedGroundRule> getConstraintRules() {
+        throw notKept("getConstraintRules()");
+    }
+
+    @Override
+    public Iterable<GroundRule> getGroundRules(Rule rule) {
+        throw notKept("getGroundRules(Rule)");
+    }
+
+    /**
+     * The number of ground rules that have been added (and turned into terms) for |rule|.
+     */
+    @Override
+    public int count(Rule rule) {
+        AtomicInteger count = ruleCounts.get(rule);
+        if (count == null) {
+            return 0;
+        }
+
+        return count.get();
+    }
+
+    private UnsupportedOperationException notKept(String method) {
+        return new UnsupportedOperationException(String.format(
+                "%s is not available when grounding directly into terms, since the ground rules are not kept (%s).",
+                method, getClass().getName()));
+    }
+}
@@ -18,6 +18,9 @@
 package org.linqs.psl.reasoner.term;
 
 import org.linqs.psl.grounding.GroundRuleStore;
+import org.linqs.psl.model.rule.WeightedRule;
+
+import java.util.List;
 
 public interface TermGenerator<T extends ReasonerTerm, V extends ReasonerLocalVariable> {
     /**
@@ -25,4 +28,13 @@ public interface TermGenerator<T extends ReasonerTerm, V extends ReasonerLocalVa
      * @return the number of terms added to the term store.
      */
     public int generateTerms(GroundRuleStore ruleStore, TermStore<T, V> termStore);
+
+    /**
+     * Update the terms in |termStore| to reflect a change in the weights of |rules|.
+     * The terms must have been generated by this generator when each rule had the weight at the same index in |oldWeights|.
+     * @return true if the terms were updated in place,
+     *  false if the structure of the terms changed (or the store cannot update in place)
+     *  and all the terms need to be regenerated.
+     */
+    public boolean updateWeights(List<WeightedRule> rules, double[] oldWeights, TermStore<T, V> termStore);
 }
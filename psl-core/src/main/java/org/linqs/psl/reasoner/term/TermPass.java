@@ -0,0 +1,145 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2019 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.term;
+
+import org.linqs.psl.reasoner.term.streaming.StreamingTermStore;
+import org.linqs.psl.util.IteratorUtils;
+import org.linqs.psl.util.Parallel;
+import org.linqs.psl.util.RandUtils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A single pass over all the terms of a VariableTermStore, on all threads if the store allows it.
+ *
+ * In-memory stores (when a parallel pass is requested) are split into contiguous blocks of terms.
+ * Threads claim blocks (in a random order each pass, unless the pass is read-only) until all blocks are done.
+ * Streaming stores that support it (see StreamingTermStore.isParallel()) have their pages processed in parallel.
+ * Anything else is visited sequentially (with a thread id of zero).
+ *
+ * Parallel visits are not synchronized in any way:
+ * visitors must either tolerate (Hogwild style) races on shared variable values or keep per-thread state.
+ * A term is only ever visited by one thread in a pass.
+ */
+public final class TermPass {
+    // How many blocks each thread should get (on average) in a parallel pass over in-memory terms.
+    private static final int BLOCKS_PER_THREAD = 16;
+
+    // Static only.
+    private TermPass() {}
+
+    /**
+     * Visit every term in the store.
+     * @param parallel allow in-memory stores to be visited in parallel.
+     * @param readonly the pass will not change the terms (so streaming stores can skip writing out pages).
+     */
+    public static <T extends ReasonerTerm> void forEach(VariableTermStore<T, ?> termStore, boolean parallel,
+            boolean readonly, StreamingTermStore.TermVisitor<T> visitor) {
+        if (parallel && termStore instanceof MemoryVariableTermStore) {
+            forEachBlock(termStore, readonly, visitor);
+            return;
+        }
+
+        StreamingTermStore<T> parallelStore = getParallelStore(termStore);
+        if (parallelStore != null) {
+            parallelStore.parallelForEach(readonly, visitor);
+            return;
+        }
+
+        // If possible, use a readonly iterator.
+        Iterator<T> termIterator = null;
+        if (readonly && termStore.isLoaded()) {
+            termIterator = termStore.noWriteIterator();
+        } else {
+            termIterator = termStore.iterator();
+        }
+
+        for (T term : IteratorUtils.newIterable(termIterator)) {
+            visitor.visit(0, term);
+        }
+    }
+
+    private static <T extends ReasonerTerm> void forEachBlock(VariableTermStore<T, ?> termStore,
+            boolean readonly, StreamingTermStore.TermVisitor<T> visitor) {
+        int blockSize = termStore.size() / (Parallel.getNumThreads() * BLOCKS_PER_THREAD) + 1;
+
+        List<Integer> blockOrder = new ArrayList<Integer>();
+        for (int i = 0; i < (termStore.size() + blockSize - 1) / blockSize; i++) {
+            blockOrder.add(i);
+        }
+
+        // Visit the blocks in a different order every pass.
+        if (!readonly) {
+            RandUtils.shuffle(blockOrder);
+        }
+
+        List<BlockWorker<T>> workers = new ArrayList<BlockWorker<T>>(Parallel.getNumThreads());
+        for (int i = 0; i < Parallel.getNumThreads(); i++) {
+            workers.add(new BlockWorker<T>(termStore, blockSize, blockOrder, visitor));
+        }
+
+        Parallel.count(blockOrder.size(), workers);
+    }
+
+    /**
+     * Get the term store as a StreamingTermStore if its pages can be processed in parallel right now.
+     * @return null if the terms need to be processed sequentially.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends ReasonerTerm> StreamingTermStore<T> getParallelStore(VariableTermStore<T, ?> termStore) {
+        if (!(termStore instanceof StreamingTermStore)) {
+            return null;
+        }
+
+        StreamingTermStore<T> streamingStore = (StreamingTermStore<T>)termStore;
+        if (!streamingStore.isParallel() || !streamingStore.isLoaded()) {
+            return null;
+        }
+
+        return streamingStore;
+    }
+
+    private static class BlockWorker<T extends ReasonerTerm> extends Parallel.Worker<Integer> {
+        private final VariableTermStore<T, ?> termStore;
+        private final int blockSize;
+        private final List<Integer> blockOrder;
+        private final StreamingTermStore.TermVisitor<T> visitor;
+
+        public BlockWorker(VariableTermStore<T, ?> termStore, int blockSize, List<Integer> blockOrder,
+                StreamingTermStore.TermVisitor<T> visitor) {
+            super();
+
+            this.termStore = termStore;
+            this.blockSize = blockSize;
+            this.blockOrder = blockOrder;
+            this.visitor = visitor;
+        }
+
+        @Override
+        public void work(int index, Integer ignore) {
+            int start = blockOrder.get(index).intValue() * blockSize;
+            int end = Math.min(start + blockSize, termStore.size());
+
+            for (int termIndex = start; termIndex < end; termIndex++) {
+                visitor.visit(id, termStore.get(termIndex));
+            }
+        }
+    }
+}
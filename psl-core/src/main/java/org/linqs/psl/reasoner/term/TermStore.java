@@ -20,6 +20,7 @@ package org.linqs.psl.reasoner.term;
 import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.rule.GroundRule;
 import org.linqs.psl.model.rule.WeightedGroundRule;
+import org.linqs.psl.model.rule.WeightedRule;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -72,4 +73,13 @@ public interface TermStore<T extends ReasonerTerm, V extends ReasonerLocalVariab
      * Get an iterator over the terms in the store that does not write to disk.
      */
     public Iterator<T> noWriteIterator();
+
+    /**
+     * Update all the terms that were generated from any of |rules| to reflect the rules' current weights.
+     * This is only for changes in weight, the structure of the terms should not change.
+     * All the rules are handled together, so stores can update their terms in a single pass.
+     * @return true if the terms were updated in place,
+     *  false if this store cannot update in place and the terms need to be regenerated.
+     */
+    public boolean updateWeights(List<WeightedRule> rules);
 }
@@ -0,0 +1,346 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2019 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.term;
+
+import org.linqs.psl.model.atom.RandomVariableAtom;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Maps variables to dense indexes (in the order they were added) for term stores.
+ *
+ * This is an open-addressing (linear probing) table with the indexes kept in a primitive array,
+ * so there is no boxing and no entry objects.
+ * Keys are first compared by identity (atoms are usually the same instance) and only then with equals().
+ * Keys are never removed (except by clear()).
+ *
+ * RandomVariableAtom keys also remember their index (tagged with the id of the map),
+ * so most lookups of atoms never have to hash or probe.
+ * An atom only remembers the last map it was looked up in,
+ * so an atom shared between several maps just falls back to the table.
+ *
+ * Adding keys must be externally synchronized, but get() may be called concurrently with add() without any locking.
+ * Slots are never emptied, a key is published (with a volatile write) only after its index is set,
+ * and a resize publishes a complete new table at once.
+ * So a concurrent get() will either see a key with its correct index, or not see the key at all
+ * (in which case the caller can fall back to checking again while holding the lock it uses for add()).
+ */
+public class VariableIndexMap<V> implements Iterable<V> {
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * Ids for tagging cached indexes. Zero is never used, since it is the value of an unset cache.
+     */
+    private static final AtomicInteger nextId = new AtomicInteger(1);
+
+    private volatile Table table;
+
+    /**
+     * Changes on clear() so that any indexes cached before the clear are ignored.
+     */
+    private volatile int id;
+
+    // The keys in the order they were added (so keys[i] has index i).
+    private Object[] keys;
+    private int size;
+
+    public VariableIndexMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public VariableIndexMap(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must be non-negative. Got: " + capacity);
+        }
+
+        capacity = Math.max(MIN_CAPACITY, capacity);
+
+        table = new Table(getTableSize(capacity));
+        keys = new Object[capacity];
+        size = 0;
+        id = nextId.getAndIncrement();
+    }
+
+    /**
+     * Get the index of a key.
+     * @return the index, or -1 if the key is not in the map.
+     */
+    public int get(Object key) {
+        RandomVariableAtom atom = null;
+        if (key instanceof RandomVariableAtom) {
+            atom = (RandomVariableAtom)key;
+
+            long cache = atom.getVariableIndexCache();
+            if ((int)(cache >>> 32) == id) {
+                return (int)cache;
+            }
+        }
+
+        Table currentTable = table;
+        AtomicReferenceArray<Object> slots = currentTable.slots;
+
+        int slot = hash(key) & currentTable.mask;
+        while (true) {
+            Object slotKey = slots.get(slot);
+            if (slotKey == null) {
+                return -1;
+            }
+
+            if (slotKey == key || slotKey.equals(key)) {
+                int index = currentTable.indexes[slot];
+                if (atom != null) {
+                    cacheIndex(atom, index);
+                }
+
+                return index;
+            }
+
+            slot = (slot + 1) & currentTable.mask;
+        }
+    }
+
+    public boolean containsKey(Object key) {
+        return get(key) != -1;
+    }
+
+    /**
+     * Add a key to the map.
+     * @return the key's index (the existing one if the key was already in the map).
+     */
+    public int add(V key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Null keys are not allowed.");
+        }
+
+        Table currentTable = table;
+        AtomicReferenceArray<Object> slots = currentTable.slots;
+
+        int slot = hash(key) & currentTable.mask;
+        Object slotKey = null;
+        while ((slotKey = slots.get(slot)) != null) {
+            if (slotKey == key || slotKey.equals(key)) {
+                return currentTable.indexes[slot];
+            }
+
+            slot = (slot + 1) & currentTable.mask;
+        }
+
+        // Got a new key.
+
+        if (size >= keys.length) {
+            ensureCapacity(size * 2);
+            return add(key);
+        }
+
+        int index = size;
+
+        keys[index] = key;
+        size++;
+
+        // Set the index before the key, readers only look at the index once they see the key.
+        currentTable.indexes[slot] = index;
+        slots.set(slot, key);
+
+        if (key instanceof RandomVariableAtom) {
+            cacheIndex((RandomVariableAtom)key, index);
+        }
+
+        return index;
+    }
+
+    /**
+     * Make sure that at least |capacity| keys can be held without reallocation.
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= keys.length) {
+            return;
+        }
+
+        keys = Arrays.copyOf(keys, capacity);
+
+        int tableSize = getTableSize(capacity);
+        if (tableSize <= table.slots.length()) {
+            return;
+        }
+
+        Table newTable = new Table(tableSize);
+        for (int i = 0; i < size; i++) {
+            int slot = hash(keys[i]) & newTable.mask;
+            while (newTable.slots.get(slot) != null) {
+                slot = (slot + 1) & newTable.mask;
+            }
+
+            newTable.indexes[slot] = i;
+            newTable.slots.set(slot, keys[i]);
+        }
+
+        table = newTable;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        size = 0;
+
+        table = new Table(table.slots.length());
+        id = nextId.getAndIncrement();
+    }
+
+    /**
+     * Iterate over the keys in index order.
+     */
+    @Override
+    public Iterator<V> iterator() {
+        return new Iterator<V>() {
+            private int nextIndex = 0;
+
+            @Override
+            public boolean hasNext() {
+                return nextIndex < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public V next() {
+                if (nextIndex >= size) {
+                    throw new NoSuchElementException();
+                }
+
+                return (V)keys[nextIndex++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Only called once the index is set in the table, so a cached index is always valid for this map.
+     */
+    private void cacheIndex(RandomVariableAtom atom, int index) {
+        atom.setVariableIndexCache(((long)id << 32) | (index & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Get a read-only Map view of this map (key to index).
+     * The view is backed by this map, and iterates in index order.
+     */
+    public Map<V, Integer> asMap() {
+        return new AbstractMap<V, Integer>() {
+            @Override
+            public Integer get(Object key) {
+                int index = VariableIndexMap.this.get(key);
+                if (index == -1) {
+                    return null;
+                }
+
+                return Integer.valueOf(index);
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return VariableIndexMap.this.containsKey(key);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Set<Map.Entry<V, Integer>> entrySet() {
+                return new AbstractSet<Map.Entry<V, Integer>>() {
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+
+                    @Override
+                    public Iterator<Map.Entry<V, Integer>> iterator() {
+                        final Iterator<V> keyIterator = VariableIndexMap.this.iterator();
+
+                        return new Iterator<Map.Entry<V, Integer>>() {
+                            private int index = 0;
+
+                            @Override
+                            public boolean hasNext() {
+                                return keyIterator.hasNext();
+                            }
+
+                            @Override
+                            public Map.Entry<V, Integer> next() {
+                                V key = keyIterator.next();
+                                return new AbstractMap.SimpleImmutableEntry<V, Integer>(key, Integer.valueOf(index++));
+                            }
+
+                            @Override
+                            public void remove() {
+                                throw new UnsupportedOperationException();
+                            }
+                        };
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Keep the load factor at or under 0.5 (linear probing degrades quickly past that).
+     */
+    private static int getTableSize(int capacity) {
+        int tableSize = MIN_CAPACITY;
+        while (tableSize < capacity * 2L) {
+            tableSize <<= 1;
+        }
+
+        return tableSize;
+    }
+
+    /**
+     * Spread out the hash code (atoms cache their hash code, so it is cheap to get).
+     */
+    private static int hash(Object key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static class Table {
+        public final AtomicReferenceArray<Object> slots;
+        public final int[] indexes;
+        public final int mask;
+
+        public Table(int size) {
+            slots = new AtomicReferenceArray<Object>(size);
+            indexes = new int[size];
+            mask = size - 1;
+        }
+    }
+}
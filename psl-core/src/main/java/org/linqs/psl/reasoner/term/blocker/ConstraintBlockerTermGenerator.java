@@ -25,6 +25,7 @@ import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.rule.GroundRule;
 import org.linqs.psl.model.rule.UnweightedGroundRule;
 import org.linqs.psl.model.rule.WeightedGroundRule;
+import org.linqs.psl.model.rule.WeightedRule;
 import org.linqs.psl.model.rule.arithmetic.UnweightedGroundArithmeticRule;
 import org.linqs.psl.model.rule.misc.GroundValueConstraint;
 import org.linqs.psl.reasoner.function.FunctionComparator;
@@ -35,6 +36,7 @@ import org.linqs.psl.util.MathUtils;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -79,6 +81,12 @@ public class ConstraintBlockerTermGenerator implements TermGenerator<ConstraintB
         return generateTermsInternal((AtomRegisterGroundRuleStore)ruleStore, (ConstraintBlockerTermStore)termStore);
     }
 
+    @Override
+    public boolean updateWeights(List<WeightedRule> rules, double[] oldWeights, TermStore<ConstraintBlockerTerm, RandomVariableAtom> termStore) {
+        // Blocks are built around constraints, so their structure never depends on weights.
+        return termStore.updateWeights(rules);
+    }
+
     private int generateTermsInternal(AtomRegisterGroundRuleStore ruleStore, ConstraintBlockerTermStore termStore) {
         // Collects constraints.
         Set<UnweightedGroundArithmeticRule> constraintSet = new HashSet<UnweightedGroundArithmeticRule>();
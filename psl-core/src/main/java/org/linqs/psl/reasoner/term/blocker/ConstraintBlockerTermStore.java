@@ -21,6 +21,7 @@ import org.linqs.psl.grounding.GroundRuleStore;
 import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.rule.GroundRule;
 import org.linqs.psl.model.rule.WeightedGroundRule;
+import org.linqs.psl.model.rule.WeightedRule;
 import org.linqs.psl.model.rule.arithmetic.UnweightedGroundArithmeticRule;
 import org.linqs.psl.model.rule.misc.GroundValueConstraint;
 import org.linqs.psl.reasoner.term.ReasonerLocalVariable;
@@ -160,6 +161,12 @@ public class ConstraintBlockerTermStore implements TermStore<ConstraintBlockerTe
         return iterator();
     }
 
+    @Override
+    public boolean updateWeights(List<WeightedRule> rules) {
+        // Blocks hold onto their incident ground rules, so they always see the current weight.
+        return true;
+    }
+
     @Override
     public RandomVariableAtom createLocalVariable(RandomVariableAtom atom) {
         throw new UnsupportedOperationException("ConstraintBlockerTermStore does not use the concept of local variables.");
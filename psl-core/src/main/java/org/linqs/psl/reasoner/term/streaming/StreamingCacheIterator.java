@@ -19,10 +19,21 @@ package org.linqs.psl.reasoner.term.streaming;
 
 import org.linqs.psl.reasoner.term.ReasonerTerm;
 import org.linqs.psl.util.RandUtils;
+import org.linqs.psl.util.RuntimeStats;
 
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 /**
  * Iterate over all the terms from the disk cache.
@@ -30,6 +41,16 @@ import java.util.List;
  *
  * This iterator can be constructed as read-only.
  * In this case, pages will not be witten to disk.
+ *
+ * When the parent store is prefetching, page reads and volatile page writes are done on the store's IO thread.
+ * The next page is read into a second set of buffers while the terms of the current page are being used,
+ * and volatile pages are written from their own buffer.
+ * Since the IO thread runs tasks in the order they are submitted,
+ * a volatile page will always be written before it is next read.
+ *
+ * Several of these iterators may also share a single page access order (and a counter into it),
+ * so that pages can be handed out to multiple threads at once (see StreamingTermStore.parallelForEach()).
+ * In this case, each iterator must have its own term cache, pool, buffers, and shuffle map.
  */
 public abstract class StreamingCacheIterator<T extends ReasonerTerm> implements StreamingIterator<T> {
     protected StreamingTermStore<T> parentStore;
@@ -59,12 +80,45 @@ public abstract class StreamingCacheIterator<T extends ReasonerTerm> implements
 
     protected int numPages;
 
+    // When sharing the page access order with other iterators, the index of the next page to take.
+    // Null if this iterator has the access order to itself.
+    protected AtomicInteger nextPage;
+
+    // Used to read terms when the pages are compact (null otherwise).
+    protected TermPageCodec pageCodec;
+
+    // Holds a page's compressed terms when the pages are compressed.
+    // Only one page is ever read at a time.
+    private byte[] compressedBuffer;
+
+    // Prefetching state.
+    private boolean prefetch;
+    private ByteBuffer[] readTermBuffers;
+    private ByteBuffer[] readVolatileBuffers;
+    private ByteBuffer writeVolatileBuffer;
+    private Future<Integer> pendingRead;
+    private Future<?> pendingWrite;
+
     public StreamingCacheIterator(
             StreamingTermStore<T> parentStore, boolean readonly,
             List<T> termCache, List<T> termPool,
             ByteBuffer termBuffer, ByteBuffer volatileBuffer,
             boolean shufflePage, int[] shuffleMap, boolean randomizePageAccess,
             int numPages) {
+        this(parentStore, readonly, termCache, termPool, termBuffer, volatileBuffer,
+                shufflePage, shuffleMap, buildPageAccessOrder(numPages, randomizePageAccess), null);
+    }
+
+    /**
+     * Construct an iterator that takes its pages from a (possibly shared) access order.
+     * If |nextPage| is not null, then it is used (and incremented) to pick the next page in the access order.
+     */
+    public StreamingCacheIterator(
+            StreamingTermStore<T> parentStore, boolean readonly,
+            List<T> termCache, List<T> termPool,
+            ByteBuffer termBuffer, ByteBuffer volatileBuffer,
+            boolean shufflePage, int[] shuffleMap,
+            List<Integer> pageAccessOrder, AtomicInteger nextPage) {
         this.parentStore = parentStore;
         this.shuffleMap = shuffleMap;
 
@@ -81,11 +135,41 @@ public abstract class StreamingCacheIterator<T extends ReasonerTerm> implements
         nextCachedTermIndex = 0;
 
         currentPage = -1;
-        this.numPages = numPages;
+        this.numPages = pageAccessOrder.size();
 
         this.shufflePage = shufflePage;
 
-        pageAccessOrder = new ArrayList<Integer>(numPages);
+        this.pageAccessOrder = pageAccessOrder;
+        this.nextPage = nextPage;
+
+        closed = false;
+
+        pageCodec = parentStore.isCompactPages() ? new TermPageCodec() : null;
+        compressedBuffer = null;
+
+        // Note that we cannot pre-fetch terms (the caller may still be holding the last one),
+        // but we can pre-fetch the raw pages.
+        nextTerm = null;
+
+        // When pages are shared between iterators, the next page is not known ahead of time.
+        prefetch = parentStore.isPrefetching() && !parentStore.isMemoryMapped() && nextPage == null;
+        pendingRead = null;
+        pendingWrite = null;
+
+        if (prefetch && numPages > 0) {
+            readTermBuffers = new ByteBuffer[]{termBuffer, parentStore.getPrefetchTermBuffer()};
+            readVolatileBuffers = new ByteBuffer[]{volatileBuffer, parentStore.getPrefetchVolatileBuffer()};
+            writeVolatileBuffer = parentStore.getWritebackVolatileBuffer();
+
+            submitRead(0);
+        }
+    }
+
+    /**
+     * Get the (possibly randomized) order to visit pages in.
+     */
+    public static List<Integer> buildPageAccessOrder(int numPages, boolean randomizePageAccess) {
+        List<Integer> pageAccessOrder = new ArrayList<Integer>(numPages);
         for (int i = 0; i < numPages; i++) {
             pageAccessOrder.add(i);
         }
@@ -94,10 +178,7 @@ public abstract class StreamingCacheIterator<T extends ReasonerTerm> implements
             RandUtils.shuffle(pageAccessOrder);
         }
 
-        closed = false;
-
-        // Note that we cannot pre-fetch.
-        nextTerm = null;
+        return pageAccessOrder;
     }
 
     /**
@@ -172,7 +253,11 @@ public abstract class StreamingCacheIterator<T extends ReasonerTerm> implements
         // Clear the existing page cache.
         termCache.clear();
 
-        currentPage++;
+        if (nextPage == null) {
+            currentPage++;
+        } else {
+            currentPage = nextPage.getAndIncrement();
+        }
         nextCachedTermIndex = 0;
 
         if (currentPage >= numPages) {
@@ -181,15 +266,31 @@ public abstract class StreamingCacheIterator<T extends ReasonerTerm> implements
         }
 
         int pageIndex = pageAccessOrder.get(currentPage).intValue();
-        String termPagePath = parentStore.getTermPagePath(pageIndex);
-        String volatilePagePath = parentStore.getVolatilePagePath(pageIndex);
 
-        // Prep for the next read.
-        // Note that the termBuffer should be at maximum size from the initial round.
-        termBuffer.clear();
-        volatileBuffer.clear();
+        if (pageCodec != null) {
+            pageCodec.reset();
+        }
+
+        if (parentStore.isMemoryMapped()) {
+            readMappedPage(pageIndex);
+        } else if (prefetch) {
+            int numTerms = waitFor(pendingRead).intValue();
+            pendingRead = null;
 
-        readPage(termPagePath, volatilePagePath);
+            ByteBuffer pageTermBuffer = readTermBuffers[currentPage % 2];
+            ByteBuffer pageVolatileBuffer = readVolatileBuffers[currentPage % 2];
+
+            // The other buffers were only needed until their terms were read, so start filling them.
+            if (currentPage + 1 < numPages) {
+                submitRead(currentPage + 1);
+            }
+
+            readTerms(numTerms, pageTermBuffer, pageVolatileBuffer);
+        } else {
+            // Note that the termBuffer should be at maximum size from the initial round.
+            int numTerms = readPage(pageIndex, termBuffer, volatileBuffer);
+            readTerms(numTerms, termBuffer, volatileBuffer);
+        }
 
         if (shufflePage) {
             // Remember that the shuffle map may be larger than the term cache (for not full pages).
@@ -219,14 +320,203 @@ public abstract class StreamingCacheIterator<T extends ReasonerTerm> implements
     }
 
     private void flushVolatileCache() {
-        // The buffer has already grown to maximum size in the initial round,
-        // no need to reallocate.
-        volatileBuffer.clear();
+        final int pageIndex = pageAccessOrder.get(currentPage).intValue();
+        final int numTerms = termCache.size();
 
-        int pageIndex = pageAccessOrder.get(currentPage).intValue();
+        if (parentStore.isMemoryMapped()) {
+            // Update the mapped page in place, the OS will take care of getting it to disk.
+            writeVolatileValues(parentStore.getMappedVolatilePage(pageIndex));
+            return;
+        }
+
+        if (getVolatileByteSize(pageIndex, numTerms) == 0) {
+            return;
+        }
+
+        if (!prefetch) {
+            // The buffer has already grown to maximum size in the initial round,
+            // no need to reallocate.
+            volatileBuffer.clear();
+            writeVolatileValues(volatileBuffer);
+            writeVolatilePage(pageIndex, volatileBuffer, numTerms);
+            return;
+        }
+
+        // The writeback buffer is free once the last write is done.
+        waitFor(pendingWrite);
+
+        writeVolatileBuffer.clear();
+        writeVolatileValues(writeVolatileBuffer);
+
+        pendingWrite = parentStore.submitIO(new Callable<Object>() {
+            @Override
+            public Object call() {
+                writeVolatilePage(pageIndex, writeVolatileBuffer, numTerms);
+                return null;
+            }
+        });
+    }
+
+    private void submitRead(final int accessIndex) {
+        final int pageIndex = pageAccessOrder.get(accessIndex).intValue();
+        final ByteBuffer pageTermBuffer = readTermBuffers[accessIndex % 2];
+        final ByteBuffer pageVolatileBuffer = readVolatileBuffers[accessIndex % 2];
+
+        pendingRead = parentStore.submitIO(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return Integer.valueOf(readPage(pageIndex, pageTermBuffer, pageVolatileBuffer));
+            }
+        });
+    }
+
+    private <R> R waitFor(Future<R> future) {
+        if (future == null) {
+            return null;
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            throw new RuntimeException("Interrupted waiting for page IO.", ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("Failed page IO.", ex.getCause());
+        }
+    }
+
+    /**
+     * Read the terms of a page directly out of its memory mapping.
+     * The page layout is the same as the one written in the initial round:
+     * the header (see StreamingTermStore.PAGE_HEADER_SIZE) and then the terms.
+     */
+    private void readMappedPage(int pageIndex) {
+        ByteBuffer mappedTermBuffer = parentStore.getMappedTermPage(pageIndex);
+        ByteBuffer mappedVolatileBuffer = parentStore.getMappedVolatilePage(pageIndex);
+
+        checkPageFormat(pageIndex, mappedTermBuffer.getInt());
+
+        // Size of the terms, not needed since we are not copying.
+        mappedTermBuffer.getInt();
+        int numTerms = mappedTermBuffer.getInt();
+
+        readTerms(numTerms, mappedTermBuffer, mappedVolatileBuffer);
+    }
+
+    /**
+     * Read a page from disk into the given buffers, leaving them positioned at the first term.
+     * The page layout is the same as the one written in the initial round:
+     * the header (see StreamingTermStore.PAGE_HEADER_SIZE) and then the terms.
+     * Compressed terms are decompressed into the term buffer.
+     * @return the number of terms in the page.
+     */
+    private int readPage(int pageIndex, ByteBuffer pageTermBuffer, ByteBuffer pageVolatileBuffer) {
+        String termPagePath = parentStore.getTermPagePath(pageIndex);
+        String volatilePagePath = parentStore.getVolatilePagePath(pageIndex);
+
+        pageTermBuffer.clear();
+        pageVolatileBuffer.clear();
+
+        int termsSize = 0;
+        int numTerms = 0;
+
+        try (FileInputStream termStream = new FileInputStream(termPagePath)) {
+            // First read the page information.
+            readFully(termStream, pageTermBuffer.array(), 0, StreamingTermStore.PAGE_HEADER_SIZE);
+
+            checkPageFormat(pageIndex, pageTermBuffer.getInt());
+            termsSize = pageTermBuffer.getInt();
+            numTerms = pageTermBuffer.getInt();
+
+            // Now read in all the terms.
+            if (parentStore.isCompressPages()) {
+                if (compressedBuffer == null || compressedBuffer.length < termsSize) {
+                    compressedBuffer = new byte[termsSize];
+                }
+
+                readFully(termStream, compressedBuffer, 0, termsSize);
+                inflate(termPagePath, compressedBuffer, termsSize, pageTermBuffer);
+            } else {
+                readFully(termStream, pageTermBuffer.array(), StreamingTermStore.PAGE_HEADER_SIZE, termsSize);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(String.format("Unable to read cache page: [%s].", termPagePath), ex);
+        }
+
+        // Log io.
+        RuntimeStats.logDiskRead(StreamingTermStore.PAGE_HEADER_SIZE + termsSize);
+
+        int volatilesSize = getVolatileByteSize(pageIndex, numTerms);
+        if (volatilesSize == 0) {
+            return numTerms;
+        }
+
+        try (FileInputStream volatileStream = new FileInputStream(volatilePagePath)) {
+            readFully(volatileStream, pageVolatileBuffer.array(), 0, volatilesSize);
+        } catch (IOException ex) {
+            throw new RuntimeException(String.format("Unable to read cache page: [%s].", volatilePagePath), ex);
+        }
+
+        // Log io.
+        RuntimeStats.logDiskRead(volatilesSize);
+
+        return numTerms;
+    }
+
+    private void writeVolatilePage(int pageIndex, ByteBuffer pageVolatileBuffer, int numTerms) {
         String volatilePagePath = parentStore.getVolatilePagePath(pageIndex);
+        int volatileBufferSize = getVolatileByteSize(pageIndex, numTerms);
+
+        try (FileOutputStream stream = new FileOutputStream(volatilePagePath)) {
+            stream.write(pageVolatileBuffer.array(), 0, volatileBufferSize);
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to write volatile cache page: " + volatilePagePath, ex);
+        }
+
+        // Log io.
+        RuntimeStats.logDiskWrite(volatileBufferSize);
+    }
+
+    private void checkPageFormat(int pageIndex, int format) {
+        if (format != parentStore.getPageFormat()) {
+            throw new IllegalStateException(String.format(
+                    "Term page %d has format %d, expected %d.", pageIndex, format, parentStore.getPageFormat()));
+        }
+    }
+
+    /**
+     * Decompress terms into the term buffer (after the header).
+     */
+    private static void inflate(String termPagePath, byte[] compressed, int compressedSize, ByteBuffer pageTermBuffer) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed, 0, compressedSize);
+
+            int offset = StreamingTermStore.PAGE_HEADER_SIZE;
+            while (!inflater.finished()) {
+                int count = inflater.inflate(pageTermBuffer.array(), offset, pageTermBuffer.capacity() - offset);
+                if (count == 0 && (inflater.needsInput() || offset == pageTermBuffer.capacity())) {
+                    throw new IOException("Compressed terms do not fit in the page: " + termPagePath);
+                }
+
+                offset += count;
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Corrupt compressed page: " + termPagePath, ex);
+        } finally {
+            inflater.end();
+        }
+    }
 
-        writeVolatilePage(volatilePagePath);
+    private static void readFully(InputStream stream, byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = stream.read(buffer, offset, length);
+            if (count < 0) {
+                throw new IOException("Unexpected end of page.");
+            }
+
+            offset += count;
+            length -= count;
+        }
     }
 
     @Override
@@ -238,18 +528,30 @@ public abstract class StreamingCacheIterator<T extends ReasonerTerm> implements
 
         flushCache();
 
+        // Make sure that all IO has settled (and any failures are reported).
+        waitFor(pendingRead);
+        waitFor(pendingWrite);
+        pendingRead = null;
+        pendingWrite = null;
+
         parentStore.cacheIterationComplete();
     }
 
     /**
-     * Read a page and fill the termCache using freed terms from the termPool.
-     * The child is responsible for all IO, but shuffling will be handled by the parent.
+     * The number of bytes of volatile values that the page at |pageIndex| (which has |numTerms| terms) uses.
+     * Zero if the terms do not have volatile values.
+     */
+    protected abstract int getVolatileByteSize(int pageIndex, int numTerms);
+
+    /**
+     * Fill the termCache with the next |numTerms| terms in the buffers (using freed terms from the termPool).
+     * The buffers are already positioned at the first term.
      */
-    protected abstract void readPage(String termPagePath, String volatilePagePath);
+    protected abstract void readTerms(int numTerms, ByteBuffer termBuffer, ByteBuffer volatileBuffer);
 
     /**
-     * Write a cache page to disk.
-     * Unlike readPage, the child is responsible for undoing any shuffling via shuffleMap.
+     * Put the volatile values for the terms in the termCache into a buffer (at their position in the page).
+     * The child is responsible for undoing any shuffling via shuffleMap.
      */
-    protected abstract void writeVolatilePage(String volatilePagePath);
+    protected abstract void writeVolatileValues(ByteBuffer volatileBuffer);
 }
@@ -20,22 +20,32 @@ package org.linqs.psl.reasoner.term.streaming;
 import org.linqs.psl.database.QueryResultIterable;
 import org.linqs.psl.database.atom.AtomManager;
 import org.linqs.psl.database.rdbms.RDBMSDatabase;
+import org.linqs.psl.grounding.MemoryGroundRuleStore;
 import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.rule.GroundRule;
-import org.linqs.psl.model.rule.WeightedRule;
+import org.linqs.psl.model.rule.Rule;
 import org.linqs.psl.model.term.Constant;
 import org.linqs.psl.reasoner.term.HyperplaneTermGenerator;
 import org.linqs.psl.reasoner.term.ReasonerTerm;
+import org.linqs.psl.util.RuntimeStats;
 
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.zip.Deflater;
 
 /**
  * Iterate over all the terms that come up from grounding.
  * On this first iteration, we will build the term cache up from ground rules
  * and flush the terms to disk.
+ *
+ * Rules that can individually ground are grounded one query result at a time.
+ * Rules that cannot (e.g. arithmetic rules with summations) are grounded all at once,
+ * so all the ground rules for one such rule are held in memory until they are turned into terms.
  */
 public abstract class StreamingInitialRoundIterator<T extends ReasonerTerm> implements StreamingIterator<T> {
     // How much to over-allocate by.
@@ -45,13 +55,16 @@ public abstract class StreamingInitialRoundIterator<T extends ReasonerTerm> impl
     protected HyperplaneTermGenerator<T, RandomVariableAtom> termGenerator;
     protected AtomManager atomManager;
 
-    protected List<WeightedRule> rules;
+    protected List<Rule> rules;
     protected int currentRule;
 
     // Because arithmetic rules can create multiple groundings per query result,
     // we have to keep track of doubles and make sure they get returned.
     protected List<GroundRule> pendingGroundRules;
 
+    // A single ground rule can create multiple terms (e.g. negated negative weight rules).
+    protected List<T> pendingTerms;
+
     protected List<T> termCache;
     protected List<T> termPool;
 
@@ -71,8 +84,14 @@ public abstract class StreamingInitialRoundIterator<T extends ReasonerTerm> impl
     protected int pageSize;
     protected int numPages;
 
+    // Used to write terms when the pages are compact.
+    protected TermPageCodec pageCodec;
+
+    // Holds a page's compressed terms when the pages are compressed.
+    private byte[] compressedBuffer;
+
     public StreamingInitialRoundIterator(
-            StreamingTermStore<T> parentStore, List<WeightedRule> rules,
+            StreamingTermStore<T> parentStore, List<Rule> rules,
             AtomManager atomManager, HyperplaneTermGenerator<T, RandomVariableAtom> termGenerator,
             List<T> termCache, List<T> termPool,
             ByteBuffer termBuffer, ByteBuffer volatileBuffer,
@@ -85,6 +104,7 @@ public abstract class StreamingInitialRoundIterator<T extends ReasonerTerm> impl
         currentRule = -1;
 
         pendingGroundRules = new ArrayList<GroundRule>();
+        pendingTerms = new ArrayList<T>();
 
         this.termCache = termCache;
         this.termCache.clear();
@@ -98,6 +118,9 @@ public abstract class StreamingInitialRoundIterator<T extends ReasonerTerm> impl
         this.pageSize = pageSize;
         numPages = 0;
 
+        pageCodec = new TermPageCodec();
+        compressedBuffer = null;
+
         termCount = 0;
 
         queryIterable = null;
@@ -169,17 +192,18 @@ public abstract class StreamingInitialRoundIterator<T extends ReasonerTerm> impl
 
     private T fetchNextTermFromRule() {
         // Note that it is possible to not get a term from a ground rule.
-        T term = null;
-        while (term == null) {
+        while (pendingTerms.size() == 0) {
             GroundRule groundRule = fetchNextGroundRule();
             if (groundRule == null) {
                 // We are out of ground rules, and therefore out of terms.
                 return null;
             }
 
-            term = termGenerator.createTerm(groundRule, parentStore);
+            termGenerator.createTerms(groundRule, parentStore, pendingTerms);
         }
 
+        T term = pendingTerms.remove(pendingTerms.size() - 1);
+
         termCache.add(term);
 
         // If we are on the first page, set aside the term for reuse.
@@ -212,12 +236,32 @@ public abstract class StreamingInitialRoundIterator<T extends ReasonerTerm> impl
             }
         }
 
+        if (queryIterable != null) {
+            queryIterable.close();
+            queryIterable = null;
+            queryResults = null;
+        }
+
         currentRule++;
         if (currentRule >= rules.size()) {
             // There are no more rules, we are done.
             return null;
         }
 
+        Rule rule = rules.get(currentRule);
+        if (!rule.supportsIndividualGrounding()) {
+            // Ground the whole rule at once.
+            MemoryGroundRuleStore groundRuleStore = new MemoryGroundRuleStore();
+            rule.groundAll(atomManager, groundRuleStore);
+
+            for (GroundRule groundRule : groundRuleStore.getGroundRules()) {
+                pendingGroundRules.add(groundRule);
+            }
+            groundRuleStore.close();
+
+            return fetchNextGroundRule();
+        }
+
         // Start grounding the next rule.
         queryIterable = ((RDBMSDatabase)atomManager.getDatabase()).executeQueryIterator(rules.get(currentRule).getGroundingQuery(atomManager));
         queryResults = queryIterable.iterator();
@@ -258,6 +302,77 @@ public abstract class StreamingInitialRoundIterator<T extends ReasonerTerm> impl
         parentStore.initialIterationComplete(termCount, numPages, termBuffer, volatileBuffer);
     }
 
+    /**
+     * Make sure the term buffer can hold a page with terms that take (at most) |termsSize| bytes,
+     * and position it at the start of the terms (after the page header).
+     * The page codec is also reset for the new page.
+     */
+    protected void prepareTermBuffer(int termsSize) {
+        int termBufferSize = termsSize + StreamingTermStore.PAGE_HEADER_SIZE;
+
+        if (termBuffer == null || termBuffer.capacity() < termBufferSize) {
+            termBuffer = ByteBuffer.allocate((int)(termBufferSize * OVERALLOCATION_RATIO));
+        }
+
+        termBuffer.clear();
+        termBuffer.position(StreamingTermStore.PAGE_HEADER_SIZE);
+
+        pageCodec.reset();
+    }
+
+    /**
+     * Write out the terms in the term buffer (everything from the page header up to the buffer's position)
+     * as a term page, filling in the header and compressing if necessary.
+     */
+    protected void writeTermPage(String termPagePath, int numTerms) {
+        int format = parentStore.getPageFormat();
+
+        byte[] termBytes = termBuffer.array();
+        int termsOffset = StreamingTermStore.PAGE_HEADER_SIZE;
+        int termsSize = termBuffer.position() - StreamingTermStore.PAGE_HEADER_SIZE;
+
+        if (parentStore.isCompressPages()) {
+            // Deflate can grow incompressible data by a few bytes per block.
+            int maxCompressedSize = termsSize + termsSize / 1000 + 64;
+            if (compressedBuffer == null || compressedBuffer.length < maxCompressedSize) {
+                compressedBuffer = new byte[maxCompressedSize];
+            }
+
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(termBytes, termsOffset, termsSize);
+                deflater.finish();
+
+                termsSize = 0;
+                while (!deflater.finished()) {
+                    termsSize += deflater.deflate(compressedBuffer, termsSize, compressedBuffer.length - termsSize);
+                    if (!deflater.finished() && termsSize == compressedBuffer.length) {
+                        compressedBuffer = Arrays.copyOf(compressedBuffer, compressedBuffer.length * 2);
+                    }
+                }
+            } finally {
+                deflater.end();
+            }
+
+            termBytes = compressedBuffer;
+            termsOffset = 0;
+        }
+
+        termBuffer.putInt(0, format);
+        termBuffer.putInt(Integer.SIZE / 8, termsSize);
+        termBuffer.putInt((Integer.SIZE / 8) * 2, numTerms);
+
+        try (FileOutputStream stream = new FileOutputStream(termPagePath)) {
+            stream.write(termBuffer.array(), 0, StreamingTermStore.PAGE_HEADER_SIZE);
+            stream.write(termBytes, termsOffset, termsSize);
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to write term cache page: " + termPagePath, ex);
+        }
+
+        // Log io.
+        RuntimeStats.logDiskWrite(StreamingTermStore.PAGE_HEADER_SIZE + termsSize);
+    }
+
     /**
      * Write a full page (including any volatile page that the child may use).
      * This is responsible for creating/reallocating both the term buffer and volatile buffer.
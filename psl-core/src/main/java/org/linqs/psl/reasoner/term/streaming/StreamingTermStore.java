@@ -25,7 +25,9 @@ import org.linqs.psl.model.rule.Rule;
 import org.linqs.psl.model.rule.WeightedRule;
 import org.linqs.psl.reasoner.term.HyperplaneTermGenerator;
 import org.linqs.psl.reasoner.term.ReasonerTerm;
+import org.linqs.psl.reasoner.term.VariableIndexMap;
 import org.linqs.psl.reasoner.term.VariableTermStore;
+import org.linqs.psl.util.Parallel;
 import org.linqs.psl.util.RandUtils;
 import org.linqs.psl.util.SystemUtils;
 
@@ -33,14 +35,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class StreamingTermStore<T extends ReasonerTerm> implements VariableTermStore<T, RandomVariableAtom> {
     private static final Logger log = LoggerFactory.getLogger(StreamingTermStore.class);
@@ -80,13 +90,80 @@ public abstract class StreamingTermStore<T extends ReasonerTerm> implements Vari
     public static final String WARN_RULES_KEY = CONFIG_PREFIX + ".warnunsupportedrules";
     public static final boolean WARN_RULES_DEFAULT = true;
 
+    /**
+     * After the initial round, access pages through memory-mapped files instead of reading/writing them with streams.
+     * Terms are read straight out of the mapping and volatile values are updated in place,
+     * so there is no per-iteration copy into (or rewrite from) the IO buffers.
+     */
+    public static final String MEMORY_MAPPED_KEY = CONFIG_PREFIX + ".memorymapped";
+    public static final boolean MEMORY_MAPPED_DEFAULT = false;
+
+    /**
+     * After the initial round, read the next page and write back volatile pages on a background thread
+     * while the terms of the current page are being optimized.
+     * This uses an extra set of IO buffers.
+     * Has no effect when memory mapping.
+     */
+    public static final String PREFETCH_KEY = CONFIG_PREFIX + ".prefetch";
+    public static final boolean PREFETCH_DEFAULT = false;
+
+    /**
+     * After the initial round, allow reasoners to process pages in parallel (see parallelForEach()).
+     * Each thread takes the next unclaimed page, so terms from different pages are optimized at the same time
+     * and updates to the shared variable values are not synchronized (Hogwild style).
+     */
+    public static final String PARALLEL_KEY = CONFIG_PREFIX + ".parallel";
+    public static final boolean PARALLEL_DEFAULT = false;
+
+    /**
+     * When processing pages in parallel, the maximum number of pages that may be in memory at once.
+     * Each resident page has its own IO buffers and terms.
+     * The actual number is also limited by the number of threads.
+     */
+    public static final String RESIDENT_PAGES_KEY = CONFIG_PREFIX + ".residentpages";
+    public static final int RESIDENT_PAGES_DEFAULT = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Write term pages with a compact encoding (see TermPageCodec) instead of the raw term layout.
+     * Compact pages are much smaller, but take a little more work to decode.
+     */
+    public static final String COMPACT_PAGES_KEY = CONFIG_PREFIX + ".compactpages";
+    public static final boolean COMPACT_PAGES_DEFAULT = false;
+
+    /**
+     * Compress the terms of each term page (deflate at its fastest level).
+     * Volatile pages are not compressed.
+     * Cannot be used with memory-mapped pages.
+     */
+    public static final String COMPRESS_PAGES_KEY = CONFIG_PREFIX + ".compresspages";
+    public static final boolean COMPRESS_PAGES_DEFAULT = false;
+
     public static final int INITIAL_PATH_CACHE_SIZE = 100;
 
-    protected List<WeightedRule> rules;
+    /**
+     * The versions of the term page format.
+     * The format is the first value of every term page, and is checked when the page is read.
+     */
+    public static final int PAGE_FORMAT_RAW = 1;
+    public static final int PAGE_FORMAT_COMPACT = 2;
+
+    /**
+     * Set in the page format when the terms of the page are compressed.
+     */
+    public static final int PAGE_FORMAT_COMPRESSED_FLAG = 1 << 16;
+
+    /**
+     * Every term page starts with: the page format (int), the size of the terms on disk (int), and the number of terms (int).
+     */
+    public static final int PAGE_HEADER_SIZE = (Integer.SIZE / 8) * 3;
+
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
+    protected List<Rule> rules;
     protected AtomManager atomManager;
 
     // Keep track of variable indexes.
-    protected Map<RandomVariableAtom, Integer> variables;
+    protected VariableIndexMap<RandomVariableAtom> variables;
 
     // Matching arrays for variables values and atoms.
     private float[] variableValues;
@@ -109,6 +186,40 @@ public abstract class StreamingTermStore<T extends ReasonerTerm> implements Vari
 
     protected boolean warnRules;
 
+    protected boolean memoryMapped;
+    protected boolean prefetch;
+    protected boolean parallel;
+    protected int residentPages;
+    protected boolean compactPages;
+    protected boolean compressPages;
+
+    /**
+     * When prefetching, the second set of buffers pages are read into
+     * and the buffer that volatile values are written back from.
+     */
+    private ByteBuffer prefetchTermBuffer;
+    private ByteBuffer prefetchVolatileBuffer;
+    private ByteBuffer writebackVolatileBuffer;
+
+    /**
+     * The single thread that performs all prefetching IO (so IO happens in the order it was requested).
+     * Created on the first request.
+     */
+    private ExecutorService ioExecutor;
+
+    /**
+     * When memory mapping, the mapping for each page (indexed by page).
+     * Pages are mapped the first time they are accessed and kept until the store is cleared.
+     */
+    private List<MappedByteBuffer> termPageMappings;
+    private List<ByteBuffer> volatilePageMappings;
+
+    /**
+     * The workers (one per thread) that process pages for parallelForEach().
+     * Workers hold on to their buffers and terms until the store is cleared.
+     */
+    private List<PageWorker> pageWorkers;
+
     /**
      * The IO buffer for terms.
      * This buffer is only written on the first iteration,
@@ -150,28 +261,28 @@ public abstract class StreamingTermStore<T extends ReasonerTerm> implements Vari
         shufflePage = Config.getBoolean(SHUFFLE_PAGE_KEY, SHUFFLE_PAGE_DEFAULT);
         randomizePageAccess = Config.getBoolean(RANDOMIZE_PAGE_ACCESS_KEY, RANDOMIZE_PAGE_ACCESS_DEFAULT);
         warnRules = Config.getBoolean(WARN_RULES_KEY, WARN_RULES_DEFAULT);
+        memoryMapped = Config.getBoolean(MEMORY_MAPPED_KEY, MEMORY_MAPPED_DEFAULT);
+        prefetch = Config.getBoolean(PREFETCH_KEY, PREFETCH_DEFAULT);
+        parallel = Config.getBoolean(PARALLEL_KEY, PARALLEL_DEFAULT);
+        residentPages = Config.getInt(RESIDENT_PAGES_KEY, RESIDENT_PAGES_DEFAULT);
 
-        this.rules = new ArrayList<WeightedRule>();
-        for (Rule rule : rules) {
-            if (!rule.isWeighted()) {
-                if (warnRules) {
-                    log.warn("Streaming term stores do not support hard constraints: " + rule);
-                }
-                continue;
-            }
+        if (residentPages < 1) {
+            throw new IllegalArgumentException("Number of resident pages must be positive, got: " + residentPages);
+        }
 
-            // HACK(eriq): This is not actually true,
-            //  but I am putting it in place for efficiency reasons.
-            if (((WeightedRule)rule).getWeight() < 0.0) {
-                if (warnRules) {
-                    log.warn("Streaming term stores do not support negative weights: " + rule);
-                }
-                continue;
-            }
+        compactPages = Config.getBoolean(COMPACT_PAGES_KEY, COMPACT_PAGES_DEFAULT);
+        compressPages = Config.getBoolean(COMPRESS_PAGES_KEY, COMPRESS_PAGES_DEFAULT);
+
+        if (compressPages && memoryMapped) {
+            throw new IllegalArgumentException("Compressed term pages cannot be memory-mapped.");
+        }
 
-            if (!rule.supportsIndividualGrounding()) {
+        this.rules = new ArrayList<Rule>();
+        for (Rule rule : rules) {
+            // The term generator would skip every grounding of these rules anyway.
+            if (rule.isWeighted() && ((WeightedRule)rule).getWeight() < 0.0 && !termGenerator.getInvertNegativeWeights()) {
                 if (warnRules) {
-                    log.warn("Streaming term stores do not support rules that cannot individually ground (arithmetic rules with summations): " + rule);
+                    log.warn("Found a rule with a negative weight, but config says not to invert it... skipping: " + rule);
                 }
                 continue;
             }
@@ -184,7 +295,7 @@ public abstract class StreamingTermStore<T extends ReasonerTerm> implements Vari
                 continue;
             }
 
-            this.rules.add((WeightedRule)rule);
+            this.rules.add(rule);
         }
 
         if (rules.size() == 0) {
@@ -198,6 +309,11 @@ public abstract class StreamingTermStore<T extends ReasonerTerm> implements Vari
         termPagePaths = new ArrayList<String>(INITIAL_PATH_CACHE_SIZE);
         volatilePagePaths = new ArrayList<String>(INITIAL_PATH_CACHE_SIZE);
 
+        termPageMappings = new ArrayList<MappedByteBuffer>(INITIAL_PATH_CACHE_SIZE);
+        volatilePageMappings = new ArrayList<ByteBuffer>(INITIAL_PATH_CACHE_SIZE);
+
+        pageWorkers = null;
+
         initialRound = true;
         activeIterator = null;
         numPages = 0;
@@ -217,16 +333,94 @@ public abstract class StreamingTermStore<T extends ReasonerTerm> implements Vari
         (new File(pageDir)).mkdirs();
     }
 
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    public boolean isPrefetching() {
+        return prefetch;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public boolean isCompactPages() {
+        return compactPages;
+    }
+
+    public boolean isCompressPages() {
+        return compressPages;
+    }
+
+    /**
+     * The format that all term pages in this store are written in.
+     */
+    public int getPageFormat() {
+        int format = compactPages ? PAGE_FORMAT_COMPACT : PAGE_FORMAT_RAW;
+        if (compressPages) {
+            format |= PAGE_FORMAT_COMPRESSED_FLAG;
+        }
+
+        return format;
+    }
+
+    public ByteBuffer getPrefetchTermBuffer() {
+        return prefetchTermBuffer;
+    }
+
+    public ByteBuffer getPrefetchVolatileBuffer() {
+        return prefetchVolatileBuffer;
+    }
+
+    public ByteBuffer getWritebackVolatileBuffer() {
+        return writebackVolatileBuffer;
+    }
+
+    /**
+     * Run some IO on the store's IO thread.
+     * Tasks are run one at a time in the order they were submitted.
+     */
+    public synchronized <R> Future<R> submitIO(Callable<R> task) {
+        if (ioExecutor == null) {
+            ioExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "StreamingTermStore IO");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return ioExecutor.submit(task);
+    }
+
     public boolean isLoaded() {
         return !initialRound;
     }
 
+    /**
+     * Make sure that all the terms have been generated and written out to pages.
+     * If the initial round has not happened yet, then it is done here (without doing anything with the terms).
+     */
+    public void ensureLoaded() {
+        if (!initialRound) {
+            return;
+        }
+
+        Iterator<T> terms = iterator();
+        while (terms.hasNext()) {
+            terms.next();
+        }
+    }
+
     public int getNumVariables() {
         return variables.size();
     }
 
     public Iterable<RandomVariableAtom> getVariables() {
-        return variables.keySet();
+        return variables;
     }
 
     @Override
@@ -236,7 +430,7 @@ public abstract class StreamingTermStore<T extends ReasonerTerm> implements Vari
 
     @Override
     public int getVariableIndex(RandomVariableAtom variable) {
-        return variables.get(variable).intValue();
+        return variables.get(variable);
     }
 
     @Override
@@ -247,22 +441,27 @@ public abstract class StreamingTermStore<T extends ReasonerTerm> implements Vari
     }
 
     @Override
-    public synchronized RandomVariableAtom createLocalVariable(RandomVariableAtom atom) {
+    public RandomVariableAtom createLocalVariable(RandomVariableAtom atom) {
+        // Most variables appear in many terms, so first check (without locking) if this one is already known.
         if (variables.containsKey(atom)) {
             return atom;
         }
 
-        // Got a new variable.
+        synchronized (this) {
+            if (variables.containsKey(atom)) {
+                return atom;
+            }
 
-        if (variables.size() >= variableAtoms.length) {
-            ensureVariableCapacity(variables.size() * 2);
-        }
+            // Got a new variable.
 
-        int index = variables.size();
+            if (variables.size() >= variableAtoms.length) {
+                ensureVariableCapacity(variables.size() * 2);
+            }
 
-        variables.put(atom, index);
-        variableValues[index] = RandUtils.nextFloat();
-        variableAtoms[index] = atom;
+            int index = variables.add(atom);
+            variableValues[index] = RandUtils.nextFloat();
+            variableAtoms[index] = atom;
+        }
 
         return atom;
     }
@@ -274,8 +473,7 @@ public abstract class StreamingTermStore<T extends ReasonerTerm> implements Vari
 
         if (variables == null || variables.size() == 0) {
             // If there are no variables, then (re-)allocate the variable storage.
-            // The default load factor for Java HashSets is 0.75.
-            variables = new HashMap<RandomVariableAtom, Integer>((int)Math.ceil(capacity / 0.75));
+            variables = new VariableIndexMap<RandomVariableAtom>(capacity);
 
             variableValues = new float[capacity];
             variableAtoms = new RandomVariableAtom[capacity];
@@ -285,10 +483,8 @@ public abstract class StreamingTermStore<T extends ReasonerTerm> implements Vari
                 capacity = variables.size() * 2;
             }
 
-            // Reallocate and copy over variables.
-            Map<RandomVariableAtom, Integer> newVariables = new HashMap<RandomVariableAtom, Integer>((int)Math.ceil(capacity / 0.75));
-            newVariables.putAll(variables);
-            variables = newVariables;
+            // Reallocate variables.
+            variables.ensureCapacity(capacity);
 
             variableValues = Arrays.copyOf(variableValues, capacity);
             variableAtoms = Arrays.copyOf(variableAtoms, capacity);
@@ -333,6 +529,62 @@ public abstract class StreamingTermStore<T extends ReasonerTerm> implements Vari
         return volatilePagePaths.get(index);
     }
 
+    /**
+     * Get a read-only view of a term page, positioned at the start of the page.
+     * The page is mapped the first time it is requested.
+     */
+    public synchronized ByteBuffer getMappedTermPage(int index) {
+        for (int i = termPageMappings.size(); i <= index; i++) {
+            termPageMappings.add(null);
+        }
+
+        MappedByteBuffer mapping = termPageMappings.get(index);
+        if (mapping == null) {
+            mapping = mapPage(getTermPagePath(index), FileChannel.MapMode.READ_ONLY);
+            termPageMappings.set(index, mapping);
+        }
+
+        return mapping.duplicate();
+    }
+
+    /**
+     * Get a writable view of a volatile page, positioned at the start of the page.
+     * Writes to this buffer go straight to the page.
+     * If the store does not keep volatile pages, then an empty buffer is returned.
+     */
+    public synchronized ByteBuffer getMappedVolatilePage(int index) {
+        for (int i = volatilePageMappings.size(); i <= index; i++) {
+            volatilePageMappings.add(null);
+        }
+
+        ByteBuffer mapping = volatilePageMappings.get(index);
+        if (mapping == null) {
+            String path = getVolatilePagePath(index);
+            if ((new File(path)).exists()) {
+                mapping = mapPage(path, FileChannel.MapMode.READ_WRITE);
+            } else {
+                mapping = EMPTY_BUFFER;
+            }
+
+            volatilePageMappings.set(index, mapping);
+        }
+
+        return mapping.duplicate();
+    }
+
+    private MappedByteBuffer mapPage(String path, FileChannel.MapMode mode) {
+        String fileMode = (mode == FileChannel.MapMode.READ_ONLY) ? "r" : "rw";
+
+        // The mapping stays valid after the channel is closed.
+        try (
+                RandomAccessFile file = new RandomAccessFile(path, fileMode);
+                FileChannel channel = file.getChannel()) {
+            return channel.map(mode, 0, channel.size());
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to map cache page: " + path, ex);
+        }
+    }
+
     /**
      * A callback for the initial round iterator.
      * The ByterBuffers are here because of possible reallocation.
@@ -343,6 +595,12 @@ public abstract class StreamingTermStore<T extends ReasonerTerm> implements Vari
         this.termBuffer = termBuffer;
         this.volatileBuffer = volatileBuffer;
 
+        if (prefetch && termBuffer != null) {
+            prefetchTermBuffer = ByteBuffer.allocate(termBuffer.capacity());
+            prefetchVolatileBuffer = ByteBuffer.allocate(volatileBuffer.capacity());
+            writebackVolatileBuffer = ByteBuffer.allocate(volatileBuffer.capacity());
+        }
+
         initialRound = false;
         activeIterator = null;
     }
@@ -388,6 +646,54 @@ public abstract class StreamingTermStore<T extends ReasonerTerm> implements Vari
         return activeIterator;
     }
 
+    /**
+     * Visit every term in the store, with pages being processed in parallel.
+     * Each thread claims the next page (from the usual page order) until all the pages have been visited,
+     * and no more than the configured number of resident pages will be in memory at once.
+     * Terms may be visited concurrently, so visitors must either tolerate (Hogwild style) races on the
+     * shared variable values or keep their own per-thread state (keyed by the thread id given to visit()).
+     * Before this method can be called, a full iteration must have already been done.
+     */
+    public void parallelForEach(boolean readonly, TermVisitor<T> visitor) {
+        if (activeIterator != null) {
+            throw new IllegalStateException("Iterator already exists for this StreamingTermStore. Exhaust the iterator first.");
+        }
+
+        if (initialRound) {
+            throw new IllegalStateException("A full iteration must have already been completed before visiting terms in parallel.");
+        }
+
+        int numThreads = Parallel.getNumThreads();
+        if (pageWorkers == null) {
+            pageWorkers = new ArrayList<PageWorker>(numThreads);
+            for (int i = 0; i < numThreads; i++) {
+                pageWorkers.add(new PageWorker());
+            }
+        }
+
+        List<Integer> pageAccessOrder = StreamingCacheIterator.buildPageAccessOrder(numPages, randomizePageAccess);
+        AtomicInteger nextPage = new AtomicInteger(0);
+
+        for (PageWorker worker : pageWorkers) {
+            worker.setPass(readonly, visitor, pageAccessOrder, nextPage);
+        }
+
+        // Each task keeps taking pages until there are none left,
+        // so the number of tasks is the number of pages that can be resident at once.
+        int numTasks = Math.min(Math.min(residentPages, numThreads), numPages);
+        Parallel.count(numTasks, pageWorkers);
+
+        for (PageWorker worker : pageWorkers) {
+            worker.setPass(readonly, null, null, null);
+        }
+    }
+
+    @Override
+    public boolean updateWeights(List<WeightedRule> rules) {
+        // Weights are written into the term pages, so the pages need to be rebuilt.
+        return false;
+    }
+
     @Override
     public void clear() {
         initialRound = true;
@@ -410,6 +716,16 @@ public abstract class StreamingTermStore<T extends ReasonerTerm> implements Vari
             termPool.clear();
         }
 
+        if (termPageMappings != null) {
+            termPageMappings.clear();
+        }
+
+        if (volatilePageMappings != null) {
+            volatilePageMappings.clear();
+        }
+
+        pageWorkers = null;
+
         SystemUtils.recursiveDelete(pageDir);
     }
 
@@ -431,6 +747,17 @@ public abstract class StreamingTermStore<T extends ReasonerTerm> implements Vari
             volatileBuffer = null;
         }
 
+        prefetchTermBuffer = null;
+        prefetchVolatileBuffer = null;
+        writebackVolatileBuffer = null;
+
+        synchronized (this) {
+            if (ioExecutor != null) {
+                ioExecutor.shutdown();
+                ioExecutor = null;
+            }
+        }
+
         if (termCache != null) {
             termCache = null;
         }
@@ -460,4 +787,77 @@ public abstract class StreamingTermStore<T extends ReasonerTerm> implements Vari
      * Get an iterator that will not write to disk.
      */
     protected abstract StreamingIterator<T> getNoWriteIterator();
+
+    /**
+     * Create a blank term that can be filled by reading a page.
+     */
+    protected abstract T createEmptyTerm();
+
+    /**
+     * Get an iterator that reads pages (in parallel with other iterators) from a shared page order.
+     * All the collections and buffers passed in belong to a single thread.
+     */
+    protected abstract StreamingIterator<T> getPageIterator(boolean readonly,
+            List<T> termCache, List<T> termPool, ByteBuffer termBuffer, ByteBuffer volatileBuffer,
+            int[] shuffleMap, List<Integer> pageAccessOrder, AtomicInteger nextPage);
+
+    /**
+     * Something that wants to look at every term in parallelForEach().
+     */
+    public static interface TermVisitor<T> {
+        /**
+         * Visit a single term.
+         * |threadId| is in [0, Parallel.getNumThreads()) and no two threads will visit with the same id at once.
+         */
+        public void visit(int threadId, T term);
+    }
+
+    /**
+     * Process pages until there are no more to claim.
+     * Each worker has its own buffers and terms, but the variable values are shared.
+     */
+    private class PageWorker extends Parallel.Worker<Integer> {
+        private boolean readonly;
+        private TermVisitor<T> visitor;
+        private List<Integer> pageAccessOrder;
+        private AtomicInteger nextPage;
+
+        private ByteBuffer workerTermBuffer;
+        private ByteBuffer workerVolatileBuffer;
+        private List<T> workerTermCache;
+        private List<T> workerTermPool;
+        private int[] workerShuffleMap;
+
+        public void setPass(boolean readonly, TermVisitor<T> visitor, List<Integer> pageAccessOrder, AtomicInteger nextPage) {
+            this.readonly = readonly;
+            this.visitor = visitor;
+            this.pageAccessOrder = pageAccessOrder;
+            this.nextPage = nextPage;
+        }
+
+        @Override
+        public void work(int index, Integer item) {
+            if (workerTermPool == null) {
+                // Not needed when memory mapping, but cheap compared to a page.
+                workerTermBuffer = ByteBuffer.allocate(termBuffer.capacity());
+                workerVolatileBuffer = ByteBuffer.allocate(volatileBuffer.capacity());
+
+                workerTermCache = new ArrayList<T>(pageSize);
+                workerTermPool = new ArrayList<T>(pageSize);
+                for (int i = 0; i < pageSize; i++) {
+                    workerTermPool.add(createEmptyTerm());
+                }
+
+                workerShuffleMap = new int[pageSize];
+            }
+
+            StreamingIterator<T> pageIterator = getPageIterator(readonly,
+                    workerTermCache, workerTermPool, workerTermBuffer, workerVolatileBuffer,
+                    workerShuffleMap, pageAccessOrder, nextPage);
+
+            while (pageIterator.hasNext()) {
+                visitor.visit(id, pageIterator.next());
+            }
+        }
+    }
 }
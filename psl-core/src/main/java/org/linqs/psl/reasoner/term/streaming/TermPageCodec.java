@@ -0,0 +1,144 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2019 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.term.streaming;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Helpers for the compact term page encoding.
+ *
+ * Ints are written as variable length (7 bits per byte) ints, signed ints are zigzag encoded first.
+ * Floats are dictionary coded per page: the first time a value is seen in a page it is written in full
+ * (and added to the dictionary), afterwards only its index in the dictionary is written.
+ * Since the reader builds the same dictionary as it goes, no dictionary needs to be stored.
+ * Terms in a page share the codec, so values repeated across terms (weights, learning rates, unit coefficients)
+ * usually cost a single byte.
+ *
+ * A codec should only be used for writing or reading, and must be reset at the start of every page.
+ */
+public class TermPageCodec {
+    /**
+     * The most bytes a single int can take up.
+     */
+    public static final int MAX_INT_SIZE = 5;
+
+    /**
+     * The most bytes a single float can take up.
+     */
+    public static final int MAX_FLOAT_SIZE = 1 + (Float.SIZE / 8);
+
+    private static final int INITIAL_DICTIONARY_SIZE = 64;
+
+    // Writer side, float bits to dictionary index.
+    private Map<Integer, Integer> floatIndexes;
+
+    // Reader side, dictionary index to float.
+    private float[] floats;
+    private int numFloats;
+
+    public TermPageCodec() {
+        floatIndexes = new HashMap<Integer, Integer>(INITIAL_DICTIONARY_SIZE);
+        floats = new float[INITIAL_DICTIONARY_SIZE];
+        numFloats = 0;
+    }
+
+    /**
+     * Clear the dictionary, must be called at the start of every page.
+     */
+    public void reset() {
+        floatIndexes.clear();
+        numFloats = 0;
+    }
+
+    public void putFloat(ByteBuffer buffer, float value) {
+        Integer bits = Integer.valueOf(Float.floatToIntBits(value));
+
+        Integer index = floatIndexes.get(bits);
+        if (index != null) {
+            // Zero is reserved for a new value.
+            putInt(buffer, index.intValue() + 1);
+            return;
+        }
+
+        floatIndexes.put(bits, Integer.valueOf(floatIndexes.size()));
+
+        buffer.put((byte)0);
+        buffer.putFloat(value);
+    }
+
+    public float getFloat(ByteBuffer buffer) {
+        int index = getInt(buffer);
+        if (index != 0) {
+            return floats[index - 1];
+        }
+
+        float value = buffer.getFloat();
+
+        if (numFloats == floats.length) {
+            floats = Arrays.copyOf(floats, floats.length * 2);
+        }
+
+        floats[numFloats] = value;
+        numFloats++;
+
+        return value;
+    }
+
+    /**
+     * Put a non-negative int.
+     */
+    public static void putInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        buffer.put((byte)value);
+    }
+
+    public static int getInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+
+        while (true) {
+            byte part = buffer.get();
+            value |= (part & 0x7F) << shift;
+
+            if ((part & 0x80) == 0) {
+                return value;
+            }
+
+            shift += 7;
+        }
+    }
+
+    /**
+     * Put an int that may be negative (e.g. the difference between two variable indexes).
+     */
+    public static void putSignedInt(ByteBuffer buffer, int value) {
+        putInt(buffer, (value << 1) ^ (value >> 31));
+    }
+
+    public static int getSignedInt(ByteBuffer buffer) {
+        int value = getInt(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -17,7 +17,10 @@
  */
 package org.linqs.psl.util;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Various static iterator/iterable utilities.
@@ -88,9 +91,37 @@ public final class IteratorUtils {
      */
     @SafeVarargs
     public static <T> Iterable<T> join(Iterable<? extends T>... collections) {
+        return new ConcatenationIterable<T>(Arrays.asList(collections));
+    }
+
+    /**
+     * Same as join(Iterable...), but for when the number of iterables is not known up front.
+     * The list itself should also not be changed during iteration.
+     */
+    public static <T> Iterable<T> join(List<? extends Iterable<? extends T>> collections) {
         return new ConcatenationIterable<T>(collections);
     }
 
+    /**
+     * Get an iterable that groups consecutive items into lists of (at most) batchSize items.
+     * A new list is allocated for each batch, so callers may hold onto them.
+     */
+    public static <T> Iterable<List<T>> batch(Iterable<T> baseIterable, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive, got: " + batchSize);
+        }
+
+        final Iterable<T> finalBaseIterable = baseIterable;
+        final int finalBatchSize = batchSize;
+
+        return new Iterable<List<T>>() {
+            @Override
+            public Iterator<List<T>> iterator() {
+                return new BatchIterator<T>(finalBaseIterable.iterator(), finalBatchSize);
+            }
+        };
+    }
+
     /**
      * Get an iterator that gives all the permutations of the numbers 0 - size.
      */
@@ -178,6 +209,40 @@ public final class IteratorUtils {
         public S map(T value);
     }
 
+    private static class BatchIterator<T> implements Iterator<List<T>> {
+        private Iterator<T> baseIterator;
+        private int batchSize;
+
+        public BatchIterator(Iterator<T> baseIterator, int batchSize) {
+            this.baseIterator = baseIterator;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return baseIterator.hasNext();
+        }
+
+        @Override
+        public List<T> next() {
+            if (!hasNext()) {
+                throw new IllegalStateException("Called next() when hasNext() == false.");
+            }
+
+            List<T> batch = new ArrayList<T>(batchSize);
+            while (batch.size() < batchSize && baseIterator.hasNext()) {
+                batch.add(baseIterator.next());
+            }
+
+            return batch;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     private static class FilterIterable<T> implements Iterable<T> {
         private Iterable<T> baseIterable;
         private FilterFunction<T> filter;
@@ -244,9 +309,9 @@ public final class IteratorUtils {
     }
 
     private static class ConcatenationIterable<T> implements Iterable<T> {
-        private Iterable<? extends T>[] collections;
+        private List<? extends Iterable<? extends T>> collections;
 
-        public ConcatenationIterable(Iterable<? extends T>[] collections) {
+        public ConcatenationIterable(List<? extends Iterable<? extends T>> collections) {
             this.collections = collections;
         }
 
@@ -257,11 +322,11 @@ public final class IteratorUtils {
     }
 
     private static class ConcatenationIterator<T> implements Iterator<T> {
-        private Iterable<? extends T>[] collections;
+        private List<? extends Iterable<? extends T>> collections;
         private int collectionIndex;
         private Iterator<? extends T> currentIterator;
 
-        public ConcatenationIterator(Iterable<? extends T>[] collections) {
+        public ConcatenationIterator(List<? extends Iterable<? extends T>> collections) {
             this.collections = collections;
             collectionIndex = -1;
             currentIterator = null;
@@ -279,12 +344,12 @@ public final class IteratorUtils {
             collectionIndex++;
 
             // If we are out of bounds, we are done.
-            if (collectionIndex >= collections.length) {
+            if (collectionIndex >= collections.size()) {
                 currentIterator = null;
                 return;
             }
 
-            currentIterator = collections[collectionIndex].iterator();
+            currentIterator = collections.get(collectionIndex).iterator();
 
             // This iterator may be empty, so just try to prime again.
             primeNext();
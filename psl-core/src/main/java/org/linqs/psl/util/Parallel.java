@@ -129,6 +129,28 @@ public final class Parallel {
         return count(0, end, 1, baseWorker);
     }
 
+    /**
+     * Count and call the given workers with each number in [start, end).
+     * Instead of copying a base worker, the provided workers are used (one per thread).
+     * This allows the same workers (and any state they hold) to be reused across many calls.
+     * Inclusive with start, exclusive with end.
+     * The caller is trusted to provide appropriate numbers.
+     */
+    public synchronized static RunTimings count(int start, int end, int increment, List<? extends Worker<Integer>> workers) {
+        initWorkers(workers);
+        RunTimings timings = countInternal(start, end, increment);
+        cleanupWorkers();
+
+        return timings;
+    }
+
+    /**
+     * Convenience count() that starts at 0, increments by 1, and uses the given workers.
+     */
+    public static RunTimings count(int end, List<? extends Worker<Integer>> workers) {
+        return count(0, end, 1, workers);
+    }
+
     private static RunTimings countInternal(int start, int end, int increment) {
         long iterations = 0;
         long parentWaitTimeMS = 0;
@@ -298,6 +320,29 @@ public final class Parallel {
         }
     }
 
+    /**
+     * Same as initWorkers(Worker), but use workers that the caller has already constructed.
+     */
+    private static <T> void initWorkers(List<? extends Worker<T>> workers) {
+        if (workers.size() != getNumThreads()) {
+            throw new IllegalArgumentException(String.format(
+                    "Expected exactly one worker per thread (%d), found %d.", getNumThreads(), workers.size()));
+        }
+
+        initPool();
+
+        workerQueue.clear();
+        allWorkers.clear();
+
+        for (int i = 0; i < workers.size(); i++) {
+            Worker<T> worker = workers.get(i);
+            worker.init(i);
+
+            allWorkers.add(worker);
+            workerQueue.add(worker);
+        }
+    }
+
     private static void cleanupWorkers() {
         for (Worker<?> worker : allWorkers) {
             worker.close();
@@ -0,0 +1,185 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2019 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.application.inference;
+
+import static org.junit.Assert.assertEquals;
+
+import org.linqs.psl.TestModel;
+import org.linqs.psl.config.Config;
+import org.linqs.psl.database.Database;
+import org.linqs.psl.model.atom.RandomVariableAtom;
+import org.linqs.psl.model.predicate.StandardPredicate;
+import org.linqs.psl.model.rule.arithmetic.UnweightedArithmeticRule;
+import org.linqs.psl.model.rule.arithmetic.expression.ArithmeticRuleExpression;
+import org.linqs.psl.model.rule.arithmetic.expression.SummationAtom;
+import org.linqs.psl.model.rule.arithmetic.expression.SummationAtomOrAtom;
+import org.linqs.psl.model.rule.arithmetic.expression.SummationVariable;
+import org.linqs.psl.model.rule.arithmetic.expression.SummationVariableOrTerm;
+import org.linqs.psl.model.rule.arithmetic.expression.coefficient.Coefficient;
+import org.linqs.psl.model.rule.arithmetic.expression.coefficient.ConstantNumber;
+import org.linqs.psl.model.term.Variable;
+import org.linqs.psl.reasoner.admm.ADMMReasoner;
+import org.linqs.psl.reasoner.function.FunctionComparator;
+import org.linqs.psl.reasoner.term.streaming.StreamingTermStore;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ADMMStreamingInferenceTest {
+    /**
+     * A quick test that only checks to see if ADMMStreamingInference is running.
+     */
+    @Test
+    public void baseTest() {
+        TestModel.ModelInformation info = TestModel.getModel();
+
+        Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+        Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+        ADMMStreamingInference mpe = new ADMMStreamingInference(info.model, inferDB);
+
+        mpe.inference();
+        mpe.close();
+        inferDB.close();
+    }
+
+    /**
+     * Streaming ADMM should find (close to) the same solution as in-memory ADMM.
+     * Small pages are used so that the terms are spread out over many pages.
+     */
+    @Test
+    public void testMatchesInMemory() {
+        Map<String, Float> expected = infer(false);
+
+        Config.setProperty(StreamingTermStore.PAGE_SIZE_KEY, 3);
+        Config.setProperty(StreamingTermStore.COMPACT_PAGES_KEY, true);
+
+        try {
+            Map<String, Float> actual = infer(true);
+
+            assertEquals(expected.size(), actual.size());
+            for (Map.Entry<String, Float> entry : expected.entrySet()) {
+                assertEquals(entry.getKey(), entry.getValue().floatValue(), actual.get(entry.getKey()).floatValue(), 0.01f);
+            }
+        } finally {
+            Config.clearProperty(StreamingTermStore.PAGE_SIZE_KEY);
+            Config.clearProperty(StreamingTermStore.COMPACT_PAGES_KEY);
+        }
+    }
+
+    /**
+     * Over-relaxation changes the path that streaming ADMM takes, but not where it ends up.
+     */
+    @Test
+    public void testOverRelaxation() {
+        Map<String, Float> expected = infer(false);
+
+        Config.setProperty(ADMMReasoner.OVER_RELAXATION_KEY, 1.5f);
+        Config.setProperty(StreamingTermStore.PAGE_SIZE_KEY, 3);
+
+        try {
+            Map<String, Float> actual = infer(true);
+
+            assertEquals(expected.size(), actual.size());
+            for (Map.Entry<String, Float> entry : expected.entrySet()) {
+                assertEquals(entry.getKey(), entry.getValue().floatValue(), actual.get(entry.getKey()).floatValue(), 0.01f);
+            }
+        } finally {
+            Config.clearProperty(ADMMReasoner.OVER_RELAXATION_KEY);
+            Config.clearProperty(StreamingTermStore.PAGE_SIZE_KEY);
+        }
+    }
+
+    /**
+     * Hard constraints (here with a summation) are kept in the streaming store and enforced.
+     */
+    @Test
+    public void testFunctionalConstraint() {
+        TestModel.ModelInformation info = TestModel.getModel();
+
+        // Friends(A, +B) = 1.0
+        List<Coefficient> coefficients = Arrays.asList(
+            (Coefficient)(new ConstantNumber(1.0f))
+        );
+
+        List<SummationAtomOrAtom> atoms = Arrays.asList(
+            (SummationAtomOrAtom)(new SummationAtom(
+                info.predicates.get("Friends"),
+                new SummationVariableOrTerm[]{new Variable("A"), new SummationVariable("B")}
+            ))
+        );
+
+        info.model.addRule(new UnweightedArithmeticRule(
+            new ArithmeticRuleExpression(coefficients, atoms, FunctionComparator.EQ, new ConstantNumber(1.0f))
+        ));
+
+        Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+        Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+        ADMMStreamingInference mpe = new ADMMStreamingInference(info.model, inferDB);
+
+        mpe.inference(false);
+
+        Map<String, Float> totals = new HashMap<String, Float>();
+        for (RandomVariableAtom atom : inferDB.getAllGroundRandomVariableAtoms(info.predicates.get("Friends"))) {
+            String person = atom.getArguments()[0].toString();
+            if (!totals.containsKey(person)) {
+                totals.put(person, Float.valueOf(0.0f));
+            }
+
+            totals.put(person, Float.valueOf(totals.get(person).floatValue() + atom.getValue()));
+        }
+
+        for (Map.Entry<String, Float> entry : totals.entrySet()) {
+            assertEquals(entry.getKey(), 1.0f, entry.getValue().floatValue(), 0.01f);
+        }
+
+        mpe.close();
+        inferDB.close();
+    }
+
+    private Map<String, Float> infer(boolean streaming) {
+        TestModel.ModelInformation info = TestModel.getModel();
+
+        Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+        Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+
+        InferenceApplication mpe = null;
+        if (streaming) {
+            mpe = new ADMMStreamingInference(info.model, inferDB);
+        } else {
+            mpe = new MPEInference(info.model, inferDB);
+        }
+
+        mpe.inference(false);
+
+        Map<String, Float> values = new HashMap<String, Float>();
+        for (RandomVariableAtom atom : inferDB.getAllGroundRandomVariableAtoms(info.predicates.get("Friends"))) {
+            values.put(atom.toString(), Float.valueOf(atom.getValue()));
+        }
+
+        mpe.close();
+        inferDB.close();
+
+        return values;
+    }
+}
@@ -17,16 +17,36 @@
  */
 package org.linqs.psl.application.inference;
 
+import static org.junit.Assert.assertEquals;
+
 import org.linqs.psl.TestModel;
+import org.linqs.psl.config.Config;
 import org.linqs.psl.application.inference.DCDStreamingInference;
 import org.linqs.psl.database.Database;
 import org.linqs.psl.database.DatabaseTestUtil;
 import org.linqs.psl.database.rdbms.driver.DatabaseDriver;
+import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.predicate.StandardPredicate;
+import org.linqs.psl.model.rule.arithmetic.UnweightedArithmeticRule;
+import org.linqs.psl.model.rule.arithmetic.expression.ArithmeticRuleExpression;
+import org.linqs.psl.model.rule.arithmetic.expression.SummationAtom;
+import org.linqs.psl.model.rule.arithmetic.expression.SummationAtomOrAtom;
+import org.linqs.psl.model.rule.arithmetic.expression.SummationVariable;
+import org.linqs.psl.model.rule.arithmetic.expression.SummationVariableOrTerm;
+import org.linqs.psl.model.rule.arithmetic.expression.coefficient.Coefficient;
+import org.linqs.psl.model.rule.arithmetic.expression.coefficient.ConstantNumber;
+import org.linqs.psl.model.term.Variable;
+import org.linqs.psl.reasoner.dcd.DCDReasoner;
+import org.linqs.psl.reasoner.function.FunctionComparator;
+import org.linqs.psl.reasoner.term.streaming.StreamingTermStore;
 
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class DCDStreamingInferenceTest {
@@ -67,4 +87,135 @@ public class DCDStreamingInferenceTest {
         mpe.close();
         inferDB.close();
     }
+
+    /**
+     * Same as testBase(), but using memory-mapped pages.
+     */
+    @Test
+    public void testMemoryMapped() {
+        Config.setProperty(StreamingTermStore.MEMORY_MAPPED_KEY, true);
+
+        try {
+            TestModel.ModelInformation info = TestModel.getModel();
+
+            Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+            Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+            DCDStreamingInference mpe = new DCDStreamingInference(info.model, inferDB);
+
+            mpe.inference();
+            mpe.close();
+            inferDB.close();
+        } finally {
+            Config.clearProperty(StreamingTermStore.MEMORY_MAPPED_KEY);
+        }
+    }
+
+    /**
+     * Same as testBase(), but with small pages that are processed in parallel.
+     */
+    @Test
+    public void testParallel() {
+        Config.setProperty(StreamingTermStore.PARALLEL_KEY, true);
+        Config.setProperty(StreamingTermStore.PAGE_SIZE_KEY, 2);
+
+        try {
+            TestModel.ModelInformation info = TestModel.getModel();
+
+            Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+            Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+            DCDStreamingInference mpe = new DCDStreamingInference(info.model, inferDB);
+
+            mpe.inference();
+            mpe.close();
+            inferDB.close();
+        } finally {
+            Config.clearProperty(StreamingTermStore.PARALLEL_KEY);
+            Config.clearProperty(StreamingTermStore.PAGE_SIZE_KEY);
+        }
+    }
+
+    /**
+     * Same as testBase(), but with compact and compressed term pages.
+     */
+    @Test
+    public void testCompactPages() {
+        Config.setProperty(StreamingTermStore.COMPACT_PAGES_KEY, true);
+        Config.setProperty(StreamingTermStore.COMPRESS_PAGES_KEY, true);
+        Config.setProperty(StreamingTermStore.PAGE_SIZE_KEY, 2);
+
+        try {
+            TestModel.ModelInformation info = TestModel.getModel();
+
+            Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+            Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+            DCDStreamingInference mpe = new DCDStreamingInference(info.model, inferDB);
+
+            mpe.inference();
+            mpe.close();
+            inferDB.close();
+        } finally {
+            Config.clearProperty(StreamingTermStore.COMPACT_PAGES_KEY);
+            Config.clearProperty(StreamingTermStore.COMPRESS_PAGES_KEY);
+            Config.clearProperty(StreamingTermStore.PAGE_SIZE_KEY);
+        }
+    }
+
+    /**
+     * Equality constraints (here with a summation) become a pair of squared hinge penalties,
+     * so they should be (approximately) enforced.
+     * Without the constraint, each person's friendship values add up to more than 2.
+     */
+    @Test
+    public void testFunctionalConstraint() {
+        // Penalties need more passes than the default (and no early exit) to settle.
+        Config.setProperty(DCDReasoner.MAX_ITER_KEY, 2000);
+        Config.setProperty(DCDReasoner.OBJECTIVE_BREAK_KEY, false);
+
+        try {
+            TestModel.ModelInformation info = TestModel.getModel();
+
+            // Friends(A, +B) = 1.0
+            List<Coefficient> coefficients = Arrays.asList(
+                (Coefficient)(new ConstantNumber(1.0f))
+            );
+
+            List<SummationAtomOrAtom> atoms = Arrays.asList(
+                (SummationAtomOrAtom)(new SummationAtom(
+                    info.predicates.get("Friends"),
+                    new SummationVariableOrTerm[]{new Variable("A"), new SummationVariable("B")}
+                ))
+            );
+
+            info.model.addRule(new UnweightedArithmeticRule(
+                new ArithmeticRuleExpression(coefficients, atoms, FunctionComparator.EQ, new ConstantNumber(1.0f))
+            ));
+
+            Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+            Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+            DCDStreamingInference mpe = new DCDStreamingInference(info.model, inferDB);
+
+            mpe.inference(false);
+
+            Map<String, Float> totals = new HashMap<String, Float>();
+            for (RandomVariableAtom atom : inferDB.getAllGroundRandomVariableAtoms(info.predicates.get("Friends"))) {
+                String person = atom.getArguments()[0].toString();
+                if (!totals.containsKey(person)) {
+                    totals.put(person, Float.valueOf(0.0f));
+                }
+
+                totals.put(person, Float.valueOf(totals.get(person).floatValue() + atom.getValue()));
+            }
+
+            assertEquals(5, totals.size());
+            for (Map.Entry<String, Float> entry : totals.entrySet()) {
+                assertEquals(entry.getKey(), 1.0f, entry.getValue().floatValue(), 0.01f);
+            }
+
+            mpe.close();
+            inferDB.close();
+        } finally {
+            Config.clearProperty(DCDReasoner.MAX_ITER_KEY);
+            Config.clearProperty(DCDReasoner.OBJECTIVE_BREAK_KEY);
+        }
+    }
 }
@@ -19,19 +19,23 @@ package org.linqs.psl.application.inference;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import org.linqs.psl.TestModel;
 import org.linqs.psl.application.inference.MPEInference;
+import org.linqs.psl.config.Config;
 import org.linqs.psl.database.Database;
 import org.linqs.psl.database.DatabaseTestUtil;
 import org.linqs.psl.database.rdbms.driver.DatabaseDriver;
+import org.linqs.psl.grounding.MemoryGroundRuleStore;
 import org.linqs.psl.model.Model;
 import org.linqs.psl.model.atom.QueryAtom;
 import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.formula.Conjunction;
 import org.linqs.psl.model.formula.Implication;
 import org.linqs.psl.model.predicate.StandardPredicate;
+import org.linqs.psl.model.rule.Rule;
 import org.linqs.psl.model.rule.arithmetic.WeightedArithmeticRule;
 import org.linqs.psl.model.rule.arithmetic.expression.ArithmeticRuleExpression;
 import org.linqs.psl.model.rule.arithmetic.expression.SummationAtomOrAtom;
@@ -39,6 +43,8 @@ import org.linqs.psl.model.rule.arithmetic.expression.coefficient.Coefficient;
 import org.linqs.psl.model.rule.arithmetic.expression.coefficient.ConstantNumber;
 import org.linqs.psl.model.rule.logical.WeightedLogicalRule;
 import org.linqs.psl.model.term.Variable;
+import org.linqs.psl.reasoner.admm.term.ADMMObjectiveTerm;
+import org.linqs.psl.reasoner.admm.term.ADMMTermStore;
 import org.linqs.psl.reasoner.function.FunctionComparator;
 
 import org.junit.After;
@@ -46,8 +52,10 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class MPEInferenceTest {
@@ -68,6 +76,91 @@ public class MPEInferenceTest {
         inferDB.close();
     }
 
+    /**
+     * Make sure that grounding directly into terms makes the same terms (and so infers the same values),
+     * and that the terms do not hold onto the ground rules.
+     */
+    @Test
+    public void testFusedGrounding() {
+        Map<String, Float> expectedValues = new HashMap<String, Float>();
+        int expectedTermCount = runFusedGrounding(expectedValues);
+
+        Config.setProperty(InferenceApplication.FUSE_GROUNDING_KEY, true);
+        try {
+            Map<String, Float> values = new HashMap<String, Float>();
+            assertEquals(expectedTermCount, runFusedGrounding(values));
+
+            assertEquals(expectedValues.size(), values.size());
+            for (Map.Entry<String, Float> entry : expectedValues.entrySet()) {
+                assertTrue(values.containsKey(entry.getKey()));
+                assertEquals(entry.getValue().floatValue(), values.get(entry.getKey()).floatValue(), 0.01f);
+            }
+        } finally {
+            Config.clearProperty(InferenceApplication.FUSE_GROUNDING_KEY);
+        }
+    }
+
+    /**
+     * Fused grounding does not keep ground rules, so it cannot be combined with a configured ground rule store.
+     */
+    @Test
+    public void testFusedGroundingWithGroundRuleStore() {
+        Config.setProperty(InferenceApplication.FUSE_GROUNDING_KEY, true);
+        Config.setProperty(InferenceApplication.GROUND_RULE_STORE_KEY, MemoryGroundRuleStore.class.getName());
+
+        TestModel.ModelInformation info = TestModel.getModel();
+        Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+        Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+
+        try {
+            new MPEInference(info.model, inferDB);
+            fail("Fused grounding with a configured ground rule store should be rejected.");
+        } catch (IllegalArgumentException ex) {
+            // Expected
+        } finally {
+            Config.clearProperty(InferenceApplication.FUSE_GROUNDING_KEY);
+            Config.clearProperty(InferenceApplication.GROUND_RULE_STORE_KEY);
+            inferDB.close();
+        }
+    }
+
+    /**
+     * Run inference on the test model, put the value of each random variable into |values|,
+     * and return the number of terms.
+     */
+    private int runFusedGrounding(Map<String, Float> values) {
+        boolean fused = Config.getBoolean(InferenceApplication.FUSE_GROUNDING_KEY, InferenceApplication.FUSE_GROUNDING_DEFAULT);
+        TestModel.ModelInformation info = TestModel.getModel();
+
+        Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+        Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+        MPEInference mpe = new MPEInference(info.model, inferDB);
+
+        mpe.inference();
+        int termCount = mpe.getTermStore().size();
+
+        // The per-rule counts are kept even when the ground rules are not.
+        int groundRuleCount = 0;
+        for (Rule rule : info.model.getRules()) {
+            groundRuleCount += mpe.getGroundRuleStore().count(rule);
+        }
+        assertTrue(groundRuleCount > 0);
+        assertEquals(mpe.getGroundRuleStore().size(), groundRuleCount);
+
+        for (ADMMObjectiveTerm term : (ADMMTermStore)mpe.getTermStore()) {
+            assertEquals(fused, term.getGroundRule() == null);
+        }
+
+        for (RandomVariableAtom atom : inferDB.getAllCachedRandomVariableAtoms()) {
+            values.put(atom.toString(), atom.getValue());
+        }
+
+        mpe.close();
+        inferDB.close();
+
+        return termCount;
+    }
+
     /**
      * Same as testBase(), but using postgres.
      */
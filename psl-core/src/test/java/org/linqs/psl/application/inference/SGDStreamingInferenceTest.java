@@ -18,11 +18,13 @@
 package org.linqs.psl.application.inference;
 
 import org.linqs.psl.TestModel;
+import org.linqs.psl.config.Config;
 import org.linqs.psl.application.inference.SGDStreamingInference;
 import org.linqs.psl.database.Database;
 import org.linqs.psl.database.DatabaseTestUtil;
 import org.linqs.psl.database.rdbms.driver.DatabaseDriver;
 import org.linqs.psl.model.predicate.StandardPredicate;
+import org.linqs.psl.reasoner.term.streaming.StreamingTermStore;
 
 import org.junit.Test;
 
@@ -67,4 +69,100 @@ public class SGDStreamingInferenceTest {
         mpe.close();
         inferDB.close();
     }
+
+    /**
+     * Same as testBase(), but using memory-mapped pages.
+     */
+    @Test
+    public void testMemoryMapped() {
+        Config.setProperty(StreamingTermStore.MEMORY_MAPPED_KEY, true);
+
+        try {
+            TestModel.ModelInformation info = TestModel.getModel();
+
+            Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+            Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+            SGDStreamingInference mpe = new SGDStreamingInference(info.model, inferDB);
+
+            mpe.inference();
+            mpe.close();
+            inferDB.close();
+        } finally {
+            Config.clearProperty(StreamingTermStore.MEMORY_MAPPED_KEY);
+        }
+    }
+
+    /**
+     * Same as testBase(), but with small pages that are processed in parallel.
+     */
+    @Test
+    public void testParallel() {
+        Config.setProperty(StreamingTermStore.PARALLEL_KEY, true);
+        Config.setProperty(StreamingTermStore.PAGE_SIZE_KEY, 2);
+
+        try {
+            TestModel.ModelInformation info = TestModel.getModel();
+
+            Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+            Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+            SGDStreamingInference mpe = new SGDStreamingInference(info.model, inferDB);
+
+            mpe.inference();
+            mpe.close();
+            inferDB.close();
+        } finally {
+            Config.clearProperty(StreamingTermStore.PARALLEL_KEY);
+            Config.clearProperty(StreamingTermStore.PAGE_SIZE_KEY);
+        }
+    }
+
+    /**
+     * Same as testBase(), but with small pages that are read ahead on a background thread.
+     */
+    @Test
+    public void testPrefetch() {
+        Config.setProperty(StreamingTermStore.PREFETCH_KEY, true);
+        Config.setProperty(StreamingTermStore.PAGE_SIZE_KEY, 2);
+
+        try {
+            TestModel.ModelInformation info = TestModel.getModel();
+
+            Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+            Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+            SGDStreamingInference mpe = new SGDStreamingInference(info.model, inferDB);
+
+            mpe.inference();
+            mpe.close();
+            inferDB.close();
+        } finally {
+            Config.clearProperty(StreamingTermStore.PREFETCH_KEY);
+            Config.clearProperty(StreamingTermStore.PAGE_SIZE_KEY);
+        }
+    }
+
+    /**
+     * Same as testBase(), but with compact and compressed term pages.
+     */
+    @Test
+    public void testCompactPages() {
+        Config.setProperty(StreamingTermStore.COMPACT_PAGES_KEY, true);
+        Config.setProperty(StreamingTermStore.COMPRESS_PAGES_KEY, true);
+        Config.setProperty(StreamingTermStore.PAGE_SIZE_KEY, 2);
+
+        try {
+            TestModel.ModelInformation info = TestModel.getModel();
+
+            Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+            Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+            SGDStreamingInference mpe = new SGDStreamingInference(info.model, inferDB);
+
+            mpe.inference();
+            mpe.close();
+            inferDB.close();
+        } finally {
+            Config.clearProperty(StreamingTermStore.COMPACT_PAGES_KEY);
+            Config.clearProperty(StreamingTermStore.COMPRESS_PAGES_KEY);
+            Config.clearProperty(StreamingTermStore.PAGE_SIZE_KEY);
+        }
+    }
 }
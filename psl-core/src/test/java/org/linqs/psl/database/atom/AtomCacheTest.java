@@ -0,0 +1,114 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2019 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.database.atom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.linqs.psl.model.atom.GroundAtom;
+import org.linqs.psl.model.atom.QueryAtom;
+import org.linqs.psl.model.atom.RandomVariableAtom;
+import org.linqs.psl.model.predicate.StandardPredicate;
+import org.linqs.psl.model.term.Constant;
+import org.linqs.psl.model.term.ConstantType;
+import org.linqs.psl.model.term.UniqueIntID;
+import org.linqs.psl.model.term.UniqueStringID;
+import org.linqs.psl.util.Parallel;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class AtomCacheTest {
+    @Test
+    public void testGetCachedAtom() {
+        StandardPredicate intPredicate = StandardPredicate.get("AtomCacheTest_Int", ConstantType.UniqueIntID, ConstantType.UniqueIntID);
+        StandardPredicate stringPredicate = StandardPredicate.get("AtomCacheTest_String", ConstantType.UniqueStringID);
+
+        AtomCache cache = new AtomCache(null);
+
+        // Negative ids should not bleed into the other packed id.
+        Constant[] intArgs = new Constant[]{new UniqueIntID(-1), new UniqueIntID(2)};
+        Constant[] stringArgs = new Constant[]{new UniqueStringID("a")};
+
+        GroundAtom intAtom = cache.instantiateRandomVariableAtom(intPredicate, intArgs, 0.5f);
+        GroundAtom stringAtom = cache.instantiateObservedAtom(stringPredicate, stringArgs, 1.0f);
+
+        assertSame(intAtom, cache.getCachedAtom(new QueryAtom(intPredicate, new UniqueIntID(-1), new UniqueIntID(2))));
+        assertSame(stringAtom, cache.getCachedAtom(new QueryAtom(stringPredicate, new UniqueStringID("a"))));
+
+        assertNull(cache.getCachedAtom(new QueryAtom(intPredicate, new UniqueIntID(2), new UniqueIntID(-1))));
+        assertNull(cache.getCachedAtom(new QueryAtom(intPredicate, new UniqueIntID(-1), new UniqueIntID(-1))));
+        assertNull(cache.getCachedAtom(new QueryAtom(stringPredicate, new UniqueStringID("b"))));
+
+        // Instantiating again gives back the cached atom.
+        assertSame(intAtom, cache.instantiateRandomVariableAtom(intPredicate, intArgs, 0.0f));
+        assertEquals(1, cache.getRVACount());
+
+        try {
+            cache.instantiateObservedAtom(intPredicate, intArgs, 0.0f);
+            fail("IllegalStateException not thrown as expected.");
+        } catch (IllegalStateException ex) {
+            // Expected
+        }
+
+        int count = 0;
+        for (GroundAtom atom : cache.getCachedAtoms()) {
+            count++;
+        }
+        assertEquals(2, count);
+
+        assertTrue(cache.removeCachedAtom(new QueryAtom(intPredicate, intArgs)));
+        assertNull(cache.getCachedAtom(new QueryAtom(intPredicate, intArgs)));
+        assertEquals(0, cache.getRVACount());
+    }
+
+    @Test
+    public void testConcurrentInstantiation() {
+        final StandardPredicate predicate = StandardPredicate.get("AtomCacheTest_Concurrent", ConstantType.UniqueIntID);
+        final AtomCache cache = new AtomCache(null);
+
+        final int numAtoms = 100;
+        final int numRepeats = 50;
+        final AtomicReferenceArray<GroundAtom> firstSeen = new AtomicReferenceArray<GroundAtom>(numAtoms);
+
+        Parallel.count(numAtoms * numRepeats, new Parallel.Worker<Integer>() {
+            @Override
+            public void work(int index, Integer item) {
+                int id = item.intValue() % numAtoms;
+                GroundAtom atom = cache.instantiateRandomVariableAtom(predicate, new Constant[]{new UniqueIntID(id)}, 0.0f);
+
+                firstSeen.compareAndSet(id, null, atom);
+                if (firstSeen.get(id) != atom) {
+                    throw new IllegalStateException("Got two different atoms for " + atom + ".");
+                }
+            }
+        });
+
+        assertEquals(numAtoms, cache.getRVACount());
+
+        for (int i = 0; i < numAtoms; i++) {
+            GroundAtom atom = cache.getCachedAtom(new QueryAtom(predicate, new UniqueIntID(i)));
+            assertTrue(atom instanceof RandomVariableAtom);
+            assertSame(firstSeen.get(i), atom);
+        }
+    }
+}
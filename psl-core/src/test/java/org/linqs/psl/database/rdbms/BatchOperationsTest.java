@@ -24,11 +24,13 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.linqs.psl.TestModel;
+import org.linqs.psl.config.Config;
 import org.linqs.psl.database.Database;
 import org.linqs.psl.model.Model;
 import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.predicate.StandardPredicate;
 import org.linqs.psl.model.term.UniqueStringID;
+import org.linqs.psl.util.MathUtils;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -80,6 +82,51 @@ public class BatchOperationsTest {
         database.commit(atoms);
     }
 
+    @Test
+    public void testStagedCommit() {
+        // Reopen without any closed predicates, so we can commit to more than one predicate.
+        database.close();
+        database = model.dataStore.getDatabase(model.targetPartition, new HashSet<StandardPredicate>(), model.observationPartition);
+
+        StandardPredicate friends = model.predicates.get("Friends");
+        StandardPredicate nice = model.predicates.get("Nice");
+
+        List<RandomVariableAtom> atoms = new ArrayList<RandomVariableAtom>();
+
+        // An atom that is already in the target partition.
+        RandomVariableAtom existingAtom = (RandomVariableAtom)database.getAtom(friends, new UniqueStringID("Alice"), new UniqueStringID("Bob"));
+        existingAtom.setValue(0.25f);
+        atoms.add(existingAtom);
+
+        for (int i = 0; i < 20; i++) {
+            RandomVariableAtom atom = (RandomVariableAtom)database.getAtom(friends, new UniqueStringID("a\t" + i), new UniqueStringID("b\\" + i));
+            atom.setValue(i / 20.0f);
+            atoms.add(atom);
+
+            atom = (RandomVariableAtom)database.getAtom(nice, new UniqueStringID("c" + i));
+            atom.setValue(i / 40.0f);
+            atoms.add(atom);
+        }
+
+        Config.setProperty(RDBMSDatabase.BULK_COMMIT_SIZE_KEY, 1);
+        try {
+            database.close();
+            database = model.dataStore.getDatabase(model.targetPartition, new HashSet<StandardPredicate>(), model.observationPartition);
+            database.commit(atoms);
+        } finally {
+            Config.clearProperty(RDBMSDatabase.BULK_COMMIT_SIZE_KEY);
+        }
+
+        database.close();
+        database = model.dataStore.getDatabase(model.targetPartition, new HashSet<StandardPredicate>(), model.observationPartition);
+
+        assertEquals(0.25, database.getAtom(friends, new UniqueStringID("Alice"), new UniqueStringID("Bob")).getValue(), MathUtils.EPSILON);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i / 20.0, database.getAtom(friends, new UniqueStringID("a\t" + i), new UniqueStringID("b\\" + i)).getValue(), MathUtils.EPSILON);
+            assertEquals(i / 40.0, database.getAtom(nice, new UniqueStringID("c" + i)).getValue(), MathUtils.EPSILON);
+        }
+    }
+
     @After
     public void cleanup() {
         database.close();
@@ -18,14 +18,32 @@
 package org.linqs.psl.database.rdbms;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import org.linqs.psl.config.Config;
 import org.linqs.psl.database.DataStoreTest;
+import org.linqs.psl.database.Database;
+import org.linqs.psl.database.loading.DelimitedDataFile;
 import org.linqs.psl.database.loading.Inserter;
 import org.linqs.psl.database.rdbms.driver.DatabaseDriver;
+import org.linqs.psl.model.atom.GroundAtom;
+import org.linqs.psl.model.atom.ObservedAtom;
+import org.linqs.psl.model.atom.RandomVariableAtom;
+import org.linqs.psl.model.term.Constant;
+import org.linqs.psl.model.term.StringAttribute;
+import org.linqs.psl.model.term.UniqueIntID;
 import org.linqs.psl.util.MathUtils;
 
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
 public abstract class RDBMSDataStoreTest extends DataStoreTest {
     @Test
     public void testGetTableStats() {
@@ -66,5 +84,312 @@ public abstract class RDBMSDataStoreTest extends DataStoreTest {
         assertEquals(stats.getCardinality("STRING_1"), COUNT / 4);
     }
 
+    @Test
+    public void testPreloadPredicates() {
+        if (datastore == null) {
+            return;
+        }
+
+        datastore.registerPredicate(p1);
+
+        final int COUNT = 20;
+
+        Inserter inserter = datastore.getInserter(p1, datastore.getPartition("0"));
+        for (int i = 0; i < COUNT; i++) {
+            inserter.insertValue(0.5, new UniqueIntID(i), new UniqueIntID(i + 1));
+        }
+
+        inserter = datastore.getInserter(p1, datastore.getPartition("1"));
+        inserter.insertValue(0.25, new UniqueIntID(-1), new UniqueIntID(-2));
+
+        // Big enough to load, too small to load, and disabled.
+        int[] preloadSizes = new int[]{100, 10, 0};
+        for (int preloadSize : preloadSizes) {
+            Config.setProperty(RDBMSDatabase.PRELOAD_MAX_SIZE_KEY, preloadSize);
+
+            try {
+                Database db = datastore.getDatabase(datastore.getPartition("2"), datastore.getPartition("1"));
+
+                // An atom in the read partition.
+                GroundAtom atom = db.getAtom(p1, new UniqueIntID(-1), new UniqueIntID(-2));
+                assertTrue(atom instanceof ObservedAtom);
+                assertEquals(0.25, atom.getValue(), MathUtils.EPSILON);
+
+                // Atoms not in the database.
+                assertFalse(db.hasAtom(p1, new UniqueIntID(0), new UniqueIntID(1)));
+                atom = db.getAtom(p1, new UniqueIntID(0), new UniqueIntID(1));
+                assertTrue(atom instanceof RandomVariableAtom);
+                assertEquals(0.0, atom.getValue(), MathUtils.EPSILON);
+
+                db.close();
+
+                // Now with partition 0 as the write partition.
+                db = datastore.getDatabase(datastore.getPartition("0"), datastore.getPartition("1"));
+                for (int i = 0; i < COUNT; i++) {
+                    atom = db.getAtom(p1, new UniqueIntID(i), new UniqueIntID(i + 1));
+                    assertTrue(atom instanceof RandomVariableAtom);
+                    assertEquals(0.5, atom.getValue(), MathUtils.EPSILON);
+                }
+
+                db.close();
+            } finally {
+                Config.clearProperty(RDBMSDatabase.PRELOAD_MAX_SIZE_KEY);
+            }
+        }
+    }
+
+    @Test
+    public void testPrefetchAtoms() {
+        if (datastore == null) {
+            return;
+        }
+
+        datastore.registerPredicate(p1);
+
+        final int COUNT = 20;
+
+        Inserter inserter = datastore.getInserter(p1, datastore.getPartition("0"));
+        for (int i = 0; i < COUNT; i++) {
+            inserter.insertValue(0.5, new UniqueIntID(i), new UniqueIntID(i + 1));
+        }
+
+        inserter = datastore.getInserter(p1, datastore.getPartition("1"));
+        inserter.insertValue(0.25, new UniqueIntID(-1), new UniqueIntID(-2));
+
+        // Turn off preloading and use an odd query size so that the batches get padded.
+        Config.setProperty(RDBMSDatabase.PRELOAD_MAX_SIZE_KEY, 0);
+        Config.setProperty(RDBMSDatabase.PREFETCH_QUERY_SIZE_KEY, 7);
+
+        try {
+            Database db = datastore.getDatabase(datastore.getPartition("0"), datastore.getPartition("1"));
+
+            List<Constant[]> arguments = new ArrayList<Constant[]>();
+            for (int i = -1; i < COUNT + 5; i++) {
+                arguments.add(new Constant[]{new UniqueIntID(i), new UniqueIntID(i + 1)});
+            }
+            arguments.add(new Constant[]{new UniqueIntID(-1), new UniqueIntID(-2)});
+
+            db.prefetchAtoms(p1, arguments);
+
+            for (int i = 0; i < COUNT; i++) {
+                assertTrue(db.hasCachedAtom(p1, new UniqueIntID(i), new UniqueIntID(i + 1)));
+                GroundAtom atom = db.getAtom(p1, new UniqueIntID(i), new UniqueIntID(i + 1));
+                assertTrue(atom instanceof RandomVariableAtom);
+                assertEquals(0.5, atom.getValue(), MathUtils.EPSILON);
+            }
+
+            GroundAtom atom = db.getAtom(p1, new UniqueIntID(-1), new UniqueIntID(-2));
+            assertTrue(atom instanceof ObservedAtom);
+            assertEquals(0.25, atom.getValue(), MathUtils.EPSILON);
+
+            // Atoms not in the database.
+            assertFalse(db.hasCachedAtom(p1, new UniqueIntID(-1), new UniqueIntID(0)));
+            assertFalse(db.hasAtom(p1, new UniqueIntID(-1), new UniqueIntID(0)));
+            atom = db.getAtom(p1, new UniqueIntID(COUNT + 1), new UniqueIntID(COUNT + 2));
+            assertTrue(atom instanceof RandomVariableAtom);
+            assertEquals(0.0, atom.getValue(), MathUtils.EPSILON);
+
+            db.close();
+        } finally {
+            Config.clearProperty(RDBMSDatabase.PRELOAD_MAX_SIZE_KEY);
+            Config.clearProperty(RDBMSDatabase.PREFETCH_QUERY_SIZE_KEY);
+        }
+    }
+
+    /**
+     * Atoms that a prefetch found missing should not stay missing once their rows change,
+     * here by being moved into the write partition.
+     */
+    @Test
+    public void testPrefetchAtomsAfterMove() {
+        if (datastore == null) {
+            return;
+        }
+
+        datastore.registerPredicate(p1);
+
+        Inserter inserter = datastore.getInserter(p1, datastore.getPartition("3"));
+        inserter.insertValue(0.75, new UniqueIntID(1), new UniqueIntID(2));
+
+        Config.setProperty(RDBMSDatabase.PRELOAD_MAX_SIZE_KEY, 0);
+
+        try {
+            Database db = datastore.getDatabase(datastore.getPartition("0"), datastore.getPartition("1"));
+
+            List<Constant[]> arguments = new ArrayList<Constant[]>();
+            arguments.add(new Constant[]{new UniqueIntID(1), new UniqueIntID(2)});
+
+            // Partition 3 is not a part of this database, so the atom is not found.
+            db.prefetchAtoms(p1, arguments);
+            assertFalse(db.hasCachedAtom(p1, new UniqueIntID(1), new UniqueIntID(2)));
+
+            db.moveToWritePartition(p1, datastore.getPartition("3").getID());
+
+            GroundAtom atom = db.getAtom(p1, new UniqueIntID(1), new UniqueIntID(2));
+            assertTrue(atom instanceof RandomVariableAtom);
+            assertEquals(0.75, atom.getValue(), MathUtils.EPSILON);
+
+            db.close();
+        } finally {
+            Config.clearProperty(RDBMSDatabase.PRELOAD_MAX_SIZE_KEY);
+        }
+    }
+
+    @Test
+    public void testLoadDelimitedData() throws IOException {
+        if (datastore == null) {
+            return;
+        }
+
+        datastore.registerPredicate(p1);
+        datastore.registerPredicate(p2);
+
+        final int COUNT = 50;
+
+        File idFile = File.createTempFile("psl_load_", ".txt");
+        File truthFile = File.createTempFile("psl_load_truth_", ".txt");
+        File multiCharFile = File.createTempFile("psl_load_multi_", ".txt");
+        File spaceFile = File.createTempFile("psl_load_space_", ".txt");
+
+        try {
+            try (
+                PrintWriter idWriter = new PrintWriter(idFile);
+                PrintWriter truthWriter = new PrintWriter(truthFile);
+                PrintWriter multiCharWriter = new PrintWriter(multiCharFile);
+                PrintWriter spaceWriter = new PrintWriter(spaceFile);
+            ) {
+                for (int i = 0; i < COUNT; i++) {
+                    idWriter.println(i + "\t" + (i + 1));
+                    truthWriter.println("a" + i + "\tb" + i + "\t" + (i / (double)COUNT));
+                    multiCharWriter.println("c" + i + "::d" + i);
+                    spaceWriter.println("e" + i + " f" + i);
+                }
+            }
+
+            datastore.getInserter(p1, datastore.getPartition("0")).loadDelimitedData(idFile.getPath());
+            datastore.getInserter(p2, datastore.getPartition("0")).loadDelimitedDataTruth(truthFile.getPath());
+            datastore.getInserter(p2, datastore.getPartition("1")).loadDelimitedData(multiCharFile.getPath(), "::");
+            datastore.getInserter(p2, datastore.getPartition("1")).loadDelimitedData(spaceFile.getPath(), " ");
+
+            Database db = datastore.getDatabase(datastore.getPartition("2"), datastore.getPartition("0"), datastore.getPartition("1"));
+
+            List<GroundAtom> atoms = db.getAllGroundAtoms(p1);
+            assertEquals(COUNT, atoms.size());
+            for (GroundAtom atom : atoms) {
+                int id = ((UniqueIntID)atom.getArguments()[0]).getID();
+                assertEquals(id + 1, ((UniqueIntID)atom.getArguments()[1]).getID());
+                assertEquals(1.0, atom.getValue(), MathUtils.EPSILON);
+            }
+
+            assertEquals(COUNT * 3, db.getAllGroundAtoms(p2).size());
+            for (int i = 0; i < COUNT; i++) {
+                GroundAtom atom = db.getAtom(p2, new StringAttribute("a" + i), new StringAttribute("b" + i));
+                assertEquals(i / (double)COUNT, atom.getValue(), MathUtils.EPSILON);
+
+                assertTrue(db.hasAtom(p2, new StringAttribute("c" + i), new StringAttribute("d" + i)));
+                assertTrue(db.hasAtom(p2, new StringAttribute("e" + i), new StringAttribute("f" + i)));
+            }
+
+            db.close();
+        } finally {
+            idFile.delete();
+            truthFile.delete();
+            multiCharFile.delete();
+            spaceFile.delete();
+        }
+    }
+
+    /**
+     * Out of range truth values must be rejected (and nothing from the file inserted), even on the bulk copy path.
+     */
+    @Test
+    public void testLoadDelimitedDataInvalidTruth() throws IOException {
+        if (datastore == null) {
+            return;
+        }
+
+        datastore.registerPredicate(p2);
+
+        File truthFile = File.createTempFile("psl_load_truth_", ".txt");
+
+        try {
+            try (PrintWriter truthWriter = new PrintWriter(truthFile)) {
+                truthWriter.println("a\tb\t0.5");
+                truthWriter.println("c\td\t1.7");
+            }
+
+            try {
+                datastore.getInserter(p2, datastore.getPartition("0")).loadDelimitedDataTruth(truthFile.getPath());
+                fail("Out of range truth value was loaded.");
+            } catch (IllegalArgumentException ex) {
+                // Expected.
+            }
+
+            Database db = datastore.getDatabase(datastore.getPartition("2"), datastore.getPartition("0"));
+            assertEquals(0, db.getAllGroundAtoms(p2).size());
+            db.close();
+        } finally {
+            truthFile.delete();
+        }
+    }
+
+    @Test
+    public void testLoadDelimitedDataFiles() throws IOException {
+        if (datastore == null) {
+            return;
+        }
+
+        datastore.registerPredicate(p1);
+        datastore.registerPredicate(p2);
+
+        RDBMSDataStore rdbmsDataStore = (RDBMSDataStore)datastore;
+
+        // Index (by opening a database) so loading has to drop the indexes.
+        datastore.getDatabase(datastore.getPartition("3")).close();
+        assertTrue(rdbmsDataStore.getPredicateInfo(p1).indexed());
+
+        final int COUNT = 20;
+
+        List<File> tempFiles = new ArrayList<File>();
+        List<DelimitedDataFile> files = new ArrayList<DelimitedDataFile>();
+
+        try {
+            for (int fileIndex = 0; fileIndex < 2; fileIndex++) {
+                File idFile = File.createTempFile("psl_load_", ".txt");
+                File stringFile = File.createTempFile("psl_load_", ".txt");
+                tempFiles.add(idFile);
+                tempFiles.add(stringFile);
+
+                try (
+                    PrintWriter idWriter = new PrintWriter(idFile);
+                    PrintWriter stringWriter = new PrintWriter(stringFile);
+                ) {
+                    for (int i = 0; i < COUNT; i++) {
+                        idWriter.println((fileIndex * COUNT + i) + "\t" + i);
+                        stringWriter.println("a" + i + "\tb" + fileIndex + "\t0.5");
+                    }
+                }
+
+                files.add(new DelimitedDataFile(p1, datastore.getPartition("0"), idFile.getPath()));
+                files.add(new DelimitedDataFile(p2, datastore.getPartition("" + fileIndex), stringFile.getPath()));
+            }
+
+            datastore.loadDelimitedData(files);
+
+            assertTrue(rdbmsDataStore.getPredicateInfo(p1).indexed());
+            assertTrue(rdbmsDataStore.getPredicateInfo(p2).indexed());
+
+            Database db = datastore.getDatabase(datastore.getPartition("2"), datastore.getPartition("0"), datastore.getPartition("1"));
+            assertEquals(COUNT * 2, db.countAllGroundAtoms(p1));
+            assertEquals(COUNT * 2, db.countAllGroundAtoms(p2));
+            assertEquals(0.5, db.getAtom(p2, new StringAttribute("a0"), new StringAttribute("b1")).getValue(), MathUtils.EPSILON);
+            db.close();
+        } finally {
+            for (File file : tempFiles) {
+                file.delete();
+            }
+        }
+    }
+
    // TODO(eriq): Add a test that estimates join sizes with histograms.
 }
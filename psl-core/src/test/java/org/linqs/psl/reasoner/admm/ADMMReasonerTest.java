@@ -17,17 +17,38 @@
  */
 package org.linqs.psl.reasoner.admm;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
 import org.linqs.psl.TestModel;
+import org.linqs.psl.config.Config;
 import org.linqs.psl.application.inference.MPEInference;
 import org.linqs.psl.database.Database;
+import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.predicate.StandardPredicate;
+import org.linqs.psl.reasoner.admm.term.ADMMTermStore;
 
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 public class ADMMReasonerTest {
+    @Before
+    public void setUp() {
+        Config.init();
+    }
+
+    @After
+    public void tearDown() {
+        Config.init();
+    }
+
     /**
      * A quick test that only checks to see if ADMMReasoner runs.
      * This is not a targeted or exhaustive test, just a starting point.
@@ -44,4 +65,132 @@ public class ADMMReasonerTest {
         mpe.close();
         inferDB.close();
     }
+
+    /**
+     * Warm starting from an already optimized state should stay at (about) that state,
+     * and get there in far fewer iterations than the first (cold) optimization.
+     */
+    @Test
+    public void testWarmStart() {
+        TestModel.ModelInformation info = TestModel.getModel();
+
+        Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+        Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+        MPEInference mpe = new MPEInference(info.model, inferDB);
+
+        ADMMReasoner reasoner = (ADMMReasoner)mpe.getReasoner();
+        reasoner.setWarmStart(true);
+
+        mpe.inference(false);
+        int coldIterations = reasoner.getLastIterationCount();
+
+        ADMMTermStore termStore = (ADMMTermStore)mpe.getTermStore();
+        Map<RandomVariableAtom, Float> values = getValues(termStore);
+
+        // Scramble the atoms, a warm start should not look at them.
+        for (RandomVariableAtom atom : values.keySet()) {
+            atom.setValue(0.0f);
+        }
+
+        reasoner.optimize(termStore);
+        int warmIterations = reasoner.getLastIterationCount();
+
+        assertTrue(String.format("Cold: %d, Warm: %d", coldIterations, warmIterations), warmIterations * 10 < coldIterations);
+        assertValuesEqual(values);
+
+        mpe.close();
+        inferDB.close();
+    }
+
+    /**
+     * Once the local variables of the term store change (here, are reset), the old state no longer lines up with them,
+     * so the reasoner has to start cold even when warm starts are enabled.
+     */
+    @Test
+    public void testWarmStartVersionChange() {
+        TestModel.ModelInformation info = TestModel.getModel();
+
+        Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+        Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+        MPEInference mpe = new MPEInference(info.model, inferDB);
+
+        ADMMReasoner reasoner = (ADMMReasoner)mpe.getReasoner();
+        reasoner.setWarmStart(true);
+
+        mpe.inference(false);
+        int firstIterations = reasoner.getLastIterationCount();
+
+        ADMMTermStore termStore = (ADMMTermStore)mpe.getTermStore();
+        Map<RandomVariableAtom, Float> values = getValues(termStore);
+
+        // A cold start will pick up these values.
+        for (RandomVariableAtom atom : values.keySet()) {
+            atom.setValue(0.0f);
+        }
+
+        int version = termStore.getVersion();
+        termStore.resetLocalVairables(ADMMReasoner.InitialValue.ATOM);
+        assertNotEquals(version, termStore.getVersion());
+
+        reasoner.optimize(termStore);
+        int secondIterations = reasoner.getLastIterationCount();
+
+        assertTrue(String.format("First: %d, Second: %d", firstIterations, secondIterations), secondIterations * 2 > firstIterations);
+        assertValuesEqual(values);
+
+        mpe.close();
+        inferDB.close();
+    }
+
+    /**
+     * Adaptive step sizes and over-relaxation should converge to the same solution as the plain iterations.
+     */
+    @Test
+    public void testAdaptiveStepSize() {
+        Map<String, Float> baseline = runInference();
+
+        Config.setProperty(ADMMReasoner.ADAPTIVE_STEP_SIZE_KEY, true);
+        Config.setProperty(ADMMReasoner.OVER_RELAXATION_KEY, 1.6f);
+        Map<String, Float> adapted = runInference();
+
+        assertEquals(baseline.size(), adapted.size());
+        for (Map.Entry<String, Float> entry : baseline.entrySet()) {
+            assertEquals(entry.getKey(), entry.getValue().floatValue(), adapted.get(entry.getKey()).floatValue(), 0.01);
+        }
+    }
+
+    private Map<String, Float> runInference() {
+        TestModel.ModelInformation info = TestModel.getModel();
+
+        Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+        Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+        MPEInference mpe = new MPEInference(info.model, inferDB);
+
+        mpe.inference(false);
+
+        Map<String, Float> values = new HashMap<String, Float>();
+        for (RandomVariableAtom atom : ((ADMMTermStore)mpe.getTermStore()).getGlobalVariables().keySet()) {
+            values.put(atom.toString(), atom.getValue());
+        }
+
+        mpe.close();
+        inferDB.close();
+
+        return values;
+    }
+
+    private Map<RandomVariableAtom, Float> getValues(ADMMTermStore termStore) {
+        Map<RandomVariableAtom, Float> values = new HashMap<RandomVariableAtom, Float>();
+        for (RandomVariableAtom atom : termStore.getGlobalVariables().keySet()) {
+            values.put(atom, atom.getValue());
+        }
+
+        return values;
+    }
+
+    private void assertValuesEqual(Map<RandomVariableAtom, Float> expected) {
+        for (Map.Entry<RandomVariableAtom, Float> entry : expected.entrySet()) {
+            assertEquals(entry.getKey().toString(), entry.getValue().floatValue(), entry.getKey().getValue(), 0.01);
+        }
+    }
 }
@@ -93,18 +93,23 @@ public class HingeLossTermTest {
 
     private void testProblem(float[] z, float[] y, float[] coeffs, float constant,
             float weight, final float stepSize, float[] expected) {
+        ADMMTermStore termStore = new ADMMTermStore();
         LocalVariable[] variables = new LocalVariable[z.length];
 
         for (int i = 0; i < z.length; i++) {
             variables[i] = new LocalVariable(i, z[i]);
-            variables[i].setLagrange(y[i]);
         }
 
-        HingeLossTerm term = new HingeLossTerm(new FakeGroundRule(weight), new Hyperplane<LocalVariable>(variables, coeffs, constant, z.length));
-        term.minimize(stepSize, z);
+        HingeLossTerm term = new HingeLossTerm(termStore, new FakeGroundRule(weight), new Hyperplane<LocalVariable>(variables, coeffs, constant, z.length));
 
         for (int i = 0; i < z.length; i++) {
-            assertEquals(expected[i], variables[i].getValue(), 5e-5);
+            termStore.getLocalLagranges()[term.getLocalOffset() + i] = y[i];
+        }
+
+        term.minimize(termStore, stepSize, z);
+
+        for (int i = 0; i < z.length; i++) {
+            assertEquals(expected[i], termStore.getLocalValues()[term.getLocalOffset() + i], 5e-5);
         }
     }
 }
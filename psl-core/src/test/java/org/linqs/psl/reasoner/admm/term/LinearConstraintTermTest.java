@@ -64,18 +64,23 @@ public class LinearConstraintTermTest {
 
     private void testProblem(float[] z, float[] y, float[] coeffs, float constant,
             FunctionComparator comparator, final float stepSize, float[] expected) {
+        ADMMTermStore termStore = new ADMMTermStore();
         LocalVariable[] variables = new LocalVariable[z.length];
 
         for (int i = 0; i < z.length; i++) {
             variables[i] = new LocalVariable(i, z[i]);
-            variables[i].setLagrange(y[i]);
         }
 
-        LinearConstraintTerm term = new LinearConstraintTerm(null, new Hyperplane<LocalVariable>(variables, coeffs, constant, z.length), comparator);
-        term.minimize(stepSize, z);
+        LinearConstraintTerm term = new LinearConstraintTerm(termStore, null, new Hyperplane<LocalVariable>(variables, coeffs, constant, z.length), comparator);
 
         for (int i = 0; i < z.length; i++) {
-            assertEquals(expected[i], variables[i].getValue(), 5e-5);
+            termStore.getLocalLagranges()[term.getLocalOffset() + i] = y[i];
+        }
+
+        term.minimize(termStore, stepSize, z);
+
+        for (int i = 0; i < z.length; i++) {
+            assertEquals(expected[i], termStore.getLocalValues()[term.getLocalOffset() + i], 5e-5);
         }
     }
 }
@@ -42,18 +42,23 @@ public class LinearLossTermTest {
 
     private void testProblem(float[] z, float[] y, float[] coeffs, float weight,
             final float stepSize, float[] expected) {
+        ADMMTermStore termStore = new ADMMTermStore();
         LocalVariable[] variables = new LocalVariable[z.length];
 
         for (int i = 0; i < z.length; i++) {
             variables[i] = new LocalVariable(i, z[i]);
-            variables[i].setLagrange(y[i]);
         }
 
-        LinearLossTerm term = new LinearLossTerm(new FakeGroundRule(weight), new Hyperplane<LocalVariable>(variables, coeffs, 0.0f, z.length));
-        term.minimize(stepSize, z);
+        LinearLossTerm term = new LinearLossTerm(termStore, new FakeGroundRule(weight), new Hyperplane<LocalVariable>(variables, coeffs, 0.0f, z.length));
 
         for (int i = 0; i < z.length; i++) {
-            assertEquals(expected[i], variables[i].getValue(), 5e-5);
+            termStore.getLocalLagranges()[term.getLocalOffset() + i] = y[i];
+        }
+
+        term.minimize(termStore, stepSize, z);
+
+        for (int i = 0; i < z.length; i++) {
+            assertEquals(expected[i], termStore.getLocalValues()[term.getLocalOffset() + i], 5e-5);
         }
     }
 }
@@ -41,20 +41,63 @@ public class SquaredLinearLossTermTest {
         testProblem(z, y, coeffs, constant, weight, stepSize, expected);
     }
 
+    /**
+     * Changing a term's weight in place (as ADMMTermStore.updateWeights() does)
+     * should give the same result as a term built with that weight.
+     */
+    @Test
+    public void testWeightChange() {
+        // Same as problem 1 from testMinimize(), but starting with a different weight.
+        float[] z = {0.4f, 0.5f, 0.1f};
+        float[] y = {0.0f, 0.0f, -0.05f};
+        float[] coeffs = {0.3f, -1.0f, 0.4f};
+        float constant = -20.0f;
+        float stepSize = 2.0f;
+        float[] expected = {-1.41569f, 6.55231f, -2.29593f};
+
+        ADMMTermStore termStore = new ADMMTermStore();
+        LocalVariable[] variables = new LocalVariable[z.length];
+        for (int i = 0; i < z.length; i++) {
+            variables[i] = new LocalVariable(i, z[i]);
+        }
+
+        FakeGroundRule groundRule = new FakeGroundRule(1.0);
+        SquaredLinearLossTerm term = new SquaredLinearLossTerm(termStore, groundRule, new Hyperplane<LocalVariable>(variables, coeffs, constant, z.length));
+
+        for (int i = 0; i < z.length; i++) {
+            termStore.getLocalLagranges()[term.getLocalOffset() + i] = y[i];
+        }
+
+        // Minimize once to cache any weight-dependent state.
+        term.minimize(termStore, stepSize, z);
+
+        term.setWeight(0.5f);
+        term.minimize(termStore, stepSize, z);
+
+        for (int i = 0; i < z.length; i++) {
+            assertEquals(expected[i], termStore.getLocalValues()[term.getLocalOffset() + i], 5e-5);
+        }
+    }
+
     private void testProblem(float[] z, float[] y, float[] coeffs, float constant,
             float weight, final float stepSize, float[] expected) {
+        ADMMTermStore termStore = new ADMMTermStore();
         LocalVariable[] variables = new LocalVariable[z.length];
 
         for (int i = 0; i < z.length; i++) {
             variables[i] = new LocalVariable(i, z[i]);
-            variables[i].setLagrange(y[i]);
         }
 
-        SquaredLinearLossTerm term = new SquaredLinearLossTerm(new FakeGroundRule(weight), new Hyperplane<LocalVariable>(variables, coeffs, constant, z.length));
-        term.minimize(stepSize, z);
+        SquaredLinearLossTerm term = new SquaredLinearLossTerm(termStore, new FakeGroundRule(weight), new Hyperplane<LocalVariable>(variables, coeffs, constant, z.length));
+
+        for (int i = 0; i < z.length; i++) {
+            termStore.getLocalLagranges()[term.getLocalOffset() + i] = y[i];
+        }
+
+        term.minimize(termStore, stepSize, z);
 
         for (int i = 0; i < z.length; i++) {
-            assertEquals(expected[i], variables[i].getValue(), 5e-5);
+            assertEquals(expected[i], termStore.getLocalValues()[term.getLocalOffset() + i], 5e-5);
         }
     }
 }
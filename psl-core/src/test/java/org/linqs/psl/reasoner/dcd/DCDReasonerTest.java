@@ -17,18 +17,23 @@
  */
 package org.linqs.psl.reasoner.dcd;
 
+import static org.junit.Assert.assertEquals;
+
 import org.linqs.psl.TestModel;
 import org.linqs.psl.config.Config;
 import org.linqs.psl.application.inference.InferenceApplication;
 import org.linqs.psl.application.inference.MPEInference;
 import org.linqs.psl.database.Database;
+import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.predicate.StandardPredicate;
 import org.linqs.psl.reasoner.dcd.term.DCDTermGenerator;
 import org.linqs.psl.reasoner.dcd.term.DCDMemoryTermStore;
 
 import org.junit.Test;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 public class DCDReasonerTest {
@@ -52,4 +57,73 @@ public class DCDReasonerTest {
         mpe.close();
         inferDB.close();
     }
+
+    /**
+     * Minimizing the terms in parallel should end up at (about) the same place as minimizing them sequentially.
+     * DCD's solution depends on the starting point and on the order terms are visited in
+     * (values are clipped between passes), so use the model where everyone is nice,
+     * which has a well-defined optimum.
+     */
+    @Test
+    public void parallelTest() {
+        Map<String, Float> baseline = runInference();
+
+        Config.setProperty(DCDReasoner.PARALLEL_KEY, true);
+        try {
+            Map<String, Float> parallel = runInference();
+
+            assertEquals(baseline.size(), parallel.size());
+            for (Map.Entry<String, Float> entry : baseline.entrySet()) {
+                assertEquals(entry.getKey(), entry.getValue().floatValue(), parallel.get(entry.getKey()).floatValue(), 0.01);
+            }
+        } finally {
+            Config.clearProperty(DCDReasoner.PARALLEL_KEY);
+        }
+    }
+
+    @Test
+    public void computePeriodTest() {
+        Config.setProperty(InferenceApplication.REASONER_KEY, DCDReasoner.class.getName());
+        Config.setProperty(InferenceApplication.TERM_GENERATOR_KEY, DCDTermGenerator.class.getName());
+        Config.setProperty(InferenceApplication.TERM_STORE_KEY, DCDMemoryTermStore.class.getName());
+        Config.setProperty(DCDReasoner.COMPUTE_PERIOD_KEY, 5);
+
+        try {
+            TestModel.ModelInformation info = TestModel.getModel();
+
+            Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+            Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+            MPEInference mpe = new MPEInference(info.model, inferDB);
+
+            mpe.inference();
+            mpe.close();
+            inferDB.close();
+        } finally {
+            Config.clearProperty(DCDReasoner.COMPUTE_PERIOD_KEY);
+        }
+    }
+
+    private Map<String, Float> runInference() {
+        Config.setProperty(InferenceApplication.REASONER_KEY, DCDReasoner.class.getName());
+        Config.setProperty(InferenceApplication.TERM_GENERATOR_KEY, DCDTermGenerator.class.getName());
+        Config.setProperty(InferenceApplication.TERM_STORE_KEY, DCDMemoryTermStore.class.getName());
+
+        TestModel.ModelInformation info = TestModel.getModel(true);
+
+        Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+        Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+        MPEInference mpe = new MPEInference(info.model, inferDB);
+
+        mpe.inference(false);
+
+        Map<String, Float> values = new HashMap<String, Float>();
+        for (RandomVariableAtom atom : ((DCDMemoryTermStore)mpe.getTermStore()).getVariables()) {
+            values.put(atom.toString(), atom.getValue());
+        }
+
+        mpe.close();
+        inferDB.close();
+
+        return values;
+    }
 }
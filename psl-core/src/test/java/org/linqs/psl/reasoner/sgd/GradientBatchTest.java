@@ -0,0 +1,91 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2019 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.sgd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class GradientBatchTest {
+    private static final float EPSILON = 1e-5f;
+
+    @Test
+    public void testApply() {
+        GradientBatch batch = new GradientBatch(3, 2);
+
+        // A constant (no decay) schedule makes the step exactly the learning rate times the gradient.
+        LearningSchedule schedule = LearningSchedule.create(LearningSchedule.Type.CONSTANT, 0.1f);
+        schedule.init(3);
+        schedule.startIteration(1);
+
+        float[] values = new float[]{0.5f, 0.5f, 0.5f};
+
+        batch.add(0, 1.0f);
+        batch.add(2, 0.5f);
+        assertFalse(batch.termAdded());
+
+        batch.add(0, 2.0f);
+        assertTrue(batch.termAdded());
+
+        // Variable 0 takes a single step with the summed gradient (3.0), variable 1 was not touched.
+        batch.apply(values, schedule);
+        assertArrayEquals(new float[]{0.2f, 0.5f, 0.45f}, values, EPSILON);
+
+        // Applying again does nothing, the batch was cleared.
+        batch.apply(values, schedule);
+        assertArrayEquals(new float[]{0.2f, 0.5f, 0.45f}, values, EPSILON);
+
+        // The term count was also cleared.
+        batch.add(1, -10.0f);
+        assertFalse(batch.termAdded());
+
+        // Values are clipped to [0, 1].
+        batch.apply(values, schedule);
+        assertArrayEquals(new float[]{0.2f, 1.0f, 0.45f}, values, EPSILON);
+    }
+
+    @Test
+    public void testManyVariables() {
+        // More touched variables than the initial touched list holds.
+        int numVariables = 3000;
+        GradientBatch batch = new GradientBatch(numVariables, 1);
+
+        LearningSchedule schedule = LearningSchedule.create(LearningSchedule.Type.CONSTANT, 1.0f);
+        schedule.init(numVariables);
+        schedule.startIteration(1);
+
+        float[] values = new float[numVariables];
+        float[] expected = new float[numVariables];
+        for (int i = 0; i < numVariables; i++) {
+            values[i] = 0.5f;
+            expected[i] = 0.25f;
+            batch.add(i, 0.25f);
+        }
+
+        assertTrue(batch.termAdded());
+        batch.apply(values, schedule);
+        assertArrayEquals(expected, values, EPSILON);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadBatchSize() {
+        new GradientBatch(1, 0);
+    }
+}
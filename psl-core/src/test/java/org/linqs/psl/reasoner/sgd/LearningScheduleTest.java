@@ -0,0 +1,124 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2019 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.sgd;
+
+import static org.junit.Assert.assertEquals;
+
+import org.linqs.psl.config.Config;
+
+import org.junit.Test;
+
+public class LearningScheduleTest {
+    private static final float EPSILON = 1e-5f;
+
+    @Test
+    public void testInverseTime() {
+        LearningSchedule schedule = LearningSchedule.create(LearningSchedule.Type.INVERSE_TIME, 2.0f);
+        schedule.init(1);
+
+        schedule.startIteration(1);
+        assertEquals(1.0f, schedule.getStep(0, 0.5f), EPSILON);
+
+        schedule.startIteration(4);
+        assertEquals(0.25f, schedule.getStep(0, 0.5f), EPSILON);
+    }
+
+    @Test
+    public void testConstant() {
+        LearningSchedule schedule = LearningSchedule.create(LearningSchedule.Type.CONSTANT, 1.0f);
+        schedule.init(1);
+
+        // No decay by default.
+        for (int iteration = 1; iteration <= 3; iteration++) {
+            schedule.startIteration(iteration);
+            assertEquals(2.0f, schedule.getStep(0, 2.0f), EPSILON);
+        }
+
+        Config.setProperty(SGDReasoner.LEARNING_RATE_DECAY_KEY, 0.5f);
+        try {
+            schedule = LearningSchedule.create(LearningSchedule.Type.CONSTANT, 1.0f);
+        } finally {
+            Config.clearProperty(SGDReasoner.LEARNING_RATE_DECAY_KEY);
+        }
+
+        schedule.init(1);
+
+        schedule.startIteration(1);
+        assertEquals(2.0f, schedule.getStep(0, 2.0f), EPSILON);
+
+        schedule.startIteration(2);
+        assertEquals(1.0f, schedule.getStep(0, 2.0f), EPSILON);
+
+        schedule.startIteration(3);
+        assertEquals(0.5f, schedule.getStep(0, 2.0f), EPSILON);
+    }
+
+    @Test
+    public void testAdaGrad() {
+        LearningSchedule schedule = LearningSchedule.create(LearningSchedule.Type.ADAGRAD, 0.5f);
+        schedule.init(2);
+        schedule.startIteration(1);
+
+        // sqrt(2^2).
+        assertEquals(0.5f, schedule.getStep(0, 2.0f), EPSILON);
+
+        // The squared gradients accumulate: sqrt(2^2 + 1^2).
+        assertEquals(0.5f / (float)Math.sqrt(5.0), schedule.getStep(0, 1.0f), EPSILON);
+
+        // Each variable has its own accumulation.
+        assertEquals(-0.5f, schedule.getStep(1, -3.0f), EPSILON);
+
+        // Accumulation carries across iterations.
+        schedule.startIteration(2);
+        assertEquals(0.5f / (float)Math.sqrt(6.0), schedule.getStep(0, 1.0f), EPSILON);
+
+        // But not across optimizations.
+        schedule.init(2);
+        assertEquals(0.5f, schedule.getStep(0, 1.0f), EPSILON);
+    }
+
+    @Test
+    public void testAdam() {
+        // Default betas: 0.9 and 0.999.
+        LearningSchedule schedule = LearningSchedule.create(LearningSchedule.Type.ADAM, 0.1f);
+        schedule.init(2);
+        schedule.startIteration(1);
+
+        // m = 0.2, v = 0.004.
+        // With bias correction: m / (1 - 0.9) = 2, v / (1 - 0.999) = 4.
+        assertEquals(0.1f, schedule.getStep(0, 2.0f), EPSILON);
+
+        // m = 0.28, v = 0.004996.
+        // With bias correction: m / (1 - 0.9^2), v / (1 - 0.999^2).
+        schedule.startIteration(2);
+        assertEquals(0.0932180f, schedule.getStep(0, 1.0f), EPSILON);
+
+        // A fresh variable in a later iteration only gets a partial bias correction.
+        // m = 0.1, v = 0.001.
+        assertEquals(0.1f * (0.1f / 0.19f) / (float)Math.sqrt(0.001 / 0.001999), schedule.getStep(1, 1.0f), EPSILON);
+
+        // Everything is reset on init.
+        schedule.init(2);
+        assertEquals(0.1f, schedule.getStep(0, 2.0f), EPSILON);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadLearningRate() {
+        LearningSchedule.create(LearningSchedule.Type.CONSTANT, 0.0f);
+    }
+}
@@ -17,18 +17,23 @@
  */
 package org.linqs.psl.reasoner.sgd;
 
+import static org.junit.Assert.assertEquals;
+
 import org.linqs.psl.TestModel;
 import org.linqs.psl.config.Config;
 import org.linqs.psl.application.inference.InferenceApplication;
 import org.linqs.psl.application.inference.MPEInference;
 import org.linqs.psl.database.Database;
+import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.predicate.StandardPredicate;
 import org.linqs.psl.reasoner.sgd.term.SGDTermGenerator;
 import org.linqs.psl.reasoner.sgd.term.SGDMemoryTermStore;
 
 import org.junit.Test;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 public class SGDReasonerTest {
@@ -52,4 +57,112 @@ public class SGDReasonerTest {
         mpe.close();
         inferDB.close();
     }
+
+    /**
+     * Minimizing the terms in parallel should end up at (about) the same place as minimizing them sequentially.
+     * Like miniBatchTest(), run long enough for the different step orders to settle.
+     */
+    @Test
+    public void parallelTest() {
+        Config.setProperty(SGDReasoner.MAX_ITER_KEY, 2000);
+        Config.setProperty(SGDReasoner.OBJECTIVE_BREAK_KEY, false);
+
+        try {
+            Map<String, Float> baseline = runInference();
+
+            Config.setProperty(SGDReasoner.PARALLEL_KEY, true);
+            assertValuesEqual(baseline, runInference());
+        } finally {
+            Config.clearProperty(SGDReasoner.MAX_ITER_KEY);
+            Config.clearProperty(SGDReasoner.OBJECTIVE_BREAK_KEY);
+            Config.clearProperty(SGDReasoner.PARALLEL_KEY);
+        }
+    }
+
+    @Test
+    public void learningScheduleTest() {
+        try {
+            for (LearningSchedule.Type type : LearningSchedule.Type.values()) {
+                Config.setProperty(SGDReasoner.LEARNING_SCHEDULE_KEY, type.toString());
+                Config.setProperty(SGDReasoner.LEARNING_RATE_DECAY_KEY, 0.9f);
+                runInference();
+            }
+        } finally {
+            Config.clearProperty(SGDReasoner.LEARNING_SCHEDULE_KEY);
+            Config.clearProperty(SGDReasoner.LEARNING_RATE_DECAY_KEY);
+        }
+    }
+
+    /**
+     * Mini-batches should end up at (about) the same place as taking a step for every term.
+     * SGD is noisier than ADMM, so run long enough for the different step orders to settle.
+     * This uses the (default) inverse time schedule, since its decaying steps settle on the same point
+     * no matter the term order (AdaGrad keeps moving by about 0.01 between orders and seeds).
+     */
+    @Test
+    public void miniBatchTest() {
+        Config.setProperty(SGDReasoner.MAX_ITER_KEY, 2000);
+        Config.setProperty(SGDReasoner.OBJECTIVE_BREAK_KEY, false);
+
+        try {
+            Map<String, Float> baseline = runInference();
+
+            Config.setProperty(SGDReasoner.MINI_BATCH_SIZE_KEY, 4);
+            assertValuesEqual(baseline, runInference());
+
+            Config.setProperty(SGDReasoner.PARALLEL_KEY, true);
+            assertValuesEqual(baseline, runInference());
+        } finally {
+            Config.clearProperty(SGDReasoner.MAX_ITER_KEY);
+            Config.clearProperty(SGDReasoner.OBJECTIVE_BREAK_KEY);
+            Config.clearProperty(SGDReasoner.MINI_BATCH_SIZE_KEY);
+            Config.clearProperty(SGDReasoner.PARALLEL_KEY);
+        }
+    }
+
+    @Test
+    public void computePeriodTest() {
+        Config.setProperty(SGDReasoner.COMPUTE_PERIOD_KEY, 5);
+
+        try {
+            runInference();
+
+            Config.setProperty(SGDReasoner.EXACT_OBJECTIVE_KEY, true);
+            runInference();
+        } finally {
+            Config.clearProperty(SGDReasoner.COMPUTE_PERIOD_KEY);
+            Config.clearProperty(SGDReasoner.EXACT_OBJECTIVE_KEY);
+        }
+    }
+
+    private void assertValuesEqual(Map<String, Float> expected, Map<String, Float> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (Map.Entry<String, Float> entry : expected.entrySet()) {
+            assertEquals(entry.getKey(), entry.getValue().floatValue(), actual.get(entry.getKey()).floatValue(), 0.01);
+        }
+    }
+
+    private Map<String, Float> runInference() {
+        Config.setProperty(InferenceApplication.REASONER_KEY, SGDReasoner.class.getName());
+        Config.setProperty(InferenceApplication.TERM_GENERATOR_KEY, SGDTermGenerator.class.getName());
+        Config.setProperty(InferenceApplication.TERM_STORE_KEY, SGDMemoryTermStore.class.getName());
+
+        TestModel.ModelInformation info = TestModel.getModel();
+
+        Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+        Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+        MPEInference mpe = new MPEInference(info.model, inferDB);
+
+        mpe.inference(false);
+
+        Map<String, Float> values = new HashMap<String, Float>();
+        for (RandomVariableAtom atom : ((SGDMemoryTermStore)mpe.getTermStore()).getVariables()) {
+            values.put(atom.toString(), atom.getValue());
+        }
+
+        mpe.close();
+        inferDB.close();
+
+        return values;
+    }
 }
@@ -0,0 +1,165 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2019 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.term;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.linqs.psl.model.atom.RandomVariableAtom;
+import org.linqs.psl.model.predicate.StandardPredicate;
+import org.linqs.psl.model.term.Constant;
+import org.linqs.psl.model.term.ConstantType;
+import org.linqs.psl.model.term.UniqueStringID;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+public class VariableIndexMapTest {
+    @Test
+    public void testAddAndGet() {
+        // Start small to force several resizes.
+        VariableIndexMap<String> map = new VariableIndexMap<String>(2);
+
+        int numKeys = 1000;
+        for (int i = 0; i < numKeys; i++) {
+            assertEquals(i, map.add("key_" + i));
+        }
+
+        assertEquals(numKeys, map.size());
+
+        for (int i = 0; i < numKeys; i++) {
+            // Equal, but not identical keys.
+            assertEquals(i, map.get(new String("key_" + i)));
+            assertEquals(i, map.add("key_" + i));
+        }
+
+        assertEquals(numKeys, map.size());
+        assertEquals(-1, map.get("missing"));
+        assertFalse(map.containsKey("missing"));
+    }
+
+    @Test
+    public void testIterationOrder() {
+        VariableIndexMap<Integer> map = new VariableIndexMap<Integer>();
+
+        int numKeys = 100;
+        for (int i = numKeys - 1; i >= 0; i--) {
+            map.add(Integer.valueOf(i * 31));
+        }
+
+        int count = 0;
+        for (Integer key : map) {
+            assertEquals((numKeys - 1 - count) * 31, key.intValue());
+            count++;
+        }
+
+        assertEquals(numKeys, count);
+    }
+
+    @Test
+    public void testClear() {
+        VariableIndexMap<String> map = new VariableIndexMap<String>();
+
+        map.add("a");
+        map.add("b");
+        assertTrue(map.containsKey("a"));
+
+        map.clear();
+
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey("a"));
+        assertFalse(map.iterator().hasNext());
+
+        assertEquals(0, map.add("b"));
+        assertEquals(1, map.add("a"));
+    }
+
+    /**
+     * Atoms cache their index, make sure that cache does not leak between maps or across a clear().
+     */
+    @Test
+    public void testAtomIndexCache() {
+        StandardPredicate predicate = StandardPredicate.get("VariableIndexMapTest_Cache", new ConstantType[]{ConstantType.UniqueStringID});
+
+        int numAtoms = 10;
+        RandomVariableAtom[] atoms = new RandomVariableAtom[numAtoms];
+        for (int i = 0; i < numAtoms; i++) {
+            atoms[i] = new RandomVariableAtom(predicate, new Constant[]{new UniqueStringID("" + i)}, 0.0f);
+        }
+
+        VariableIndexMap<RandomVariableAtom> forward = new VariableIndexMap<RandomVariableAtom>();
+        VariableIndexMap<RandomVariableAtom> backward = new VariableIndexMap<RandomVariableAtom>();
+
+        for (int i = 0; i < numAtoms; i++) {
+            assertEquals(i, forward.add(atoms[i]));
+            assertEquals(i, backward.add(atoms[numAtoms - 1 - i]));
+        }
+
+        // Alternate lookups so that each atom's cache keeps getting taken over by the other map.
+        for (int i = 0; i < numAtoms; i++) {
+            assertEquals(i, forward.get(atoms[i]));
+            assertEquals(numAtoms - 1 - i, backward.get(atoms[i]));
+            assertEquals(i, forward.get(atoms[i]));
+        }
+
+        // Equal, but not identical atoms.
+        RandomVariableAtom copy = new RandomVariableAtom(predicate, new Constant[]{new UniqueStringID("3")}, 0.0f);
+        assertEquals(3, forward.get(copy));
+        assertEquals(6, backward.get(copy));
+
+        forward.clear();
+        assertEquals(-1, forward.get(atoms[0]));
+        assertEquals(0, forward.add(atoms[5]));
+        assertEquals(0, forward.get(atoms[5]));
+        assertEquals(-1, forward.get(atoms[0]));
+        assertEquals(4, backward.get(atoms[5]));
+    }
+
+    @Test
+    public void testAsMap() {
+        VariableIndexMap<String> map = new VariableIndexMap<String>();
+        Map<String, Integer> view = map.asMap();
+
+        map.add("c");
+        map.add("a");
+        map.add("b");
+
+        assertEquals(3, view.size());
+        assertEquals(Integer.valueOf(1), view.get("a"));
+        assertTrue(view.containsKey("b"));
+        assertNull(view.get("missing"));
+
+        String[] expectedKeys = new String[]{"c", "a", "b"};
+        int count = 0;
+        for (Map.Entry<String, Integer> entry : view.entrySet()) {
+            assertEquals(expectedKeys[count], entry.getKey());
+            assertEquals(count, entry.getValue().intValue());
+            count++;
+        }
+        assertEquals(3, count);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAsMapReadOnly() {
+        VariableIndexMap<String> map = new VariableIndexMap<String>();
+        map.asMap().put("a", 0);
+    }
+}
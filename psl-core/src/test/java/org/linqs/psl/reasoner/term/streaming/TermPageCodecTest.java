@@ -0,0 +1,103 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2019 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.term.streaming;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class TermPageCodecTest {
+    @Test
+    public void testInts() {
+        int[] values = new int[]{0, 1, 127, 128, 300, 16384, Integer.MAX_VALUE};
+
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * TermPageCodec.MAX_INT_SIZE);
+        for (int value : values) {
+            TermPageCodec.putInt(buffer, value);
+        }
+
+        // Small values only take one byte.
+        assertEquals(1 + 1 + 1 + 2 + 2 + 3 + 5, buffer.position());
+
+        buffer.flip();
+        for (int value : values) {
+            assertEquals(value, TermPageCodec.getInt(buffer));
+        }
+    }
+
+    @Test
+    public void testSignedInts() {
+        int[] values = new int[]{0, -1, 1, -64, 64, -100000, Integer.MIN_VALUE, Integer.MAX_VALUE};
+
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * TermPageCodec.MAX_INT_SIZE);
+        for (int value : values) {
+            TermPageCodec.putSignedInt(buffer, value);
+        }
+
+        buffer.flip();
+        for (int value : values) {
+            assertEquals(value, TermPageCodec.getSignedInt(buffer));
+        }
+    }
+
+    @Test
+    public void testFloats() {
+        float[] values = new float[]{1.0f, -1.0f, 1.0f, 0.5f, -1.0f, 1.0f, 0.0f, -0.0f, 0.5f};
+
+        TermPageCodec writer = new TermPageCodec();
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * TermPageCodec.MAX_FLOAT_SIZE);
+        for (float value : values) {
+            writer.putFloat(buffer, value);
+        }
+
+        // Five distinct values (0.0 and -0.0 are different), the rest are one byte references.
+        assertEquals(5 * TermPageCodec.MAX_FLOAT_SIZE + 4, buffer.position());
+
+        buffer.flip();
+        TermPageCodec reader = new TermPageCodec();
+        for (float value : values) {
+            assertEquals(Float.floatToIntBits(value), Float.floatToIntBits(reader.getFloat(buffer)));
+        }
+    }
+
+    @Test
+    public void testReset() {
+        TermPageCodec writer = new TermPageCodec();
+        TermPageCodec reader = new TermPageCodec();
+        ByteBuffer buffer = ByteBuffer.allocate(4 * TermPageCodec.MAX_FLOAT_SIZE);
+
+        for (int page = 0; page < 2; page++) {
+            buffer.clear();
+            writer.reset();
+
+            writer.putFloat(buffer, 2.0f);
+            writer.putFloat(buffer, 2.0f);
+
+            // After a reset, the value is new again.
+            assertEquals(TermPageCodec.MAX_FLOAT_SIZE + 1, buffer.position());
+
+            buffer.flip();
+            reader.reset();
+
+            assertEquals(2.0f, reader.getFloat(buffer), 0.0f);
+            assertEquals(2.0f, reader.getFloat(buffer), 0.0f);
+        }
+    }
+}
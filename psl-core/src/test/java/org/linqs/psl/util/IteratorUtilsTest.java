@@ -19,10 +19,14 @@ package org.linqs.psl.util;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class IteratorUtilsTest {
     @Test
@@ -80,4 +84,39 @@ public class IteratorUtilsTest {
 
         assertEquals(expected.length, count);
     }
+
+    @Test
+    public void testBatch() {
+        List<Integer> items = Arrays.asList(1, 2, 3, 4, 5, 6, 7);
+        Integer[][] expected = new Integer[][]{
+            new Integer[]{1, 2, 3},
+            new Integer[]{4, 5, 6},
+            new Integer[]{7},
+        };
+
+        int count = 0;
+        for (List<Integer> batch : IteratorUtils.batch(items, 3)) {
+            assertArrayEquals(expected[count], batch.toArray(new Integer[0]));
+            count++;
+        }
+
+        assertEquals(expected.length, count);
+    }
+
+    @Test
+    public void testJoinList() {
+        List<List<Integer>> lists = new ArrayList<List<Integer>>();
+        lists.add(Collections.<Integer>emptyList());
+        lists.add(Arrays.asList(1, 2));
+        lists.add(Collections.<Integer>emptyList());
+        lists.add(Arrays.asList(3));
+
+        List<Integer> joined = new ArrayList<Integer>();
+        for (Integer item : IteratorUtils.join(lists)) {
+            joined.add(item);
+        }
+
+        assertEquals(Arrays.asList(1, 2, 3), joined);
+        assertFalse(IteratorUtils.join(new ArrayList<List<Integer>>()).iterator().hasNext());
+    }
 }